@@ -0,0 +1,28 @@
+package dev.gabriel.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * entry point of benchmarks.jar.
+ * <p>
+ * accepts the regular jmh command line (e.g. a benchmark regex, {@code -f}, {@code -wi},
+ * {@code -rf json}) and always enables the gc profiler, so every result comes with its
+ * allocation rate ({@code gc.alloc.rate.norm}, bytes per operation).
+ * </p>
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,167 @@
+package dev.gabriel.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.gabriel.consumer_worker.config.DedupProperties;
+import dev.gabriel.consumer_worker.config.DestinationProperties;
+import dev.gabriel.consumer_worker.config.FairnessProperties;
+import dev.gabriel.consumer_worker.config.HttpDeliveryProperties;
+import dev.gabriel.consumer_worker.config.IsolationProperties;
+import dev.gabriel.consumer_worker.config.JacksonConfig;
+import dev.gabriel.consumer_worker.config.RateLimitProperties;
+import dev.gabriel.consumer_worker.config.RetryProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.service.ClientRateLimiter;
+import dev.gabriel.consumer_worker.service.DeliveryDeduplicator;
+import dev.gabriel.consumer_worker.service.DeliveryMetrics;
+import dev.gabriel.consumer_worker.service.DeliveryRetryService;
+import dev.gabriel.consumer_worker.service.DestinationCache;
+import dev.gabriel.consumer_worker.service.DestinationGuardRegistry;
+import dev.gabriel.consumer_worker.service.HttpDeliveryEngine;
+import dev.gabriel.consumer_worker.service.RetryTopics;
+import dev.gabriel.consumer_worker.service.TenantTiers;
+import dev.gabriel.consumer_worker.service.WebhookDeliveryService;
+import dev.gabriel.consumer_worker.service.WebhookLogService;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * end-to-end {@link WebhookDeliveryService#deliverWebhook} (guards, http post, log row)
+ * against an in-process stub receiver answering 200, one event per request or batched.
+ * <p>
+ * the service is wired by hand with the default settings of application.yml. log rows are
+ * discarded and the retry path is never taken, so neither postgres nor kafka is needed.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeliveryBenchmark {
+
+    private static final int PIPELINE_DEPTH = 64;
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"256", "4096", "65536"})
+    public int payloadSize;
+
+    @Param({"false", "true"})
+    public boolean opaque;
+
+    private HttpServer receiver;
+    private ExecutorService receiverExecutor;
+    private WebhookDeliveryService deliveryService;
+    private WebhookEvent event;
+    private List<WebhookEvent> batch;
+
+    @Setup
+    public void setup() throws Exception {
+        receiverExecutor = Executors.newFixedThreadPool(PIPELINE_DEPTH);
+        receiver = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        receiver.createContext("/hooks", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        receiver.setExecutor(receiverExecutor);
+        receiver.start();
+
+        JsonUtil jsonUtil = new JsonUtil(new JacksonConfig().objectMapper());
+        WebhookLogService logService = new WebhookLogService(new DiscardingLogWriter(), jsonUtil);
+        DestinationCache destinations = new DestinationCache(new DestinationProperties());
+        deliveryService = new WebhookDeliveryService(
+                new HttpDeliveryEngine(new HttpDeliveryProperties(), new TenantTiers(new FairnessProperties())),
+                new DestinationGuardRegistry(new IsolationProperties(), destinations),
+                logService,
+                jsonUtil,
+                new DeliveryRetryService(null, new RetryTopics(new RetryProperties()), logService),
+                new ClientRateLimiter(new RateLimitProperties()),
+                new DeliveryMetrics(new SimpleMeterRegistry()),
+                new DeliveryDeduplicator(null, noDedup(), new SimpleMeterRegistry()),
+                destinations);
+
+        event = new WebhookEvent();
+        event.setEventId(UUID.randomUUID().toString());
+        event.setClientId("client-1");
+        event.setTargetUrl("http://127.0.0.1:" + receiver.getAddress().getPort() + "/hooks");
+        if (opaque) {
+            event.setRawPayload(jsonUtil.toJsonBytes(Payloads.ofSize(payloadSize)));
+        } else {
+            event.setPayload(Payloads.ofSize(payloadSize));
+        }
+        batch = Collections.nCopies(BATCH_SIZE, event);
+    }
+
+    /**
+     * the same event is delivered on every invocation, it must not be skipped as a duplicate.
+     */
+    private static DedupProperties noDedup() {
+        DedupProperties properties = new DedupProperties();
+        properties.setEnabled(false);
+        properties.setExpectedEvents(1_000);
+        return properties;
+    }
+
+    @TearDown
+    public void tearDown() {
+        receiver.stop(0);
+        receiverExecutor.shutdownNow();
+    }
+
+    /**
+     * latency of a single delivery.
+     */
+    @Benchmark
+    public void deliverOne() {
+        deliveryService.deliverWebhook(event).join();
+    }
+
+    /**
+     * deliveries kept in flight together, like the dispatcher does for different clients.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public void deliverPipelined() {
+        CompletableFuture<?>[] deliveries = new CompletableFuture<?>[PIPELINE_DEPTH];
+        for (int i = 0; i < PIPELINE_DEPTH; i++) {
+            deliveries[i] = deliveryService.deliverWebhook(event);
+        }
+        CompletableFuture.allOf(deliveries).join();
+    }
+
+    /**
+     * the same events posted as a single json array, like a batched destination receives them.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void deliverBatched() {
+        deliveryService.deliverBatch(batch).join();
+    }
+}
@@ -0,0 +1,25 @@
+package dev.gabriel.benchmarks;
+
+import dev.gabriel.consumer_worker.config.LogWriterProperties;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import dev.gabriel.consumer_worker.service.DeliveryLogWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * log writer that drops the rows, so only building them is measured.
+ * the flusher thread is never started and no database is needed.
+ */
+final class DiscardingLogWriter extends DeliveryLogWriter {
+
+    private volatile WebhookDeliveryLog last;
+
+    DiscardingLogWriter() {
+        super(null, null, new LogWriterProperties(), new SimpleMeterRegistry());
+    }
+
+    @Override
+    public void append(WebhookDeliveryLog entry) {
+        // volatile write, keeps the row from being optimized away
+        last = entry;
+    }
+}
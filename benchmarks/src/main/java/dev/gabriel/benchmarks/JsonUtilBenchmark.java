@@ -0,0 +1,59 @@
+package dev.gabriel.benchmarks;
+
+import dev.gabriel.consumer_worker.config.JacksonConfig;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * payload conversions of {@link JsonUtil}, with the worker's object mapper.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonUtilBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    public int payloadSize;
+
+    private JsonUtil jsonUtil;
+    private Map<String, Object> payload;
+    private String json;
+
+    @Setup
+    public void setup() {
+        jsonUtil = new JsonUtil(new JacksonConfig().objectMapper());
+        payload = Payloads.ofSize(payloadSize);
+        json = jsonUtil.toJson(payload);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return jsonUtil.toJson(payload);
+    }
+
+    @Benchmark
+    public byte[] toJsonBytes() {
+        return jsonUtil.toJsonBytes(payload);
+    }
+
+    @Benchmark
+    public Map<?, ?> fromJson() {
+        return jsonUtil.fromJson(json, Map.class);
+    }
+}
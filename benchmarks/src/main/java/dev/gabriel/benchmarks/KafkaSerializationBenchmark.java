@@ -0,0 +1,142 @@
+package dev.gabriel.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.consumer_worker.serialization.WebhookEventDeserializer;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import dev.gabriel.producer_api.serialization.WebhookEventSerializer;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * kafka record value (de)serialization of a webhook event, producer and worker side.
+ * <p>
+ * the worker deserializer is configured exactly like in consumer-worker's application.yml:
+ * {@link ErrorHandlingDeserializer} delegating to {@link WebhookEventDeserializer}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KafkaSerializationBenchmark {
+
+    private static final String TOPIC = "webhook.deliveries";
+
+    @Param({"256", "4096", "65536"})
+    public int payloadSize;
+
+    private WebhookEvent event;
+    private JacksonJsonSerializer<WebhookEvent> jsonSerializer;
+    private WebhookEventSerializer embeddedSerializer;
+    private WebhookEventSerializer opaqueSerializer;
+    private WebhookEventSerializer binarySerializer;
+    private ErrorHandlingDeserializer<Object> deserializer;
+
+    private byte[] embeddedValue;
+    private Headers embeddedHeaders;
+    private byte[] opaqueValue;
+    private Headers opaqueHeaders;
+    private byte[] binaryValue;
+    private Headers binaryHeaders;
+
+    @Setup
+    public void setup() {
+        event = new WebhookEvent(UUID.randomUUID().toString(), "client-1",
+                "https://receiver.example.com/hooks", Payloads.ofSize(payloadSize));
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        jsonSerializer = new JacksonJsonSerializer<>();
+        embeddedSerializer = new WebhookEventSerializer(objectMapper, ProducerProperties.PayloadFormat.EMBEDDED);
+        opaqueSerializer = new WebhookEventSerializer(objectMapper, ProducerProperties.PayloadFormat.OPAQUE);
+        binarySerializer = new WebhookEventSerializer(objectMapper, ProducerProperties.PayloadFormat.BINARY);
+
+        deserializer = new ErrorHandlingDeserializer<>();
+        deserializer.configure(Map.of(
+                ErrorHandlingDeserializer.VALUE_DESERIALIZER_CLASS, WebhookEventDeserializer.class,
+                JacksonJsonDeserializer.TRUSTED_PACKAGES, "*",
+                // keep the type header, the same headers are deserialized on every invocation
+                JacksonJsonDeserializer.REMOVE_TYPE_INFO_HEADERS, false,
+                JacksonJsonDeserializer.TYPE_MAPPINGS,
+                "dev.gabriel.producer_api.model.WebhookEvent:dev.gabriel.consumer_worker.model.WebhookEvent"), false);
+
+        embeddedHeaders = new RecordHeaders();
+        embeddedValue = embeddedSerializer.serialize(TOPIC, embeddedHeaders, event);
+        opaqueHeaders = new RecordHeaders();
+        opaqueValue = opaqueSerializer.serialize(TOPIC, opaqueHeaders, event);
+        binaryHeaders = producerHeaders();
+        binaryValue = binarySerializer.serialize(TOPIC, binaryHeaders, event);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deserializer.close();
+    }
+
+    @Benchmark
+    public byte[] serializeJson() {
+        return jsonSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public byte[] serializeEmbedded() {
+        return embeddedSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    @Benchmark
+    public byte[] serializeOpaque() {
+        return opaqueSerializer.serialize(TOPIC, new RecordHeaders(), event);
+    }
+
+    /**
+     * the trace id and ingest time headers of the producer service are moved into the envelope.
+     */
+    @Benchmark
+    public byte[] serializeBinary() {
+        return binarySerializer.serialize(TOPIC, producerHeaders(), event);
+    }
+
+    @Benchmark
+    public Object deserializeEmbedded() {
+        return deserializer.deserialize(TOPIC, embeddedHeaders, embeddedValue);
+    }
+
+    @Benchmark
+    public Object deserializeOpaque() {
+        return deserializer.deserialize(TOPIC, opaqueHeaders, opaqueValue);
+    }
+
+    @Benchmark
+    public Object deserializeBinary() {
+        return deserializer.deserialize(TOPIC, binaryHeaders, binaryValue);
+    }
+
+    private static Headers producerHeaders() {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(WebhookEventSerializer.INGEST_TIMESTAMP_HEADER, "1767225600000".getBytes(StandardCharsets.UTF_8));
+        headers.add(WebhookEventSerializer.TRACE_ID_HEADER, "4bf92f3577b34da6a3ce929d0e0e4736".getBytes(StandardCharsets.UTF_8));
+        return headers;
+    }
+}
@@ -0,0 +1,68 @@
+package dev.gabriel.benchmarks;
+
+import dev.gabriel.consumer_worker.config.JacksonConfig;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.service.WebhookLogService;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * building the delivery log row in {@link WebhookLogService#saveLog}, for an event read in
+ * the embedded format (payload map) and in the opaque format (raw payload bytes).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogEntryBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    public int payloadSize;
+
+    private WebhookLogService logService;
+    private WebhookEvent embeddedEvent;
+    private WebhookEvent opaqueEvent;
+
+    @Setup
+    public void setup() {
+        JsonUtil jsonUtil = new JsonUtil(new JacksonConfig().objectMapper());
+        logService = new WebhookLogService(new DiscardingLogWriter(), jsonUtil);
+
+        embeddedEvent = new WebhookEvent();
+        embeddedEvent.setEventId(UUID.randomUUID().toString());
+        embeddedEvent.setClientId("client-1");
+        embeddedEvent.setTargetUrl("https://receiver.example.com/hooks");
+        embeddedEvent.setPayload(Payloads.ofSize(payloadSize));
+
+        opaqueEvent = new WebhookEvent();
+        opaqueEvent.setEventId(embeddedEvent.getEventId());
+        opaqueEvent.setClientId(embeddedEvent.getClientId());
+        opaqueEvent.setTargetUrl(embeddedEvent.getTargetUrl());
+        opaqueEvent.setRawPayload(jsonUtil.toJsonBytes(embeddedEvent.getPayload()));
+    }
+
+    @Benchmark
+    public void saveLogEmbedded() {
+        logService.saveLog(embeddedEvent, 200, true, null);
+    }
+
+    @Benchmark
+    public void saveLogOpaque() {
+        logService.saveLog(opaqueEvent, 200, true, null);
+    }
+}
@@ -0,0 +1,59 @@
+package dev.gabriel.benchmarks;
+
+import dev.gabriel.consumer_worker.config.JacksonConfig;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import dev.gabriel.consumer_worker.util.PayloadCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * storing a payload in the delivery log: hashing and compressing it on the log writer thread,
+ * and decompressing it when it is read back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadCodecBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    public int payloadSize;
+
+    private byte[] payload;
+    private PayloadCodec.Encoded encoded;
+
+    @Setup
+    public void setup() {
+        JsonUtil jsonUtil = new JsonUtil(new JacksonConfig().objectMapper());
+        payload = jsonUtil.toJsonBytes(Payloads.ofSize(payloadSize));
+        encoded = PayloadCodec.encode(payload, 128);
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return PayloadCodec.hash(payload);
+    }
+
+    @Benchmark
+    public PayloadCodec.Encoded encode() {
+        return PayloadCodec.encode(payload, 128);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return PayloadCodec.decode(encoded.codec(), encoded.originalSize(), encoded.data());
+    }
+}
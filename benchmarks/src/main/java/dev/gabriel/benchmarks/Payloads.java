@@ -0,0 +1,36 @@
+package dev.gabriel.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * webhook payloads of a given approximate json size.
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * builds a payload mixing strings, numbers, a nested object and a list, like a typical
+     * order or notification event.
+     *
+     * @param approximateBytes target size of the serialized payload.
+     * @return a payload map whose json is roughly that size.
+     */
+    static Map<String, Object> ofSize(int approximateBytes) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("type", "order.created");
+        payload.put("amount", 1234.56);
+        payload.put("customer", Map.of("id", "cus_42", "email", "customer@example.com"));
+        payload.put("tags", List.of("priority", "express"));
+
+        // each item serializes to ~80 bytes
+        int items = Math.max(0, (approximateBytes - 150) / 80);
+        for (int i = 0; i < items; i++) {
+            payload.put("item_" + i, "sku-" + i + "-" + "x".repeat(56));
+        }
+        return payload;
+    }
+}
@@ -1,13 +1,21 @@
 package dev.gabriel.consumer_worker;
 
+import dev.gabriel.consumer_worker.config.HttpClientKeepAlive;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@EnableScheduling
 public class ConsumerWorkerApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(ConsumerWorkerApplication.class, args);
+		SpringApplication application = new SpringApplication(ConsumerWorkerApplication.class);
+		// before any bean: the jdk http client reads its keep-alive once, on its first use
+		application.addListeners(new HttpClientKeepAlive());
+		application.run(args);
 	}
 
 }
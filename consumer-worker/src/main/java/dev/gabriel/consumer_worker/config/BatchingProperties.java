@@ -0,0 +1,34 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * opt-in batched deliveries, per target url.
+ * <p>
+ * events of the same client to a listed url are coalesced and posted as a json array.
+ * bound to the {@code webhook.delivery.batching} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.delivery.batching")
+public class BatchingProperties {
+
+    /** batching limits by target url. urls not listed get one request per event. */
+    private Map<String, Limits> destinations = new HashMap<>();
+
+    @Data
+    public static class Limits {
+        /** max events per request. */
+        private int maxEvents = 100;
+        /** max body size of a request; a single larger event is still sent, alone. */
+        private DataSize maxBytes = DataSize.ofMegabytes(1);
+        /** max time the first event of a batch waits for more events. */
+        private Duration maxDelay = Duration.ofMillis(50);
+    }
+}
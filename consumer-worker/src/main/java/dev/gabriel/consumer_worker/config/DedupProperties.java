@@ -0,0 +1,40 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * settings of the eventId deduplication of deliveries.
+ * <p>
+ * bound to the {@code webhook.dedup} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.dedup")
+public class DedupProperties {
+
+    private boolean enabled = true;
+
+    /** how long a delivered eventId is remembered. */
+    private Duration ttl = Duration.ofHours(24);
+
+    /** max eventIds kept in the exact in-memory cache. older ones are still covered by the filter. */
+    private long cacheMaxSize = 500_000;
+
+    /** eventIds delivered per ttl period, used to size the bloom filter. */
+    private long expectedEvents = 10_000_000;
+
+    /** false positive rate of the bloom filter at the expected load. a false positive costs one query. */
+    private double falsePositiveRate = 0.01;
+
+    /** how often eventIds delivered by the other workers are read back from the delivery log. */
+    private Duration syncInterval = Duration.ofSeconds(5);
+
+    /** rows may be written this long after their attempt time (write-behind), each sync re-reads this window. */
+    private Duration syncOverlap = Duration.ofSeconds(30);
+
+    /** history loaded on startup. */
+    private Duration warmupWindow = Duration.ofMinutes(15);
+}
@@ -0,0 +1,44 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * settings of the cache of parsed target urls, resolved hosts and per-host stats.
+ * <p>
+ * bound to the {@code webhook.delivery.destinations} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.delivery.destinations")
+public class DestinationProperties {
+
+    /** max target urls kept parsed. past it, the least used ones are evicted. */
+    private long maxUrls = 100_000;
+
+    /** max hosts tracked (addresses and stats). past it, the least used ones are evicted. */
+    private long maxHosts = 10_000;
+
+    /** hosts without deliveries for this long are dropped, with their stats. */
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    /** addresses of a host are resolved again in the background once older than this. */
+    private Duration dnsTtl = Duration.ofSeconds(30);
+
+    private Prewarm prewarm = new Prewarm();
+
+    @Data
+    public static class Prewarm {
+        /**
+         * open connections to the busiest hosts when partitions are assigned, with HEAD requests
+         * to their target urls. off by default, receivers see those requests.
+         */
+        private boolean enabled = false;
+        /** hosts with the most deliveries warmed on each assignment. */
+        private int topHosts = 20;
+        /** connections opened to each of them, capped by {@code max-connections-per-host}. */
+        private int connectionsPerHost = 2;
+    }
+}
@@ -0,0 +1,58 @@
+package dev.gabriel.consumer_worker.config;
+
+import dev.gabriel.consumer_worker.service.DestinationPrewarmer;
+import dev.gabriel.consumer_worker.service.HotClientLanes;
+import dev.gabriel.consumer_worker.service.KeyOrderedDispatcher;
+import dev.gabriel.consumer_worker.service.TenantTiers;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+/**
+ * dispatch stages of the worker, one per listener.
+ */
+@Configuration
+public class DispatchConfig {
+
+    /**
+     * dispatcher of first delivery attempts, fed by the 'webhook.deliveries' listener.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    public KeyOrderedDispatcher deliveryDispatcher(DispatchProperties properties, TenantTiers tiers, MeterRegistry meterRegistry) {
+        return new KeyOrderedDispatcher("webhook-dispatch", properties, tiers, meterRegistry);
+    }
+
+    /**
+     * dispatcher of retries, with its own pool and in-flight budget.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public KeyOrderedDispatcher retryDispatcher(RetryProperties properties, TenantTiers tiers, MeterRegistry meterRegistry) {
+        return new KeyOrderedDispatcher("webhook-retry", properties.getDispatch(), tiers, meterRegistry);
+    }
+
+    /**
+     * dispatcher of the hot lane, with its own pool and in-flight budget.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public KeyOrderedDispatcher laneDispatcher(LaneProperties properties, TenantTiers tiers, MeterRegistry meterRegistry) {
+        return new KeyOrderedDispatcher("webhook-lane", properties.getDispatch(), tiers, meterRegistry);
+    }
+
+    /**
+     * picked up by spring boot for the default listener container factory, so the
+     * first-attempt dispatcher drains and commits revoked partitions, with the hot clients
+     * of each partition in the commit metadata. assignments open connections to the busiest
+     * destinations.
+     */
+    @Bean
+    public ConsumerAwareRebalanceListener deliveryRebalanceListener(
+            @Qualifier("deliveryDispatcher") KeyOrderedDispatcher dispatcher, HotClientLanes lanes,
+            DestinationPrewarmer prewarmer) {
+        dispatcher.setCommitMetadata(lanes::commitMetadata);
+        return prewarmer.rebalanceListener(lanes.rebalanceListener(dispatcher.rebalanceListener()));
+    }
+}
@@ -0,0 +1,45 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * tuning knobs for the in-worker dispatch stage.
+ * <p>
+ * bound to the {@code webhook.dispatch} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.dispatch")
+public class DispatchProperties {
+
+    /**
+     * number of worker threads starting deliveries (serialization, logging). http calls are
+     * asynchronous, so the number of requests in flight is bounded by {@code maxInFlight} instead.
+     */
+    private int maxConcurrency = 64;
+
+    /**
+     * max number of records handed over by kafka that are not fully processed yet.
+     * once reached, the listener thread waits before accepting more records.
+     */
+    private int maxInFlight = 2000;
+
+    /**
+     * max records of a single key queued behind the one running. past it, the listener pauses
+     * the partition at the next record of the key instead of blocking on the in-flight budget,
+     * so a client flooding its lane can't take all of it. 0 for no cap.
+     */
+    private int maxPendingPerKey = 500;
+
+    /** how long a revoked partition waits for its in-flight deliveries before committing. */
+    private Duration drainTimeout = Duration.ofSeconds(30);
+
+    /**
+     * how long a partition waits before processing its records again, after one of them failed
+     * and the partition was rewound to it.
+     */
+    private Duration retryBackoff = Duration.ofSeconds(1);
+}
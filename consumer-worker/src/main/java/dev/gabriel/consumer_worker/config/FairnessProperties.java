@@ -0,0 +1,39 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * tenant tiers sharing the dispatch pool and the per-host request slots of the worker.
+ * <p>
+ * bound to the {@code webhook.fairness} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.fairness")
+public class FairnessProperties {
+
+    /** whether waiting deliveries are served by tier weight; when off, everything is served in arrival order. */
+    private boolean enabled = true;
+
+    /** weight of every tier: a tier of weight 8 gets 8 turns for every turn of a tier of weight 1 when both wait. */
+    private Map<String, Integer> tiers = defaultTiers();
+
+    /** tier of the clients not listed in {@link #clients}. */
+    private String defaultTier = "standard";
+
+    /** tier by client id. */
+    private Map<String, String> clients = new HashMap<>();
+
+    private static Map<String, Integer> defaultTiers() {
+        Map<String, Integer> tiers = new LinkedHashMap<>();
+        tiers.put("realtime", 8);
+        tiers.put("standard", 4);
+        tiers.put("bulk", 1);
+        return tiers;
+    }
+}
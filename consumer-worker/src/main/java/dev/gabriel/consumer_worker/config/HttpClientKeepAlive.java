@@ -0,0 +1,51 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationListener;
+
+import java.time.Duration;
+
+/**
+ * applies {@code webhook.delivery.http.keep-alive} to the jdk http client.
+ * <p>
+ * the keep-alive of idle pooled connections is not a setting of a client: the jdk reads it from
+ * the {@code jdk.httpclient.keepalive.timeout} system property once per jvm, when the first
+ * {@link java.net.http.HttpClient} is created. it is set here as soon as the configuration is
+ * read, before any bean exists, so before any client of the application (the delivery engine's
+ * or a library's) is created. a value given at launch ({@code -Djdk.httpclient.keepalive.timeout})
+ * wins over the configured one.
+ * </p>
+ * <p>
+ * registered in {@code ConsumerWorkerApplication#main}.
+ * </p>
+ */
+@Slf4j
+public class HttpClientKeepAlive implements ApplicationListener<ApplicationEnvironmentPreparedEvent> {
+
+    public static final String PROPERTY = "jdk.httpclient.keepalive.timeout";
+
+    @Override
+    public void onApplicationEvent(ApplicationEnvironmentPreparedEvent event) {
+        Duration keepAlive = Binder.get(event.getEnvironment())
+                .bind("webhook.delivery.http", HttpDeliveryProperties.class)
+                .orElseGet(HttpDeliveryProperties::new)
+                .getKeepAlive();
+        apply(keepAlive);
+    }
+
+    /**
+     * sets the system property, unless it was given at launch.
+     */
+    static void apply(Duration keepAlive) {
+        String configured = String.valueOf(keepAlive.toSeconds());
+        String launch = System.getProperty(PROPERTY);
+        if (launch == null) {
+            System.setProperty(PROPERTY, configured);
+        } else if (!launch.equals(configured)) {
+            log.warn("-D{}={} given at launch, the keep-alive of {}s configured is not applied",
+                    PROPERTY, launch, configured);
+        }
+    }
+}
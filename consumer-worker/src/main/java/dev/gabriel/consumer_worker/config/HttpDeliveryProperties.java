@@ -0,0 +1,63 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * settings of the http client used to post webhooks.
+ * <p>
+ * bound to the {@code webhook.delivery.http} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.delivery.http")
+public class HttpDeliveryProperties {
+
+    /** negotiate http/2 (one multiplexed connection per host) when the receiver supports it. */
+    private boolean http2Enabled = false;
+
+    /** max time to establish the tcp (and tls) connection. */
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    /** max time between sending the request and receiving the response headers. */
+    private Duration readTimeout = Duration.ofSeconds(10);
+
+    /** hard deadline for the whole exchange, including waiting for a free connection slot. */
+    private Duration totalTimeout = Duration.ofSeconds(15);
+
+    /** max concurrent requests (and so http/1.1 connections) per target host, upper bound of the adaptive limit. */
+    private int maxConnectionsPerHost = 50;
+
+    /** how long an idle pooled connection is kept open for reuse. */
+    private Duration keepAlive = Duration.ofSeconds(30);
+
+    /** the concurrency limit and queue of a host without requests for this long are dropped. */
+    private Duration hostIdleTimeout = Duration.ofMinutes(10);
+
+    private AdaptiveConcurrency adaptiveConcurrency = new AdaptiveConcurrency();
+
+    /**
+     * aimd limit of concurrent requests per host: +1 per round of successful responses,
+     * multiplied by the backoff ratio on overload (429, 503, timeout or latency far above the baseline).
+     */
+    @Data
+    public static class AdaptiveConcurrency {
+        /** when disabled, every host gets {@code maxConnectionsPerHost} slots right away. */
+        private boolean enabled = true;
+        /** slots of a host seen for the first time. */
+        private int initialLimit = 10;
+        /** the limit never goes below this, so a host under pressure still makes progress. */
+        private int minLimit = 1;
+        /** factor applied to the limit on every overload signal. */
+        private double backoffRatio = 0.9;
+        /**
+         * a response slower than the median latency of the host times this (plus the floor) counts
+         * as overload. 0 disables latency signals, only rejections and timeouts reduce the limit.
+         */
+        private double latencyTolerance = 0;
+        /** added to the tolerated latency, so the jitter of fast receivers never counts as overload. */
+        private Duration latencyFloor = Duration.ofMillis(100);
+    }
+}
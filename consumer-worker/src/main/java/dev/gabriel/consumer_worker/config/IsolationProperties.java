@@ -0,0 +1,79 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * template for the circuit breaker and bulkhead created for every destination.
+ * <p>
+ * bound to the {@code webhook.delivery.isolation} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.delivery.isolation")
+public class IsolationProperties {
+
+    /** what a breaker/bulkhead pair protects: a target host, or a client. */
+    private Key key = Key.HOST;
+
+    /**
+     * max number of destinations tracked at once, enforced by the sweep: least recently used ones
+     * are evicted first, destinations in use are kept past it.
+     */
+    private int maxDestinations = 50_000;
+
+    /** destinations without deliveries for this long are dropped from the registry. */
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    /** how often idle destinations, and the ones past {@code maxDestinations}, are swept. */
+    private Duration sweepInterval = Duration.ofSeconds(60);
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private Bulkhead bulkhead = new Bulkhead();
+
+    private PauseOnOpen pauseOnOpen = new PauseOnOpen();
+
+    public enum Key {
+        HOST, CLIENT
+    }
+
+    @Data
+    public static class CircuitBreaker {
+        /** number of calls considered to compute the failure rate. */
+        private int slidingWindowSize = 10;
+        /** calls needed before the failure rate is evaluated. */
+        private int minimumNumberOfCalls = 5;
+        /** calls allowed in half-open to test if the destination is back. */
+        private int permittedNumberOfCallsInHalfOpenState = 3;
+        /** move from open to half-open on a timer instead of waiting for the next call. */
+        private boolean automaticTransitionFromOpenToHalfOpenEnabled = true;
+        /** time spent in open before going to half-open. */
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+        /** failure percentage that opens the circuit. */
+        private float failureRateThreshold = 50;
+    }
+
+    @Data
+    public static class PauseOnOpen {
+        /** rewind and pause the partition of an event whose breaker is open, instead of sending the event to the fallback. */
+        private boolean enabled = true;
+        /**
+         * a destination failing for longer than this within the budget window stops pausing
+         * partitions, its events go to the retry tiers.
+         */
+        private Duration maxPause = Duration.ofMinutes(2);
+        /** period over which the failing time of a destination is added up, closed periods in between or not. */
+        private Duration budgetWindow = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Bulkhead {
+        /** max deliveries in flight for a single destination, extra ones wait for a free one. */
+        private int maxConcurrentCalls = 100;
+        /** how long a delivery waits for a free call of its destination before it goes to the fallback. */
+        private Duration maxWait = Duration.ofSeconds(30);
+    }
+}
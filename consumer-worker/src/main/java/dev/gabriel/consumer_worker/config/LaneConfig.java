@@ -0,0 +1,53 @@
+package dev.gabriel.consumer_worker.config;
+
+import dev.gabriel.consumer_worker.service.DestinationPrewarmer;
+import dev.gabriel.consumer_worker.service.KeyOrderedDispatcher;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.kafka.autoconfigure.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+
+/**
+ * kafka infrastructure of the hot-client lane.
+ */
+@Configuration
+public class LaneConfig {
+
+    /**
+     * creates the hot lane topic if it does not exist.
+     */
+    @Bean
+    public KafkaAdmin.NewTopics laneTopicDefinitions(LaneProperties properties) {
+        if (!properties.isEnabled()) return new KafkaAdmin.NewTopics();
+        NewTopic topic = TopicBuilder.name(properties.getTopic())
+                .partitions(properties.getPartitions())
+                .replicas(1) // local -> single node
+                .build();
+        return new KafkaAdmin.NewTopics(topic);
+    }
+
+    /**
+     * same settings as the default factory (batch listener, manual commits), with the lane
+     * concurrency, and revoked partitions drained by the lane dispatcher. assignments open
+     * connections to the busiest destinations.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> laneListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            LaneProperties properties,
+            @Qualifier("laneDispatcher") KeyOrderedDispatcher laneDispatcher,
+            DestinationPrewarmer prewarmer) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setConcurrency(properties.getConcurrency());
+        factory.setAutoStartup(properties.isEnabled());
+        factory.getContainerProperties().setConsumerRebalanceListener(prewarmer.rebalanceListener(laneDispatcher.rebalanceListener()));
+        return factory;
+    }
+}
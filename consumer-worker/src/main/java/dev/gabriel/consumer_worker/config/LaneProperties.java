@@ -0,0 +1,63 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * settings of the hot-client lane: clients sending more than a partition can share are moved
+ * to a topic of their own.
+ * <p>
+ * bound to the {@code webhook.lanes} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.lanes")
+public class LaneProperties {
+
+    /** whether heavy clients are detected and moved to the hot lane. */
+    private boolean enabled = true;
+
+    /** topic of the hot lane (created on startup if missing). */
+    private String topic = "webhook.deliveries.hot";
+
+    /** partitions of the hot lane topic. */
+    private int partitions = 3;
+
+    /** consumers of the hot lane in this instance (listener container concurrency). */
+    private int concurrency = 3;
+
+    /** events per second above which a client is moved to the hot lane. */
+    private double enterRate = 200;
+
+    /** events per second below which a hot client is moved back, lower than enterRate so it doesn't flap. */
+    private double exitRate = 100;
+
+    /** max clients in the hot lane at once, the heaviest ones. */
+    private int maxHotClients = 16;
+
+    /** period over which the client rates are measured (estimates cover one to two periods). */
+    private Duration window = Duration.ofSeconds(10);
+
+    /** counters per row of the count-min sketch, the rate error is about 2.7 / width of the total. */
+    private int sketchWidth = 2048;
+
+    /** rows of the count-min sketch. */
+    private int sketchDepth = 4;
+
+    /** how often the committed offsets of the hot lane are read, to move cooled down clients back. */
+    private Duration drainCheckInterval = Duration.ofSeconds(2);
+
+    /**
+     * dispatch settings of the hot lane listener, apart from the first-attempt dispatcher so a
+     * hot client never takes its threads or in-flight slots.
+     */
+    private DispatchProperties dispatch = defaultDispatch();
+
+    private static DispatchProperties defaultDispatch() {
+        DispatchProperties dispatch = new DispatchProperties();
+        dispatch.setMaxConcurrency(16);
+        return dispatch;
+    }
+}
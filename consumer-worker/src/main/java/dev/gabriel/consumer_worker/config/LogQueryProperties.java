@@ -0,0 +1,24 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * settings of the delivery log read api.
+ * <p>
+ * bound to the {@code webhook.log-query} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.log-query")
+public class LogQueryProperties {
+
+    /** rows per page when the request doesn't ask for a size. */
+    private int defaultPageSize = 100;
+
+    /** upper bound of the rows per page, larger requests are capped. */
+    private int maxPageSize = 1_000;
+
+    /** rows fetched from the database cursor at a time during an export, bounds its memory. */
+    private int exportFetchSize = 1_000;
+}
@@ -0,0 +1,39 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * lifecycle of the daily partitions of the delivery log.
+ * <p>
+ * bound to the {@code webhook.log-retention} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.log-retention")
+public class LogRetentionProperties {
+
+    /** partitions whose whole day is older than this are expired. */
+    private Duration retention = Duration.ofDays(30);
+
+    /** days of partitions created ahead, so inserts never miss their partition. */
+    private int premakeDays = 7;
+
+    /** what happens to an expired partition. */
+    private ExpiredAction expiredAction = ExpiredAction.DROP;
+
+    /** schema expired partitions are moved to when archiving. */
+    private String archiveSchema = "webhook_archive";
+
+    /** how often partitions are created and expired. */
+    private Duration maintenanceInterval = Duration.ofHours(1);
+
+    public enum ExpiredAction {
+        /** detach and drop the partition, its rows are gone. */
+        DROP,
+        /** detach the partition and move it to the archive schema, e.g. to be dumped to cold storage. */
+        ARCHIVE
+    }
+}
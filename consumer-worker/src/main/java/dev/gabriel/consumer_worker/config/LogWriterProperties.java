@@ -0,0 +1,41 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * settings of the write-behind delivery log sink.
+ * <p>
+ * bound to the {@code webhook.log-writer} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.log-writer")
+public class LogWriterProperties {
+
+    /** max rows waiting to be written. when full, delivery threads block until postgres catches up. */
+    private int queueCapacity = 10_000;
+
+    /** max rows sent in a single jdbc batch. */
+    private int batchSize = 500;
+
+    /** max time a row waits in the queue before its batch is flushed. */
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    /**
+     * attempts of a batch failing with a transient error before its rows are dead-lettered
+     * (logged at error level). with the default backoff, a little over a minute of outage.
+     */
+    private int maxWriteAttempts = 20;
+
+    /** upper bound of the pause between retries of a failed batch. */
+    private Duration maxRetryBackoff = Duration.ofSeconds(5);
+
+    /** payload hashes remembered as written, a retry of a remembered payload doesn't send it again. */
+    private long payloadCacheSize = 100_000;
+
+    /** payloads smaller than this are stored uncompressed. */
+    private int compressionMinBytes = 128;
+}
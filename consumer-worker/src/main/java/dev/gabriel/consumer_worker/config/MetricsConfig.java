@@ -0,0 +1,23 @@
+package dev.gabriel.consumer_worker.config;
+
+import dev.gabriel.consumer_worker.service.DeliveryMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * registry-wide rules for the delivery metrics.
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * caps the cardinality of the per-host latency histogram, since destinations are
+     * user-provided and can be counted in tens of thousands.
+     */
+    @Bean
+    public MeterFilter deliveryHostTagLimit(MetricsProperties properties) {
+        return MeterFilter.maximumAllowableTags(DeliveryMetrics.DELIVERY_LATENCY, "host",
+                properties.getMaxHostTags(), MeterFilter.deny());
+    }
+}
@@ -0,0 +1,21 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * settings of the delivery metrics.
+ * <p>
+ * bound to the {@code webhook.metrics} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.metrics")
+public class MetricsProperties {
+
+    /**
+     * max distinct {@code host} tags of the delivery latency histogram. hosts seen after the
+     * limit is reached are not recorded, keeping the number of time series bounded.
+     */
+    private int maxHostTags = 500;
+}
@@ -0,0 +1,36 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * optional delivery rate limits per client.
+ * <p>
+ * bound to the {@code webhook.delivery.rate-limit} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.delivery.rate-limit")
+public class RateLimitProperties {
+
+    /** limit of the clients not listed in {@link #clients}. a rate of 0 means unlimited. */
+    private Limit defaults = new Limit();
+
+    /** limits by client id. */
+    private Map<String, Limit> clients = new HashMap<>();
+
+    /** how often the buckets of clients without recent deliveries are dropped. */
+    private Duration sweepInterval = Duration.ofSeconds(60);
+
+    @Data
+    public static class Limit {
+        /** deliveries per second, 0 for unlimited. */
+        private double rate = 0;
+        /** deliveries allowed at once after an idle period. */
+        private int burst = 1;
+    }
+}
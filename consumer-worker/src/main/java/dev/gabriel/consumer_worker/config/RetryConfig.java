@@ -0,0 +1,66 @@
+package dev.gabriel.consumer_worker.config;
+
+import dev.gabriel.consumer_worker.service.KeyOrderedDispatcher;
+import dev.gabriel.consumer_worker.service.RetryTopics;
+import dev.gabriel.consumer_worker.util.HierarchicalTimingWheel;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.kafka.autoconfigure.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * kafka infrastructure of the delayed retry pipeline.
+ */
+@Configuration
+public class RetryConfig {
+
+    /**
+     * creates the retry tier topics and the dead-letter topic if they do not exist.
+     */
+    @Bean
+    public KafkaAdmin.NewTopics retryTopicDefinitions(RetryTopics retryTopics, RetryProperties properties) {
+        List<NewTopic> topics = new ArrayList<>();
+        retryTopics.tierTopicNames().forEach(name -> topics.add(topic(name, properties)));
+        topics.add(topic(retryTopics.deadLetterTopic(), properties));
+        return new KafkaAdmin.NewTopics(topics.toArray(NewTopic[]::new));
+    }
+
+    /**
+     * timer resuming retry partitions once their next record is due.
+     */
+    @Bean(destroyMethod = "close")
+    public HierarchicalTimingWheel retryTimer(RetryProperties properties) {
+        // resuming a partition only flags it on the container, running it inline is fine
+        return new HierarchicalTimingWheel(properties.getTimerTick().toMillis(), 64, Runnable::run);
+    }
+
+    /**
+     * same settings as the default factory (batch listener, manual commits), but revoked
+     * partitions are drained by the retry dispatcher.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> retryListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            @Qualifier("retryDispatcher") KeyOrderedDispatcher retryDispatcher) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.getContainerProperties().setConsumerRebalanceListener(retryDispatcher.rebalanceListener());
+        return factory;
+    }
+
+    private static NewTopic topic(String name, RetryProperties properties) {
+        return TopicBuilder.name(name)
+                .partitions(properties.getPartitions())
+                .replicas(1) // local -> single node
+                .build();
+    }
+}
@@ -0,0 +1,51 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * settings of the delayed retry pipeline.
+ * <p>
+ * bound to the {@code webhook.retry} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.retry")
+public class RetryProperties {
+
+    /**
+     * delay of every retry tier, one topic each. the n-th failure of an event goes to the
+     * n-th tier, after the last one the event goes to the dead-letter topic.
+     */
+    private List<Duration> tiers = new ArrayList<>(List.of(
+            Duration.ofSeconds(10), Duration.ofMinutes(1), Duration.ofMinutes(10), Duration.ofHours(1)));
+
+    /** tier topics are named {@code <prefix>.<delay>}, e.g. webhook.deliveries.retry.10s. */
+    private String topicPrefix = "webhook.deliveries.retry";
+
+    /** where events end up once every tier failed, or on a non-retryable error. */
+    private String deadLetterTopic = "webhook.deliveries.dlt";
+
+    /** partitions of the retry and dead-letter topics (created on startup if missing). */
+    private int partitions = 3;
+
+    /** precision of the timer releasing paused retry partitions. */
+    private Duration timerTick = Duration.ofMillis(100);
+
+    /**
+     * dispatch settings of the retry listener. kept apart from the first-attempt dispatcher
+     * so retries never take its threads or in-flight slots.
+     */
+    private DispatchProperties dispatch = defaultDispatch();
+
+    private static DispatchProperties defaultDispatch() {
+        DispatchProperties dispatch = new DispatchProperties();
+        dispatch.setMaxConcurrency(8);
+        dispatch.setMaxInFlight(500);
+        return dispatch;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.gabriel.consumer_worker.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * settings of the warmup of the delivery path, run on startup before the kafka listeners join
+ * their group.
+ * <p>
+ * bound to the {@code webhook.warmup} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.warmup")
+public class WarmupProperties {
+
+    private boolean enabled = true;
+
+    /** round trips through the kafka codecs and the http client. */
+    private int iterations = 200;
+
+    /** the warmup gives up after this long, startup goes on anyway. */
+    private Duration timeout = Duration.ofSeconds(5);
+}
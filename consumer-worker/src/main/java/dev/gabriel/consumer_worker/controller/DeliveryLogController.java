@@ -0,0 +1,122 @@
+package dev.gabriel.consumer_worker.controller;
+
+import dev.gabriel.consumer_worker.config.LogQueryProperties;
+import dev.gabriel.consumer_worker.model.DeliveryLogPage;
+import dev.gabriel.consumer_worker.model.DeliveryLogQuery;
+import dev.gabriel.consumer_worker.repository.DeliveryLogQueryRepository;
+import dev.gabriel.consumer_worker.service.DeliveryLogExporter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * read api over the delivery history, for support teams.
+ * <p>
+ * searches are paginated with an opaque cursor (see {@link DeliveryLogQueryRepository}), and
+ * large pulls go through the export endpoint, which streams ndjson or csv straight from a
+ * database cursor.
+ * </p>
+ */
+@RestController
+@RequestMapping("/delivery-logs")
+@RequiredArgsConstructor
+public class DeliveryLogController {
+
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+
+    private final DeliveryLogQueryRepository queryRepository;
+    private final DeliveryLogExporter exporter;
+    private final LogQueryProperties properties;
+
+    /**
+     * returns a page of delivery attempts matching the filters, newest first.
+     *
+     * @param cursor the {@code nextCursor} of the previous page, absent for the first one.
+     * @param limit  the page size, capped to {@code webhook.log-query.max-page-size}.
+     */
+    @GetMapping
+    public DeliveryLogPage search(@RequestParam(required = false) String eventId,
+                                  @RequestParam(required = false) String clientId,
+                                  @RequestParam(required = false) String targetUrl,
+                                  @RequestParam(required = false) Boolean success,
+                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                  @RequestParam(defaultValue = "false") boolean includePayload,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(required = false) Integer limit) {
+        DeliveryLogQuery query = query(eventId, clientId, targetUrl, success, from, to, includePayload);
+        return queryRepository.findPage(query, cursor, limit != null ? limit : properties.getDefaultPageSize());
+    }
+
+    /**
+     * streams every delivery attempt matching the filters, oldest first.
+     *
+     * @param format {@code ndjson} (one json object per line) or {@code csv}.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) String eventId,
+                                                        @RequestParam(required = false) String clientId,
+                                                        @RequestParam(required = false) String targetUrl,
+                                                        @RequestParam(required = false) Boolean success,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                        @RequestParam(defaultValue = "false") boolean includePayload,
+                                                        @RequestParam(defaultValue = "ndjson") String format) {
+        DeliveryLogQuery query = query(eventId, clientId, targetUrl, success, from, to, includePayload);
+
+        boolean csv = switch (format.toLowerCase()) {
+            case "csv" -> true;
+            case "ndjson" -> false;
+            default -> throw new IllegalArgumentException("Unsupported export format: " + format);
+        };
+
+        StreamingResponseBody body = csv
+                ? out -> exporter.writeCsv(query, out)
+                : out -> exporter.writeNdjson(query, out);
+        return ResponseEntity.ok()
+                .contentType(csv ? TEXT_CSV : MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"delivery-logs." + (csv ? "csv" : "ndjson") + "\"")
+                .body(body);
+    }
+
+    /**
+     * malformed cursor, unknown format or inverted time range.
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Object> handleInvalidQuery(IllegalArgumentException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of(
+                "error", "Invalid query",
+                "details", ex.getMessage(),
+                "timestamp", LocalDateTime.now()
+        ));
+    }
+
+    private static DeliveryLogQuery query(String eventId, String clientId, String targetUrl, Boolean success,
+                                          LocalDateTime from, LocalDateTime to, boolean includePayload) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        return DeliveryLogQuery.builder()
+                .eventId(eventId)
+                .clientId(clientId)
+                .targetUrl(targetUrl)
+                .success(success)
+                .from(from)
+                .to(to)
+                .includePayload(includePayload)
+                .build();
+    }
+}
@@ -0,0 +1,22 @@
+package dev.gabriel.consumer_worker.exception;
+
+import lombok.Getter;
+
+/**
+ * raised when the target url answers a delivery with a non-2xx status.
+ * <p>
+ * completing the delivery future with this exception lets the circuit breaker
+ * count the attempt as a failure.
+ * </p>
+ */
+@Getter
+public class WebhookDeliveryException extends RuntimeException {
+
+    /** the http status code returned by the destination. */
+    private final int status;
+
+    public WebhookDeliveryException(int status) {
+        super("HTTP " + status + " returned by destination");
+        this.status = status;
+    }
+}
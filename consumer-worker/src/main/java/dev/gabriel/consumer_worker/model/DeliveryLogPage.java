@@ -0,0 +1,23 @@
+package dev.gabriel.consumer_worker.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * a page of delivery log rows, newest first.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryLogPage {
+
+    private List<WebhookDeliveryLog> items;
+    /**
+     * opaque position after the last item, to be passed back to get the next page.
+     * null on the last page.
+     */
+    private String nextCursor;
+}
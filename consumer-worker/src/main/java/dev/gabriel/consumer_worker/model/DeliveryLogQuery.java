@@ -0,0 +1,35 @@
+package dev.gabriel.consumer_worker.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * filters of a delivery log search. null fields don't filter.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeliveryLogQuery {
+
+    private String eventId;
+    private String clientId;
+    private String targetUrl;
+    private Boolean success;
+    /**
+     * inclusive lower bound of the attempt time.
+     */
+    private LocalDateTime from;
+    /**
+     * exclusive upper bound of the attempt time.
+     */
+    private LocalDateTime to;
+    /**
+     * request payloads can be large, they are only read when asked for.
+     */
+    private boolean includePayload;
+}
@@ -1,5 +1,6 @@
 package dev.gabriel.consumer_worker.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -13,8 +14,15 @@ import java.time.LocalDateTime;
  * this entity is used for auditing, debugging, and tracking the history
  * of successful and failed deliveries.
  * </p>
+ * <p>
+ * the table is owned by the flyway migrations (db/migration): it is partitioned by day on
+ * {@code attemptTime} and indexed on {@code eventId}, on ({@code attemptTime}, {@code id}), and on
+ * {@code clientId} and {@code targetUrl} each followed by ({@code attemptTime}, {@code id}), for
+ * keyset pagination.
+ * </p>
  */
 @Entity
+@Table(name = "webhook_delivery_log")
 @Data
 @Builder
 @NoArgsConstructor
@@ -25,13 +33,28 @@ public class WebhookDeliveryLog {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String eventId;
+    private String clientId;
     private String targetUrl;
     /**
-     * the json payload sent in the request body.
-     * stored as text to accommodate large payloads.
+     * the json payload sent in the request body, as read back by queries: decoded from
+     * {@code webhook_payload}, or from this column for the rows written before it. new rows
+     * carry it in {@link #payload} instead.
      */
     @Column(columnDefinition = "TEXT")
     private String requestPayload;
+    /**
+     * the utf-8 json payload of a row being written, the exact bytes sent in the request body.
+     * stored once per content in {@code webhook_payload} (see {@code PayloadStore}) and referenced
+     * by {@link #payloadHash}.
+     */
+    @Transient
+    @JsonIgnore
+    private byte[] payload;
+    /**
+     * sha-256 of the request payload, key of its row in {@code webhook_payload}.
+     */
+    @JsonIgnore
+    private byte[] payloadHash;
     /**
      * the http status code returned by the destination (e.g., 200, 404, 500).
      * 0 indicates a connection failure or internal error.
@@ -1,5 +1,6 @@
 package dev.gabriel.consumer_worker.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -35,4 +36,27 @@ public class WebhookEvent implements Serializable {
     private String targetUrl;
 
     private Map<String, Object> payload;
+
+    /**
+     * payload bytes of records in the opaque format, exactly as published by the producer.
+     * when set, {@link #payload} is null and the bytes are posted and logged without being parsed.
+     */
+    @JsonIgnore
+    private byte[] rawPayload;
+
+    /** true when read in the binary format, retries are written back the same way. */
+    @JsonIgnore
+    private boolean binaryEnvelope;
+
+    /** trace id stamped by the producer, kept across retries. travels in kafka headers. */
+    @JsonIgnore
+    private String traceId;
+
+    /** epoch millis when the producer accepted the event, 0 if unknown. travels in kafka headers. */
+    @JsonIgnore
+    private long ingestedAt;
+
+    /** {@link System#nanoTime()} when the worker read the record, start of the delivery latency. */
+    @JsonIgnore
+    private long consumedAtNanos;
 }
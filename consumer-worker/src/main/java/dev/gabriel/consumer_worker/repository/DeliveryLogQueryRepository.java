@@ -0,0 +1,224 @@
+package dev.gabriel.consumer_worker.repository;
+
+import dev.gabriel.consumer_worker.config.LogQueryProperties;
+import dev.gabriel.consumer_worker.model.DeliveryLogPage;
+import dev.gabriel.consumer_worker.model.DeliveryLogQuery;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import dev.gabriel.consumer_worker.util.PayloadCodec;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * read side of the delivery log, with plain jdbc.
+ * <p>
+ * pages are read with keyset (seek) pagination: instead of an OFFSET, which makes postgres
+ * read and discard every row before the page, the cursor holds the ({@code attemptTime},
+ * {@code id}) of the last row returned and the next page starts right after it, with a
+ * single range scan of the indexes ending with those two columns. deep pages cost the same
+ * as the first one, and rows inserted meanwhile don't shift the pages.
+ * </p>
+ * <p>
+ * exports read the rows through a server-side database cursor, a fetch size at a time, so
+ * millions of rows are streamed with constant memory.
+ * </p>
+ */
+@Repository
+public class DeliveryLogQueryRepository {
+
+    private static final String COLUMNS =
+            "l.id, l.event_id, l.client_id, l.target_url, l.response_status, l.success, l.error_message, l.attempt_time";
+
+    // payloads live in their own table, compressed, and are only joined when asked for
+    private static final String PAYLOAD_COLUMNS = ", l.request_payload, p.codec, p.original_size, p.data";
+    private static final String PAYLOAD_JOIN = " LEFT JOIN webhook_payload p ON p.hash = l.payload_hash";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate cursorTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final LogQueryProperties properties;
+
+    public DeliveryLogQueryRepository(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                      LogQueryProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+
+        // with a fetch size, the postgres driver only uses a cursor inside a transaction
+        this.cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorTemplate.setFetchSize(properties.getExportFetchSize());
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * returns the rows matching the query, newest first.
+     *
+     * @param query  the filters.
+     * @param cursor the {@link DeliveryLogPage#getNextCursor()} of the previous page, or null for the first one.
+     * @param limit  the max rows of the page, capped to the configured max page size.
+     * @return the page, with the cursor of the next one if there are more rows.
+     * @throws IllegalArgumentException if the cursor is malformed.
+     */
+    public DeliveryLogPage findPage(DeliveryLogQuery query, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, properties.getMaxPageSize()));
+
+        Where where = where(query);
+        if (cursor != null && !cursor.isBlank()) {
+            Position after = decodeCursor(cursor);
+            // row comparison, so postgres seeks the (..., attempt_time, id) indexes directly
+            where.add("(l.attempt_time, l.id) < (?, ?)", Timestamp.valueOf(after.attemptTime()), after.id());
+        }
+
+        // one extra row tells whether there is a next page, without a count
+        String sql = select(query) + where.sql()
+                + " ORDER BY l.attempt_time DESC, l.id DESC LIMIT " + (pageSize + 1);
+        List<WebhookDeliveryLog> rows = jdbcTemplate.query(sql, rowMapper(query), where.args());
+
+        if (rows.size() <= pageSize) {
+            return new DeliveryLogPage(rows, null);
+        }
+        List<WebhookDeliveryLog> items = new ArrayList<>(rows.subList(0, pageSize));
+        WebhookDeliveryLog last = items.get(pageSize - 1);
+        return new DeliveryLogPage(items, encodeCursor(last.getAttemptTime(), last.getId()));
+    }
+
+    /**
+     * streams every row matching the query, oldest first, through a database cursor.
+     *
+     * @param query the filters.
+     * @param sink  receives the rows one by one, as they are fetched.
+     * @return the number of rows streamed.
+     * @throws IOException if the sink fails, the cursor is closed at that point.
+     */
+    public long stream(DeliveryLogQuery query, RowSink sink) throws IOException {
+        Where where = where(query);
+        String sql = select(query) + where.sql() + " ORDER BY l.attempt_time, l.id";
+        RowMapper<WebhookDeliveryLog> rowMapper = rowMapper(query);
+
+        long[] count = new long[1];
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> cursorTemplate.query(sql, rs -> {
+                try {
+                    sink.accept(rowMapper.mapRow(rs, 0));
+                    count[0]++;
+                } catch (IOException e) {
+                    // the client went away, stop reading
+                    throw new UncheckedIOException(e);
+                }
+            }, where.args()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    private static Where where(DeliveryLogQuery query) {
+        Where where = new Where();
+        if (query.getEventId() != null) where.add("l.event_id = ?", query.getEventId());
+        if (query.getClientId() != null) where.add("l.client_id = ?", query.getClientId());
+        if (query.getTargetUrl() != null) where.add("l.target_url = ?", query.getTargetUrl());
+        if (query.getSuccess() != null) where.add("l.success = ?", query.getSuccess());
+        // bounds on the partition key also prune the daily partitions out of range
+        if (query.getFrom() != null) where.add("l.attempt_time >= ?", Timestamp.valueOf(query.getFrom()));
+        if (query.getTo() != null) where.add("l.attempt_time < ?", Timestamp.valueOf(query.getTo()));
+        return where;
+    }
+
+    private static String select(DeliveryLogQuery query) {
+        return query.isIncludePayload()
+                ? "SELECT " + COLUMNS + PAYLOAD_COLUMNS + " FROM webhook_delivery_log l" + PAYLOAD_JOIN
+                : "SELECT " + COLUMNS + " FROM webhook_delivery_log l";
+    }
+
+    private static RowMapper<WebhookDeliveryLog> rowMapper(DeliveryLogQuery query) {
+        if (!query.isIncludePayload()) {
+            return DeliveryLogQueryRepository::mapRow;
+        }
+        return (rs, rowNum) -> {
+            WebhookDeliveryLog row = mapRow(rs, rowNum);
+            byte[] data = rs.getBytes("data");
+            // decompressed only here, when someone reads it
+            row.setRequestPayload(data != null
+                    ? new String(PayloadCodec.decode(rs.getShort("codec"), rs.getInt("original_size"), data), StandardCharsets.UTF_8)
+                    : rs.getString("request_payload"));
+            return row;
+        };
+    }
+
+    private static WebhookDeliveryLog mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Timestamp attemptTime = rs.getTimestamp("attempt_time");
+        return WebhookDeliveryLog.builder()
+                .id(rs.getLong("id"))
+                .eventId(rs.getString("event_id"))
+                .clientId(rs.getString("client_id"))
+                .targetUrl(rs.getString("target_url"))
+                .responseStatus(rs.getInt("response_status"))
+                .success(rs.getBoolean("success"))
+                .errorMessage(rs.getString("error_message"))
+                .attemptTime(attemptTime != null ? attemptTime.toLocalDateTime() : null)
+                .build();
+    }
+
+    private static String encodeCursor(LocalDateTime attemptTime, long id) {
+        String position = attemptTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Position decodeCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.lastIndexOf('|');
+            return new Position(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.parseLong(position.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * receives the rows of an export.
+     */
+    @FunctionalInterface
+    public interface RowSink {
+        void accept(WebhookDeliveryLog row) throws IOException;
+    }
+
+    private record Position(LocalDateTime attemptTime, long id) {
+    }
+
+    /**
+     * where clause built from the filters that are set, with its bind arguments.
+     */
+    private static final class Where {
+
+        private final List<String> conditions = new ArrayList<>();
+        private final List<Object> args = new ArrayList<>();
+
+        void add(String condition, Object... values) {
+            conditions.add(condition);
+            args.addAll(List.of(values));
+        }
+
+        String sql() {
+            return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+        }
+
+        Object[] args() {
+            return args.toArray();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package dev.gabriel.consumer_worker.serialization;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * versioned binary layout of an event in the record value, written by producer-api in the
+ * binary payload format.
+ * <p>
+ * the value starts with a marker byte that can't start a json document ({@code 0xFE} never
+ * appears in utf-8) and a version byte. version 1 then holds the eventId, clientId, targetUrl
+ * and trace id as utf-8 strings prefixed by their length plus one as an unsigned varint (0 for
+ * null), the ingest time as an unsigned varint, and the payload bytes up to the end of the
+ * value. records of an unknown version are rejected, not guessed.
+ * </p>
+ * <p>
+ * producer-api holds a copy of this class for the writing side: the two apps share no module.
+ * both test suites check their copy against the same encoded bytes (BinaryEnvelopeTests), so a
+ * change to one copy that isn't made to the other fails the build.
+ * </p>
+ */
+final class BinaryEnvelope {
+
+    static final byte MAGIC = (byte) 0xFE;
+    static final byte VERSION_1 = 1;
+
+    private BinaryEnvelope() {
+    }
+
+    static boolean isBinary(byte[] data) {
+        return data != null && data.length > 0 && data[0] == MAGIC;
+    }
+
+    /**
+     * @throws SerializationException if the value is not an envelope, its version is unknown or it is truncated.
+     */
+    static WebhookEvent decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.get() != MAGIC) {
+                throw new SerializationException("Not a binary envelope, first byte is not " + MAGIC);
+            }
+            byte version = buffer.get();
+            if (version != VERSION_1) {
+                throw new SerializationException("Unsupported binary envelope version " + version);
+            }
+
+            WebhookEvent event = new WebhookEvent();
+            event.setEventId(getString(buffer));
+            event.setClientId(getString(buffer));
+            event.setTargetUrl(getString(buffer));
+            event.setTraceId(getString(buffer));
+            event.setIngestedAt(getVarLong(buffer));
+            if (buffer.hasRemaining()) {
+                byte[] payload = new byte[buffer.remaining()];
+                buffer.get(payload);
+                event.setRawPayload(payload);
+            }
+            event.setBinaryEnvelope(true);
+            return event;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated binary envelope of " + data.length + " bytes", e);
+        }
+    }
+
+    /**
+     * writes the event back in version 1, with its raw payload.
+     */
+    static byte[] encode(WebhookEvent event) {
+        byte[] eventId = utf8(event.getEventId());
+        byte[] clientId = utf8(event.getClientId());
+        byte[] targetUrl = utf8(event.getTargetUrl());
+        byte[] traceId = utf8(event.getTraceId());
+        byte[] payload = event.getRawPayload() != null ? event.getRawPayload() : new byte[0];
+
+        int size = 2 + stringSize(eventId) + stringSize(clientId) + stringSize(targetUrl) + stringSize(traceId)
+                + varLongSize(event.getIngestedAt()) + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .put(MAGIC)
+                .put(VERSION_1);
+        putString(buffer, eventId);
+        putString(buffer, clientId);
+        putString(buffer, targetUrl);
+        putString(buffer, traceId);
+        putVarLong(buffer, event.getIngestedAt());
+        return buffer.put(payload).array();
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        long length = getVarLong(buffer) - 1;
+        if (length < 0) return null;
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        String value = new String(buffer.array(), buffer.position(), (int) length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + (int) length);
+        return value;
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new SerializationException("Malformed varint in binary envelope");
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int stringSize(byte[] value) {
+        return value != null ? varLongSize(value.length + 1L) + value.length : 1;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.put((byte) 0);
+        } else {
+            putVarLong(buffer, value.length + 1L);
+            buffer.put(value);
+        }
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+}
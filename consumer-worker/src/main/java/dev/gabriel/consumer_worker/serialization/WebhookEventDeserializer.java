@@ -0,0 +1,98 @@
+package dev.gabriel.consumer_worker.serialization;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import org.springframework.kafka.support.JacksonMapperUtils;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import tools.jackson.databind.DeserializationFeature;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * kafka deserializer of {@link WebhookEvent} records.
+ * <p>
+ * records in the opaque format carry the event metadata in headers and the raw payload as
+ * value: the value is kept as-is in {@link WebhookEvent#getRawPayload()} and never parsed.
+ * records with the whole event as json are handed to the {@link JacksonJsonDeserializer}, configured
+ * with the same consumer properties (trusted packages, type mappings). records in the binary
+ * format are recognized by their first byte, whatever the headers, and unpacked by
+ * {@link BinaryEnvelope}, their payload kept raw as well. the three formats can be mixed in a
+ * topic, so the producer can switch from one to another while the worker runs.
+ * </p>
+ * <p>
+ * the trace id and ingest time stamped by the producer are copied from headers (or from the
+ * binary envelope), and the event is marked with the time it was read.
+ * </p>
+ */
+public class WebhookEventDeserializer implements Deserializer<WebhookEvent> {
+
+    // the event is built through its all-args constructor, which takes the primitives the json never holds
+    private final JacksonJsonDeserializer<WebhookEvent> embedded = new JacksonJsonDeserializer<>(
+            JacksonMapperUtils.enhancedJsonMapper().rebuild()
+                    .disable(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES)
+                    .build());
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        embedded.configure(configs, isKey);
+    }
+
+    @Override
+    public WebhookEvent deserialize(String topic, byte[] data) {
+        return embedded.deserialize(topic, data);
+    }
+
+    @Override
+    public WebhookEvent deserialize(String topic, Headers headers, byte[] data) {
+        long consumedAt = System.nanoTime();
+        WebhookEvent event;
+        if (BinaryEnvelope.isBinary(data)) {
+            event = BinaryEnvelope.decode(data);
+            event.setConsumedAtNanos(consumedAt);
+            return event;
+        }
+        if (data == null || !isOpaque(headers)) {
+            event = embedded.deserialize(topic, headers, data);
+            if (event == null) return null;
+        } else {
+            event = new WebhookEvent();
+            event.setEventId(header(headers, WebhookEventSerializer.EVENT_ID_HEADER));
+            event.setClientId(header(headers, WebhookEventSerializer.CLIENT_ID_HEADER));
+            event.setTargetUrl(header(headers, WebhookEventSerializer.TARGET_URL_HEADER));
+            event.setRawPayload(data.length > 0 ? data : null);
+        }
+
+        event.setTraceId(header(headers, WebhookEventSerializer.TRACE_ID_HEADER));
+        event.setIngestedAt(parseLong(header(headers, WebhookEventSerializer.INGEST_TIMESTAMP_HEADER)));
+        event.setConsumedAtNanos(consumedAt);
+        return event;
+    }
+
+    @Override
+    public void close() {
+        embedded.close();
+    }
+
+    private static boolean isOpaque(Headers headers) {
+        Header format = headers.lastHeader(WebhookEventSerializer.PAYLOAD_FORMAT_HEADER);
+        return format != null && Arrays.equals(format.value(), WebhookEventSerializer.OPAQUE);
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String header(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,79 @@
+package dev.gabriel.consumer_worker.serialization;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * kafka serializer used to republish events to the retry and dead-letter topics.
+ * <p>
+ * events read in the opaque format are written back the same way (metadata in headers,
+ * raw payload as value), and those read in the binary format are packed again by
+ * {@link BinaryEnvelope}, so a retry never parses nor re-encodes the payload. the others
+ * are written as json by the {@link JacksonJsonSerializer}. the trace id and ingest time are always
+ * written back (to headers, or in the envelope), so the end-to-end metrics of a retried event
+ * stay accurate.
+ * </p>
+ */
+public class WebhookEventSerializer implements Serializer<WebhookEvent> {
+
+    /** header names shared with producer-api. */
+    public static final String EVENT_ID_HEADER = "webhook-event-id";
+    public static final String CLIENT_ID_HEADER = "webhook-client-id";
+    public static final String TARGET_URL_HEADER = "webhook-target-url";
+    public static final String PAYLOAD_FORMAT_HEADER = "webhook-payload-format";
+    public static final String INGEST_TIMESTAMP_HEADER = "webhook-ingest-ts";
+    public static final String TRACE_ID_HEADER = "webhook-trace-id";
+
+    static final byte[] OPAQUE = "opaque".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY = new byte[0];
+
+    private final JacksonJsonSerializer<WebhookEvent> embedded = new JacksonJsonSerializer<>();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        embedded.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, WebhookEvent data) {
+        return embedded.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, WebhookEvent data) {
+        if (data != null && data.isBinaryEnvelope() && data.getPayload() == null) {
+            return BinaryEnvelope.encode(data);
+        }
+        if (data != null) {
+            addHeader(headers, TRACE_ID_HEADER, data.getTraceId());
+            if (data.getIngestedAt() > 0) {
+                addHeader(headers, INGEST_TIMESTAMP_HEADER, String.valueOf(data.getIngestedAt()));
+            }
+        }
+        if (data == null || data.getPayload() != null) {
+            return embedded.serialize(topic, headers, data);
+        }
+
+        headers.add(PAYLOAD_FORMAT_HEADER, OPAQUE);
+        addHeader(headers, EVENT_ID_HEADER, data.getEventId());
+        addHeader(headers, CLIENT_ID_HEADER, data.getClientId());
+        addHeader(headers, TARGET_URL_HEADER, data.getTargetUrl());
+        return data.getRawPayload() != null ? data.getRawPayload() : EMPTY;
+    }
+
+    @Override
+    public void close() {
+        embedded.close();
+    }
+
+    private static void addHeader(Headers headers, String name, String value) {
+        if (value != null) {
+            headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
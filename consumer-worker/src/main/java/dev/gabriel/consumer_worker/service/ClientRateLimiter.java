@@ -0,0 +1,83 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.RateLimitProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * token buckets limiting the delivery rate of each client.
+ * <p>
+ * every bucket is a single {@link AtomicLong} holding the theoretical arrival time of the next
+ * delivery (generic cell rate algorithm, equivalent to a token bucket), so reserving a token
+ * is one lock-free compare-and-set. deliveries are never rejected: a reservation returns how
+ * long the caller must wait, and the caller delays the delivery without blocking a thread.
+ * </p>
+ */
+@Component
+public class ClientRateLimiter {
+
+    private final RateLimitProperties properties;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public ClientRateLimiter(RateLimitProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * reserves a delivery slot for the client.
+     *
+     * @param clientId the client the delivery belongs to.
+     * @return nanoseconds to wait before delivering, 0 when the delivery may start right away.
+     */
+    public long reserve(String clientId) {
+        if (clientId == null) return 0;
+        RateLimitProperties.Limit limit = properties.getClients().getOrDefault(clientId, properties.getDefaults());
+        if (limit.getRate() <= 0) return 0;
+
+        return buckets.computeIfAbsent(clientId, id -> new Bucket(limit)).reserve(System.nanoTime());
+    }
+
+    /**
+     * drops the buckets that are full again: a new bucket behaves exactly the same.
+     */
+    @Scheduled(fixedDelayString = "${webhook.delivery.rate-limit.sweep-interval:60s}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+    }
+
+    private static final class Bucket {
+
+        /** time between two deliveries at the sustained rate. */
+        private final long intervalNanos;
+        /** how far ahead of the sustained rate a burst may go. */
+        private final long toleranceNanos;
+        private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+        private Bucket(RateLimitProperties.Limit limit) {
+            this.intervalNanos = (long) (1_000_000_000L / limit.getRate());
+            this.toleranceNanos = intervalNanos * Math.max(0, limit.getBurst() - 1);
+        }
+
+        long reserve(long now) {
+            while (true) {
+                long current = theoreticalArrival.get();
+                long start = current == Long.MIN_VALUE ? now : Math.max(current, now);
+                long next = start + intervalNanos;
+                if (theoreticalArrival.compareAndSet(current, next)) {
+                    // allowed once the backlog ahead of it fits within the burst tolerance
+                    return Math.max(0, next - intervalNanos - toleranceNanos - now);
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            long current = theoreticalArrival.get();
+            return current == Long.MIN_VALUE || current <= now;
+        }
+    }
+}
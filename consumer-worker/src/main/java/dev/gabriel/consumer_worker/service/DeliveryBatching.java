@@ -0,0 +1,51 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.BatchingProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * decides which events are coalesced into batched deliveries.
+ * <p>
+ * events to a target url listed in {@code webhook.delivery.batching.destinations} are dispatched
+ * with a {@link KeyOrderedDispatcher.Coalescing} keyed by that url: the events a client queued
+ * behind each other for it are posted together, as a json array, by
+ * {@link WebhookDeliveryService#deliverBatch}. the lanes are per client, so a batch never mixes
+ * clients and never overtakes an earlier event of its client.
+ * </p>
+ */
+@Component
+public class DeliveryBatching {
+
+    private final JsonUtil jsonUtil;
+    private final Map<String, KeyOrderedDispatcher.Coalescing<WebhookEvent>> destinations = new HashMap<>();
+
+    public DeliveryBatching(BatchingProperties properties, WebhookDeliveryService deliveryService, JsonUtil jsonUtil) {
+        this.jsonUtil = jsonUtil;
+        properties.getDestinations().forEach((url, limits) -> destinations.put(url, new KeyOrderedDispatcher.Coalescing<>(
+                url, limits.getMaxEvents(), limits.getMaxBytes().toBytes(), limits.getMaxDelay(), deliveryService::deliverBatch)));
+    }
+
+    /**
+     * @param event a first attempt.
+     * @return how to coalesce the event, or null when its destination is not batched.
+     */
+    public KeyOrderedDispatcher.Coalescing<WebhookEvent> coalescingFor(WebhookEvent event) {
+        return destinations.isEmpty() || event.getTargetUrl() == null ? null : destinations.get(event.getTargetUrl());
+    }
+
+    /**
+     * @return the size of the event in a batch body.
+     */
+    public long bodySize(WebhookEvent event) {
+        // opaque payloads know their size; embedded ones are serialized once more, use the
+        // opaque format for batched destinations with large payloads
+        return event.getRawPayload() != null
+                ? event.getRawPayload().length
+                : jsonUtil.toJsonBytes(event.getPayload()).length;
+    }
+}
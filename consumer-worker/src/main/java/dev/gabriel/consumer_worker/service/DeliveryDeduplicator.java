@@ -0,0 +1,187 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.gabriel.consumer_worker.config.DedupProperties;
+import dev.gabriel.consumer_worker.util.RotatingBloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * remembers the eventIds already delivered, so a redelivered kafka record (after a crash or
+ * a rebalance) or a resubmitted event is not posted to the customer twice.
+ * <p>
+ * eventIds are chosen by the clients, so two clients may well use the same ones: an event is
+ * identified by its clientId and eventId together, everywhere below.
+ * </p>
+ * <p>
+ * lookups go through three layers, from the cheapest:
+ * <ol>
+ *     <li>a {@link RotatingBloomFilter}: a new eventId is almost always rejected here, with
+ *     no allocation, lock nor database access;</li>
+ *     <li>a bounded caffeine cache with time-based expiry, holding the exact recent ids;</li>
+ *     <li>the delivery log, queried only when the filter matches but the cache does not
+ *     (false positive, or an id older than the cache can hold).</li>
+ * </ol>
+ * deliveries made by the other workers reach the filter and the cache through a periodic read
+ * of the successful rows of the delivery log, never through a query per event.
+ * </p>
+ * <p>
+ * the dedup is best effort: an event is marked once its delivery succeeded, so a crash right
+ * after the post and before the mark can still cause a duplicate.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DeliveryDeduplicator {
+
+    private static final String DELIVERED_SQL = """
+            SELECT EXISTS (SELECT 1 FROM webhook_delivery_log
+                           WHERE event_id = ? AND client_id = ? AND success AND attempt_time >= ?)
+            """;
+
+    private static final String RECENTLY_DELIVERED_SQL = """
+            SELECT client_id, event_id FROM webhook_delivery_log WHERE success AND attempt_time >= ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DedupProperties properties;
+    private final RotatingBloomFilter filter;
+    private final Cache<String, Boolean> delivered;
+    private final Counter cacheHits;
+    private final Counter databaseHits;
+    private final Counter databaseMisses;
+    private volatile long nextRotation;
+    private volatile LocalDateTime syncedUntil;
+
+    public DeliveryDeduplicator(JdbcTemplate jdbcTemplate, DedupProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.filter = new RotatingBloomFilter(properties.getExpectedEvents(), properties.getFalsePositiveRate());
+        this.delivered = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheMaxSize())
+                .expireAfterWrite(properties.getTtl())
+                .build();
+        this.nextRotation = System.nanoTime() + properties.getTtl().toNanos();
+        this.syncedUntil = LocalDateTime.now().minus(properties.getWarmupWindow());
+
+        this.cacheHits = lookupCounter(meterRegistry, "cache");
+        this.databaseHits = lookupCounter(meterRegistry, "database");
+        this.databaseMisses = lookupCounter(meterRegistry, "false_positive");
+    }
+
+    /**
+     * @param clientId the client of the event about to be delivered.
+     * @param eventId  the id of the event (may be null).
+     * @return true if the event was already delivered within the ttl.
+     */
+    public boolean isDelivered(String clientId, String eventId) {
+        if (!properties.isEnabled() || eventId == null) return false;
+        String key = key(clientId, eventId);
+        if (!filter.mightContain(key)) return false;
+
+        if (delivered.getIfPresent(key) != null) {
+            cacheHits.increment();
+            return true;
+        }
+        return isDeliveredInLog(clientId, eventId, key);
+    }
+
+    /**
+     * records a successful delivery.
+     *
+     * @param clientId the client of the delivered event.
+     * @param eventId  the id of the event (may be null).
+     */
+    public void markDelivered(String clientId, String eventId) {
+        if (!properties.isEnabled() || eventId == null) return;
+        remember(clientId, eventId);
+    }
+
+    /**
+     * reads back the eventIds delivered since the last sync, by this worker or the others.
+     * the first run loads the warmup window.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${webhook.dedup.sync-interval:5s}")
+    public void syncFromLog() {
+        if (!properties.isEnabled()) return;
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime from = syncedUntil.minus(properties.getSyncOverlap());
+        try {
+            int[] count = new int[1];
+            jdbcTemplate.query(RECENTLY_DELIVERED_SQL, rs -> {
+                remember(rs.getString(1), rs.getString(2));
+                count[0]++;
+            }, Timestamp.valueOf(from));
+            syncedUntil = now;
+            log.debug("Synced {} delivered eventIds since {}", count[0], from);
+        } catch (DataAccessException e) {
+            // the next run retries from the same point
+            log.warn("Failed to sync delivered eventIds: {}", e.getMessage());
+        }
+    }
+
+    private boolean isDeliveredInLog(String clientId, String eventId, String key) {
+        try {
+            Timestamp oldest = Timestamp.valueOf(LocalDateTime.now().minus(properties.getTtl()));
+            boolean found = Boolean.TRUE.equals(jdbcTemplate.queryForObject(DELIVERED_SQL, Boolean.class, eventId, clientId, oldest));
+            if (found) {
+                databaseHits.increment();
+                delivered.put(key, Boolean.TRUE);
+            } else {
+                databaseMisses.increment();
+            }
+            return found;
+        } catch (DataAccessException e) {
+            // prefer a possible duplicate over a lost delivery
+            log.warn("Could not check eventId {} of client {} in the delivery log: {}", eventId, clientId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void remember(String clientId, String eventId) {
+        if (eventId == null) return;
+        String key = key(clientId, eventId);
+        rotateIfDue();
+        filter.add(key);
+        delivered.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * @return the key of an event in the filter and the cache. the clientId is prefixed with its
+     * length, so distinct pairs never share a key whatever characters they contain.
+     */
+    static String key(String clientId, String eventId) {
+        // keys of a client start with a digit, a missing one can't take theirs
+        return clientId == null ? ":" + eventId : clientId.length() + ":" + clientId + eventId;
+    }
+
+    /**
+     * the filter remembers an id for one to two rotation periods, rotating every ttl keeps
+     * every id for at least the ttl.
+     */
+    private void rotateIfDue() {
+        if (System.nanoTime() - nextRotation < 0) return;
+        synchronized (this) {
+            if (System.nanoTime() - nextRotation < 0) return;
+            filter.rotate();
+            nextRotation = System.nanoTime() + properties.getTtl().toNanos();
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("webhook.dedup.lookups")
+                .description("Lookups that went past the bloom filter, by where they were resolved")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
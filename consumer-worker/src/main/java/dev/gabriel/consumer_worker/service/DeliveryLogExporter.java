@@ -0,0 +1,117 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.consumer_worker.model.DeliveryLogQuery;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import dev.gabriel.consumer_worker.repository.DeliveryLogQueryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * writes delivery log exports as ndjson or csv.
+ * <p>
+ * rows are written to the response as they come out of the database cursor, field by field,
+ * so neither the result set nor the document is ever held in memory.
+ * </p>
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DeliveryLogExporter {
+
+    private static final String CSV_HEADER =
+            "id,event_id,client_id,target_url,response_status,success,error_message,attempt_time,request_payload\n";
+
+    private final DeliveryLogQueryRepository queryRepository;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * writes one json object per line.
+     *
+     * @param query the filters.
+     * @param out   the response body, left open.
+     */
+    public void writeNdjson(DeliveryLogQuery query, OutputStream out) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            long count = queryRepository.stream(query, row -> {
+                generator.writeStartObject();
+                generator.writeNumberField("id", row.getId());
+                generator.writeStringField("eventId", row.getEventId());
+                generator.writeStringField("clientId", row.getClientId());
+                generator.writeStringField("targetUrl", row.getTargetUrl());
+                generator.writeNumberField("responseStatus", row.getResponseStatus());
+                generator.writeBooleanField("success", row.isSuccess());
+                generator.writeStringField("errorMessage", row.getErrorMessage());
+                generator.writeStringField("attemptTime", String.valueOf(row.getAttemptTime()));
+                if (query.isIncludePayload()) {
+                    generator.writeStringField("requestPayload", row.getRequestPayload());
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            });
+            log.info("Exported {} delivery logs as ndjson", count);
+        }
+    }
+
+    /**
+     * writes a header line, then one line per row (rfc 4180 quoting).
+     *
+     * @param query the filters.
+     * @param out   the response body, left open.
+     */
+    public void writeCsv(DeliveryLogQuery query, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(CSV_HEADER);
+
+        long count = queryRepository.stream(query, row -> writeCsvRow(writer, row));
+        writer.flush();
+        log.info("Exported {} delivery logs as csv", count);
+    }
+
+    private static void writeCsvRow(Writer writer, WebhookDeliveryLog row) throws IOException {
+        writer.write(String.valueOf(row.getId()));
+        writer.write(',');
+        writeCsvField(writer, row.getEventId());
+        writer.write(',');
+        writeCsvField(writer, row.getClientId());
+        writer.write(',');
+        writeCsvField(writer, row.getTargetUrl());
+        writer.write(',');
+        writer.write(String.valueOf(row.getResponseStatus()));
+        writer.write(',');
+        writer.write(String.valueOf(row.isSuccess()));
+        writer.write(',');
+        writeCsvField(writer, row.getErrorMessage());
+        writer.write(',');
+        writeCsvField(writer, row.getAttemptTime() != null ? row.getAttemptTime().toString() : null);
+        writer.write(',');
+        writeCsvField(writer, row.getRequestPayload());
+        writer.write('\n');
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) return;
+        boolean quoted = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,299 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.LogWriterProperties;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * write-behind sink for {@link WebhookDeliveryLog} rows.
+ * <p>
+ * delivery threads only enqueue the row; a single background thread drains the queue and
+ * writes the rows with jdbc batch inserts, flushing when the batch is full or when the
+ * flush interval elapses. the queue is bounded: if postgres falls behind, {@link #append}
+ * blocks and the slowdown propagates back to the kafka listener instead of growing the heap.
+ * </p>
+ * <p>
+ * a batch failing with a transient error (connection lost, timeout, lock, too many clients) is
+ * retried with backoff, up to {@code max-write-attempts} times, and the queue is drained on
+ * shutdown, so rows are not lost when the database has a hiccup or the worker stops. a batch
+ * failing with any other error (a constraint, a value the column rejects, no partition for the
+ * attempt time) is split in halves and written again, until the rows that can't be written are
+ * alone in their batch: those are dead-lettered, logged in full at error level and counted, and
+ * the rows around them are written. a batch that still fails after its last attempt (or after a
+ * few attempts during shutdown) is dead-lettered too, instead of blocking the queue forever.
+ * </p>
+ * <p>
+ * request payloads are not written with the rows, they go through the {@link PayloadStore}
+ * (compressed, once per content) and the rows reference them by hash.
+ * </p>
+ * <p>
+ * batch write time, the delay of the oldest row of a batch (queueing + write) and the queue
+ * size are exposed as metrics.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DeliveryLogWriter {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO webhook_delivery_log
+                (event_id, client_id, target_url, payload_hash, response_status, success, error_message, attempt_time)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final int SHUTDOWN_WRITE_ATTEMPTS = 3;
+
+    /**
+     * sqlstate classes of the failures worth retrying: connection exception, transaction rollback,
+     * insufficient resources, operator intervention (e.g. the server shutting down), system error.
+     */
+    private static final Set<String> TRANSIENT_SQL_STATE_CLASSES = Set.of("08", "40", "53", "57", "58");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PayloadStore payloadStore;
+    private final LogWriterProperties properties;
+    private final BlockingQueue<WebhookDeliveryLog> queue;
+    private final Thread flusher;
+    private final Timer writeSuccess;
+    private final Timer writeFailure;
+    private final Timer rowDelay;
+    private final Counter deadLettered;
+    private volatile boolean running = true;
+
+    public DeliveryLogWriter(JdbcTemplate jdbcTemplate, PayloadStore payloadStore, LogWriterProperties properties,
+                             MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.payloadStore = payloadStore;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+        this.writeSuccess = writeTimer(meterRegistry, "success");
+        this.writeFailure = writeTimer(meterRegistry, "failure");
+        this.rowDelay = Timer.builder("webhook.delivery.log.delay")
+                .description("Time from the delivery attempt to its log row being written")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("webhook.delivery.log.dead.letter")
+                .description("Log rows that could not be written, logged at error level instead")
+                .register(meterRegistry);
+        Gauge.builder("webhook.delivery.log.queue.size", queue, BlockingQueue::size)
+                .description("Log rows waiting to be written")
+                .register(meterRegistry);
+        this.flusher = new Thread(this::runFlushLoop, "delivery-log-writer");
+        this.flusher.setDaemon(true);
+    }
+
+    @PostConstruct
+    void start() {
+        flusher.start();
+    }
+
+    /**
+     * queues a log row to be written by the background flusher.
+     * <p>
+     * blocks while the queue is full. once the writer is closed, the row is written
+     * synchronously so late deliveries during shutdown are still recorded.
+     * </p>
+     *
+     * @param entry the log row to persist.
+     */
+    public void append(WebhookDeliveryLog entry) {
+        if (!running) {
+            writeWithRetry(List.of(entry));
+            return;
+        }
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeWithRetry(List.of(entry));
+        }
+    }
+
+    /**
+     * stops the flusher and writes every row still queued.
+     */
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        flusher.interrupt();
+        flusher.join(properties.getMaxRetryBackoff().multipliedBy(3).toMillis());
+
+        // catch rows appended while the flusher was finishing its last batch
+        List<WebhookDeliveryLog> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            writeWithRetry(remaining);
+        }
+    }
+
+    private void runFlushLoop() {
+        List<WebhookDeliveryLog> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                collectBatch(batch);
+            } catch (InterruptedException e) {
+                // close() was called, keep draining what is already queued
+                queue.drainTo(batch, properties.getBatchSize() - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                writeWithRetry(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * waits for the first row, then lingers up to the flush interval to fill the batch.
+     */
+    private void collectBatch(List<WebhookDeliveryLog> batch) throws InterruptedException {
+        long flushIntervalNanos = properties.getFlushInterval().toNanos();
+        WebhookDeliveryLog first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) return;
+        batch.add(first);
+
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < properties.getBatchSize()) {
+            queue.drainTo(batch, properties.getBatchSize() - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() >= properties.getBatchSize() || remaining <= 0) return;
+
+            WebhookDeliveryLog next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) return;
+            batch.add(next);
+        }
+    }
+
+    private void writeWithRetry(List<WebhookDeliveryLog> batch) {
+        long backoffMillis = 100;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                writeBatch(batch);
+                writeSuccess.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                recordDelay(batch.get(0));
+                return;
+            } catch (RuntimeException e) {
+                writeFailure.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (!isTransient(e)) {
+                    splitOrDeadLetter(batch, e);
+                    return;
+                }
+                // during shutdown, give up after a few attempts instead of hanging the process
+                int maxAttempts = running ? properties.getMaxWriteAttempts() : SHUTDOWN_WRITE_ATTEMPTS;
+                if (attempt >= maxAttempts) {
+                    deadLetter(batch, "still failing after " + attempt + " attempts: " + e.getMessage());
+                    return;
+                }
+                log.warn("Failed to write {} delivery logs, retrying in {} ms: {}",
+                        batch.size(), backoffMillis, e.getMessage());
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                // only close() interrupts the flusher, the loop condition handles it
+            }
+            backoffMillis = Math.min(backoffMillis * 2, properties.getMaxRetryBackoff().toMillis());
+        }
+    }
+
+    /**
+     * a single row failing makes the whole jdbc batch fail: halves are written on their own until
+     * the rows that can't be written are alone.
+     */
+    private void splitOrDeadLetter(List<WebhookDeliveryLog> batch, RuntimeException e) {
+        if (batch.size() == 1) {
+            deadLetter(batch, e.getMessage());
+            return;
+        }
+        log.warn("Failed to write {} delivery logs, writing them in halves to isolate the failing rows: {}",
+                batch.size(), e.getMessage());
+        int half = batch.size() / 2;
+        writeWithRetry(new ArrayList<>(batch.subList(0, half)));
+        writeWithRetry(new ArrayList<>(batch.subList(half, batch.size())));
+    }
+
+    private void deadLetter(List<WebhookDeliveryLog> batch, String reason) {
+        log.error("Dropping {} delivery logs, {}", batch.size(), reason);
+        for (WebhookDeliveryLog entry : batch) {
+            log.error("Dead-lettered delivery log: eventId={} clientId={} targetUrl={} status={} success={} attemptTime={} error={}",
+                    entry.getEventId(), entry.getClientId(), entry.getTargetUrl(), entry.getResponseStatus(),
+                    entry.isSuccess(), entry.getAttemptTime(), entry.getErrorMessage());
+        }
+        deadLettered.increment(batch.size());
+    }
+
+    /**
+     * @return true if the failure may go away by itself (connection, timeout, lock, resources),
+     * false if writing the same rows again fails the same way.
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof SQLTransientException
+                    || cause instanceof SQLRecoverableException) {
+                return true;
+            }
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null
+                    && TRANSIENT_SQL_STATE_CLASSES.contains(sqlException.getSQLState().substring(0, 2))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBatch(List<WebhookDeliveryLog> batch) {
+        // payloads first, rows reference them by hash
+        payloadStore.storePayloads(batch);
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, entry) -> {
+            ps.setString(1, entry.getEventId());
+            ps.setString(2, entry.getClientId());
+            ps.setString(3, entry.getTargetUrl());
+            ps.setBytes(4, entry.getPayloadHash());
+            ps.setInt(5, entry.getResponseStatus());
+            ps.setBoolean(6, entry.isSuccess());
+            ps.setString(7, entry.getErrorMessage());
+            ps.setTimestamp(8, entry.getAttemptTime() != null ? Timestamp.valueOf(entry.getAttemptTime()) : null);
+        });
+        log.debug("Wrote {} delivery logs", batch.size());
+    }
+
+    private void recordDelay(WebhookDeliveryLog oldest) {
+        if (oldest.getAttemptTime() != null) {
+            rowDelay.record(Duration.between(oldest.getAttemptTime(), LocalDateTime.now()));
+        }
+    }
+
+    private static Timer writeTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("webhook.delivery.log.write")
+                .description("Time to write a batch of log rows")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
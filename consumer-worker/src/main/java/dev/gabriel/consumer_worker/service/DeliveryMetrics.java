@@ -0,0 +1,74 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * latency histograms of the stages an event goes through in the worker.
+ * <p>
+ * together with the producer's {@code webhook.producer.send} and the log writer's
+ * {@code webhook.delivery.log.write}, they tell whether latency comes from the kafka backlog
+ * (queue lag), from the receivers (delivery latency, by host and status class) or from postgres.
+ * </p>
+ */
+@Component
+public class DeliveryMetrics {
+
+    public static final String QUEUE_LAG = "webhook.delivery.queue.lag";
+    public static final String DELIVERY_LATENCY = "webhook.delivery.latency";
+
+    private final Timer queueLag;
+    private final Meter.MeterProvider<Timer> deliveryLatency;
+
+    public DeliveryMetrics(MeterRegistry meterRegistry) {
+        this.queueLag = Timer.builder(QUEUE_LAG)
+                .description("Time from the producer accepting the event to the worker reading it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.deliveryLatency = Timer.builder(DELIVERY_LATENCY)
+                .description("Time from the worker reading the event to the destination response")
+                .publishPercentileHistogram()
+                .withRegistry(meterRegistry);
+    }
+
+    /**
+     * records how long the event waited in kafka. events without ingest time are skipped.
+     *
+     * @param event the event just read by the listener.
+     */
+    public void recordQueueLag(WebhookEvent event) {
+        if (event.getIngestedAt() <= 0) return;
+        // clocks of producer and worker hosts may drift, never record negative lags
+        long lag = Math.max(0, System.currentTimeMillis() - event.getIngestedAt());
+        queueLag.record(lag, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * records the time from reading the record to the http response (or failure).
+     *
+     * @param event  the delivered event.
+     * @param host   the destination host.
+     * @param status the http status, null when the request failed.
+     */
+    public void recordDelivery(WebhookEvent event, String host, Integer status) {
+        if (event.getConsumedAtNanos() == 0) return;
+        deliveryLatency.withTags("host", host != null ? host : "unknown", "status", statusClass(status))
+                .record(System.nanoTime() - event.getConsumedAtNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    private static String statusClass(Integer status) {
+        if (status == null) return "error";
+        return switch (status / 100) {
+            case 2 -> "2xx";
+            case 3 -> "3xx";
+            case 4 -> "4xx";
+            case 5 -> "5xx";
+            default -> "other";
+        };
+    }
+}
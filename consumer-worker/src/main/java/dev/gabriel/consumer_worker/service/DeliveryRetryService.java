@@ -0,0 +1,88 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.exception.WebhookDeliveryException;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * service responsible for routing failed deliveries to the retry tiers.
+ * <p>
+ * instead of retrying in place (which would stall the partition), a failed event is
+ * republished to the tier topic matching its number of failures, with the retry metadata
+ * in kafka headers. the {@link RetryListener} delivers it again once it is due. events that
+ * exhausted every tier, or that failed with a non-retryable error, go to the dead-letter topic.
+ * </p>
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DeliveryRetryService {
+
+    private final KafkaTemplate<String, WebhookEvent> kafkaTemplate;
+    private final RetryTopics retryTopics;
+    private final WebhookLogService logService;
+
+    /**
+     * publishes the event to its next retry tier, or to the dead-letter topic.
+     *
+     * @param event      the event that failed to be delivered.
+     * @param retryCount the number of failed attempts so far, including this one.
+     * @param cause      the failure of the last attempt.
+     * @return a future completed once the broker stored the event, so the original
+     * record is only committed after the retry is safe.
+     */
+    public CompletableFuture<Void> scheduleRetry(WebhookEvent event, int retryCount, Throwable cause) {
+        String reason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+
+        String topic;
+        long dueAt;
+        if (!isRetryable(cause) || retryCount > retryTopics.tierCount()) {
+            topic = retryTopics.deadLetterTopic();
+            dueAt = 0;
+            log.error("Event {} sent to dead-letter topic after {} attempts: {}", event.getEventId(), retryCount, reason);
+            logService.saveLog(event, 0, false, "DEAD_LETTER after " + retryCount + " attempts: " + reason);
+        } else {
+            int tier = retryCount - 1;
+            topic = retryTopics.tierTopic(tier);
+            dueAt = System.currentTimeMillis() + retryTopics.tierDelay(tier).toMillis();
+            log.warn("Event {} scheduled for retry {} in {}", event.getEventId(), retryCount, retryTopics.tierDelay(tier));
+        }
+
+        // keyed by client, so the retries of a client stay ordered within the tier
+        ProducerRecord<String, WebhookEvent> record = new ProducerRecord<>(topic, event.getClientId(), event);
+        record.headers()
+                .add(RetryTopics.RETRY_COUNT_HEADER, bytes(String.valueOf(retryCount)))
+                .add(RetryTopics.DUE_AT_HEADER, bytes(String.valueOf(dueAt)))
+                .add(RetryTopics.REASON_HEADER, bytes(reason));
+
+        return kafkaTemplate.send(record)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.error("Failed to publish event {} to {}: {}", event.getEventId(), topic, e.getMessage());
+                    }
+                })
+                .thenApply(result -> null);
+    }
+
+    /**
+     * client errors and invalid urls won't fix themselves, except timeouts and rate limiting.
+     */
+    private static boolean isRetryable(Throwable cause) {
+        if (cause instanceof WebhookDeliveryException e) {
+            int status = e.getStatus();
+            return status >= 500 || status == 408 || status == 429;
+        }
+        return !(cause instanceof IllegalArgumentException);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
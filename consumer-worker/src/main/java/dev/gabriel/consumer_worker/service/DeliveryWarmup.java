@@ -0,0 +1,162 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.gabriel.consumer_worker.config.WarmupProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.serialization.WebhookEventDeserializer;
+import dev.gabriel.consumer_worker.serialization.WebhookEventSerializer;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import dev.gabriel.consumer_worker.util.PayloadCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * warms the delivery path up before the worker takes any partition.
+ * <p>
+ * a fresh instance is started when the lag is high, and its first deliveries would otherwise
+ * pay for class loading, tls setup and interpreted code on the hot path. this runs once all
+ * the beans are created, so before the listener containers start and join the group: the
+ * record codecs (all the payload formats), the body serialization, the payload hashing and
+ * compression of the log, and the http client against a loopback server, whose requests
+ * bypass the per-host limits so no receiver state is touched.
+ * </p>
+ * <p>
+ * it also runs during the training run of the class-data-sharing archive, so the classes it
+ * loads end up in the archive.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DeliveryWarmup implements SmartInitializingSingleton {
+
+    private static final String TOPIC = "webhook.deliveries.warmup";
+    private static final int CONCURRENT_REQUESTS = 8;
+
+    private final WarmupProperties properties;
+    private final HttpDeliveryEngine engine;
+    private final JsonUtil jsonUtil;
+    private final ConsumerFactory<?, ?> consumerFactory;
+    private final ProducerFactory<?, ?> producerFactory;
+
+    public DeliveryWarmup(WarmupProperties properties, HttpDeliveryEngine engine, JsonUtil jsonUtil,
+                          ConsumerFactory<?, ?> consumerFactory, ProducerFactory<?, ?> producerFactory) {
+        this.properties = properties;
+        this.engine = engine;
+        this.jsonUtil = jsonUtil;
+        this.consumerFactory = consumerFactory;
+        this.producerFactory = producerFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!properties.isEnabled()) return;
+
+        long start = System.nanoTime();
+        long deadline = start + properties.getTimeout().toNanos();
+        try {
+            warmCodecs();
+            warmTls();
+            warmHttpClient(deadline);
+            log.info("Delivery path warmed up in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            // only slower first deliveries, never a reason not to start
+            log.warn("Delivery warmup incomplete after {} ms: {}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), e.toString());
+        }
+    }
+
+    private void warmCodecs() {
+        try (WebhookEventSerializer serializer = new WebhookEventSerializer();
+             WebhookEventDeserializer deserializer = new WebhookEventDeserializer()) {
+            serializer.configure(producerFactory.getConfigurationProperties(), false);
+            deserializer.configure(consumerFactory.getConfigurationProperties(), false);
+
+            for (int i = 0; i < properties.getIterations(); i++) {
+                WebhookEvent event = sampleEvent(i);
+                byte[] body = jsonUtil.toJsonBytes(event.getPayload());
+
+                // embedded json records, then opaque and binary ones
+                RecordHeaders headers = new RecordHeaders();
+                byte[] embedded = serializer.serialize(TOPIC, headers, event);
+                deserializer.deserialize(TOPIC, headers, embedded);
+
+                event.setPayload(null);
+                event.setRawPayload(body);
+                headers = new RecordHeaders();
+                byte[] opaque = serializer.serialize(TOPIC, headers, event);
+                deserializer.deserialize(TOPIC, headers, opaque);
+
+                event.setBinaryEnvelope(true);
+                headers = new RecordHeaders();
+                byte[] binary = serializer.serialize(TOPIC, headers, event);
+                deserializer.deserialize(TOPIC, headers, binary);
+
+                PayloadCodec.Encoded encoded = PayloadCodec.encode(body, 0);
+                PayloadCodec.decode(encoded.codec(), encoded.originalSize(), encoded.data());
+                PayloadCodec.hash(body);
+            }
+        }
+    }
+
+    /**
+     * loads the default ssl context (providers, trust store): most receivers are https.
+     */
+    private static void warmTls() throws NoSuchAlgorithmException {
+        SSLContext.getDefault().createSSLEngine().getSupportedCipherSuites();
+    }
+
+    private void warmHttpClient(long deadline) throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            URI uri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+            byte[] body = jsonUtil.toJsonBytes(sampleEvent(0).getPayload());
+
+            for (int sent = 0; sent < properties.getIterations(); sent += CONCURRENT_REQUESTS) {
+                List<CompletableFuture<Integer>> requests = new ArrayList<>(CONCURRENT_REQUESTS);
+                for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+                    requests.add(engine.sendDirect(uri, body));
+                }
+                CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new))
+                        .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static WebhookEvent sampleEvent(int i) {
+        WebhookEvent event = new WebhookEvent();
+        event.setEventId("warmup-" + i);
+        event.setClientId("warmup");
+        event.setTargetUrl("http://localhost/warmup");
+        event.setPayload(Map.of("type", "warmup", "sequence", i,
+                "data", "warmup payload ".repeat(16), "tags", List.of("a", "b")));
+        event.setTraceId("warmup-trace");
+        event.setIngestedAt(System.currentTimeMillis());
+        return event;
+    }
+}
@@ -0,0 +1,302 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import dev.gabriel.consumer_worker.config.DestinationProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * bounded cache of the destinations deliveries are posted to.
+ * <p>
+ * a target url is parsed once, not on every delivery, and its host is tracked on its own:
+ * the addresses it resolves to and its delivery stats (count, failures, latency). both maps
+ * are bounded in size and drop the entries idle for the idle timeout, so memory stays flat
+ * whatever the number of distinct urls. every delivery touches the host of its url too, so a
+ * busy host is not dropped (with its stats) while its parsed urls are still in use.
+ * </p>
+ * <p>
+ * hosts are resolved off the delivery path, when first seen and again in the background once
+ * their addresses are older than the dns ttl, so the address cache of the jvm (which the http
+ * client resolves through) is warm when the delivery starts. a lookup that fails keeps the
+ * last known addresses, and a connection error makes the host be resolved again right away,
+ * to pick up a receiver that failed over to other addresses.
+ * </p>
+ * <p>
+ * the stats rank the hosts for the {@link DestinationPrewarmer}.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DestinationCache {
+
+    private static final int RESOLVER_THREADS = 2;
+    private static final int RESOLVER_QUEUE = 1_000;
+    /** weight of the last sample in the latency average. */
+    private static final double LATENCY_ALPHA = 0.2;
+
+    private final long dnsTtlNanos;
+    private final Cache<String, Destination> urls;
+    private final Cache<String, Host> hosts;
+    private final ThreadPoolExecutor resolver;
+
+    @Autowired
+    public DestinationCache(DestinationProperties properties) {
+        this(properties, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker time source of the idle timeout, replaced in tests.
+     */
+    DestinationCache(DestinationProperties properties, Ticker ticker) {
+        this.dnsTtlNanos = properties.getDnsTtl().toNanos();
+        this.urls = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxUrls())
+                .expireAfterAccess(properties.getIdleTimeout())
+                .ticker(ticker)
+                .build();
+        this.hosts = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxHosts())
+                .expireAfterAccess(properties.getIdleTimeout())
+                .ticker(ticker)
+                .build();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.resolver = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(RESOLVER_QUEUE), runnable -> {
+            Thread thread = new Thread(runnable, "destination-resolver-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * returns the parsed destination of a target url, parsing it on first use.
+     *
+     * @param targetUrl the target url of an event.
+     * @return the destination, with the parsing error if the url is invalid.
+     */
+    public Destination destinationFor(String targetUrl) {
+        Destination destination = urls.get(targetUrl, this::parse);
+        Host host = destination.host;
+        if (host == null) return destination;
+
+        // touches the host, the url alone would leave it idle since its parse
+        if (hosts.get(host.key, key -> host) != host) {
+            // dropped (its size bound) and tracked again since, for another url: use that one
+            urls.invalidate(targetUrl);
+            destination = urls.get(targetUrl, this::parse);
+        }
+        if (destination.host.lastUrl != destination.uri) {
+            destination.host.lastUrl = destination.uri;
+        }
+        destination.host.resolveIfStale();
+        return destination;
+    }
+
+    /**
+     * @param limit max hosts returned.
+     * @return the hosts with the most deliveries, busiest first.
+     */
+    public List<Host> busiestHosts(int limit) {
+        return hosts.asMap().values().stream()
+                .filter(host -> host.deliveries() > 0)
+                .sorted(Comparator.comparingLong(Host::deliveries).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    @PreDestroy
+    void close() {
+        resolver.shutdownNow();
+    }
+
+    private Destination parse(String targetUrl) {
+        URI uri;
+        try {
+            uri = URI.create(targetUrl);
+        } catch (IllegalArgumentException e) {
+            // invalid urls are cached too, they fail on every delivery anyway
+            return new Destination(null, null, e);
+        }
+        if (uri.getHost() == null) {
+            return new Destination(uri, null, null);
+        }
+        String key = uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+        return new Destination(uri, hosts.get(key, k -> new Host(k, uri)), null);
+    }
+
+    /**
+     * a parsed target url.
+     */
+    public static final class Destination {
+
+        private final URI uri;
+        private final Host host;
+        private final IllegalArgumentException error;
+
+        private Destination(URI uri, Host host, IllegalArgumentException error) {
+            this.uri = uri;
+            this.host = host;
+            this.error = error;
+        }
+
+        /**
+         * @return the parsed url, null if it is invalid.
+         */
+        public URI uri() {
+            return uri;
+        }
+
+        /**
+         * @return the host of the url, null if the url is invalid or has no host.
+         */
+        public Host host() {
+            return host;
+        }
+
+        /**
+         * @return why the url could not be parsed, null if it is valid.
+         */
+        public IllegalArgumentException error() {
+            return error;
+        }
+    }
+
+    /**
+     * a target host (scheme, name and port): its resolved addresses and delivery stats.
+     * <p>
+     * the stats are updated without locking, the latency average is approximate under
+     * concurrent updates.
+     * </p>
+     */
+    public final class Host {
+
+        private final String key;
+        private final String name;
+        private final int port;
+        /** last url delivered to on the host, the one connections are warmed with. */
+        private volatile URI lastUrl;
+        private final LongAdder deliveries = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile double latencyNanos;
+        private volatile List<InetAddress> addresses = List.of();
+        /** when the addresses were last looked up, 0 to look them up on next use. */
+        private volatile long resolvedAt;
+        private final AtomicBoolean resolving = new AtomicBoolean();
+
+        private Host(String key, URI uri) {
+            this.key = key;
+            this.name = uri.getHost();
+            this.port = uri.getPort();
+            this.lastUrl = uri;
+        }
+
+        /**
+         * records the outcome of a delivery to the host.
+         *
+         * @param rttNanos time from sending the request to its outcome.
+         * @param success  whether the host answered with a 2xx status.
+         */
+        public void record(long rttNanos, boolean success) {
+            deliveries.increment();
+            if (!success) {
+                failures.increment();
+            }
+            double previous = latencyNanos;
+            latencyNanos = previous == 0 ? rttNanos : previous + LATENCY_ALPHA * (rttNanos - previous);
+        }
+
+        /**
+         * the host could not be connected to: its addresses are looked up again right away.
+         */
+        public void onConnectFailure() {
+            resolvedAt = 0;
+            resolveIfStale();
+        }
+
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the port of the url, -1 when it has none (the default port of the scheme).
+         */
+        public int port() {
+            return port;
+        }
+
+        /**
+         * @return the last target url delivered to on the host, to open connections to it with
+         * a request its receiver expects rather than one to an arbitrary path.
+         */
+        public URI lastUrl() {
+            return lastUrl;
+        }
+
+        public long deliveries() {
+            return deliveries.sum();
+        }
+
+        public long failures() {
+            return failures.sum();
+        }
+
+        /**
+         * @return the moving average of the delivery round trip, in nanoseconds.
+         */
+        public long latencyNanos() {
+            return (long) latencyNanos;
+        }
+
+        /**
+         * @return the addresses the host resolved to, empty until the first lookup completed.
+         */
+        public List<InetAddress> addresses() {
+            return addresses;
+        }
+
+        /**
+         * looks the addresses up in the background if they are older than the dns ttl.
+         */
+        void resolveIfStale() {
+            long resolved = resolvedAt;
+            if (resolved != 0 && System.nanoTime() - resolved < dnsTtlNanos) return;
+            if (!resolving.compareAndSet(false, true)) return;
+            try {
+                resolver.execute(this::resolve);
+            } catch (RejectedExecutionException e) {
+                // too many lookups queued (or shutting down), the next delivery tries again
+                resolving.set(false);
+            }
+        }
+
+        private void resolve() {
+            try {
+                addresses = List.of(InetAddress.getAllByName(name));
+            } catch (UnknownHostException e) {
+                log.warn("Failed to resolve {}, keeping {} known addresses: {}", name, addresses.size(), e.getMessage());
+            } finally {
+                // a failed lookup waits for the ttl too, instead of being retried on every delivery
+                resolvedAt = System.nanoTime();
+                resolving.set(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.IsolationProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * bounded registry of circuit breakers and bulkheads, one pair per destination.
+ * <p>
+ * a destination is a target host or a client, depending on {@code webhook.delivery.isolation.key}.
+ * every pair is created on first use from the template in application.yml, so a dead endpoint
+ * only opens its own breaker while healthy destinations keep full throughput.
+ * </p>
+ * <p>
+ * a full bulkhead doesn't reject: the delivery waits for a permit without holding a thread, and
+ * the lane of its client waits with it, so a saturated destination slows its own clients down
+ * (and, once the dispatcher is full, the listener) instead of sending their events to the retry
+ * tiers. only a delivery that waited longer than {@code max-wait} goes to the fallback.
+ * </p>
+ * <p>
+ * a periodic sweep drops the entries idle for longer than the idle timeout, then the least
+ * recently used ones while the registry is past {@code maxDestinations}, keeping memory flat with
+ * tens of thousands of destinations. a guard still in use is never dropped, whatever its age: one
+ * holding bulkhead permits or with callers waiting for them, or whose breaker is not closed, since
+ * a new guard would let through the calls the old one is holding back.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DestinationGuardRegistry {
+
+    private final IsolationProperties properties;
+    private final DestinationCache destinations;
+    private final CircuitBreakerConfig circuitBreakerConfig;
+    private final BulkheadConfig bulkheadConfig;
+    private final Map<String, DestinationGuard> guards = new ConcurrentHashMap<>();
+
+    public DestinationGuardRegistry(IsolationProperties properties, DestinationCache destinations) {
+        this.properties = properties;
+        this.destinations = destinations;
+
+        IsolationProperties.CircuitBreaker breaker = properties.getCircuitBreaker();
+        this.circuitBreakerConfig = CircuitBreakerConfig.custom()
+                .slidingWindowSize(breaker.getSlidingWindowSize())
+                .minimumNumberOfCalls(breaker.getMinimumNumberOfCalls())
+                .permittedNumberOfCallsInHalfOpenState(breaker.getPermittedNumberOfCallsInHalfOpenState())
+                .automaticTransitionFromOpenToHalfOpenEnabled(breaker.isAutomaticTransitionFromOpenToHalfOpenEnabled())
+                .waitDurationInOpenState(breaker.getWaitDurationInOpenState())
+                .failureRateThreshold(breaker.getFailureRateThreshold())
+                .build();
+
+        this.bulkheadConfig = BulkheadConfig.custom()
+                .maxConcurrentCalls(properties.getBulkhead().getMaxConcurrentCalls())
+                .maxWaitDuration(Duration.ZERO) // never block a thread, callers wait in the guard instead
+                .build();
+    }
+
+    /**
+     * returns the breaker/bulkhead pair protecting the destination of the given event.
+     *
+     * @param event the event about to be delivered.
+     * @return the guard of its destination, created if needed.
+     */
+    public DestinationGuard guardFor(WebhookEvent event) {
+        String key = destinationKey(event);
+        DestinationGuard guard = guards.get(key);
+        if (guard == null) {
+            guard = guards.computeIfAbsent(key, this::createGuard);
+        }
+        guard.touch();
+        return guard;
+    }
+
+    /**
+     * drops the destinations that had no delivery within the idle timeout, then the least
+     * recently used ones past {@code maxDestinations}. guards in use are kept.
+     */
+    @Scheduled(fixedDelayString = "${webhook.delivery.isolation.sweep-interval:60s}")
+    public void evictIdle() {
+        int before = guards.size();
+        long threshold = System.nanoTime() - properties.getIdleTimeout().toNanos();
+        guards.forEach((key, guard) -> {
+            if (guard.lastUsed - threshold < 0) {
+                evict(key, current -> current.lastUsed - threshold < 0);
+            }
+        });
+
+        int overflow = guards.size() - properties.getMaxDestinations();
+        if (overflow > 0) {
+            // evict a 10% margin at once so the next sweeps don't have to
+            int toEvict = overflow + properties.getMaxDestinations() / 10;
+            guards.entrySet().stream()
+                    .filter(entry -> !entry.getValue().isInUse())
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                    .limit(toEvict)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(key -> evict(key, current -> true));
+        }
+
+        int evicted = before - guards.size();
+        if (evicted > 0) {
+            log.debug("Evicted {} destinations, {} remaining", evicted, guards.size());
+        }
+    }
+
+    /**
+     * drops the guard if it still matches and is not in use, checked under the lock of its entry
+     * since a delivery may have taken it after it was picked.
+     */
+    private void evict(String key, Predicate<DestinationGuard> evictable) {
+        guards.computeIfPresent(key, (k, guard) -> evictable.test(guard) && !guard.isInUse() ? null : guard);
+    }
+
+    private DestinationGuard createGuard(String key) {
+        return new DestinationGuard(
+                CircuitBreaker.of(key, circuitBreakerConfig),
+                Bulkhead.of(key, bulkheadConfig),
+                properties.getBulkhead().getMaxWait());
+    }
+
+    private String destinationKey(WebhookEvent event) {
+        if (properties.getKey() == IsolationProperties.Key.CLIENT) {
+            return "client:" + event.getClientId();
+        }
+        // invalid urls fail on delivery anyway, group them by their raw value
+        DestinationCache.Host host = destinations.destinationFor(event.getTargetUrl()).host();
+        return host != null ? "host:" + host.name() + ":" + host.port() : "url:" + event.getTargetUrl();
+    }
+
+    /**
+     * circuit breaker and bulkhead of a single destination.
+     * <p>
+     * follows the state transitions of its breaker, to tell how long the destination has been
+     * failing and to run the actions waiting for the breaker to let calls through again.
+     * </p>
+     */
+    @Getter
+    public static final class DestinationGuard {
+
+        private final CircuitBreaker circuitBreaker;
+        private final Bulkhead bulkhead;
+        private volatile long lastUsed = System.nanoTime();
+        /** when the breaker left the closed state, 0 while closed. guarded by this. */
+        @Getter(AccessLevel.NONE)
+        private long unhealthySince;
+        /** start and end of the past periods the breaker was not closed, oldest first. guarded by this. */
+        @Getter(AccessLevel.NONE)
+        private final Deque<long[]> unhealthyPeriods = new ArrayDeque<>();
+        private final Queue<Runnable> waitingForCalls = new ConcurrentLinkedQueue<>();
+        @Getter(AccessLevel.NONE)
+        private final Duration maxWait;
+        /** callers waiting for a bulkhead permit, in arrival order. */
+        @Getter(AccessLevel.NONE)
+        private final Queue<CompletableFuture<Void>> waitingForPermits = new ConcurrentLinkedQueue<>();
+
+        private DestinationGuard(CircuitBreaker circuitBreaker, Bulkhead bulkhead, Duration maxWait) {
+            this.circuitBreaker = circuitBreaker;
+            this.bulkhead = bulkhead;
+            this.maxWait = maxWait;
+            circuitBreaker.getEventPublisher().onStateTransition(event -> {
+                CircuitBreaker.State to = event.getStateTransition().getToState();
+                synchronized (this) {
+                    if (to == CircuitBreaker.State.CLOSED) {
+                        if (unhealthySince != 0) {
+                            unhealthyPeriods.addLast(new long[]{unhealthySince, System.nanoTime()});
+                        }
+                        unhealthySince = 0;
+                    } else if (unhealthySince == 0) {
+                        unhealthySince = System.nanoTime();
+                    }
+                }
+                if (to != CircuitBreaker.State.OPEN) {
+                    runWaiting();
+                }
+            });
+        }
+
+        /**
+         * @return true while the breaker rejects every call (open, waiting for half-open).
+         */
+        public boolean isOpen() {
+            return circuitBreaker.getState() == CircuitBreaker.State.OPEN;
+        }
+
+        /**
+         * @return true while the guard holds state a new one would lose: bulkhead permits taken,
+         * callers waiting for one or for the breaker, or a breaker that is not closed.
+         */
+        boolean isInUse() {
+            return bulkhead.getMetrics().getAvailableConcurrentCalls() < bulkhead.getBulkheadConfig().getMaxConcurrentCalls()
+                    || !waitingForPermits.isEmpty()
+                    || !waitingForCalls.isEmpty()
+                    || circuitBreaker.getState() != CircuitBreaker.State.CLOSED;
+        }
+
+        /**
+         * @param window how far back to look.
+         * @return how long the breaker was not closed within the window, the current open/half-open
+         * cycles included. a destination flapping between closed and open adds up its periods
+         * instead of starting over on every close.
+         */
+        public synchronized Duration unhealthyWithin(Duration window) {
+            long now = System.nanoTime();
+            long windowStart = now - window.toNanos();
+            while (!unhealthyPeriods.isEmpty() && unhealthyPeriods.peekFirst()[1] - windowStart <= 0) {
+                unhealthyPeriods.removeFirst();
+            }
+            long total = 0;
+            for (long[] period : unhealthyPeriods) {
+                total += period[1] - Math.max(period[0], windowStart);
+            }
+            if (unhealthySince != 0) {
+                total += now - Math.max(unhealthySince, windowStart);
+            }
+            return Duration.ofNanos(total);
+        }
+
+        /**
+         * runs the action once the breaker lets calls through again (half-open or closed), right
+         * away if it already does. the action runs on the thread of the state transition.
+         */
+        public void whenPermitting(Runnable action) {
+            waitingForCalls.add(action);
+            if (!isOpen()) {
+                runWaiting();
+            }
+        }
+
+        /**
+         * runs the call once the bulkhead has a permit for it, and releases the permit when the
+         * returned stage completes. the call runs right away when a permit is free, otherwise on
+         * the thread of the call that frees one.
+         *
+         * @param call starts the guarded work.
+         * @return the stage of the call, failed with a {@link BulkheadFullException} if no permit
+         * was freed within the max wait.
+         */
+        public <T> CompletableFuture<T> withPermit(Supplier<? extends CompletionStage<T>> call) {
+            return acquirePermit().thenCompose(permit -> {
+                CompletionStage<T> stage;
+                try {
+                    stage = call.get();
+                } catch (RuntimeException e) {
+                    releasePermit();
+                    throw e;
+                }
+                return stage.whenComplete((result, e) -> releasePermit());
+            });
+        }
+
+        private CompletableFuture<Void> acquirePermit() {
+            if (waitingForPermits.isEmpty() && bulkhead.tryAcquirePermission()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waitingForPermits.add(waiter);
+            waiter.orTimeout(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            // a permit may have been released before the waiter was queued
+            handOverPermits();
+            return waiter.exceptionallyCompose(e -> {
+                waitingForPermits.remove(waiter);
+                return CompletableFuture.failedFuture(BulkheadFullException.createBulkheadFullException(bulkhead));
+            });
+        }
+
+        private void releasePermit() {
+            bulkhead.onComplete();
+            handOverPermits();
+        }
+
+        /**
+         * gives the free permits to the oldest waiters.
+         */
+        private void handOverPermits() {
+            CompletableFuture<Void> waiter;
+            while ((waiter = waitingForPermits.peek()) != null) {
+                if (!bulkhead.tryAcquirePermission()) return;
+                if (!waitingForPermits.remove(waiter) || !waiter.complete(null)) {
+                    // another thread handed it a permit, or it timed out in between
+                    bulkhead.onComplete();
+                }
+            }
+        }
+
+        private void runWaiting() {
+            Runnable action;
+            while ((action = waitingForCalls.poll()) != null) {
+                action.run();
+            }
+        }
+
+        private void touch() {
+            lastUsed = System.nanoTime();
+        }
+    }
+}
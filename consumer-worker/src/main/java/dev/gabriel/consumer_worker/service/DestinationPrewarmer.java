@@ -0,0 +1,91 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DestinationProperties;
+import dev.gabriel.consumer_worker.config.HttpDeliveryProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * opens connections to the busiest destinations as soon as partitions are assigned.
+ * <p>
+ * after a rebalance, the events of the new partitions arrive in a burst, and the first
+ * deliveries to each host would pay for the dns lookup, the tcp and tls handshakes, all at
+ * once. the hosts with the most deliveries in the {@link DestinationCache} get a few pooled
+ * connections opened in the background instead, while the listener fetches its first records.
+ * a fresh instance has no stats yet and warms nothing, its warmup is the {@link DeliveryWarmup}.
+ * </p>
+ * <p>
+ * the connections are opened with HEAD requests to the last target url of each host, the
+ * endpoint its receiver serves, not an arbitrary path. receivers still see these requests,
+ * which some reject or count, so prewarming is off unless enabled.
+ * </p>
+ */
+@Component
+@Slf4j
+public class DestinationPrewarmer {
+
+    private final DestinationProperties.Prewarm properties;
+    private final int connectionsPerHost;
+    private final DestinationCache destinations;
+    private final HttpDeliveryEngine engine;
+
+    public DestinationPrewarmer(DestinationProperties properties, HttpDeliveryProperties httpProperties,
+                                DestinationCache destinations, HttpDeliveryEngine engine) {
+        this.properties = properties.getPrewarm();
+        // a single multiplexed connection per host with http/2
+        this.connectionsPerHost = httpProperties.isHttp2Enabled()
+                ? 1
+                : Math.min(this.properties.getConnectionsPerHost(), httpProperties.getMaxConnectionsPerHost());
+        this.destinations = destinations;
+        this.engine = engine;
+    }
+
+    /**
+     * wraps a rebalance listener, so the busiest destinations are warmed on every assignment.
+     */
+    public ConsumerAwareRebalanceListener rebalanceListener(ConsumerAwareRebalanceListener delegate) {
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                delegate.onPartitionsRevokedBeforeCommit(consumer, partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                delegate.onPartitionsLost(consumer, partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                delegate.onPartitionsAssigned(consumer, partitions);
+                if (!partitions.isEmpty()) {
+                    prewarm();
+                }
+            }
+        };
+    }
+
+    /**
+     * opens connections to the busiest hosts, without waiting for them.
+     */
+    public void prewarm() {
+        if (!properties.isEnabled() || connectionsPerHost <= 0) return;
+
+        List<DestinationCache.Host> hosts = destinations.busiestHosts(properties.getTopHosts());
+        if (hosts.isEmpty()) return;
+
+        long start = System.nanoTime();
+        CompletableFuture.allOf(hosts.stream()
+                        .map(host -> engine.openConnections(host.lastUrl(), connectionsPerHost))
+                        .toArray(CompletableFuture[]::new))
+                .whenComplete((result, error) -> log.info("Opened connections to {} busiest hosts in {} ms",
+                        hosts.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+}
@@ -0,0 +1,342 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.LaneProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.util.HeavyHitters;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * moves the heaviest clients out of the shared partitions, to the hot lane topic.
+ * <p>
+ * the clientId is the partition key, so a client sending much more than the others fills
+ * the in-flight budget of the {@link KeyOrderedDispatcher} of its partition with its own
+ * deliveries, and every small client of that partition waits behind it. the rate of every
+ * client is estimated by {@link HeavyHitters} (count-min sketch, bounded memory) as records
+ * are consumed; once a client goes above the enter rate, its records are forwarded to the hot
+ * lane topic instead of being delivered, which only costs a produce. the {@link HotLaneListener}
+ * delivers them with its own consumers, threads and in-flight budget.
+ * </p>
+ * <p>
+ * the order of a client is kept across the switches, without any coordination between the
+ * workers:
+ * <ul>
+ *     <li>the forward of a record runs in the dispatcher lane of its client, so it only happens
+ *     once the earlier deliveries of the client completed;</li>
+ *     <li>a record that could not be forwarded is not delivered from the main topic instead,
+ *     the hot lane may still hold earlier records of its client: it fails, and is forwarded
+ *     again once the dispatcher rewound its partition;</li>
+ *     <li>a client whose rate dropped below the exit rate keeps being forwarded until the hot
+ *     lane group committed past the last record forwarded for it, so nothing it forwarded is
+ *     still pending when its records are delivered from the main topic again;</li>
+ *     <li>the forwarded clients of a partition are written in the metadata of its offset
+ *     commits, and read back by the next owner of the partition after a rebalance.</li>
+ * </ul>
+ * </p>
+ */
+@Component
+@Slf4j
+public class HotClientLanes {
+
+    /** consumer group of the hot lane. */
+    public static final String GROUP_ID = "webhook-hot-lane-group";
+
+    /** offset commit metadata is limited by the broker (offset.metadata.max.bytes, 4096 by default). */
+    private static final int MAX_METADATA_CHARS = 3_500;
+
+    private final LaneProperties properties;
+    private final KafkaTemplate<String, WebhookEvent> kafkaTemplate;
+    private final WebhookDeliveryService deliveryService;
+    private final KafkaAdmin kafkaAdmin;
+    private final JsonUtil jsonUtil;
+    private final HeavyHitters rates;
+    private final Map<String, ClientLane> clients = new ConcurrentHashMap<>();
+    private final Counter forwarded;
+    private volatile Map<Integer, Long> laneCommitted = Map.of();
+    private volatile long currentWindowStart = System.nanoTime();
+    private volatile long previousWindowStart = currentWindowStart;
+    private Admin admin;
+
+    public HotClientLanes(LaneProperties properties, KafkaTemplate<String, WebhookEvent> kafkaTemplate,
+                          WebhookDeliveryService deliveryService, KafkaAdmin kafkaAdmin, JsonUtil jsonUtil,
+                          MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.kafkaTemplate = kafkaTemplate;
+        this.deliveryService = deliveryService;
+        this.kafkaAdmin = kafkaAdmin;
+        this.jsonUtil = jsonUtil;
+        this.rates = new HeavyHitters(properties.getSketchWidth(), properties.getSketchDepth(),
+                properties.getMaxHotClients() * 4);
+        this.forwarded = Counter.builder("webhook.lanes.forwarded")
+                .description("Records moved from the main topic to the hot lane")
+                .register(meterRegistry);
+        Gauge.builder("webhook.lanes.clients", clients, Map::size)
+                .description("Clients whose records go through the hot lane, cooling down ones included")
+                .register(meterRegistry);
+    }
+
+    /**
+     * counts the record for the rate of its client, and tells whether it goes through
+     * {@link #forwardOrDeliver} instead of the usual delivery. called by the listener thread,
+     * in partition order.
+     */
+    public boolean isRouted(ConsumerRecord<String, WebhookEvent> record) {
+        if (!properties.isEnabled() || record.key() == null) return false;
+
+        String clientId = record.key();
+        double rate = rate(rates.add(clientId));
+        // only this thread adds the clients of the partition, nothing to update for a cold one
+        if (rate < properties.getEnterRate() && !clients.containsKey(clientId)) return false;
+
+        boolean[] routed = new boolean[1];
+        clients.compute(clientId, (k, lane) -> {
+            if (lane == null) {
+                if (rate < properties.getEnterRate() || hotClients() >= properties.getMaxHotClients()) return null;
+                log.info("Client {} sends {} events/s, moving it to the hot lane", clientId, Math.round(rate));
+                lane = new ClientLane(new TopicPartition(record.topic(), record.partition()));
+                lane.hot = true;
+            } else if (lane.hot && rate < properties.getExitRate()) {
+                log.info("Client {} cooled down to {} events/s, moving it back once the hot lane caught up",
+                        clientId, Math.round(rate));
+                lane.hot = false;
+            } else if (!lane.hot && rate >= properties.getEnterRate()) {
+                lane.hot = true;
+            }
+            routed[0] = true;
+            return lane;
+        });
+        return routed[0];
+    }
+
+    /**
+     * forwards the record to the hot lane, or delivers it if its client is back on the main topic.
+     * runs in the dispatcher lane of the client, after its earlier records completed.
+     *
+     * @return a stage completed once the hot lane stored the record, or once it was delivered.
+     * failed if the record could not be forwarded: it is not delivered from here while the hot
+     * lane may still hold earlier records of its client, the dispatcher rewinds its partition
+     * and the forward is tried again.
+     */
+    public CompletionStage<?> forwardOrDeliver(ConsumerRecord<String, WebhookEvent> record) {
+        WebhookEvent event = record.value();
+        boolean[] drained = new boolean[1];
+        ClientLane lane = clients.computeIfPresent(record.key(), (k, current) -> {
+            if (current.hot || !drained(current)) return current;
+            log.info("Client {} is back on the main topic", k);
+            drained[0] = true;
+            return null;
+        });
+        if (drained[0]) {
+            return deliveryService.deliverWebhook(event);
+        }
+        if (lane == null) {
+            // forgotten with its partition, the next owner knows where the client is
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    "Partition of client " + record.key() + " was revoked before event " + event.getEventId() + " was forwarded"));
+        }
+
+        return kafkaTemplate.send(new ProducerRecord<>(properties.getTopic(), record.key(), event))
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.warn("Failed to forward event {} to the hot lane, it will be retried: {}",
+                                event.getEventId(), e.getMessage());
+                        return;
+                    }
+                    lane.lanePartition = result.getRecordMetadata().partition();
+                    lane.laneOffset = result.getRecordMetadata().offset();
+                    forwarded.increment();
+                });
+    }
+
+    /**
+     * @return the hot lane position of the forwarded clients of the partition, stored with its
+     * committed offset so the next owner keeps forwarding them until the lane caught up.
+     * null when no client of the partition is forwarded.
+     */
+    public String commitMetadata(TopicPartition partition) {
+        Map<String, List<Long>> forwardedClients = new LinkedHashMap<>();
+        int length = 0;
+        for (Map.Entry<String, ClientLane> entry : clients.entrySet()) {
+            ClientLane lane = entry.getValue();
+            if (!lane.partition.equals(partition)) continue;
+            length += entry.getKey().length() + 48;
+            if (length > MAX_METADATA_CHARS) {
+                log.warn("Too many hot clients in partition {} to hand them over on rebalance", partition);
+                break;
+            }
+            forwardedClients.put(entry.getKey(), List.of((long) lane.lanePartition, lane.laneOffset));
+        }
+        return forwardedClients.isEmpty() ? null : jsonUtil.toJson(forwardedClients);
+    }
+
+    /**
+     * wraps the rebalance listener of the dispatcher: the forwarded clients of assigned partitions
+     * are read from the committed metadata, and those of revoked partitions are forgotten once
+     * the dispatcher committed them.
+     */
+    public ConsumerAwareRebalanceListener rebalanceListener(ConsumerAwareRebalanceListener dispatcherListener) {
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                dispatcherListener.onPartitionsRevokedBeforeCommit(consumer, partitions);
+                forget(partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                dispatcherListener.onPartitionsLost(consumer, partitions);
+                forget(partitions);
+            }
+
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                dispatcherListener.onPartitionsAssigned(consumer, partitions);
+                if (properties.isEnabled() && !partitions.isEmpty()) {
+                    restore(consumer.committed(new HashSet<>(partitions)));
+                }
+            }
+        };
+    }
+
+    /**
+     * starts a new rate window.
+     */
+    @Scheduled(fixedDelayString = "${webhook.lanes.window:10s}")
+    public void rotate() {
+        rates.rotate();
+        previousWindowStart = currentWindowStart;
+        currentWindowStart = System.nanoTime();
+        if (log.isDebugEnabled()) {
+            log.debug("Heaviest clients: {}", rates.top());
+        }
+    }
+
+    /**
+     * reads the committed offsets of the hot lane group, while clients are waiting for it to
+     * catch up before going back to the main topic.
+     */
+    @Scheduled(fixedDelayString = "${webhook.lanes.drain-check-interval:2s}")
+    public void refreshLaneOffsets() {
+        if (clients.values().stream().allMatch(lane -> lane.hot)) return;
+        try {
+            Map<TopicPartition, OffsetAndMetadata> committed = admin().listConsumerGroupOffsets(GROUP_ID)
+                    .partitionsToOffsetAndMetadata()
+                    .get(properties.getDrainCheckInterval().toMillis(), TimeUnit.MILLISECONDS);
+            Map<Integer, Long> positions = new HashMap<>();
+            committed.forEach((partition, offset) -> {
+                if (offset != null && partition.topic().equals(properties.getTopic())) {
+                    positions.put(partition.partition(), offset.offset());
+                }
+            });
+            laneCommitted = positions;
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            log.warn("Failed to read the committed offsets of the hot lane: {}", e.toString());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (admin != null) {
+            admin.close(Duration.ofSeconds(1));
+        }
+    }
+
+    private synchronized Admin admin() {
+        if (admin == null) {
+            admin = Admin.create(kafkaAdmin.getConfigurationProperties());
+        }
+        return admin;
+    }
+
+    /**
+     * @param count records of the client since the start of the previous window.
+     * @return events per second, the first window counting as a full one.
+     */
+    private double rate(long count) {
+        long span = Math.max(System.nanoTime() - previousWindowStart, properties.getWindow().toNanos());
+        return count * 1e9 / span;
+    }
+
+    private long hotClients() {
+        return clients.values().stream().filter(lane -> lane.hot).count();
+    }
+
+    /**
+     * @return true once the hot lane committed every record forwarded for the client.
+     */
+    private boolean drained(ClientLane lane) {
+        if (lane.laneOffset < 0) return true;
+        return laneCommitted.getOrDefault(lane.lanePartition, -1L) > lane.laneOffset;
+    }
+
+    private void forget(Collection<TopicPartition> partitions) {
+        clients.values().removeIf(lane -> partitions.contains(lane.partition));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void restore(Map<TopicPartition, OffsetAndMetadata> committed) {
+        committed.forEach((partition, offset) -> {
+            if (offset == null || offset.metadata() == null || !offset.metadata().startsWith("{")) return;
+            try {
+                Map<String, List<Number>> forwardedClients = jsonUtil.fromJson(offset.metadata(), Map.class);
+                forwardedClients.forEach((clientId, position) -> {
+                    // cooling down until the lane caught up, the rate decides whether it stays hot
+                    ClientLane lane = new ClientLane(partition);
+                    lane.lanePartition = position.get(0).intValue();
+                    lane.laneOffset = position.get(1).longValue();
+                    clients.put(clientId, lane);
+                });
+                log.info("Clients {} of partition {} were forwarded to the hot lane by its previous owner",
+                        forwardedClients.keySet(), partition);
+            } catch (RuntimeException e) {
+                log.warn("Ignoring unreadable commit metadata of partition {}: {}", partition, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * a client whose records go through the hot lane.
+     */
+    private static final class ClientLane {
+
+        /** main topic partition of the client. */
+        private final TopicPartition partition;
+        /** false once cooled down, until the hot lane caught up. */
+        private volatile boolean hot;
+        /** position in the hot lane of the last record forwarded, -1 if none was. */
+        private volatile int lanePartition = -1;
+        private volatile long laneOffset = -1;
+
+        private ClientLane(TopicPartition partition) {
+            this.partition = partition;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.stereotype.Service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * kafka consumer of the hot lane topic, where {@link HotClientLanes} moves the heaviest clients.
+ * <p>
+ * records are delivered like first attempts from the main topic (batched destinations included),
+ * through a dedicated {@link KeyOrderedDispatcher}: a hot client only competes with the other
+ * hot clients for threads and in-flight slots, never with the small ones. partitions are paused
+ * behind destinations with an open breaker and clients with a full lane the same way, see
+ * {@link OpenBreakerPauses}.
+ * </p>
+ */
+@Service
+@Slf4j
+public class HotLaneListener {
+
+    static final String LISTENER_ID = "webhookHotLaneListener";
+
+    private final WebhookDeliveryService deliveryService;
+    private final KeyOrderedDispatcher dispatcher;
+    private final DeliveryMetrics metrics;
+    private final DeliveryBatching batching;
+    private final OpenBreakerPauses pauses;
+
+    public HotLaneListener(WebhookDeliveryService deliveryService,
+                           @Qualifier("laneDispatcher") KeyOrderedDispatcher dispatcher,
+                           DeliveryMetrics metrics, DeliveryBatching batching, OpenBreakerPauses pauses) {
+        this.deliveryService = deliveryService;
+        this.dispatcher = dispatcher;
+        this.metrics = metrics;
+        this.batching = batching;
+        this.pauses = pauses;
+    }
+
+    /**
+     * consumes messages from the hot lane topic.
+     *
+     * @param records  the polled records.
+     * @param consumer the underlying kafka consumer, used to commit the processed offsets.
+     * @throws InterruptedException if interrupted while waiting for dispatch capacity.
+     */
+    @KafkaListener(id = LISTENER_ID, topics = "${webhook.lanes.topic:webhook.deliveries.hot}",
+            groupId = HotClientLanes.GROUP_ID, containerFactory = "laneListenerContainerFactory")
+    public void consume(List<ConsumerRecord<String, WebhookEvent>> records, Consumer<?, ?> consumer)
+            throws InterruptedException {
+        Set<TopicPartition> held = new HashSet<>();
+        for (ConsumerRecord<String, WebhookEvent> record : records) {
+            if (!held.isEmpty() && held.contains(new TopicPartition(record.topic(), record.partition()))) continue;
+            if (pauses.holdBackFullKey(LISTENER_ID, consumer, record, dispatcher)) {
+                held.add(new TopicPartition(record.topic(), record.partition()));
+                continue;
+            }
+
+            WebhookEvent event = record.value();
+            if (event == null) {
+                dispatcher.dispatch(record, () -> {
+                    log.error("Skipping undeserializable hot lane record {}-{}@{}",
+                            record.topic(), record.partition(), record.offset());
+                    return CompletableFuture.completedFuture(null);
+                });
+                continue;
+            }
+
+            if (pauses.holdBack(LISTENER_ID, consumer, record)) {
+                held.add(new TopicPartition(record.topic(), record.partition()));
+                continue;
+            }
+            metrics.recordQueueLag(event);
+            KeyOrderedDispatcher.Coalescing<WebhookEvent> coalescing = batching.coalescingFor(event);
+            if (coalescing != null) {
+                dispatcher.dispatch(record, coalescing, event, batching.bodySize(event));
+            } else {
+                dispatcher.dispatch(record, () -> deliveryService.deliverWebhook(event));
+            }
+        }
+        dispatcher.commit(consumer);
+    }
+
+    /**
+     * commits offsets of deliveries that finished after the last poll returned records.
+     */
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        dispatcher.commit(event.getConsumer());
+    }
+}
@@ -0,0 +1,320 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import dev.gabriel.consumer_worker.config.HttpClientKeepAlive;
+import dev.gabriel.consumer_worker.config.HttpDeliveryProperties;
+import dev.gabriel.consumer_worker.util.AdaptiveLimit;
+import dev.gabriel.consumer_worker.util.WeightedFairQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * asynchronous http engine used to post webhooks.
+ * <p>
+ * built on the jdk {@link HttpClient}, which keeps a pool of keep-alive connections per host
+ * and can multiplex requests over http/2. on top of it, every host gets a bounded number of
+ * concurrent requests: extra requests wait in a per-host queue without holding a thread,
+ * so the listener can pipeline as many deliveries as the dispatcher allows.
+ * </p>
+ * <p>
+ * the bound of each host is an {@link AdaptiveLimit}: it grows while the host answers quickly
+ * and shrinks on 429/503 responses and timeouts (and latency spikes, when enabled), so every receiver is pushed
+ * close to its real capacity without being knocked over.
+ * </p>
+ * <p>
+ * requests waiting for a slot of a busy host are served by the tier of their client (see
+ * {@link TenantTiers}), so a receiver shared by many tenants keeps answering the
+ * latency-sensitive ones first while the bulk ones drain with the slots left over.
+ * </p>
+ * <p>
+ * the limit and queue of a host are dropped once it had no request for {@code host-idle-timeout},
+ * so memory stays flat whatever the number of receivers. a host with requests running or waiting
+ * never expires: its idle timeout starts when the last of them is done.
+ * </p>
+ * <p>
+ * the keep-alive of idle connections is jvm-wide, read by the jdk once when its first client
+ * is created: {@link HttpClientKeepAlive} sets it on startup, before this engine exists. an
+ * engine built outside of the application (benchmarks) runs with the keep-alive of the jvm,
+ * and says so when it was not set.
+ * </p>
+ */
+@Component
+@Slf4j
+public class HttpDeliveryEngine {
+
+    private static final Duration IN_USE = Duration.ofNanos(Long.MAX_VALUE);
+
+    private final HttpClient client;
+    private final HttpDeliveryProperties properties;
+    private final TenantTiers tiers;
+    private final Cache<String, HostSlots> hosts;
+
+    @Autowired
+    public HttpDeliveryEngine(HttpDeliveryProperties properties, TenantTiers tiers) {
+        this(properties, tiers, Ticker.systemTicker());
+    }
+
+    /**
+     * @param ticker time source of the host idle timeout, replaced in tests.
+     */
+    HttpDeliveryEngine(HttpDeliveryProperties properties, TenantTiers tiers, Ticker ticker) {
+        this.properties = properties;
+        this.tiers = tiers;
+
+        // the expiry is set when a host is taken from idle or goes back to it (see acquire and
+        // done), both under the lock of its entry; lookups read the entry without touching it
+        Duration idleTimeout = properties.getHostIdleTimeout();
+        this.hosts = Caffeine.newBuilder()
+                .expireAfter(Expiry.<String, HostSlots>writing((host, slots) -> slots.inUse() ? IN_USE : idleTimeout))
+                .ticker(ticker)
+                .build();
+
+        if (System.getProperty(HttpClientKeepAlive.PROPERTY) == null) {
+            log.warn("{} is not set, idle connections are kept for the jdk default instead of {}",
+                    HttpClientKeepAlive.PROPERTY, properties.getKeepAlive());
+        }
+
+        this.client = HttpClient.newBuilder()
+                .version(properties.isHttp2Enabled() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(properties.getConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * posts a json body to the given uri.
+     * <p>
+     * the returned future completes with the http status code of the response (any status,
+     * error codes included), or exceptionally on connection errors and timeouts.
+     * </p>
+     *
+     * @param uri      the target url.
+     * @param body     the serialized json body (may be null for an empty body).
+     * @param clientId the client the request is sent for, its tier orders the wait for a slot.
+     * @return a future with the response status code.
+     */
+    public CompletableFuture<Integer> post(URI uri, byte[] body, String clientId) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        String host = hostKey(uri);
+        HostSlots slots = acquire(host);
+
+        slots.submit(tiers.tierOf(clientId), () -> {
+            if (result.isDone()) {
+                // total deadline expired while waiting for a slot
+                slots.release();
+                done(host, slots);
+                return;
+            }
+            int sample = slots.limit.startSample();
+            long start = System.nanoTime();
+            send(uri, body).whenComplete((status, error) -> {
+                // record before releasing, so the next request sees the updated limit
+                record(slots.limit, sample, System.nanoTime() - start, status, error);
+                slots.release();
+                done(host, slots);
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(status);
+                }
+            });
+        });
+
+        return result.orTimeout(properties.getTotalTimeout().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the hosts with a limit and a queue, idle ones included until they expire.
+     */
+    long trackedHosts() {
+        hosts.cleanUp();
+        return hosts.estimatedSize();
+    }
+
+    /**
+     * counts a request in the slots of its host, created when missing or expired. a host already
+     * in use is taken without locking; one that is idle is taken under the lock of its entry, so
+     * it can't expire between the lookup and the count and its expiry is lifted.
+     */
+    private HostSlots acquire(String host) {
+        HostSlots slots = hosts.policy().getIfPresentQuietly(host);
+        if (slots != null && slots.retainInUse()) return slots;
+
+        return hosts.asMap().compute(host, (key, current) -> {
+            HostSlots taken = current != null ? current : new HostSlots(newLimit(), tiers.newQueue());
+            taken.retain();
+            return taken;
+        });
+    }
+
+    /**
+     * uncounts a finished (or expired) request. the last one starts the idle timeout of the host,
+     * unless another request took it in the meantime.
+     */
+    private void done(String host, HostSlots slots) {
+        if (slots.unretain()) {
+            hosts.asMap().computeIfPresent(host, (key, current) -> current);
+        }
+    }
+
+    /**
+     * posts a body right away, outside of the per-host limits and their statistics. only for
+     * the {@link DeliveryWarmup}, real deliveries go through {@link #post(URI, byte[], String)}.
+     */
+    CompletableFuture<Integer> sendDirect(URI uri, byte[] body) {
+        return send(uri, body);
+    }
+
+    /**
+     * opens connections to a host ahead of its deliveries, with concurrent HEAD requests to a
+     * target url of the host (whatever their status) left in the keep-alive pool. like
+     * {@link #sendDirect}, outside of the per-host limits; only for the {@link DestinationPrewarmer}.
+     *
+     * @param targetUrl a url deliveries are posted to on the host.
+     * @param count     the connections to open.
+     * @return a future completed once every request completed, successfully or not.
+     */
+    CompletableFuture<Void> openConnections(URI targetUrl, int count) {
+        HttpRequest request = HttpRequest.newBuilder(targetUrl)
+                .timeout(properties.getReadTimeout())
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            requests[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .exceptionally(e -> null);
+        }
+        return CompletableFuture.allOf(requests);
+    }
+
+    private CompletableFuture<Integer> send(URI uri, byte[] body) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(properties.getReadTimeout())
+                    .header("Content-Type", "application/json")
+                    .POST(body != null ? HttpRequest.BodyPublishers.ofByteArray(body) : HttpRequest.BodyPublishers.noBody())
+                    .build();
+
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenApply(HttpResponse::statusCode);
+        } catch (Exception e) {
+            // invalid uri scheme, malformed header, etc.
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private AdaptiveLimit newLimit() {
+        HttpDeliveryProperties.AdaptiveConcurrency adaptive = properties.getAdaptiveConcurrency();
+        if (!adaptive.isEnabled()) {
+            return AdaptiveLimit.fixed(properties.getMaxConnectionsPerHost());
+        }
+        return new AdaptiveLimit(adaptive.getInitialLimit(), adaptive.getMinLimit(), properties.getMaxConnectionsPerHost(),
+                adaptive.getBackoffRatio(), adaptive.getLatencyTolerance(), adaptive.getLatencyFloor().toNanos());
+    }
+
+    /**
+     * feeds the outcome of a request to the limit of its host. connection errors are left to
+     * the circuit breaker, they say nothing about the load the host can take.
+     */
+    private static void record(AdaptiveLimit limit, int sample, long rttNanos, Integer status, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof HttpTimeoutException || cause instanceof TimeoutException) {
+                limit.onOverload(sample);
+            }
+        } else if (status == 429 || status == 503) {
+            limit.onOverload(sample);
+        } else {
+            limit.onResponse(sample, rttNanos);
+        }
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    /**
+     * caps the concurrent requests to a single host.
+     * <p>
+     * a request starts as soon as a slot is free, otherwise it waits in the queue (in the class
+     * of its tier) and is started by whichever request releases a slot. slots are counted
+     * lock-free, the queue only locks for the time of an add or a poll. when the limit shrinks, requests
+     * already running finish normally and no new one starts until enough slots are released.
+     * </p>
+     */
+    private static final class HostSlots {
+
+        private final AdaptiveLimit limit;
+        private final AtomicInteger active = new AtomicInteger();
+        /** requests submitted and not done yet, running or waiting. */
+        private final AtomicInteger users = new AtomicInteger();
+        private final WeightedFairQueue<Runnable> waiting;
+
+        private HostSlots(AdaptiveLimit limit, WeightedFairQueue<Runnable> waiting) {
+            this.limit = limit;
+            this.waiting = waiting;
+        }
+
+        boolean inUse() {
+            return users.get() > 0;
+        }
+
+        /** counts a request if the host is already in use, its expiry is lifted then. */
+        boolean retainInUse() {
+            for (int current = users.get(); current > 0; current = users.get()) {
+                if (users.compareAndSet(current, current + 1)) return true;
+            }
+            return false;
+        }
+
+        void retain() {
+            users.incrementAndGet();
+        }
+
+        /** @return true when this was the last request of the host. */
+        boolean unretain() {
+            return users.decrementAndGet() == 0;
+        }
+
+        void submit(int tier, Runnable request) {
+            waiting.add(tier, request);
+            drain();
+        }
+
+        void release() {
+            active.decrementAndGet();
+            drain();
+        }
+
+        private void drain() {
+            while (!waiting.isEmpty()) {
+                int current = active.get();
+                if (current >= limit.current()) return;
+                if (!active.compareAndSet(current, current + 1)) continue;
+
+                Runnable next = waiting.poll();
+                if (next == null) {
+                    active.decrementAndGet();
+                    continue;
+                }
+                next.run();
+            }
+        }
+    }
+}
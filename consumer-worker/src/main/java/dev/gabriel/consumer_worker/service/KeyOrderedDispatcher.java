@@ -0,0 +1,734 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DispatchProperties;
+import dev.gabriel.consumer_worker.util.WeightedFairQueue;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * runs deliveries for different record keys in parallel while keeping strict order per key.
+ * <p>
+ * every kafka key ({@code clientId}) gets its own lane: tasks of the same lane run one after
+ * the other, tasks of different lanes share a bounded thread pool. tasks are asynchronous, so
+ * a pool thread is only busy while a task is starting, not while its http call is in flight.
+ * a slow target url only holds back its own client instead of the whole partition.
+ * </p>
+ * <p>
+ * since records now complete out of order, the dispatcher also tracks the pending offsets of
+ * every partition. only the offset right below the lowest pending record is ever committed,
+ * so a crash never skips a record that was not fully processed.
+ * </p>
+ * <p>
+ * a task whose stage fails (e.g. the retry tier or the dead-letter topic could not be written)
+ * leaves its offset pending, and the tasks of its partition that did not start yet are dropped.
+ * on the next {@link #commit} the partition is rewound to its lowest pending offset, so the
+ * failed record and everything after it is fetched and dispatched again after the retry
+ * backoff. records that completed in the meantime may be delivered twice, never skipped.
+ * </p>
+ * <p>
+ * tasks dispatched with a {@link Coalescing} run together with the compatible tasks queued right
+ * behind them in their lane (same coalescing key), as a single task: records keep their order,
+ * and each one is still completed (and committed) on its own. a lane may linger up to the max
+ * delay of its head task for more compatible records to arrive.
+ * </p>
+ * <p>
+ * lanes ready to run wait for a pool thread in a {@link WeightedFairQueue}, by the tier of their
+ * key (see {@link TenantTiers}): when the pool is busy, the lanes of a latency-sensitive tier get
+ * their turns ahead of a crowd of bulk clients instead of queueing behind all of them. order
+ * within a key is untouched, a lane still runs one task at a time.
+ * </p>
+ * <p>
+ * a key may queue up to {@code maxPendingPerKey} records behind the one running. the listener
+ * asks {@link #hasRoom} before dispatching and holds back the partition of a full key, instead
+ * of letting a single client take the whole in-flight budget and block the listener thread for
+ * every other partition.
+ * </p>
+ * <p>
+ * one instance exists per listener (first attempts, retries, hot lane), each with its own pool
+ * and in-flight budget; see {@code DispatchConfig}.
+ * </p>
+ * <p>
+ * every owned partition exposes a {@code webhook.consumer.lag} gauge: records between the
+ * committed offset and the end of the log, so in-flight deliveries count as lag until they
+ * complete (unlike the fetch lag reported by the kafka client).
+ * </p>
+ */
+@Slf4j
+public class KeyOrderedDispatcher {
+
+    private final ThreadPoolExecutor executor;
+    private final TenantTiers tiers;
+    private final WeightedFairQueue<KeyLane> ready;
+    private final Semaphore inFlight;
+    private final DispatchProperties properties;
+    private final String name;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, KeyLane> lanes = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, PartitionOffsets> offsets = new ConcurrentHashMap<>();
+    private volatile Function<TopicPartition, String> commitMetadata = partition -> null;
+
+    /**
+     * @param name          prefix of the worker thread names, and tag of the metrics.
+     * @param properties    pool size and in-flight limits.
+     * @param meterRegistry where the in-flight and lag gauges are registered.
+     */
+    public KeyOrderedDispatcher(String name, DispatchProperties properties, MeterRegistry meterRegistry) {
+        this(name, properties, TenantTiers.single(), meterRegistry);
+    }
+
+    /**
+     * @param name          prefix of the worker thread names, and tag of the metrics.
+     * @param properties    pool size and in-flight limits.
+     * @param tiers         tier of every key, weighs the turns of the lanes on the pool.
+     * @param meterRegistry where the in-flight and lag gauges are registered.
+     */
+    public KeyOrderedDispatcher(String name, DispatchProperties properties, TenantTiers tiers, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.tiers = tiers;
+        this.ready = tiers.newQueue();
+        this.name = name;
+        this.meterRegistry = meterRegistry;
+        this.inFlight = new Semaphore(properties.getMaxInFlight());
+        Gauge.builder("webhook.dispatch.in.flight", inFlight, permits -> properties.getMaxInFlight() - permits.availablePermits())
+                .description("Records dispatched and not completed yet")
+                .tag("dispatcher", name)
+                .register(meterRegistry);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // the work queue can stay unbounded: it never holds more than one entry per lane,
+        // and the number of lanes is capped by the in-flight semaphore. its entries don't
+        // name a lane, each one runs whichever lane is next in the fair queue
+        this.executor = new ThreadPoolExecutor(
+                properties.getMaxConcurrency(), properties.getMaxConcurrency(),
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * schedules the processing of a record behind every earlier record with the same key.
+     * <p>
+     * blocks the calling (listener) thread while {@code maxInFlight} records are pending.
+     * </p>
+     *
+     * @param record the consumed record, used for its key and offset.
+     * @param task   starts the work for this record; the next record of the key starts
+     *               only once the returned stage completes.
+     * @throws InterruptedException if the listener thread is interrupted while waiting for capacity.
+     */
+    public void dispatch(ConsumerRecord<String, ?> record, Supplier<CompletionStage<?>> task)
+            throws InterruptedException {
+        enqueue(record, new LaneTask(task, null, null, 0));
+    }
+
+    /**
+     * schedules the processing of a record that may run together with the records of the same
+     * key and coalescing key queued right behind it.
+     * <p>
+     * blocks the calling (listener) thread while {@code maxInFlight} records are pending.
+     * </p>
+     *
+     * @param record     the consumed record, used for its key and offset.
+     * @param coalescing the coalescing key, limits and the task running a group of items.
+     * @param item       the item of this record, passed to the task with the others of its group.
+     * @param bytes      the size of the item, counted against the byte limit of its group.
+     * @throws InterruptedException if the listener thread is interrupted while waiting for capacity.
+     */
+    public <T> void dispatch(ConsumerRecord<String, ?> record, Coalescing<T> coalescing, T item, long bytes)
+            throws InterruptedException {
+        enqueue(record, new LaneTask(null, coalescing, item, bytes));
+    }
+
+    /**
+     * tells whether the key of the record may queue one more record, see {@code maxPendingPerKey}.
+     * <p>
+     * when it may not, the action runs once the lane of the key got under the cap again, on the
+     * thread completing its running task. only the listener thread adds records to a key, so the
+     * answer holds until it dispatches the record.
+     * </p>
+     *
+     * @param record the record about to be dispatched.
+     * @param onRoom runs once, after false was returned, when the key has room again.
+     * @return true if the record can be dispatched right away.
+     */
+    public boolean hasRoom(ConsumerRecord<String, ?> record, Runnable onRoom) {
+        int maxPending = properties.getMaxPendingPerKey();
+        if (maxPending <= 0) return true;
+
+        boolean[] full = new boolean[1];
+        lanes.computeIfPresent(keyOf(record), (k, lane) -> {
+            if (lane.tasks.size() >= maxPending) {
+                lane.waitingForRoom.add(onRoom);
+                full[0] = true;
+            }
+            return lane;
+        });
+        return !full[0];
+    }
+
+    /**
+     * sets the metadata committed with the offsets of a partition, read back by its next owner.
+     *
+     * @param commitMetadata gives the metadata of a partition at commit time, null for none.
+     */
+    public void setCommitMetadata(Function<TopicPartition, String> commitMetadata) {
+        this.commitMetadata = commitMetadata;
+    }
+
+    /**
+     * commits, for the partitions owned by the given consumer, every offset that became safe
+     * since the last call. must be invoked from the consumer thread.
+     *
+     * @param consumer the kafka consumer owning the partitions.
+     */
+    public void commit(Consumer<?, ?> consumer) {
+        Map<TopicPartition, OffsetAndMetadata> committable = collectCommittable(consumer.assignment());
+        rewindFailed(consumer);
+        updateLag(consumer);
+        if (committable.isEmpty()) return;
+
+        consumer.commitAsync(committable, (committed, e) -> {
+            if (e != null) {
+                log.warn("Failed to commit offsets {}: {}", committed, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @return the rebalance listener to register on the container feeding this dispatcher.
+     */
+    public ConsumerAwareRebalanceListener rebalanceListener() {
+        return new ConsumerAwareRebalanceListener() {
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                drainAndCommit(consumer, partitions);
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                // nothing can be committed anymore, just forget the tracking state
+                partitions.forEach(KeyOrderedDispatcher.this::untrack);
+            }
+        };
+    }
+
+    /**
+     * waits (up to the drain timeout) for the in-flight records of the revoked partitions,
+     * then commits what was processed so the next owner does not deliver them again.
+     */
+    private void drainAndCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        long deadline = System.nanoTime() + properties.getDrainTimeout().toNanos();
+        for (TopicPartition partition : partitions) {
+            PartitionOffsets partitionOffsets = offsets.get(partition);
+            if (partitionOffsets != null && !partitionOffsets.awaitDrained(deadline)) {
+                log.warn("Partition {} revoked with records still in flight, they may be delivered again", partition);
+            }
+        }
+
+        Map<TopicPartition, OffsetAndMetadata> committable = collectCommittable(partitions);
+        if (!committable.isEmpty()) {
+            try {
+                consumer.commitSync(committable);
+            } catch (Exception e) {
+                log.warn("Failed to commit offsets of revoked partitions {}: {}", committable, e.getMessage());
+            }
+        }
+        partitions.forEach(this::untrack);
+    }
+
+    public void shutdown() throws InterruptedException {
+        // every pending record holds a permit until its (async) work completes
+        if (!inFlight.tryAcquire(properties.getMaxInFlight(), properties.getDrainTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Dispatcher did not drain within {}, {} lanes still pending",
+                    properties.getDrainTimeout(), lanes.size());
+        }
+        executor.shutdown();
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> collectCommittable(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> committable = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            PartitionOffsets partitionOffsets = offsets.get(partition);
+            if (partitionOffsets == null) continue;
+
+            long next = partitionOffsets.advanceCommitted();
+            if (next >= 0) {
+                committable.put(partition, new OffsetAndMetadata(next, commitMetadata.apply(partition)));
+            }
+        }
+        return committable;
+    }
+
+    /**
+     * seeks the partitions with a failed record back to their lowest pending offset, and starts
+     * tracking them afresh from there. the tasks of the old tracking state that did not start
+     * yet are dropped, see {@link KeyLane#run}.
+     */
+    private void rewindFailed(Consumer<?, ?> consumer) {
+        for (TopicPartition partition : consumer.assignment()) {
+            PartitionOffsets partitionOffsets = offsets.get(partition);
+            if (partitionOffsets == null || !partitionOffsets.failed()) continue;
+
+            // the failed offset is still pending, so there is a lowest one
+            long from = partitionOffsets.pending.first();
+            consumer.seek(partition, from);
+            untrack(partition);
+            PartitionOffsets rewound = offsets.computeIfAbsent(partition, this::track);
+            rewound.resumeAt = System.nanoTime() + properties.getRetryBackoff().toNanos();
+            log.warn("Rewound partition {} to offset {} after a failed record, processing again in {}",
+                    partition, from, properties.getRetryBackoff());
+        }
+    }
+
+    private PartitionOffsets track(TopicPartition partition) {
+        PartitionOffsets partitionOffsets = new PartitionOffsets();
+        partitionOffsets.lagGauge = Gauge.builder("webhook.consumer.lag", partitionOffsets, po -> po.lag)
+                .description("Records after the committed offset, in flight ones included")
+                .tag("dispatcher", name)
+                .tag("topic", partition.topic())
+                .tag("partition", String.valueOf(partition.partition()))
+                .register(meterRegistry);
+        return partitionOffsets;
+    }
+
+    private void untrack(TopicPartition partition) {
+        PartitionOffsets partitionOffsets = offsets.remove(partition);
+        if (partitionOffsets != null) {
+            meterRegistry.remove(partitionOffsets.lagGauge);
+        }
+    }
+
+    /**
+     * refreshes the lag gauges of the partitions of the consumer (a container with concurrency
+     * feeds the dispatcher from several ones). the log end offset comes from the last fetch
+     * response, so this never calls the broker.
+     */
+    private void updateLag(Consumer<?, ?> consumer) {
+        for (TopicPartition partition : consumer.assignment()) {
+            PartitionOffsets partitionOffsets = offsets.get(partition);
+            if (partitionOffsets == null) continue;
+            OptionalLong fetchLag = consumer.currentLag(partition);
+            if (fetchLag.isPresent()) {
+                partitionOffsets.lag = fetchLag.getAsLong() + partitionOffsets.uncommitted();
+            }
+        }
+    }
+
+    private void enqueue(ConsumerRecord<String, ?> record, LaneTask task) throws InterruptedException {
+        inFlight.acquire();
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        PartitionOffsets partitionOffsets = offsets.computeIfAbsent(partition, this::track);
+        long offset = record.offset();
+        partitionOffsets.register(offset);
+        task.partition = partition;
+        task.offset = offset;
+        task.partitionOffsets = partitionOffsets;
+
+        String key = keyOf(record);
+
+        boolean[] schedule = new boolean[1];
+        KeyLane lane = lanes.compute(key, (k, existing) -> {
+            KeyLane current = existing != null ? existing : new KeyLane(k, tiers.tierOf(k));
+            current.tasks.add(task);
+            if (!current.scheduled) {
+                current.scheduled = true;
+                schedule[0] = true;
+            } else if (current.lingering && current.gather().ready()) {
+                // the group the lane lingers for is complete, don't wait for the max delay
+                current.lingering = false;
+                current.lingerRound++;
+                schedule[0] = true;
+            }
+            return current;
+        });
+        if (schedule[0]) {
+            ready.add(lane.tier, lane);
+            executor.execute(this::runNext);
+        }
+    }
+
+    private static String keyOf(ConsumerRecord<String, ?> record) {
+        // records without key still keep the partition order
+        return record.key() != null ? record.key() : new TopicPartition(record.topic(), record.partition()).toString();
+    }
+
+    private void runNext() {
+        KeyLane lane = ready.poll();
+        if (lane != null) {
+            lane.run();
+        }
+    }
+
+    /**
+     * how a task may be grouped with the compatible tasks queued behind it in its lane.
+     *
+     * @param key      tasks with equal keys (and the same record key) may run together.
+     * @param maxItems max tasks in a group.
+     * @param maxBytes max total bytes of a group; a single larger item still runs, alone.
+     * @param maxDelay max time the first task of a group waits for more tasks.
+     * @param task     runs a group, with the items in record order.
+     */
+    public record Coalescing<T>(Object key, int maxItems, long maxBytes, Duration maxDelay,
+                                Function<List<T>, CompletionStage<?>> task) {
+    }
+
+    /**
+     * a dispatched record waiting in its lane: either a plain task or a coalescable item.
+     */
+    private final class LaneTask {
+
+        private final Supplier<CompletionStage<?>> task;
+        private final Coalescing<?> coalescing;
+        private final Object item;
+        private final long bytes;
+        private final long enqueuedAt = System.nanoTime();
+        private TopicPartition partition;
+        private long offset;
+        private PartitionOffsets partitionOffsets;
+
+        private LaneTask(Supplier<CompletionStage<?>> task, Coalescing<?> coalescing, Object item, long bytes) {
+            this.task = task;
+            this.coalescing = coalescing;
+            this.item = item;
+            this.bytes = bytes;
+        }
+
+        boolean joins(LaneTask head) {
+            return coalescing != null && head.coalescing != null && coalescing.key().equals(head.coalescing.key());
+        }
+
+        void complete(Throwable e) {
+            if (e != null) {
+                log.error("Failed to process record {}@{}, it will be processed again: {}",
+                        partition, offset, e.getMessage(), e);
+                partitionOffsets.fail(offset);
+            } else {
+                partitionOffsets.complete(offset);
+            }
+            inFlight.release();
+        }
+
+        /**
+         * gives the task up without running it, an earlier record of its partition failed.
+         * its offset stays pending, the record is fetched again after the rewind.
+         */
+        void drop() {
+            partitionOffsets.fail(offset);
+            inFlight.release();
+        }
+    }
+
+    /**
+     * outcome of looking at the head of a lane: how many tasks run next, or how long to linger.
+     */
+    private record Gathered(int count, boolean ready, long lingerNanos) {
+    }
+
+    /**
+     * serial queue of tasks for a single key.
+     * <p>
+     * all mutations happen inside {@code lanes.compute(...)}, which locks the map entry,
+     * so no extra synchronization is needed. a lane runs one task (or one group of coalesced
+     * tasks) and then re-enters the ready queue, letting other keys take their turn on the pool.
+     * </p>
+     * <p>
+     * while lingering for a group to fill, the lane stays scheduled but holds no thread: a timer
+     * wakes it up at the max delay, or {@link #enqueue} does as soon as the group is complete.
+     * {@code lingerRound} tells a stale timer apart from the current one.
+     * </p>
+     */
+    private final class KeyLane implements Runnable {
+
+        private final String key;
+        private final int tier;
+        private final Deque<LaneTask> tasks = new ArrayDeque<>();
+        /** actions of {@link #hasRoom} waiting for the lane to get under the cap. */
+        private final List<Runnable> waitingForRoom = new ArrayList<>(1);
+        private boolean scheduled;
+        private boolean lingering;
+        private long lingerRound;
+
+        private KeyLane(String key, int tier) {
+            this.key = key;
+            this.tier = tier;
+        }
+
+        @Override
+        public void run() {
+            List<LaneTask> next = next();
+            if (next == null) return;
+
+            // nothing after a failed record of the partition may run before it is processed again
+            List<LaneTask> group = new ArrayList<>(next.size());
+            for (LaneTask task : next) {
+                if (task.partitionOffsets.failed()) {
+                    task.drop();
+                } else {
+                    group.add(task);
+                }
+            }
+            if (group.isEmpty()) {
+                reschedule();
+                return;
+            }
+
+            CompletionStage<?> stage;
+            long backoffNanos = group.get(0).partitionOffsets.backoffNanos();
+            if (backoffNanos > 0) {
+                // the partition was just rewound after a failure, the lane waits without a thread
+                stage = CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(backoffNanos, TimeUnit.NANOSECONDS, executor))
+                        .thenCompose(ignored -> start(group));
+            } else {
+                try {
+                    stage = start(group);
+                } catch (Exception e) {
+                    stage = CompletableFuture.failedFuture(e);
+                }
+            }
+            // the pool thread is free as soon as the task started, the lane resumes on completion
+            stage.whenComplete((result, e) -> {
+                group.forEach(task -> task.complete(e));
+                reschedule();
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        private CompletionStage<?> start(List<LaneTask> group) {
+            LaneTask head = group.get(0);
+            if (head.coalescing == null) {
+                return head.task.get();
+            }
+            List<Object> items = new ArrayList<>(group.size());
+            group.forEach(task -> items.add(task.item));
+            return ((Coalescing<Object>) head.coalescing).task().apply(items);
+        }
+
+        /**
+         * looks at the tasks behind the head: a group is ready when it is full, when a task that
+         * can't join it is queued (nothing later may overtake it), or when the head waited long enough.
+         */
+        private Gathered gather() {
+            LaneTask head = tasks.peekFirst();
+            if (head == null || head.coalescing == null) return new Gathered(1, true, 0);
+
+            Coalescing<?> coalescing = head.coalescing;
+            int count = 0;
+            long bytes = 0;
+            boolean ready = false;
+            for (LaneTask task : tasks) {
+                if (!task.joins(head)) {
+                    ready = true;
+                    break;
+                }
+                if (count > 0 && bytes + task.bytes > coalescing.maxBytes()) {
+                    ready = true;
+                    break;
+                }
+                count++;
+                bytes += task.bytes;
+                if (count >= coalescing.maxItems()) {
+                    ready = true;
+                    break;
+                }
+            }
+            long lingerNanos = coalescing.maxDelay().toNanos() - (System.nanoTime() - head.enqueuedAt);
+            return new Gathered(count, ready || lingerNanos <= 0, lingerNanos);
+        }
+
+        private void wakeUp(long round) {
+            boolean[] run = new boolean[1];
+            lanes.computeIfPresent(key, (k, lane) -> {
+                if (lane.lingering && lane.lingerRound == round) {
+                    lane.lingering = false;
+                    run[0] = true;
+                }
+                return lane;
+            });
+            if (run[0]) {
+                reschedule();
+            }
+        }
+
+        private void reschedule() {
+            ready.add(tier, this);
+            try {
+                executor.execute(KeyOrderedDispatcher.this::runNext);
+            } catch (RejectedExecutionException e) {
+                // shutting down: finish the remaining tasks on the completing thread
+                runNext();
+            }
+        }
+
+        /**
+         * @return the tasks to run next, or null when the lane is empty or lingers.
+         */
+        private List<LaneTask> next() {
+            List<LaneTask> next = new ArrayList<>(1);
+            List<Runnable> room = new ArrayList<>(0);
+            long[] linger = {0, 0};
+            lanes.computeIfPresent(key, (k, lane) -> {
+                if (lane.tasks.isEmpty()) {
+                    lane.scheduled = false;
+                    room.addAll(lane.waitingForRoom);
+                    return null; // drop empty lanes so idle clients cost no memory
+                }
+                Gathered gathered = lane.gather();
+                if (!gathered.ready()) {
+                    lane.lingering = true;
+                    linger[0] = gathered.lingerNanos();
+                    linger[1] = ++lane.lingerRound;
+                    return lane;
+                }
+                for (int i = 0; i < gathered.count(); i++) {
+                    next.add(lane.tasks.pollFirst());
+                }
+                if (!lane.waitingForRoom.isEmpty() && lane.tasks.size() < properties.getMaxPendingPerKey()) {
+                    room.addAll(lane.waitingForRoom);
+                    lane.waitingForRoom.clear();
+                }
+                return lane;
+            });
+            room.forEach(Runnable::run);
+            if (linger[0] > 0) {
+                long round = linger[1];
+                CompletableFuture.delayedExecutor(linger[0], TimeUnit.NANOSECONDS).execute(() -> wakeUp(round));
+                return null;
+            }
+            return next.isEmpty() ? null : next;
+        }
+    }
+
+    /**
+     * offsets of a single partition that were dispatched but did not complete yet.
+     */
+    private static final class PartitionOffsets {
+
+        private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+        /** pending offsets that failed or were dropped, processed again once the partition is rewound. */
+        private final ConcurrentSkipListSet<Long> failed = new ConcurrentSkipListSet<>();
+        /** tasks don't start before this {@code nanoTime}, set when tracking restarts after a rewind. */
+        private volatile long resumeAt;
+        // only touched by the consumer thread
+        private long firstRegistered = -1;
+        private long highestRegistered = -1;
+        private long lastCommitted = -1;
+        // read by the metrics scraper
+        private volatile long lag;
+        private Gauge lagGauge;
+
+        void register(long offset) {
+            pending.add(offset);
+            if (firstRegistered < 0) {
+                firstRegistered = offset;
+            }
+            highestRegistered = Math.max(highestRegistered, offset);
+        }
+
+        /**
+         * @return records fetched (position) but not committed yet.
+         */
+        long uncommitted() {
+            if (highestRegistered < 0) return 0;
+            long committed = lastCommitted >= 0 ? lastCommitted : firstRegistered;
+            return highestRegistered + 1 - committed;
+        }
+
+        void complete(long offset) {
+            pending.remove(offset);
+            if (pending.isEmpty()) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * keeps the offset pending, so nothing past it is committed until it is processed again.
+         */
+        void fail(long offset) {
+            failed.add(offset);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+
+        boolean failed() {
+            return !failed.isEmpty();
+        }
+
+        /**
+         * @return how long tasks of the partition still wait after a rewind, 0 or less when they may start.
+         */
+        long backoffNanos() {
+            long resume = resumeAt;
+            return resume == 0 ? 0 : resume - System.nanoTime();
+        }
+
+        /**
+         * @return the next offset to commit, or -1 when nothing new became safe.
+         */
+        long advanceCommitted() {
+            if (highestRegistered < 0) return -1;
+
+            Long lowestPending = pending.ceiling(Long.MIN_VALUE);
+            long next = lowestPending != null ? lowestPending : highestRegistered + 1;
+            if (next <= lastCommitted) return -1;
+
+            lastCommitted = next;
+            return next;
+        }
+
+        /**
+         * waits until every pending offset either completed or failed: failed ones won't
+         * complete before a rewind, they are left to the next owner of the partition.
+         */
+        boolean awaitDrained(long deadlineNanos) {
+            synchronized (this) {
+                while (pending.size() > failed.size()) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0) return false;
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.LogRetentionProperties;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * background job keeping the daily partitions of {@code webhook_delivery_log} in shape.
+ * <p>
+ * it creates the partitions of the next days ahead of time, and expires the ones past the
+ * retention: a partition is detached and then dropped or moved to the archive schema, which
+ * only touches catalog metadata, no matter how many rows it holds. partitions are expired by
+ * their upper bound, not their name, so the legacy partition holding the rows written before
+ * the table was partitioned goes the same way once its last day is past the retention. inserts and queries keep
+ * the same cost as history grows, and the indexes stay per-partition and small.
+ * </p>
+ * <p>
+ * the shared payloads of {@code webhook_payload} are expired along with them, in chunks, once
+ * no kept partition can reference them anymore.
+ * </p>
+ * <p>
+ * the migrations create no daily partition, so today's and the premade days are created on
+ * startup, before the listeners start and the first rows are written: an insert without its
+ * partition fails for good, and the row would be lost. the rest of the maintenance runs right
+ * after startup on the scheduler thread, so a new instance doesn't wait for it, then every
+ * maintenance interval.
+ * </p>
+ */
+@Component
+@Slf4j
+public class LogPartitionMaintenance {
+
+    private static final String PARENT_TABLE = "webhook_delivery_log";
+    private static final DateTimeFormatter DAY_SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final int PAYLOAD_CHUNK = 10_000;
+    /** the exclusive upper bound of a range partition, as printed by pg_get_expr. */
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('(\\d{4}-\\d{2}-\\d{2})[^']*'\\)");
+
+    private static final String LIST_PARTITIONS_SQL = """
+            SELECT child.relname, pg_get_expr(child.relpartbound, child.oid) AS bound
+            FROM pg_inherits
+                JOIN pg_class parent ON parent.oid = pg_inherits.inhparent
+                JOIN pg_class child ON child.oid = pg_inherits.inhrelid
+            WHERE parent.relname = ?
+            """;
+
+    // in chunks, so a big expiry doesn't hold one huge transaction
+    private static final String DELETE_PAYLOADS_SQL = """
+            DELETE FROM webhook_payload WHERE hash IN
+                (SELECT hash FROM webhook_payload WHERE last_used < ? LIMIT %d)
+            """.formatted(PAYLOAD_CHUNK);
+
+    private static final String ARCHIVE_PAYLOADS_SQL = """
+            WITH moved AS (
+                DELETE FROM webhook_payload WHERE hash IN
+                    (SELECT hash FROM webhook_payload WHERE last_used < ? LIMIT %d)
+                RETURNING *
+            )
+            INSERT INTO %s.webhook_payload SELECT * FROM moved ON CONFLICT (hash) DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LogRetentionProperties properties;
+
+    public LogPartitionMaintenance(JdbcTemplate jdbcTemplate, LogRetentionProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * creates today's partition and the premade days, before any bean starts consuming.
+     */
+    @PostConstruct
+    public void createUpcomingPartitions() {
+        try {
+            createPartitions(LocalDate.now());
+        } catch (DataAccessException e) {
+            log.error("Delivery log partitions not created on startup: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * creates the upcoming partitions and expires the old ones.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${webhook.log-retention.maintenance-interval:1h}")
+    public void maintain() {
+        try {
+            LocalDate today = LocalDate.now();
+            createPartitions(today);
+            LocalDate oldestKept = today.minusDays(properties.getRetention().toDays());
+            expirePartitions(oldestKept);
+            expirePayloads(oldestKept);
+        } catch (DataAccessException e) {
+            // the next run catches up, the premade days leave plenty of margin
+            log.error("Delivery log partition maintenance failed: {}", e.getMessage());
+        }
+    }
+
+    private void createPartitions(LocalDate today) {
+        for (int i = 0; i <= properties.getPremakeDays(); i++) {
+            LocalDate day = today.plusDays(i);
+            String partition = partitionName(day);
+            try {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF " + PARENT_TABLE
+                        + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+            } catch (DataAccessException e) {
+                // the legacy partition covers the day of the upgrade
+                log.debug("Partition {} not created: {}", partition, e.getMessage());
+            }
+        }
+    }
+
+    private void expirePartitions(LocalDate oldestKept) {
+        List<String[]> partitions = jdbcTemplate.query(LIST_PARTITIONS_SQL,
+                (rs, rowNum) -> new String[]{rs.getString("relname"), rs.getString("bound")}, PARENT_TABLE);
+        for (String[] row : partitions) {
+            String partition = row[0];
+            // a default partition, or an upper bound of MAXVALUE, never expires
+            Matcher matcher = row[1] != null ? UPPER_BOUND.matcher(row[1]) : null;
+            if (matcher == null || !matcher.find()) continue;
+
+            // rows are below the upper bound: all of them are older than the oldest kept day
+            LocalDate upperBound = LocalDate.parse(matcher.group(1));
+            if (upperBound.isAfter(oldestKept)) continue;
+
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + partition);
+            if (properties.getExpiredAction() == LogRetentionProperties.ExpiredAction.ARCHIVE) {
+                jdbcTemplate.execute("ALTER TABLE " + partition + " SET SCHEMA " + properties.getArchiveSchema());
+                log.info("Archived delivery log partition {} to schema {}", partition, properties.getArchiveSchema());
+            } else {
+                jdbcTemplate.execute("DROP TABLE " + partition);
+                log.info("Dropped delivery log partition {}", partition);
+            }
+        }
+    }
+
+    /**
+     * a payload last used before the oldest kept day is only referenced by expired partitions.
+     */
+    private void expirePayloads(LocalDate oldestKept) {
+        boolean archive = properties.getExpiredAction() == LogRetentionProperties.ExpiredAction.ARCHIVE;
+        String sql = DELETE_PAYLOADS_SQL;
+        if (archive) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + properties.getArchiveSchema()
+                    + ".webhook_payload (LIKE webhook_payload INCLUDING ALL)");
+            sql = ARCHIVE_PAYLOADS_SQL.formatted(PAYLOAD_CHUNK, properties.getArchiveSchema());
+        }
+
+        Date cutoff = Date.valueOf(oldestKept);
+        long expired = 0;
+        int chunk;
+        do {
+            chunk = jdbcTemplate.update(sql, cutoff);
+            expired += chunk;
+        } while (chunk > 0);
+
+        if (expired > 0) {
+            log.info("{} {} payloads last used before {}", archive ? "Archived" : "Deleted", expired, oldestKept);
+        }
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARENT_TABLE + "_p" + day.format(DAY_SUFFIX);
+    }
+}
@@ -0,0 +1,148 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.IsolationProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * holds back the events of destinations whose circuit breaker is open, in kafka instead of
+ * in the fallback.
+ * <p>
+ * an open breaker rejects every call, so dispatching the event would only write a fallback log
+ * row and a retry record for it. instead, the partition of the event is rewound to it and paused:
+ * the listener stops fetching it, and the partition is resumed as soon as the breaker goes
+ * half-open, when its probe calls may go through. the records after it in the partition (other
+ * destinations included) wait with it, since kafka can't skip them and keep the committed offset
+ * below the event.
+ * </p>
+ * <p>
+ * a destination whose breaker was not closed for longer than {@code max-pause} over the last
+ * {@code budget-window} no longer holds back its partitions, so a receiver that is gone for good,
+ * or one flapping between closed and open, can't stall the others sharing them: its events go
+ * through the fallback and the retry tiers again, until its old failures leave the window.
+ * </p>
+ * <p>
+ * the partition of a client whose lane in the {@link KeyOrderedDispatcher} is full is held back
+ * the same way, and resumed once the lane has room again (see {@link #holdBackFullKey}).
+ * </p>
+ */
+@Component
+@Slf4j
+public class OpenBreakerPauses {
+
+    private final IsolationProperties properties;
+    private final DestinationGuardRegistry guardRegistry;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final MeterRegistry meterRegistry;
+
+    public OpenBreakerPauses(IsolationProperties properties, DestinationGuardRegistry guardRegistry,
+                             KafkaListenerEndpointRegistry listenerRegistry, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.guardRegistry = guardRegistry;
+        this.listenerRegistry = listenerRegistry;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * holds back the record if the breaker of its destination is open. must be invoked from the
+     * consumer thread; the caller skips the records of the partition that follow in this poll,
+     * they are fetched again on resume.
+     *
+     * @param listenerId the listener container the record was polled by.
+     * @param consumer   the kafka consumer owning the partition.
+     * @param record     the record about to be dispatched.
+     * @return true when the partition was rewound to the record and paused.
+     */
+    public boolean holdBack(String listenerId, Consumer<?, ?> consumer, ConsumerRecord<String, WebhookEvent> record) {
+        IsolationProperties.PauseOnOpen pauseOnOpen = properties.getPauseOnOpen();
+        if (!pauseOnOpen.isEnabled()) return false;
+
+        DestinationGuardRegistry.DestinationGuard guard = guardRegistry.guardFor(record.value());
+        if (!guard.isOpen()
+                || guard.unhealthyWithin(pauseOnOpen.getBudgetWindow()).compareTo(pauseOnOpen.getMaxPause()) > 0) {
+            return false;
+        }
+
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(listenerId);
+        if (container == null) return false;
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        consumer.seek(partition, record.offset());
+        container.pausePartition(partition);
+
+        // resumed once, on the half-open transition, or after the open wait at the latest in
+        // case the transition only happens on the next call (automatic transition disabled)
+        AtomicBoolean resumed = new AtomicBoolean();
+        Runnable resume = () -> {
+            if (resumed.compareAndSet(false, true)) {
+                container.resumePartition(partition);
+            }
+        };
+        guard.whenPermitting(resume);
+        long waitMillis = properties.getCircuitBreaker().getWaitDurationInOpenState().toMillis();
+        CompletableFuture.delayedExecutor(waitMillis, TimeUnit.MILLISECONDS).execute(resume);
+
+        paused(listenerId, "open-breaker");
+        log.info("Partition {} paused at offset {}: circuit breaker of {} is open",
+                partition, record.offset(), guard.getCircuitBreaker().getName());
+        return true;
+    }
+
+    /**
+     * holds back the record if its key already has {@code maxPendingPerKey} records queued in the
+     * dispatcher, instead of blocking the listener on the in-flight budget. must be invoked from
+     * the consumer thread; the caller skips the records of the partition that follow in this poll.
+     *
+     * @param listenerId the listener container the record was polled by.
+     * @param consumer   the kafka consumer owning the partition.
+     * @param record     the record about to be dispatched.
+     * @param dispatcher the dispatcher the record goes to.
+     * @return true when the partition was rewound to the record and paused.
+     */
+    public boolean holdBackFullKey(String listenerId, Consumer<?, ?> consumer, ConsumerRecord<String, ?> record,
+                                   KeyOrderedDispatcher dispatcher) {
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(listenerId);
+        if (container == null) return false;
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        // resumed on the second of: the partition paused, the lane got room (it may come first)
+        AtomicInteger steps = new AtomicInteger();
+        Runnable step = () -> {
+            if (steps.incrementAndGet() == 2) {
+                container.resumePartition(partition);
+            }
+        };
+        if (dispatcher.hasRoom(record, step)) return false;
+
+        consumer.seek(partition, record.offset());
+        container.pausePartition(partition);
+        step.run();
+
+        paused(listenerId, "full-key");
+        log.debug("Partition {} paused at offset {}: key {} has too many records queued",
+                partition, record.offset(), record.key());
+        return true;
+    }
+
+    private void paused(String listenerId, String reason) {
+        Counter.builder("webhook.partitions.paused")
+                .description("Partitions paused behind an event whose destination breaker was open, or whose key was full")
+                .tag("listener", listenerId)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+}
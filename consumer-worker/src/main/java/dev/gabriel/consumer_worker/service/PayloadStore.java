@@ -0,0 +1,106 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.gabriel.consumer_worker.config.LogWriterProperties;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import dev.gabriel.consumer_worker.util.PayloadCodec;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * content-addressed storage of the request payloads of the delivery log.
+ * <p>
+ * every attempt of an event (first try, retries, fallbacks) posts the same payload: it is
+ * stored once in {@code webhook_payload}, compressed with {@link PayloadCodec}, and the
+ * attempt rows only keep its sha-256. the hashes written recently are remembered, so a retry
+ * doesn't even send the payload to the database again.
+ * </p>
+ * <p>
+ * only called by the {@link DeliveryLogWriter} flusher thread.
+ * </p>
+ */
+@Component
+@Slf4j
+public class PayloadStore {
+
+    // last_used only moves forward, at most once a day per payload
+    private static final String UPSERT_SQL = """
+            INSERT INTO webhook_payload (hash, codec, original_size, data, last_used)
+            VALUES (?, ?, ?, ?, ?)
+            ON CONFLICT (hash) DO UPDATE SET last_used = EXCLUDED.last_used
+            WHERE webhook_payload.last_used < EXCLUDED.last_used
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LogWriterProperties properties;
+    /**
+     * hash -> day it was last written with.
+     */
+    private final Cache<ByteBuffer, LocalDate> written;
+
+    public PayloadStore(JdbcTemplate jdbcTemplate, LogWriterProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+        this.written = Caffeine.newBuilder()
+                .maximumSize(properties.getPayloadCacheSize())
+                .build();
+    }
+
+    /**
+     * hashes the payloads of the rows and stores the ones not written today yet.
+     * <p>
+     * sets {@link WebhookDeliveryLog#getPayloadHash()} on every row with a payload, hashed and
+     * stored as the bytes that were sent. safe to call again with the same rows when their insert
+     * failed.
+     * </p>
+     *
+     * @param batch the rows about to be inserted.
+     */
+    public void storePayloads(List<WebhookDeliveryLog> batch) {
+        LocalDate today = LocalDate.now();
+        Map<ByteBuffer, byte[]> pending = new LinkedHashMap<>();
+
+        for (WebhookDeliveryLog entry : batch) {
+            byte[] payload = entry.getPayload();
+            if (payload == null) continue;
+
+            if (entry.getPayloadHash() == null) {
+                entry.setPayloadHash(PayloadCodec.hash(payload));
+            }
+            ByteBuffer key = ByteBuffer.wrap(entry.getPayloadHash());
+            if (today.equals(written.getIfPresent(key)) || pending.containsKey(key)) continue;
+
+            pending.put(key, payload);
+        }
+        if (pending.isEmpty()) return;
+
+        // same lock order in every worker, so concurrent upserts of the same payloads can't deadlock
+        List<Map.Entry<ByteBuffer, byte[]>> rows = new ArrayList<>(pending.entrySet());
+        rows.sort(Map.Entry.comparingByKey(Comparator.naturalOrder()));
+
+        Date lastUsed = Date.valueOf(today);
+        int minBytes = properties.getCompressionMinBytes();
+        jdbcTemplate.batchUpdate(UPSERT_SQL, rows, rows.size(), (ps, row) -> {
+            PayloadCodec.Encoded encoded = PayloadCodec.encode(row.getValue(), minBytes);
+            ps.setBytes(1, row.getKey().array());
+            ps.setShort(2, encoded.codec());
+            ps.setInt(3, encoded.originalSize());
+            ps.setBytes(4, encoded.data());
+            ps.setDate(5, lastUsed);
+        });
+
+        rows.forEach(row -> written.put(row.getKey(), today));
+        log.debug("Stored {} payloads", rows.size());
+    }
+}
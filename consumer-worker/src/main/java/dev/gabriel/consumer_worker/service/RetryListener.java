@@ -0,0 +1,143 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.util.HierarchicalTimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * kafka consumer of the retry tier topics.
+ * <p>
+ * records of a tier are appended with the same delay, so within a partition they become due
+ * in offset order. when the head record of a partition is not due yet, the partition is
+ * rewound to it and paused, and the {@link HierarchicalTimingWheel} resumes it at the due
+ * time: no thread sleeps and no record is polled before it can be delivered.
+ * </p>
+ * <p>
+ * due records go through a dedicated {@link KeyOrderedDispatcher}, so retries never take
+ * threads or in-flight slots from first attempts.
+ * </p>
+ * <p>
+ * a due record whose destination breaker is open is held back in kafka like on the main topic,
+ * see {@link OpenBreakerPauses}: dispatching it would only move it to the next tier, and walk it
+ * down to the dead letter topic while the receiver is known to be down.
+ * </p>
+ */
+@Service
+@Slf4j
+public class RetryListener {
+
+    static final String LISTENER_ID = "webhookRetryListener";
+
+    private final WebhookDeliveryService deliveryService;
+    private final KeyOrderedDispatcher dispatcher;
+    private final HierarchicalTimingWheel timer;
+    private final KafkaListenerEndpointRegistry listenerRegistry;
+    private final OpenBreakerPauses pauses;
+
+    public RetryListener(WebhookDeliveryService deliveryService,
+                         @Qualifier("retryDispatcher") KeyOrderedDispatcher dispatcher,
+                         @Qualifier("retryTimer") HierarchicalTimingWheel timer,
+                         KafkaListenerEndpointRegistry listenerRegistry,
+                         OpenBreakerPauses pauses) {
+        this.deliveryService = deliveryService;
+        this.dispatcher = dispatcher;
+        this.timer = timer;
+        this.listenerRegistry = listenerRegistry;
+        this.pauses = pauses;
+    }
+
+    /**
+     * consumes messages from every retry tier topic.
+     *
+     * @param records  the polled records.
+     * @param consumer the underlying kafka consumer, used to rewind and commit.
+     * @throws InterruptedException if interrupted while waiting for dispatch capacity.
+     */
+    @KafkaListener(id = LISTENER_ID, topics = "#{@retryTopics.tierTopicNames()}",
+            groupId = "webhook-retry-group", containerFactory = "retryListenerContainerFactory")
+    public void consume(List<ConsumerRecord<String, WebhookEvent>> records, Consumer<?, ?> consumer)
+            throws InterruptedException {
+        long now = System.currentTimeMillis();
+        Set<TopicPartition> parked = new HashSet<>();
+
+        for (ConsumerRecord<String, WebhookEvent> record : records) {
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (parked.contains(partition)) continue;
+
+            long dueAt = headerAsLong(record, RetryTopics.DUE_AT_HEADER);
+            if (dueAt > now) {
+                park(consumer, partition, record.offset(), dueAt);
+                parked.add(partition);
+                continue;
+            }
+
+            WebhookEvent event = record.value();
+            if (event == null) {
+                dispatcher.dispatch(record, () -> {
+                    log.error("Skipping undeserializable retry record {}-{}@{}",
+                            record.topic(), record.partition(), record.offset());
+                    return CompletableFuture.completedFuture(null);
+                });
+                continue;
+            }
+            if (pauses.holdBack(LISTENER_ID, consumer, record)) {
+                parked.add(partition);
+                continue;
+            }
+
+            int retryCount = (int) headerAsLong(record, RetryTopics.RETRY_COUNT_HEADER);
+            log.info("Retrying event {} for client {} (attempt {})", event.getEventId(), event.getClientId(), retryCount + 1);
+            dispatcher.dispatch(record, () -> deliveryService.deliverWebhook(event, retryCount));
+        }
+        dispatcher.commit(consumer);
+    }
+
+    /**
+     * commits offsets of retries that finished after the last poll returned records.
+     */
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        dispatcher.commit(event.getConsumer());
+    }
+
+    /**
+     * rewinds the partition to the first record that is not due and pauses it until then.
+     * the records after it in this poll are dropped and fetched again on resume.
+     */
+    private void park(Consumer<?, ?> consumer, TopicPartition partition, long offset, long dueAt) {
+        consumer.seek(partition, offset);
+        MessageListenerContainer container = listenerRegistry.getListenerContainer(LISTENER_ID);
+        if (container == null) return;
+
+        container.pausePartition(partition);
+        timer.schedule(dueAt, () -> container.resumePartition(partition));
+        log.debug("Partition {} paused until {}", partition, dueAt);
+    }
+
+    private static long headerAsLong(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        if (header == null) return 0;
+        try {
+            return Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
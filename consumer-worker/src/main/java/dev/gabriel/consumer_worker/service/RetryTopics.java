@@ -0,0 +1,62 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.RetryProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * names of the retry tier topics, derived from the configured delays.
+ */
+@Component("retryTopics")
+public class RetryTopics {
+
+    /** number of failed attempts so far. */
+    public static final String RETRY_COUNT_HEADER = "webhook-retry-count";
+    /** epoch millis before which the event must not be delivered again. */
+    public static final String DUE_AT_HEADER = "webhook-retry-due-at";
+    /** reason of the last failure, for troubleshooting. */
+    public static final String REASON_HEADER = "webhook-retry-reason";
+
+    private final RetryProperties properties;
+    private final List<String> tierTopics;
+
+    public RetryTopics(RetryProperties properties) {
+        this.properties = properties;
+        this.tierTopics = properties.getTiers().stream()
+                .map(delay -> properties.getTopicPrefix() + "." + suffix(delay))
+                .toList();
+    }
+
+    /**
+     * @return the tier topics, from the shortest delay to the longest.
+     */
+    public List<String> tierTopicNames() {
+        return tierTopics;
+    }
+
+    public String tierTopic(int tier) {
+        return tierTopics.get(tier);
+    }
+
+    public Duration tierDelay(int tier) {
+        return properties.getTiers().get(tier);
+    }
+
+    public int tierCount() {
+        return tierTopics.size();
+    }
+
+    public String deadLetterTopic() {
+        return properties.getDeadLetterTopic();
+    }
+
+    private static String suffix(Duration delay) {
+        long seconds = delay.toSeconds();
+        if (seconds > 0 && seconds % 3600 == 0) return seconds / 3600 + "h";
+        if (seconds > 0 && seconds % 60 == 0) return seconds / 60 + "m";
+        if (seconds > 0) return seconds + "s";
+        return delay.toMillis() + "ms";
+    }
+}
@@ -0,0 +1,77 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.FairnessProperties;
+import dev.gabriel.consumer_worker.util.WeightedFairQueue;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * resolves the tier of a client, for the {@link WeightedFairQueue}s of the dispatchers and the
+ * {@link HttpDeliveryEngine}.
+ * <p>
+ * tiers are numbered in configuration order. with fairness disabled there is a single tier,
+ * so every queue falls back to plain arrival order.
+ * </p>
+ */
+@Component
+public class TenantTiers {
+
+    private final int[] weights;
+    private final Map<String, Integer> clientTiers = new HashMap<>();
+    private final int defaultTier;
+
+    public TenantTiers(FairnessProperties properties) {
+        if (!properties.isEnabled()) {
+            this.weights = new int[]{1};
+            this.defaultTier = 0;
+            return;
+        }
+
+        Map<String, Integer> indexes = new HashMap<>();
+        this.weights = new int[properties.getTiers().size()];
+        properties.getTiers().forEach((tier, weight) -> {
+            if (weight == null || weight < 1) {
+                throw new IllegalStateException("Weight of tier '" + tier + "' must be at least 1");
+            }
+            weights[indexes.size()] = weight;
+            indexes.put(tier, indexes.size());
+        });
+        this.defaultTier = indexOf(indexes, properties.getDefaultTier());
+        properties.getClients().forEach((clientId, tier) -> clientTiers.put(clientId, indexOf(indexes, tier)));
+    }
+
+    /**
+     * @return a queue with a class per tier.
+     */
+    public <T> WeightedFairQueue<T> newQueue() {
+        return new WeightedFairQueue<>(weights);
+    }
+
+    /**
+     * @param clientId the client, may be null (default tier).
+     * @return the class of the client in the queues created by {@link #newQueue()}.
+     */
+    public int tierOf(String clientId) {
+        if (clientId == null) return defaultTier;
+        return clientTiers.getOrDefault(clientId, defaultTier);
+    }
+
+    /**
+     * @return tiers that treat every client alike, for dispatchers built outside of spring.
+     */
+    public static TenantTiers single() {
+        FairnessProperties properties = new FairnessProperties();
+        properties.setEnabled(false);
+        return new TenantTiers(properties);
+    }
+
+    private static int indexOf(Map<String, Integer> indexes, String tier) {
+        Integer index = indexes.get(tier);
+        if (index == null) {
+            throw new IllegalStateException("Unknown tier '" + tier + "', configured tiers are " + indexes.keySet());
+        }
+        return index;
+    }
+}
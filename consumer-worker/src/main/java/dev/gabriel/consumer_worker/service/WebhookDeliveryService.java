@@ -1,20 +1,49 @@
 package dev.gabriel.consumer_worker.service;
 
+import dev.gabriel.consumer_worker.exception.WebhookDeliveryException;
 import dev.gabriel.consumer_worker.model.WebhookEvent;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.HttpServerErrorException;
-import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayOutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * service responsible for executing the http post request to the target url.
  * <p>
- * it implements the circuit breaker pattern using resilience4j to handle
- * failures gracefully and prevent cascading errors in the system.
+ * it implements the circuit breaker and bulkhead patterns using resilience4j to handle
+ * failures gracefully and prevent cascading errors in the system. every destination has
+ * its own breaker and bulkhead (see {@link DestinationGuardRegistry}), so one dead endpoint
+ * doesn't affect deliveries to the others. requests go through the {@link HttpDeliveryEngine}, so a delivery never
+ * blocks a thread while waiting for the destination.
+ * </p>
+ * <p>
+ * clients with a configured rate limit are throttled by the {@link ClientRateLimiter} before
+ * the attempt starts.
+ * </p>
+ * <p>
+ * destinations that accept arrays may receive several events of a client in one request,
+ * see {@link DeliveryBatching}.
+ * </p>
+ * <p>
+ * failed attempts are handed to the {@link DeliveryRetryService}, which republishes them
+ * to the retry tier topics instead of retrying in place.
+ * </p>
+ * <p>
+ * target urls are parsed once and their hosts tracked by the {@link DestinationCache}.
  * </p>
  */
 @Service
@@ -22,70 +51,221 @@ import org.springframework.web.client.RestClient;
 @RequiredArgsConstructor
 public class WebhookDeliveryService {
 
-    private final RestClient restClient = RestClient.create();
+    private final HttpDeliveryEngine deliveryEngine;
+    private final DestinationGuardRegistry guardRegistry;
     private final WebhookLogService logService;
+    private final JsonUtil jsonUtil;
+    private final DeliveryRetryService retryService;
+    private final ClientRateLimiter rateLimiter;
+    private final DeliveryMetrics metrics;
+    private final DeliveryDeduplicator deduplicator;
+    private final DestinationCache destinations;
+
+    /**
+     * attempts the first delivery of the webhook event.
+     *
+     * @param event the webhook event data containing the payload and target url.
+     * @return a future completed once the attempt is logged and, on failure, the retry is scheduled.
+     */
+    public CompletableFuture<Void> deliverWebhook(WebhookEvent event) {
+        return deliverWebhook(event, 0);
+    }
 
     /**
      * attempts to deliver the webhook event to the specified target url.
      * <p>
-     * this method is protected by a circuit breaker. if the failure rate exceeds
-     * the configured threshold, calls will be redirected to the fallback method.
+     * events already delivered (same clientId and eventId) are skipped, see {@link DeliveryDeduplicator}.
+     * the call goes through the bulkhead and circuit breaker of the event's destination.
+     * while the destination is saturated the delivery waits for a free call; if it waits too
+     * long, the failure rate exceeds the configured threshold, or the attempt fails, the event
+     * is redirected to the fallback method.
      * </p>
      *
-     * @param event the webhook event data containing the payload and target url.
+     * @param event      the webhook event data containing the payload and target url.
+     * @param retryCount the number of previously failed attempts.
+     * @return a future completed once the attempt is logged and, on failure, the retry is scheduled.
+     */
+    public CompletableFuture<Void> deliverWebhook(WebhookEvent event, int retryCount) {
+        return deliver(List.of(event), retryCount, false);
+    }
+
+    /**
+     * delivers events of the same client and target url in a single request, whose body is
+     * the json array of their payloads (see {@link DeliveryBatching}).
+     * <p>
+     * the batch succeeds or fails as a whole: every event gets its own log row, and on failure
+     * each one is scheduled for retry on its own.
+     * </p>
+     *
+     * @param events first attempts, in delivery order, all with the same client and target url.
+     * @return a future completed once the attempt is logged and, on failure, the retries are scheduled.
+     */
+    public CompletableFuture<Void> deliverBatch(List<WebhookEvent> events) {
+        return deliver(events, 0, true);
+    }
+
+    private CompletableFuture<Void> deliver(List<WebhookEvent> events, int retryCount, boolean asArray) {
+        List<WebhookEvent> pending = new ArrayList<>(events.size());
+        for (WebhookEvent event : events) {
+            if (deduplicator.isDelivered(event.getClientId(), event.getEventId())) {
+                log.warn("Skipping event {} for client {}: already delivered", event.getEventId(), event.getClientId());
+            } else {
+                pending.add(event);
+            }
+        }
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        WebhookEvent first = pending.get(0);
+        DestinationGuardRegistry.DestinationGuard guard = guardRegistry.guardFor(first);
+
+        // a saturated destination makes the delivery (and so the lane of its client) wait for a permit
+        Supplier<CompletionStage<Void>> guarded = () -> guard.withPermit(
+                CircuitBreaker.decorateCompletionStage(guard.getCircuitBreaker(), () -> attemptDelivery(pending, asArray)));
+
+        // over its rate limit, the client waits without holding a thread (the lane of the
+        // client waits for this future, so its deliveries stay in order). a batch takes one
+        // slot per event
+        long delayNanos = 0;
+        for (int i = 0; i < pending.size(); i++) {
+            delayNanos = rateLimiter.reserve(first.getClientId());
+        }
+        CompletableFuture<Void> attempt = delayNanos == 0
+                ? guarded.get().toCompletableFuture()
+                : CompletableFuture.supplyAsync(guarded, CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS))
+                .thenCompose(stage -> stage);
+
+        return attempt
+                .handle((result, t) -> t)
+                .thenCompose(t -> {
+                    if (t == null) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    return CompletableFuture.allOf(pending.stream()
+                            .map(event -> fallbackHandleDelivery(event, retryCount, t))
+                            .toArray(CompletableFuture[]::new));
+                });
+    }
+
+    /**
+     * posts the events and logs the outcome of each one.
+     *
+     * @return a future failed on any error, so the circuit breaker counts it.
+     */
+    private CompletableFuture<Void> attemptDelivery(List<WebhookEvent> events, boolean asArray) {
+        WebhookEvent first = events.get(0);
+        log.info("Trying to send {} to destination {}", describe(events), first.getTargetUrl());
+
+        DestinationCache.Destination destination = destinations.destinationFor(first.getTargetUrl());
+        if (destination.error() != null) {
+            return CompletableFuture.failedFuture(handleError(events, destination.error()));
+        }
+        URI targetUri = destination.uri();
+        DestinationCache.Host host = destination.host();
+
+        byte[] body = asArray ? arrayBody(events) : body(first);
+        long start = System.nanoTime();
+        return deliveryEngine.post(targetUri, body, first.getClientId())
+                .handle((status, error) -> {
+                    if (host != null) {
+                        host.record(System.nanoTime() - start, error == null && status >= 200 && status < 300);
+                        if (error != null && unwrap(error) instanceof ConnectException) {
+                            host.onConnectFailure();
+                        }
+                    }
+                    events.forEach(event -> metrics.recordDelivery(event, targetUri.getHost(), error == null ? status : null));
+                    if (error != null) {
+                        // fail the future to trigger the circuit breaker failure counting
+                        throw new CompletionException(handleError(events, unwrap(error)));
+                    }
+                    if (status < 200 || status >= 300) {
+                        // handle specific http errors (4xx, 5xx)
+                        WebhookDeliveryException e = new WebhookDeliveryException(status);
+                        log.error("HTTP error delivering {} to {}: {}",
+                                describe(events), first.getTargetUrl(), e.getMessage());
+
+                        events.forEach(event -> logService.saveLog(event, status, false, e.getMessage()));
+                        throw e;
+                    }
+
+                    // log success in the database
+                    for (WebhookEvent event : events) {
+                        deduplicator.markDelivered(event.getClientId(), event.getEventId());
+                        logService.saveLog(event, status, true, null);
+                    }
+                    log.info("{} delivered successfully to {}", describe(events), first.getTargetUrl());
+                    return null;
+                });
+    }
+
+    /**
+     * @return the json payload of the event. opaque payloads are posted as received, without
+     * a json round trip.
+     */
+    private byte[] body(WebhookEvent event) {
+        return event.getRawPayload() != null ? event.getRawPayload() : jsonUtil.toJsonBytes(event.getPayload());
+    }
+
+    /**
+     * @return the json array of the payloads, concatenated without parsing them.
      */
-    // "webhookDelivery" is the name configured in application.yml
-    @CircuitBreaker(name = "webhookDelivery", fallbackMethod = "fallbackHandleDelivery")
-    public void deliverWebhook(WebhookEvent event) {
-        log.info("Trying to send event {} to destination {}", event.getEventId(), event.getTargetUrl());
-
-        try {
-            // synchronous call to the target url
-            ResponseEntity<Void> response = restClient.post()
-                    .uri(event.getTargetUrl())
-                    .body(event.getPayload())
-                    .retrieve()
-                    .toBodilessEntity();
-
-            // log success in the database
-            logService.saveLog(event, response.getStatusCode().value(), true, null);
-            log.info("Event {} delivered successfully to {}", event.getEventId(), event.getTargetUrl());
-
-        } catch (HttpClientErrorException | HttpServerErrorException e) {
-            // handle specific http errors (4xx, 5xx)
-            log.error("HTTP error delivering event {} to {}: {}",
-                    event.getEventId(), event.getTargetUrl(), e.getMessage());
-
-            logService.saveLog(event, e.getStatusCode().value(), false, e.getMessage());
-
-            // rethrow to trigger the circuit breaker failure counting
-            throw e;
-        } catch (Exception e) {
-            // handle generic errors (connection refused, timeout, etc.)
-            log.error("Error delivering event {} to {}: {}",
-                    event.getEventId(), event.getTargetUrl(), e.getMessage());
-
-            logService.saveLog(event, 0, false, e.getMessage());
-
-            // rethrow to trigger the circuit breaker failure counting
-            throw e;
+    private byte[] arrayBody(List<WebhookEvent> events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        for (int i = 0; i < events.size(); i++) {
+            if (i > 0) out.write(',');
+            out.writeBytes(body(events.get(i)));
         }
+        out.write(']');
+        return out.toByteArray();
+    }
+
+    private static String describe(List<WebhookEvent> events) {
+        return events.size() == 1
+                ? "event " + events.get(0).getEventId()
+                : "batch of " + events.size() + " events (" + events.get(0).getEventId() + "...)";
     }
 
     /**
-     * fallback method invoked when the circuit breaker is open or when a generic exception occurs.
+     * fallback method invoked when the circuit breaker is open, no call of the destination was free
+     * within the bulkhead max wait, or when a generic exception occurs.
      * <p>
-     * this ensures the system records the final failure state instead of crashing or hanging.
+     * the event is scheduled for a later attempt (or dead-lettered), so the system keeps
+     * the failure instead of crashing, hanging or retrying in place.
      * </p>
      *
-     * @param event the webhook event that failed to be delivered.
-     * @param t     the exception that caused the failure.
+     * @param event      the webhook event that failed to be delivered.
+     * @param retryCount the number of previously failed attempts.
+     * @param t          the exception that caused the failure.
+     * @return a future completed once the retry is stored in kafka.
      */
-    public void fallbackHandleDelivery(WebhookEvent event, Throwable t) {
+    public CompletableFuture<Void> fallbackHandleDelivery(WebhookEvent event, int retryCount, Throwable t) {
+        Throwable cause = unwrap(t);
         log.error("Fallback: Failed to deliver event {} to {}. Reason: {}",
-                event.getEventId(), event.getTargetUrl(), t.getMessage());
+                event.getEventId(), event.getTargetUrl(), cause.getMessage());
+
+        if (cause instanceof CallNotPermittedException || cause instanceof BulkheadFullException) {
+            // the attempt never reached the destination, so nothing was logged yet
+            logService.saveLog(event, 0, false, "FALLBACK: " + cause.getMessage());
+        }
+        return retryService.scheduleRetry(event, retryCount + 1, cause);
+    }
+
+    /**
+     * handles generic errors (connection refused, timeout, invalid url, etc.).
+     */
+    private Throwable handleError(List<WebhookEvent> events, Throwable e) {
+        // timeouts come without message
+        String reason = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        log.error("Error delivering {} to {}: {}",
+                describe(events), events.get(0).getTargetUrl(), reason);
+
+        events.forEach(event -> logService.saveLog(event, 0, false, reason));
+        return e;
+    }
 
-        // save the final failure log to the database
-        logService.saveLog(event, 0, false, "FALLBACK: " + t.getMessage());
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
     }
-}
\ No newline at end of file
+}
@@ -3,14 +3,36 @@ package dev.gabriel.consumer_worker.service;
 import dev.gabriel.consumer_worker.model.WebhookEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.event.ListenerContainerIdleEvent;
 import org.springframework.stereotype.Service;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * kafka consumer responsible for listening to webhook events.
  * <p>
- * it consumes messages from the configured topic and delegates the processing
- * to the {@link WebhookDeliveryService}.
+ * it consumes batches of messages from the configured topic and hands every record to the
+ * {@link KeyOrderedDispatcher}, which runs the {@link WebhookDeliveryService} calls for
+ * different clients in parallel. offsets are committed manually, only up to the lowest
+ * record that is fully processed.
+ * </p>
+ * <p>
+ * events to destinations that accept arrays are dispatched as coalescable items, see
+ * {@link DeliveryBatching}. events of the heaviest clients are moved to the hot lane topic
+ * instead, see {@link HotClientLanes}.
+ * </p>
+ * <p>
+ * while the circuit breaker of a destination is open, the partition of its next event is
+ * paused instead of burning its events through the fallback, see {@link OpenBreakerPauses}. so is
+ * the partition of a client with too many records queued in the dispatcher.
  * </p>
  */
 @Service
@@ -18,16 +40,74 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class WebhookListener {
 
+    static final String LISTENER_ID = "webhookListener";
+
     private final WebhookDeliveryService deliveryService;
+    private final KeyOrderedDispatcher dispatcher;
+    private final DeliveryMetrics metrics;
+    private final DeliveryBatching batching;
+    private final HotClientLanes lanes;
+    private final OpenBreakerPauses pauses;
 
     /**
      * consumes messages from the 'webhook.deliveries' topic.
      *
-     * @param event the deserialized webhookevent object.
+     * @param records  the polled records, values already deserialized to webhookevent.
+     * @param consumer the underlying kafka consumer, used to commit the processed offsets.
+     * @throws InterruptedException if interrupted while waiting for dispatch capacity.
+     */
+    @KafkaListener(id = LISTENER_ID, topics = "webhook.deliveries", groupId = "webhook-dispatcher-group")
+    public void consume(List<ConsumerRecord<String, WebhookEvent>> records, Consumer<?, ?> consumer)
+            throws InterruptedException {
+        Set<TopicPartition> held = new HashSet<>();
+        for (ConsumerRecord<String, WebhookEvent> record : records) {
+            if (!held.isEmpty() && held.contains(new TopicPartition(record.topic(), record.partition()))) continue;
+            if (pauses.holdBackFullKey(LISTENER_ID, consumer, record, dispatcher)) {
+                held.add(new TopicPartition(record.topic(), record.partition()));
+                continue;
+            }
+
+            WebhookEvent event = record.value();
+            if (event == null) {
+                // ErrorHandlingDeserializer leaves the value null when the payload can't be read,
+                // the record still goes through the dispatcher so its offset gets committed
+                dispatcher.dispatch(record, () -> {
+                    log.error("Skipping undeserializable record {}-{}@{}",
+                            record.topic(), record.partition(), record.offset());
+                    return CompletableFuture.completedFuture(null);
+                });
+                continue;
+            }
+
+            log.info("Received event {} (trace {}) for client {}", event.getEventId(), event.getTraceId(), event.getClientId());
+            if (lanes.isRouted(record)) {
+                // the queue lag of a forwarded event is recorded once, by the hot lane
+                dispatcher.dispatch(record, () -> lanes.forwardOrDeliver(record));
+                continue;
+            }
+            if (pauses.holdBack(LISTENER_ID, consumer, record)) {
+                held.add(new TopicPartition(record.topic(), record.partition()));
+                continue;
+            }
+            metrics.recordQueueLag(event);
+            KeyOrderedDispatcher.Coalescing<WebhookEvent> coalescing = batching.coalescingFor(event);
+            if (coalescing != null) {
+                dispatcher.dispatch(record, coalescing, event, batching.bodySize(event));
+            } else {
+                dispatcher.dispatch(record, () -> deliveryService.deliverWebhook(event));
+            }
+        }
+        dispatcher.commit(consumer);
+    }
+
+    /**
+     * commits offsets of deliveries that finished after the last poll returned records.
+     * <p>
+     * idle events are published on the consumer thread, so it's safe to use the consumer here.
+     * </p>
      */
-    @KafkaListener(topics = "webhook.deliveries", groupId = "webhook-dispatcher-group")
-    public void consume(WebhookEvent event) {
-        log.info("Received event {} for client {}", event.getEventId(), event.getClientId());
-        deliveryService.deliverWebhook(event);
+    @EventListener(condition = "event.listenerId.startsWith('" + LISTENER_ID + "')")
+    public void onIdle(ListenerContainerIdleEvent event) {
+        dispatcher.commit(event.getConsumer());
     }
-}
\ No newline at end of file
+}
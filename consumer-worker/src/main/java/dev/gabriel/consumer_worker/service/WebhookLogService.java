@@ -2,7 +2,6 @@ package dev.gabriel.consumer_worker.service;
 
 import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
 import dev.gabriel.consumer_worker.model.WebhookEvent;
-import dev.gabriel.consumer_worker.repository.WebhookDeliveryLogRepository;
 import dev.gabriel.consumer_worker.util.JsonUtil;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -12,15 +11,16 @@ import java.time.LocalDateTime;
 /**
  * service responsible for persisting webhook delivery logs to the database.
  * <p>
- * it handles the conversion of event payloads to json and creates
- * {@link WebhookDeliveryLog} entries.
+ * it handles the conversion of event payloads to json bytes and creates
+ * {@link WebhookDeliveryLog} entries. the rows are handed to the {@link DeliveryLogWriter},
+ * which writes them in batches off the delivery thread.
  * </p>
  */
 @Service
 @RequiredArgsConstructor
 public class WebhookLogService {
 
-    private final WebhookDeliveryLogRepository repository;
+    private final DeliveryLogWriter logWriter;
     private final JsonUtil jsonUtil;
 
     /**
@@ -33,19 +33,22 @@ public class WebhookLogService {
      */
     public void saveLog(WebhookEvent event, int status, boolean success, String error) {
 
-        // safely convert the payload map to a json string
-        String jsonPayload = jsonUtil.toJson(event.getPayload());
+        // opaque payloads are already json and stored byte for byte, otherwise safely convert the payload map
+        byte[] payload = event.getRawPayload() != null
+                ? event.getRawPayload()
+                : jsonUtil.toJsonBytes(event.getPayload());
 
         var logEntry = WebhookDeliveryLog.builder()
                 .eventId(event.getEventId())
+                .clientId(event.getClientId())
                 .targetUrl(event.getTargetUrl())
-                .requestPayload(jsonPayload)
+                .payload(payload)
                 .responseStatus(status)
                 .success(success)
                 .errorMessage(error)
                 .attemptTime(LocalDateTime.now())
                 .build();
 
-        repository.save(logEntry);
+        logWriter.append(logEntry);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,144 @@
+package dev.gabriel.consumer_worker.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * concurrency limit adjusted with aimd (additive increase, multiplicative decrease).
+ * <p>
+ * every successful response adds {@code 1/limit}, so the limit grows by one per round of
+ * responses while the destination keeps up. an overload signal (explicit rejection, timeout,
+ * or, when enabled, a latency far above the usual one) multiplies it by the backoff ratio.
+ * </p>
+ * <p>
+ * the usual latency is a running estimate of the median round trip, not the fastest one: the
+ * fastest response of a receiver with any jitter is an outlier, and comparing against it made
+ * ordinary responses count as overload and kept cutting the limit. a response is slow when it
+ * exceeds the median times the tolerance plus a floor, so the few milliseconds of jitter of a
+ * fast receiver never count.
+ * </p>
+ * <p>
+ * responses to requests sent before the last decrease don't decrease it again: when a
+ * destination saturates, all the requests in flight fail together, and counting each of
+ * them would collapse the limit to the minimum. state is lock-free, the limit is a double
+ * kept in an {@link AtomicLong}.
+ * </p>
+ */
+public class AdaptiveLimit {
+
+    /** step of the median estimate, in log space (about 2% of the round trip). */
+    private static final double BASELINE_STEP = 0.02;
+    /** responses that only train the estimate, before any of them may count as slow. */
+    private static final int BASELINE_WARMUP = 20;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final long latencyFloorNanos;
+
+    private final AtomicLong limitBits;
+    private final AtomicInteger epoch = new AtomicInteger();
+    /** log of the estimated median round trip, NaN before the first response. */
+    private volatile double baselineLog = Double.NaN;
+    private final AtomicInteger baselineSamples = new AtomicInteger();
+
+    /**
+     * @param initialLimit        starting limit.
+     * @param minLimit            lowest limit.
+     * @param maxLimit            highest limit.
+     * @param backoffRatio        factor applied on overload, between 0 and 1.
+     * @param latencyTolerance    latency over median ratio counted as overload, 0 to disable.
+     * @param latencyFloorNanos   added to the tolerated latency, so small absolute jitter never counts.
+     */
+    public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                         double latencyTolerance, long latencyFloorNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.latencyFloorNanos = latencyFloorNanos;
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(Math.max(minLimit, Math.min(maxLimit, initialLimit))));
+    }
+
+    /**
+     * a limit that never changes.
+     */
+    public static AdaptiveLimit fixed(int limit) {
+        return new AdaptiveLimit(limit, limit, limit, 1, 0, 0);
+    }
+
+    /**
+     * @return the current number of permitted concurrent requests.
+     */
+    public int current() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    /**
+     * @return a token to pass back with the outcome of a request started now.
+     */
+    public int startSample() {
+        return epoch.get();
+    }
+
+    /**
+     * records a response that was not rejected by the destination.
+     *
+     * @param sample   the token returned by {@link #startSample()} when the request started.
+     * @param rttNanos time between sending the request and receiving the response.
+     */
+    public void onResponse(int sample, long rttNanos) {
+        if (latencyTolerance > 0 && isSlow(rttNanos)) {
+            onOverload(sample);
+            return;
+        }
+        update(limit -> Math.min(maxLimit, limit + 1 / limit));
+    }
+
+    /**
+     * records a rejection (429, 503) or a timeout.
+     *
+     * @param sample the token returned by {@link #startSample()} when the request started.
+     */
+    public void onOverload(int sample) {
+        // only the first signal of a round of requests counts
+        if (epoch.compareAndSet(sample, sample + 1)) {
+            update(limit -> Math.max(minLimit, limit * backoffRatio));
+        }
+    }
+
+    /**
+     * @return the estimated median round trip in nanoseconds, 0 before the first response.
+     */
+    public long baselineNanos() {
+        double log = baselineLog;
+        return Double.isNaN(log) ? 0 : (long) Math.exp(log);
+    }
+
+    private boolean isSlow(long rttNanos) {
+        double sampleLog = Math.log(Math.max(1, rttNanos));
+        double log = baselineLog;
+        int samples = baselineSamples.incrementAndGet();
+        // benign races: concurrent responses may overwrite each other's update
+        if (samples <= BASELINE_WARMUP || Double.isNaN(log)) {
+            // the first responses only train the estimate, their geometric mean is its starting point
+            baselineLog = Double.isNaN(log) ? sampleLog : log + (sampleLog - log) / Math.min(samples, BASELINE_WARMUP);
+            return false;
+        }
+        // then a fixed step up or down in log space: converges to the median, follows drifts in
+        // either direction, and a burst of slow responses only moves it by a few percent
+        baselineLog = log + (sampleLog > log ? BASELINE_STEP : -BASELINE_STEP);
+        return rttNanos > Math.exp(log) * latencyTolerance + latencyFloorNanos;
+    }
+
+    private void update(DoubleUnaryOperator function) {
+        long current;
+        long next;
+        do {
+            current = limitBits.get();
+            next = Double.doubleToLongBits(function.applyAsDouble(Double.longBitsToDouble(current)));
+        } while (current != next && !limitBits.compareAndSet(current, next));
+    }
+}
@@ -0,0 +1,178 @@
+package dev.gabriel.consumer_worker.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * approximate counts of the heaviest keys of a stream, in bounded memory.
+ * <p>
+ * every key is counted in a count-min sketch ({@code depth} rows of {@code width} counters):
+ * the estimate of a key is the smallest of its counters, never below its real count and above
+ * it by at most {@code e / width} of the total with probability {@code 1 - e^-depth}. the
+ * {@code capacity} keys with the highest estimates are kept by name, so the heaviest keys can be
+ * listed without remembering every key ever seen.
+ * </p>
+ * <p>
+ * like {@link RotatingBloomFilter}, counts are kept in two generations: {@link #rotate()}
+ * discards the previous one, so estimates cover the last one to two rotation periods and a key
+ * that stopped showing up fades away. counters are atomic, adds are lock-free and allocation-free
+ * unless the key enters the top list.
+ * </p>
+ */
+public class HeavyHitters {
+
+    private final int width;
+    private final int depth;
+    private final int capacity;
+    private volatile Generation current;
+    private volatile Generation previous;
+    // guarded by this
+    private final Map<String, Long> top = new HashMap<>();
+    private volatile long topMin;
+
+    /**
+     * @param width    counters per row, the error is about {@code 2.7 / width} of the total count.
+     * @param depth    rows (hash functions), the error bound fails with probability {@code e^-depth}.
+     * @param capacity number of heaviest keys kept by name.
+     */
+    public HeavyHitters(int width, int depth, int capacity) {
+        this.width = width;
+        this.depth = depth;
+        this.capacity = capacity;
+        this.current = new Generation(width * depth);
+        this.previous = new Generation(width * depth);
+    }
+
+    /**
+     * counts one occurrence of the key.
+     *
+     * @return the estimated count of the key over the last one to two rotation periods, this one included.
+     */
+    public long add(String key) {
+        long hash1 = hash(key, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+        long estimate = current.increment(hash1, hash2) + previous.estimate(hash1, hash2);
+        if (estimate > topMin) {
+            offer(key, estimate);
+        }
+        return estimate;
+    }
+
+    /**
+     * @return the estimated count of the key over the last one to two rotation periods.
+     */
+    public long estimate(String key) {
+        long hash1 = hash(key, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+        return current.estimate(hash1, hash2) + previous.estimate(hash1, hash2);
+    }
+
+    /**
+     * @return the heaviest keys with their estimated counts, heaviest first.
+     */
+    public synchronized List<Entry> top() {
+        List<Entry> entries = new ArrayList<>(top.size());
+        top.forEach((key, count) -> entries.add(new Entry(key, count)));
+        entries.sort(Comparator.comparingLong(Entry::count).reversed());
+        return entries;
+    }
+
+    /**
+     * drops the oldest generation. occurrences counted before the previous rotation are forgotten,
+     * and the top keys are re-estimated (keys no longer seen leave it).
+     */
+    public synchronized void rotate() {
+        previous = current;
+        current = new Generation(width * depth);
+
+        top.replaceAll((key, count) -> estimate(key));
+        top.values().removeIf(count -> count == 0);
+        topMin = top.size() < capacity ? 0 : minCount();
+    }
+
+    private synchronized void offer(String key, long estimate) {
+        if (top.containsKey(key) || top.size() < capacity) {
+            top.put(key, estimate);
+        } else {
+            String lightest = null;
+            long lightestCount = Long.MAX_VALUE;
+            for (Map.Entry<String, Long> entry : top.entrySet()) {
+                if (entry.getValue() < lightestCount) {
+                    lightest = entry.getKey();
+                    lightestCount = entry.getValue();
+                }
+            }
+            if (estimate <= lightestCount) return;
+            top.remove(lightest);
+            top.put(key, estimate);
+        }
+        topMin = top.size() < capacity ? 0 : minCount();
+    }
+
+    private long minCount() {
+        long min = Long.MAX_VALUE;
+        for (long count : top.values()) {
+            min = Math.min(min, count);
+        }
+        return min;
+    }
+
+    /**
+     * 64-bit hash of the characters, murmur3 finalizer per step.
+     */
+    private static long hash(String value, long seed) {
+        long h = seed ^ value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = mix(h ^ value.charAt(i));
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public record Entry(String key, long count) {
+    }
+
+    private final class Generation {
+
+        private final AtomicLongArray counters;
+
+        private Generation(int size) {
+            this.counters = new AtomicLongArray(size);
+        }
+
+        long increment(long hash1, long hash2) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                min = Math.min(min, counters.incrementAndGet(index(hash1, hash2, row)));
+            }
+            return min;
+        }
+
+        long estimate(long hash1, long hash2) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                min = Math.min(min, counters.get(index(hash1, hash2, row)));
+            }
+            return min;
+        }
+
+        /**
+         * counter of the row, column by double hashing (kirsch-mitzenmacher).
+         */
+        private int index(long hash1, long hash2, int row) {
+            return row * width + (int) (((hash1 + row * hash2) & Long.MAX_VALUE) % width);
+        }
+    }
+}
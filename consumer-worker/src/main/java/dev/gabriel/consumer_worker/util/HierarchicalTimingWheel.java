@@ -0,0 +1,241 @@
+package dev.gabriel.consumer_worker.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * hierarchical timing wheel releasing tasks when they are due.
+ * <p>
+ * tasks are placed in time buckets ({@code tickMillis} wide) of a ring of {@code wheelSize}
+ * slots; tasks due further away go to an overflow wheel whose ticks are as wide as the whole
+ * inner ring, and so on. only buckets (not tasks) are kept in a {@link DelayQueue}, so adding
+ * a task is O(1) no matter how many are scheduled, and a single reaper thread waits for the
+ * next non-empty bucket instead of waking up on every tick. when an outer bucket expires, its
+ * tasks cascade down to the finer wheels until they are due and handed to the executor.
+ * </p>
+ * <p>
+ * same design as the kafka broker's purgatory timer.
+ * </p>
+ */
+@Slf4j
+public class HierarchicalTimingWheel implements AutoCloseable {
+
+    private final DelayQueue<Bucket> delayQueue = new DelayQueue<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Executor executor;
+    private final Wheel root;
+    private final Thread reaper;
+    private volatile boolean running = true;
+
+    /**
+     * @param tickMillis precision of the timer.
+     * @param wheelSize  number of buckets per wheel level.
+     * @param executor   where due tasks run; should not block for long.
+     */
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, Executor executor) {
+        this.executor = executor;
+        this.root = new Wheel(tickMillis, wheelSize, System.currentTimeMillis());
+        this.reaper = new Thread(this::runReaper, "timing-wheel-reaper");
+        this.reaper.setDaemon(true);
+        this.reaper.start();
+    }
+
+    /**
+     * runs the task at (or shortly after) the given time. past times run right away.
+     *
+     * @param dueAtMillis epoch millis when the task is due.
+     * @param task        the task to run.
+     */
+    public void schedule(long dueAtMillis, Runnable task) {
+        pending.incrementAndGet();
+        add(new Entry(dueAtMillis, task));
+    }
+
+    /**
+     * @param dueAtMillis epoch millis when the future should complete.
+     * @return a future completed by the wheel once the time is reached.
+     */
+    public CompletableFuture<Void> delayUntil(long dueAtMillis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        schedule(dueAtMillis, () -> future.complete(null));
+        return future;
+    }
+
+    /**
+     * @return the number of tasks scheduled and not released yet.
+     */
+    public int pendingTasks() {
+        return pending.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        reaper.interrupt();
+    }
+
+    private void add(Entry entry) {
+        lock.readLock().lock();
+        try {
+            if (!root.add(entry)) {
+                release(entry);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void release(Entry entry) {
+        pending.decrementAndGet();
+        try {
+            executor.execute(entry.task);
+        } catch (Exception e) {
+            log.error("Failed to release timer task: {}", e.getMessage(), e);
+        }
+    }
+
+    private void runReaper() {
+        while (running) {
+            try {
+                Bucket bucket = delayQueue.poll(200, TimeUnit.MILLISECONDS);
+                if (bucket == null) continue;
+
+                lock.writeLock().lock();
+                try {
+                    while (bucket != null) {
+                        root.advanceClock(bucket.getExpiration());
+                        // re-adding cascades the entries to a finer wheel, or releases them if due
+                        bucket.flush().forEach(this::add);
+                        bucket = delayQueue.poll();
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                // close() was called
+            }
+        }
+    }
+
+    private record Entry(long dueAtMillis, Runnable task) {
+    }
+
+    /**
+     * a single level of the hierarchy. mutated under the read lock (add) and the write lock
+     * (advanceClock), buckets synchronize on themselves.
+     */
+    private final class Wheel {
+
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket[] buckets;
+        private volatile long currentTime;
+        private volatile Wheel overflow;
+
+        private Wheel(long tickMillis, int wheelSize, long startMillis) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMillis - (startMillis % tickMillis);
+        }
+
+        /**
+         * @return false when the entry is already due.
+         */
+        boolean add(Entry entry) {
+            long dueAt = entry.dueAtMillis();
+            if (dueAt < currentTime + tickMillis) {
+                return false;
+            }
+            if (dueAt < currentTime + interval) {
+                long virtualId = dueAt / tickMillis;
+                Bucket bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.add(entry);
+                // the bucket is reused once its previous round expired, requeue it with the new time
+                if (bucket.setExpiration(virtualId * tickMillis)) {
+                    delayQueue.offer(bucket);
+                }
+                return true;
+            }
+            return overflow().add(entry);
+        }
+
+        void advanceClock(long timeMillis) {
+            if (timeMillis >= currentTime + tickMillis) {
+                currentTime = timeMillis - (timeMillis % tickMillis);
+                Wheel next = overflow;
+                if (next != null) {
+                    next.advanceClock(currentTime);
+                }
+            }
+        }
+
+        private Wheel overflow() {
+            Wheel next = overflow;
+            if (next == null) {
+                synchronized (this) {
+                    if (overflow == null) {
+                        overflow = new Wheel(interval, wheelSize, currentTime);
+                    }
+                    next = overflow;
+                }
+            }
+            return next;
+        }
+    }
+
+    /**
+     * entries sharing the same expiration slot.
+     */
+    private static final class Bucket implements Delayed {
+
+        private final AtomicLong expiration = new AtomicLong(-1);
+        private List<Entry> entries = new ArrayList<>();
+
+        synchronized void add(Entry entry) {
+            entries.add(entry);
+        }
+
+        synchronized List<Entry> flush() {
+            List<Entry> flushed = entries;
+            entries = new ArrayList<>();
+            expiration.set(-1);
+            return flushed;
+        }
+
+        boolean setExpiration(long expirationMillis) {
+            return expiration.getAndSet(expirationMillis) != expirationMillis;
+        }
+
+        long getExpiration() {
+            return expiration.get();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(0, getExpiration() - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getExpiration(), ((Bucket) other).getExpiration());
+        }
+    }
+}
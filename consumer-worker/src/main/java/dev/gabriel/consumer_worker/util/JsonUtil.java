@@ -6,6 +6,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * utility component for json serialization and deserialization using jackson.
  * <p>
@@ -40,6 +42,26 @@ public class JsonUtil {
         }
     }
 
+    /**
+     * safely converts an object to its utf-8 encoded json representation.
+     * <p>
+     * same fallback rules as {@link #toJson(Object)}, used to build http request bodies
+     * without going through an intermediate string.
+     * </p>
+     *
+     * @param obj the object to be serialized.
+     * @return the json bytes, or the tostring() bytes in case of error.
+     */
+    public byte[] toJsonBytes(Object obj) {
+        if (obj == null) return null;
+        try {
+            return objectMapper.writeValueAsBytes(obj);
+        } catch (JsonProcessingException e) {
+            log.error("JSON conversion error", e);
+            return String.valueOf(obj).getBytes(StandardCharsets.UTF_8); // fallback to tostring()
+        }
+    }
+
     /**
      * converts a json string to a typed java object.
      *
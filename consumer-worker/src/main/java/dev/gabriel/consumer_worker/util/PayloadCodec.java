@@ -0,0 +1,80 @@
+package dev.gabriel.consumer_worker.util;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * content hash and compression of the payloads stored with the delivery log.
+ * <p>
+ * payloads are compressed with lz4 (block format, the original size is stored next to the
+ * data): it compresses json several times over at hundreds of MB/s per core, so the single
+ * log writer thread keeps up, and decompression is faster still. payloads that are too small,
+ * or that don't get smaller, are stored as is.
+ * </p>
+ */
+public final class PayloadCodec {
+
+    /** stored as is. */
+    public static final short NONE = 0;
+    /** lz4 block. */
+    public static final short LZ4 = 1;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+    private PayloadCodec() {
+    }
+
+    /**
+     * @return the sha-256 of the payload, used as its key: attempts of the same event share it.
+     */
+    public static byte[] hash(byte[] payload) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(payload);
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm must provide sha-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param payload  the uncompressed payload.
+     * @param minBytes payloads smaller than this are not compressed.
+     * @return the stored form of the payload.
+     */
+    public static Encoded encode(byte[] payload, int minBytes) {
+        if (payload.length >= minBytes) {
+            byte[] buffer = new byte[COMPRESSOR.maxCompressedLength(payload.length)];
+            int length = COMPRESSOR.compress(payload, 0, payload.length, buffer, 0, buffer.length);
+            if (length < payload.length) {
+                return new Encoded(LZ4, payload.length, Arrays.copyOf(buffer, length));
+            }
+        }
+        return new Encoded(NONE, payload.length, payload);
+    }
+
+    /**
+     * @param codec        the codec the data was stored with.
+     * @param originalSize the size of the uncompressed payload.
+     * @param data         the stored data.
+     * @return the uncompressed payload.
+     */
+    public static byte[] decode(short codec, int originalSize, byte[] data) {
+        return switch (codec) {
+            case NONE -> data;
+            case LZ4 -> DECOMPRESSOR.decompress(data, originalSize);
+            default -> throw new IllegalArgumentException("Unknown payload codec: " + codec);
+        };
+    }
+
+    /**
+     * a payload as stored in the database.
+     */
+    public record Encoded(short codec, int originalSize, byte[] data) {
+    }
+}
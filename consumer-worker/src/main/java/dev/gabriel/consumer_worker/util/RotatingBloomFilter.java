@@ -0,0 +1,115 @@
+package dev.gabriel.consumer_worker.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * bloom filter of strings that forgets old entries by rotating two generations.
+ * <p>
+ * entries are added to the current generation and looked up in both. every {@link #rotate()}
+ * the previous generation is discarded and the current one becomes the previous, so an entry
+ * is remembered for one to two rotation periods. a negative answer is always right; a positive
+ * one is wrong with roughly the configured false positive rate.
+ * </p>
+ * <p>
+ * bits live in an {@link AtomicLongArray} and are set with compare-and-set, so adds and lookups
+ * are lock-free and allocation-free: about 10 bits per entry at a 1% false positive rate.
+ * </p>
+ */
+public class RotatingBloomFilter {
+
+    private final int bits;
+    private final int hashes;
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param expectedInsertions entries added per rotation period.
+     * @param falsePositiveRate  target false positive rate at that load, e.g. 0.01.
+     */
+    public RotatingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        // a whole number of longs, capped by the array size limit
+        this.bits = (int) Math.min(Math.max(64, (optimalBits + 63) / 64 * 64), (long) Integer.MAX_VALUE / 64 * 64);
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedInsertions * Math.log(2)));
+        this.current = new Generation(bits);
+        this.previous = new Generation(bits);
+    }
+
+    /**
+     * @return false if the value was certainly never added (within the last two rotations).
+     */
+    public boolean mightContain(String value) {
+        long hash1 = hash(value, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(value, 0xC2B2AE3D27D4EB4FL);
+        return current.contains(hash1, hash2) || previous.contains(hash1, hash2);
+    }
+
+    public void add(String value) {
+        current.add(hash(value, 0x9E3779B97F4A7C15L), hash(value, 0xC2B2AE3D27D4EB4FL));
+    }
+
+    /**
+     * drops the oldest generation. entries added before the previous rotation are forgotten.
+     */
+    public synchronized void rotate() {
+        previous = current;
+        current = new Generation(bits);
+    }
+
+    /**
+     * 64-bit hash of the characters, murmur3 finalizer per step.
+     */
+    private static long hash(String value, long seed) {
+        long h = seed ^ value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = mix(h ^ value.charAt(i));
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private final class Generation {
+
+        private final AtomicLongArray words;
+
+        private Generation(int bits) {
+            this.words = new AtomicLongArray(bits / 64);
+        }
+
+        void add(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = index(hash1, hash2, i);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long current;
+                do {
+                    current = words.get(word);
+                    if ((current & mask) != 0) break;
+                } while (!words.compareAndSet(word, current, current | mask));
+            }
+        }
+
+        boolean contains(long hash1, long hash2) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = index(hash1, hash2, i);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * i-th probe by double hashing (kirsch-mitzenmacher).
+         */
+        private int index(long hash1, long hash2, int i) {
+            return (int) (((hash1 + i * hash2) & Long.MAX_VALUE) % bits);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package dev.gabriel.consumer_worker.util;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * queue shared by weighted classes, served in deficit round robin.
+ * <p>
+ * every class has its own fifo. the classes are visited in turn, and a visited class may take
+ * up to its weight in entries (each entry costs one unit) before the next one gets its turn: a
+ * class of weight 8 gets eight entries served for every entry of a class of weight 1 while both
+ * have some waiting, and any class alone gets all of it. a class left empty forfeits the rest of
+ * its turn, so an idle class never builds up credit to burst later.
+ * </p>
+ * <p>
+ * with a single class it behaves exactly like a fifo. thread-safe, every operation holds the
+ * queue monitor for a constant time.
+ * </p>
+ */
+public class WeightedFairQueue<T> {
+
+    private final int[] weights;
+    private final Queue<T>[] queues;
+    private int current;
+    private int deficit;
+    private int size;
+
+    /**
+     * @param weights weight of every class, index by index, each at least 1.
+     */
+    @SuppressWarnings("unchecked")
+    public WeightedFairQueue(int[] weights) {
+        if (weights.length == 0) throw new IllegalArgumentException("At least one class is required");
+        this.weights = weights.clone();
+        this.queues = new Queue[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 1) throw new IllegalArgumentException("Class weights must be at least 1");
+            queues[i] = new ArrayDeque<>();
+        }
+        this.deficit = this.weights[0];
+    }
+
+    /**
+     * adds an entry at the tail of its class.
+     *
+     * @param cls   index of the class, out of range values go to the last class.
+     * @param entry the entry, not null.
+     */
+    public synchronized void add(int cls, T entry) {
+        queues[Math.min(Math.max(cls, 0), queues.length - 1)].add(entry);
+        size++;
+    }
+
+    /**
+     * @return the next entry in weighted order, or null when empty.
+     */
+    public synchronized T poll() {
+        if (size == 0) return null;
+        while (true) {
+            Queue<T> queue = queues[current];
+            if (deficit > 0 && !queue.isEmpty()) {
+                deficit--;
+                size--;
+                return queue.poll();
+            }
+            // turn over (used up, or nothing waiting): the next class starts a fresh one
+            current = (current + 1) % queues.length;
+            deficit = weights[current];
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
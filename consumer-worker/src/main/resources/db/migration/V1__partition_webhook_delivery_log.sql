@@ -0,0 +1,62 @@
+-- delivery log range-partitioned by attempt_time, one partition per day.
+-- partitions are created ahead and dropped (or archived) by LogPartitionMaintenance,
+-- so retention is a metadata operation instead of a huge DELETE.
+
+-- databases created before migrations were introduced have the table generated by hibernate:
+-- keep it aside and attach it below as the partition of all the older rows
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace
+               WHERE c.relname = 'webhook_delivery_log' AND c.relkind = 'r' AND n.nspname = current_schema()) THEN
+        ALTER TABLE webhook_delivery_log RENAME TO webhook_delivery_log_legacy;
+    END IF;
+END $$;
+
+CREATE TABLE webhook_delivery_log (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY,
+    event_id        VARCHAR(255),
+    target_url      TEXT,
+    request_payload TEXT,
+    response_status INTEGER   NOT NULL,
+    success         BOOLEAN   NOT NULL,
+    error_message   TEXT,
+    attempt_time    TIMESTAMP(6) NOT NULL,
+    -- the partition key must be part of the primary key
+    PRIMARY KEY (id, attempt_time)
+) PARTITION BY RANGE (attempt_time);
+
+-- lookups by event, and history of a destination over a time range
+CREATE INDEX ix_delivery_log_event_id ON webhook_delivery_log (event_id);
+CREATE INDEX ix_delivery_log_target_url_time ON webhook_delivery_log (target_url, attempt_time);
+
+-- expired partitions are moved here when webhook.log-retention.expired-action is "archive"
+CREATE SCHEMA IF NOT EXISTS webhook_archive;
+
+DO $$
+DECLARE
+    next_id BIGINT;
+BEGIN
+    IF to_regclass('webhook_delivery_log_legacy') IS NOT NULL THEN
+        -- partitions can't own an identity, and their columns must match the parent
+        ALTER TABLE webhook_delivery_log_legacy ALTER COLUMN id DROP IDENTITY IF EXISTS;
+        ALTER TABLE webhook_delivery_log_legacy ALTER COLUMN target_url TYPE TEXT;
+        UPDATE webhook_delivery_log_legacy SET attempt_time = 'epoch' WHERE attempt_time IS NULL;
+        ALTER TABLE webhook_delivery_log_legacy ALTER COLUMN attempt_time SET NOT NULL;
+
+        -- a valid check implying the partition bound lets ATTACH skip its own scan of the table,
+        -- which would hold an ACCESS EXCLUSIVE lock on the parent. VALIDATE scans under a lighter
+        -- lock, and it is dropped once attached, the partition constraint replaces it
+        EXECUTE format('ALTER TABLE webhook_delivery_log_legacy ADD CONSTRAINT webhook_delivery_log_legacy_bound '
+                       'CHECK (attempt_time IS NOT NULL AND attempt_time < %L) NOT VALID', current_date + 1);
+        ALTER TABLE webhook_delivery_log_legacy VALIDATE CONSTRAINT webhook_delivery_log_legacy_bound;
+
+        -- up to the end of the day, the rows written today before the upgrade belong to it too.
+        -- LogPartitionMaintenance expires it like a daily partition once that day is past the retention
+        EXECUTE format('ALTER TABLE webhook_delivery_log ATTACH PARTITION webhook_delivery_log_legacy '
+                       'FOR VALUES FROM (MINVALUE) TO (%L)', current_date + 1);
+        ALTER TABLE webhook_delivery_log_legacy DROP CONSTRAINT webhook_delivery_log_legacy_bound;
+
+        SELECT coalesce(max(id), 0) + 1 INTO next_id FROM webhook_delivery_log_legacy;
+        PERFORM setval(pg_get_serial_sequence('webhook_delivery_log', 'id'), next_id, false);
+    END IF;
+END $$;
@@ -0,0 +1,3 @@
+-- successful deliveries by time, read back every few seconds by DeliveryDeduplicator.
+-- partial and covering: only delivered rows, answered with an index-only scan
+CREATE INDEX ix_delivery_log_delivered_time ON webhook_delivery_log (attempt_time) INCLUDE (event_id) WHERE success;
@@ -0,0 +1,8 @@
+-- read api (DeliveryLogController): filter by client, page newest first by (attempt_time, id).
+-- rows written before this migration have no client_id
+ALTER TABLE webhook_delivery_log ADD COLUMN client_id VARCHAR(255);
+
+-- keyset pagination seeks with (attempt_time, id) < (?, ?), so every filter index ends with
+-- both columns and a page is a single index range scan, whatever its depth
+CREATE INDEX ix_delivery_log_time_id ON webhook_delivery_log (attempt_time, id);
+CREATE INDEX ix_delivery_log_client_time_id ON webhook_delivery_log (client_id, attempt_time, id);
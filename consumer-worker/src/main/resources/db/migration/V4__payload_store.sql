@@ -0,0 +1,18 @@
+-- payloads stored once per content, compressed, instead of once per attempt.
+-- attempts reference them by hash; request_payload is only filled on rows written before this migration
+CREATE TABLE webhook_payload (
+    hash          BYTEA    PRIMARY KEY, -- sha-256 of the uncompressed payload
+    codec         SMALLINT NOT NULL,    -- 0 = stored as is, 1 = lz4 block (see PayloadCodec)
+    original_size INTEGER  NOT NULL,
+    data          BYTEA    NOT NULL,
+    -- day of the latest attempt referencing the payload: retention removes the payloads
+    -- whose every attempt is in an expired partition
+    last_used     DATE     NOT NULL
+);
+
+-- the data is compressed already, don't let toast try again
+ALTER TABLE webhook_payload ALTER COLUMN data SET STORAGE EXTERNAL;
+
+CREATE INDEX ix_payload_last_used ON webhook_payload (last_used);
+
+ALTER TABLE webhook_delivery_log ADD COLUMN payload_hash BYTEA;
@@ -0,0 +1,4 @@
+-- V1 indexed target_url with attempt_time only: a target url filter page sorted again on id,
+-- and its cursor seek was not a single range scan. same layout as the V3 indexes instead
+CREATE INDEX ix_delivery_log_target_url_time_id ON webhook_delivery_log (target_url, attempt_time, id);
+DROP INDEX ix_delivery_log_target_url_time;
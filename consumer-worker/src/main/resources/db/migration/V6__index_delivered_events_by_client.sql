@@ -0,0 +1,4 @@
+-- DeliveryDeduplicator reads back (client_id, event_id) of the successful deliveries: the V2 index
+-- only covered event_id (client_id came with V3), so it is rebuilt to stay an index-only scan
+DROP INDEX ix_delivery_log_delivered_time;
+CREATE INDEX ix_delivery_log_delivered_time ON webhook_delivery_log (attempt_time) INCLUDE (client_id, event_id) WHERE success;
@@ -0,0 +1,82 @@
+package dev.gabriel.consumer_worker;
+
+import dev.gabriel.consumer_worker.config.LogRetentionProperties;
+import dev.gabriel.consumer_worker.service.LogPartitionMaintenance;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * runs the migrations of db/migration on an empty schema of a real postgres.
+ * <p>
+ * needs a database, given as a jdbc url with its credentials, e.g.
+ * {@code WEBHOOK_TEST_POSTGRES_URL=jdbc:postgresql://localhost:5432/webhook_db?user=user&password=password}
+ * (the docker-compose one). skipped without it.
+ * </p>
+ */
+@EnabledIfEnvironmentVariable(named = "WEBHOOK_TEST_POSTGRES_URL", matches = "jdbc:postgresql:.*")
+class FlywayMigrationTests {
+
+	private final String schema = "migration_test_" + UUID.randomUUID().toString().replace("-", "");
+	private SingleConnectionDataSource dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private Flyway flyway;
+
+	@BeforeEach
+	void setUp() {
+		// a single connection, so the search path set by a test holds for the next statements
+		dataSource = new SingleConnectionDataSource(System.getenv("WEBHOOK_TEST_POSTGRES_URL"), true);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		flyway = Flyway.configure()
+				.dataSource(dataSource)
+				.schemas(schema)
+				.cleanDisabled(false)
+				.load();
+	}
+
+	@AfterEach
+	void tearDown() {
+		flyway.clean();
+		jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+		dataSource.destroy();
+	}
+
+	@Test
+	void migratesAnEmptyDatabase() {
+		MigrateResult result = flyway.migrate();
+
+		assertTrue(result.success);
+		assertEquals(flyway.info().all().length, result.migrationsExecuted);
+	}
+
+	@Test
+	void rowsOfTodayHaveAPartitionOnceStarted() {
+		flyway.migrate();
+		jdbcTemplate.execute("SET search_path TO " + schema);
+
+		new LogPartitionMaintenance(jdbcTemplate, new LogRetentionProperties()).createUpcomingPartitions();
+
+		assertEquals(1, jdbcTemplate.update("INSERT INTO webhook_delivery_log (event_id, response_status, success, "
+				+ "attempt_time) VALUES ('e-1', 200, true, now())"));
+	}
+
+	@Test
+	void deliveredEventsIndexCoversTheClient() {
+		flyway.migrate();
+
+		String definition = jdbcTemplate.queryForObject(
+				"SELECT indexdef FROM pg_indexes WHERE schemaname = ? AND indexname = 'ix_delivery_log_delivered_time'",
+				String.class, schema);
+		assertTrue(definition.contains("INCLUDE (client_id, event_id)"), definition);
+	}
+}
@@ -0,0 +1,44 @@
+package dev.gabriel.consumer_worker.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HttpClientKeepAliveTests {
+
+	private String launch;
+
+	@BeforeEach
+	void saveLaunchValue() {
+		launch = System.clearProperty(HttpClientKeepAlive.PROPERTY);
+	}
+
+	@AfterEach
+	void restoreLaunchValue() {
+		if (launch != null) {
+			System.setProperty(HttpClientKeepAlive.PROPERTY, launch);
+		} else {
+			System.clearProperty(HttpClientKeepAlive.PROPERTY);
+		}
+	}
+
+	@Test
+	void configuredKeepAliveIsSetInSeconds() {
+		HttpClientKeepAlive.apply(Duration.ofSeconds(45));
+
+		assertEquals("45", System.getProperty(HttpClientKeepAlive.PROPERTY));
+	}
+
+	@Test
+	void launchValueWins() {
+		System.setProperty(HttpClientKeepAlive.PROPERTY, "5");
+
+		HttpClientKeepAlive.apply(Duration.ofSeconds(45));
+
+		assertEquals("5", System.getProperty(HttpClientKeepAlive.PROPERTY));
+	}
+}
@@ -0,0 +1,154 @@
+package dev.gabriel.consumer_worker.repository;
+
+import dev.gabriel.consumer_worker.config.LogQueryProperties;
+import dev.gabriel.consumer_worker.model.DeliveryLogPage;
+import dev.gabriel.consumer_worker.model.DeliveryLogQuery;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DeliveryLogQueryRepositoryTests {
+
+	private static final LocalDateTime NOW = LocalDateTime.of(2026, 3, 14, 15, 9, 26, 535_897_000);
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final LogQueryProperties properties = new LogQueryProperties();
+	/** rows the database returns to the next query, newest first. */
+	private final List<WebhookDeliveryLog> rows = new ArrayList<>();
+	private String sql;
+	private Object[] args;
+
+	@SuppressWarnings("unchecked")
+	DeliveryLogQueryRepositoryTests() {
+		when(jdbcTemplate.getDataSource()).thenReturn(mock(DataSource.class));
+		when(jdbcTemplate.query(anyString(), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+			sql = invocation.getArgument(0);
+			Object[] raw = invocation.getRawArguments();
+			args = (Object[]) raw[2];
+			return new ArrayList<>(rows);
+		});
+	}
+
+	@Test
+	void firstPageHasNoSeekAndFetchesOneExtraRow() {
+		rows(4, NOW);
+
+		DeliveryLogPage page = repository().findPage(DeliveryLogQuery.builder().clientId("client-a").build(), null, 3);
+
+		assertEquals(3, page.getItems().size());
+		assertNotNull(page.getNextCursor());
+		assertFalse(sql.contains("(l.attempt_time, l.id) <"));
+		assertTrue(sql.endsWith("ORDER BY l.attempt_time DESC, l.id DESC LIMIT 4"));
+		assertArrayEquals(new Object[]{"client-a"}, args);
+	}
+
+	@Test
+	void cursorSeeksRightAfterTheLastRowReturned() {
+		rows(4, NOW);
+		DeliveryLogPage first = repository().findPage(new DeliveryLogQuery(), null, 3);
+		WebhookDeliveryLog last = first.getItems().get(2);
+
+		rows.clear();
+		repository().findPage(new DeliveryLogQuery(), first.getNextCursor(), 3);
+
+		assertTrue(sql.contains("WHERE (l.attempt_time, l.id) < (?, ?)"));
+		// the nanoseconds survive the cursor, a row of the same millisecond is neither skipped nor repeated
+		assertArrayEquals(new Object[]{Timestamp.valueOf(last.getAttemptTime()), last.getId()}, args);
+	}
+
+	@Test
+	void cursorSeeksTheIdWithinRowsOfTheSameTime() {
+		// every row of the page shares its attempt time, only the id orders them
+		for (long id = 10; id > 6; id--) {
+			rows.add(row(id, NOW));
+		}
+
+		DeliveryLogPage page = repository().findPage(new DeliveryLogQuery(), null, 3);
+		repository().findPage(new DeliveryLogQuery(), page.getNextCursor(), 3);
+
+		assertArrayEquals(new Object[]{Timestamp.valueOf(NOW), 8L}, args);
+	}
+
+	@Test
+	void pageOfExactlyTheLimitIsTheLastOne() {
+		rows(3, NOW);
+
+		DeliveryLogPage page = repository().findPage(new DeliveryLogQuery(), null, 3);
+
+		assertEquals(3, page.getItems().size());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	void emptyPageHasNoCursor() {
+		DeliveryLogPage page = repository().findPage(new DeliveryLogQuery(), "", 3);
+
+		assertTrue(page.getItems().isEmpty());
+		assertNull(page.getNextCursor());
+		assertFalse(sql.contains("WHERE"));
+	}
+
+	@Test
+	void limitIsCappedAndAtLeastOne() {
+		properties.setMaxPageSize(50);
+
+		repository().findPage(new DeliveryLogQuery(), null, 10_000);
+		assertTrue(sql.endsWith("LIMIT 51"));
+
+		repository().findPage(new DeliveryLogQuery(), null, 0);
+		assertTrue(sql.endsWith("LIMIT 2"));
+	}
+
+	@Test
+	void malformedCursorsAreRejected() {
+		DeliveryLogQueryRepository repository = repository();
+		List<String> cursors = List.of("not base64!", encode("no separator"), encode("yesterday|12"),
+				encode(NOW + "|twelve"));
+
+		for (String cursor : cursors) {
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+					() -> repository.findPage(new DeliveryLogQuery(), cursor, 3), cursor);
+			assertEquals("Invalid cursor: " + cursor, e.getMessage());
+		}
+	}
+
+	private DeliveryLogQueryRepository repository() {
+		return new DeliveryLogQueryRepository(jdbcTemplate, mock(PlatformTransactionManager.class), properties);
+	}
+
+	private void rows(int count, LocalDateTime newest) {
+		for (int i = 0; i < count; i++) {
+			rows.add(row(100 - i, newest.minusNanos(1_000L * i)));
+		}
+	}
+
+	private static WebhookDeliveryLog row(long id, LocalDateTime attemptTime) {
+		return WebhookDeliveryLog.builder().id(id).attemptTime(attemptTime).build();
+	}
+
+	private static String encode(String position) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,100 @@
+package dev.gabriel.consumer_worker.serialization;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryEnvelopeTests {
+
+	/** version 1 of e-1 / client-a / http://receiver/hook, no trace id, ingested at 1700000000000, {"n":1}. */
+	static final byte[] VERSION_1_VECTOR = HexFormat.of().parseHex(
+			"fe0104652d3109636c69656e742d6115687474703a2f2f72656365697665722f686f6f6b0080d095ffbc317b226e223a317d");
+
+	private static final byte[] PAYLOAD = "{\"n\":1}".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	void readsTheLayoutTheProducerWrites() {
+		// producer-api checks its copy against the same bytes
+		WebhookEvent event = BinaryEnvelope.decode(VERSION_1_VECTOR);
+
+		assertEquals("e-1", event.getEventId());
+		assertEquals("client-a", event.getClientId());
+		assertEquals("http://receiver/hook", event.getTargetUrl());
+		assertNull(event.getTraceId());
+		assertEquals(1_700_000_000_000L, event.getIngestedAt());
+		assertArrayEquals(PAYLOAD, event.getRawPayload());
+		assertTrue(event.isBinaryEnvelope());
+		assertArrayEquals(VERSION_1_VECTOR, BinaryEnvelope.encode(event));
+	}
+
+	@Test
+	void roundTrips() {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("é-1");
+		event.setClientId("client-a");
+		event.setTargetUrl("http://receiver/hook");
+		event.setTraceId("4bf92f3577b34da6a3ce929d0e0e4736");
+		event.setIngestedAt(Long.MAX_VALUE);
+		event.setRawPayload(PAYLOAD);
+
+		WebhookEvent read = BinaryEnvelope.decode(BinaryEnvelope.encode(event));
+
+		assertEquals("é-1", read.getEventId());
+		assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", read.getTraceId());
+		assertEquals(Long.MAX_VALUE, read.getIngestedAt());
+		assertArrayEquals(PAYLOAD, read.getRawPayload());
+	}
+
+	@Test
+	void emptyPayloadIsReadAsNone() {
+		WebhookEvent event = new WebhookEvent();
+		event.setClientId("client-a");
+
+		WebhookEvent read = BinaryEnvelope.decode(BinaryEnvelope.encode(event));
+
+		assertNull(read.getEventId());
+		assertEquals("client-a", read.getClientId());
+		assertNull(read.getRawPayload());
+	}
+
+	@Test
+	void rejectsTruncatedValues() {
+		// every cut before the payload leaves a field incomplete
+		int headerEnd = VERSION_1_VECTOR.length - PAYLOAD.length;
+		for (int length = 1; length < headerEnd; length++) {
+			byte[] truncated = Arrays.copyOf(VERSION_1_VECTOR, length);
+			assertThrows(SerializationException.class, () -> BinaryEnvelope.decode(truncated), "length " + length);
+		}
+	}
+
+	@Test
+	void rejectsUnknownVersions() {
+		byte[] version2 = VERSION_1_VECTOR.clone();
+		version2[1] = 2;
+
+		SerializationException e = assertThrows(SerializationException.class, () -> BinaryEnvelope.decode(version2));
+		assertEquals("Unsupported binary envelope version 2", e.getMessage());
+	}
+
+	@Test
+	void recognizesOnlyTheMagicByte() {
+		byte[] json = VERSION_1_VECTOR.clone();
+		json[0] = '{';
+
+		assertFalse(BinaryEnvelope.isBinary(json));
+		assertFalse(BinaryEnvelope.isBinary(new byte[0]));
+		assertFalse(BinaryEnvelope.isBinary(null));
+		assertThrows(SerializationException.class, () -> BinaryEnvelope.decode(json));
+	}
+}
@@ -0,0 +1,90 @@
+package dev.gabriel.consumer_worker.serialization;
+
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class WebhookEventDeserializerTests {
+
+	private final WebhookEventDeserializer deserializer = new WebhookEventDeserializer();
+	private final WebhookEventSerializer serializer = new WebhookEventSerializer();
+
+	WebhookEventDeserializerTests() {
+		// same settings as application.yml
+		deserializer.configure(Map.of(
+				"spring.json.trusted.packages", "*",
+				"spring.json.type.mapping",
+				"dev.gabriel.producer_api.model.WebhookEvent:dev.gabriel.consumer_worker.model.WebhookEvent"), false);
+		serializer.configure(Map.of(), false);
+	}
+
+	@AfterEach
+	void close() {
+		deserializer.close();
+		serializer.close();
+	}
+
+	@Test
+	void readsEmbeddedEventsOfTheProducer() {
+		Headers headers = new RecordHeaders();
+		// type header written by the producer's json serializer
+		headers.add("__TypeId__", "dev.gabriel.producer_api.model.WebhookEvent".getBytes(StandardCharsets.UTF_8));
+		headers.add(WebhookEventSerializer.TRACE_ID_HEADER, "trace-1".getBytes(StandardCharsets.UTF_8));
+		byte[] value = ("{\"eventId\":\"e-1\",\"clientId\":\"client-a\",\"targetUrl\":\"http://receiver/hook\","
+				+ "\"payload\":{\"n\":1}}").getBytes(StandardCharsets.UTF_8);
+
+		WebhookEvent event = deserializer.deserialize("webhook.deliveries", headers, value);
+
+		assertEquals("e-1", event.getEventId());
+		assertEquals("client-a", event.getClientId());
+		assertEquals(Map.of("n", 1), event.getPayload());
+		assertEquals("trace-1", event.getTraceId());
+		assertNull(event.getRawPayload());
+	}
+
+	@Test
+	void embeddedEventRoundTripsThroughARetry() {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("e-1");
+		event.setClientId("client-a");
+		event.setTargetUrl("http://receiver/hook");
+		event.setPayload(Map.of("n", 1));
+		event.setTraceId("trace-1");
+		event.setIngestedAt(1_700_000_000_000L);
+
+		Headers headers = new RecordHeaders();
+		WebhookEvent read = deserializer.deserialize("webhook.retry", headers,
+				serializer.serialize("webhook.retry", headers, event));
+
+		assertEquals(event.getPayload(), read.getPayload());
+		assertEquals(event.getTargetUrl(), read.getTargetUrl());
+		assertEquals("trace-1", read.getTraceId());
+		assertEquals(1_700_000_000_000L, read.getIngestedAt());
+	}
+
+	@Test
+	void opaqueEventRoundTripsThroughARetry() {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("e-1");
+		event.setClientId("client-a");
+		event.setTargetUrl("http://receiver/hook");
+		event.setRawPayload("{\"n\":1}".getBytes(StandardCharsets.UTF_8));
+
+		Headers headers = new RecordHeaders();
+		WebhookEvent read = deserializer.deserialize("webhook.retry", headers,
+				serializer.serialize("webhook.retry", headers, event));
+
+		assertArrayEquals(event.getRawPayload(), read.getRawPayload());
+		assertNull(read.getPayload());
+		assertEquals("e-1", read.getEventId());
+	}
+}
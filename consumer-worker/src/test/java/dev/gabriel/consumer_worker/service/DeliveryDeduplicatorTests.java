@@ -0,0 +1,54 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DedupProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeliveryDeduplicatorTests {
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final DeliveryDeduplicator deduplicator = new DeliveryDeduplicator(jdbcTemplate, new DedupProperties(), new SimpleMeterRegistry());
+
+	@Test
+	void deliveredEventIsRecognizedWithoutQuery() {
+		deduplicator.markDelivered("client-a", "event-1");
+
+		assertTrue(deduplicator.isDelivered("client-a", "event-1"));
+		verify(jdbcTemplate, never()).queryForObject(any(String.class), eq(Boolean.class), any(Object[].class));
+	}
+
+	@Test
+	void sameEventIdOfAnotherClientIsNotADuplicate() {
+		when(jdbcTemplate.queryForObject(any(String.class), eq(Boolean.class), any(Object[].class))).thenReturn(false);
+		deduplicator.markDelivered("client-a", "event-1");
+
+		assertFalse(deduplicator.isDelivered("client-b", "event-1"));
+		assertFalse(deduplicator.isDelivered("client-a", "event-2"));
+	}
+
+	@Test
+	void separatorKeepsPairsApart() {
+		assertNotEquals(DeliveryDeduplicator.key("a:b", "c"), DeliveryDeduplicator.key("a", "b:c"));
+		assertNotEquals(DeliveryDeduplicator.key("a\u0000b", "c"), DeliveryDeduplicator.key("a", "b\u0000c"));
+		assertNotEquals(DeliveryDeduplicator.key("1", "2:3"), DeliveryDeduplicator.key("12", "3"));
+		assertNotEquals(DeliveryDeduplicator.key(null, "e"), DeliveryDeduplicator.key("null", "e"));
+	}
+
+	@Test
+	void eventsWithoutIdAreNeverDuplicates() {
+		deduplicator.markDelivered("client-a", null);
+
+		assertFalse(deduplicator.isDelivered("client-a", null));
+	}
+}
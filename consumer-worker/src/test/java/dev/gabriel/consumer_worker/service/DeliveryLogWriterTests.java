@@ -0,0 +1,154 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.LogWriterProperties;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DeliveryLogWriterTests {
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final LogWriterProperties properties = new LogWriterProperties();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final List<String> written = new CopyOnWriteArrayList<>();
+	private DeliveryLogWriter writer;
+
+	DeliveryLogWriterTests() {
+		properties.setFlushInterval(Duration.ofMillis(20));
+		properties.setMaxRetryBackoff(Duration.ofMillis(100));
+		properties.setMaxWriteAttempts(3);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		if (writer != null) {
+			writer.close();
+		}
+	}
+
+	@Test
+	void poisonRowIsDeadLetteredAndTheRestOfItsBatchWritten() throws Exception {
+		onBatch(rows -> {
+			if (rows.contains("poison")) throw new DataIntegrityViolationException("value too long");
+		});
+		start();
+
+		for (String eventId : List.of("a", "b", "poison", "c", "d")) {
+			writer.append(row(eventId));
+		}
+
+		waitUntil(() -> written.size() == 4);
+		assertEquals(List.of("a", "b", "c", "d"), written.stream().sorted().toList());
+		assertEquals(1, deadLettered());
+	}
+
+	@Test
+	void transientFailureIsRetried() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		onBatch(rows -> {
+			if (attempts.incrementAndGet() == 1) throw new CannotGetJdbcConnectionException("connection refused");
+		});
+		start();
+
+		writer.append(row("a"));
+
+		waitUntil(() -> written.size() == 1);
+		assertEquals(2, attempts.get());
+		assertEquals(0, deadLettered());
+	}
+
+	@Test
+	void batchIsDeadLetteredAfterItsLastAttempt() throws Exception {
+		AtomicInteger attempts = new AtomicInteger();
+		onBatch(rows -> {
+			attempts.incrementAndGet();
+			throw new CannotAcquireLockException("lock timeout");
+		});
+		start();
+
+		writer.append(row("a"));
+		writer.append(row("b"));
+
+		waitUntil(() -> deadLettered() == 2);
+		assertEquals(3, attempts.get());
+		assertTrue(written.isEmpty());
+	}
+
+	@Test
+	void failuresAreClassifiedBySqlState() {
+		assertTrue(DeliveryLogWriter.isTransient(new UncategorizedSQLException("insert", "insert",
+				new SQLException("terminating connection due to administrator command", "57P01"))));
+		assertFalse(DeliveryLogWriter.isTransient(new UncategorizedSQLException("insert", "insert",
+				new SQLException("no partition of relation found for row", "23514"))));
+		assertFalse(DeliveryLogWriter.isTransient(new IllegalArgumentException("bad row")));
+	}
+
+	private void start() {
+		writer = new DeliveryLogWriter(jdbcTemplate, mock(PayloadStore.class), properties, meterRegistry);
+		writer.start();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void onBatch(Consumer<List<String>> attempt) {
+		when(jdbcTemplate.batchUpdate(anyString(), anyCollection(), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+				.thenAnswer(invocation -> {
+					List<String> rows = new ArrayList<>();
+					for (Object entry : (Collection<WebhookDeliveryLog>) invocation.getArgument(1)) {
+						rows.add(((WebhookDeliveryLog) entry).getEventId());
+					}
+					attempt.accept(rows);
+					written.addAll(rows);
+					return new int[0][];
+				});
+	}
+
+	private double deadLettered() {
+		return meterRegistry.counter("webhook.delivery.log.dead.letter").count();
+	}
+
+	private static WebhookDeliveryLog row(String eventId) {
+		return WebhookDeliveryLog.builder()
+				.eventId(eventId)
+				.clientId("client")
+				.targetUrl("https://receiver.test/hook")
+				.attemptTime(LocalDateTime.now())
+				.build();
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.RetryProperties;
+import dev.gabriel.consumer_worker.exception.WebhookDeliveryException;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeliveryRetryServiceTests {
+
+	@SuppressWarnings("unchecked")
+	private final KafkaTemplate<String, WebhookEvent> kafkaTemplate = mock(KafkaTemplate.class);
+	private final WebhookLogService logService = mock(WebhookLogService.class);
+	private final DeliveryRetryService retryService;
+
+	@SuppressWarnings("unchecked")
+	DeliveryRetryServiceTests() {
+		// tiers 10s, 1m, 10m, 1h
+		retryService = new DeliveryRetryService(kafkaTemplate, new RetryTopics(new RetryProperties()), logService);
+		when(kafkaTemplate.send(any(ProducerRecord.class)))
+				.thenReturn(CompletableFuture.completedFuture(mock(SendResult.class)));
+	}
+
+	@Test
+	void failuresGoToTheTierMatchingTheirCount() {
+		long before = System.currentTimeMillis();
+
+		ProducerRecord<String, WebhookEvent> first = scheduled(1, new WebhookDeliveryException(503));
+		assertEquals("webhook.deliveries.retry.10s", first.topic());
+		assertEquals("client", first.key());
+		assertEquals("1", header(first, RetryTopics.RETRY_COUNT_HEADER));
+		long dueAt = Long.parseLong(header(first, RetryTopics.DUE_AT_HEADER));
+		assertTrue(dueAt >= before + 10_000 && dueAt <= System.currentTimeMillis() + 10_000);
+
+		assertEquals("webhook.deliveries.retry.1m", scheduled(2, new WebhookDeliveryException(503)).topic());
+		assertEquals("webhook.deliveries.retry.1h", scheduled(4, new WebhookDeliveryException(503)).topic());
+		verify(logService, never()).saveLog(any(), anyInt(), anyBoolean(), anyString());
+	}
+
+	@Test
+	void failureAfterTheLastTierGoesToTheDeadLetterTopic() {
+		ProducerRecord<String, WebhookEvent> record = scheduled(5, new WebhookDeliveryException(503));
+
+		assertEquals("webhook.deliveries.dlt", record.topic());
+		assertEquals("5", header(record, RetryTopics.RETRY_COUNT_HEADER));
+		assertEquals("0", header(record, RetryTopics.DUE_AT_HEADER));
+		verify(logService).saveLog(any(), eq(0), eq(false), anyString());
+	}
+
+	@Test
+	void onlyRetryableFailuresGoToTheTiers() {
+		assertEquals("webhook.deliveries.retry.10s", scheduled(1, new WebhookDeliveryException(500)).topic());
+		assertEquals("webhook.deliveries.retry.10s", scheduled(1, new WebhookDeliveryException(408)).topic());
+		assertEquals("webhook.deliveries.retry.10s", scheduled(1, new WebhookDeliveryException(429)).topic());
+		assertEquals("webhook.deliveries.retry.10s", scheduled(1, new IOException("connection reset")).topic());
+
+		assertEquals("webhook.deliveries.dlt", scheduled(1, new WebhookDeliveryException(400)).topic());
+		assertEquals("webhook.deliveries.dlt", scheduled(1, new WebhookDeliveryException(410)).topic());
+		assertEquals("webhook.deliveries.dlt", scheduled(1, new IllegalArgumentException("invalid url")).topic());
+	}
+
+	@SuppressWarnings("unchecked")
+	private ProducerRecord<String, WebhookEvent> scheduled(int retryCount, Throwable cause) {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("event");
+		event.setClientId("client");
+		event.setTargetUrl("https://receiver.test/hook");
+		retryService.scheduleRetry(event, retryCount, cause).join();
+
+		ArgumentCaptor<ProducerRecord<String, WebhookEvent>> sent = ArgumentCaptor.forClass(ProducerRecord.class);
+		verify(kafkaTemplate, atLeastOnce()).send(sent.capture());
+		return sent.getValue();
+	}
+
+	private static String header(ProducerRecord<?, ?> record, String name) {
+		return new String(record.headers().lastHeader(name).value(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,114 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DestinationProperties;
+import dev.gabriel.consumer_worker.config.HttpDeliveryProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DestinationCacheTests {
+
+	private final DestinationProperties properties = new DestinationProperties();
+	private final AtomicLong now = new AtomicLong();
+	private final DestinationCache cache;
+
+	DestinationCacheTests() {
+		properties.setIdleTimeout(Duration.ofMinutes(10));
+		// no lookups in the background: the addresses count as fresh for the whole test
+		properties.setDnsTtl(Duration.ofDays(1));
+		cache = new DestinationCache(properties, now::get);
+	}
+
+	@AfterEach
+	void tearDown() {
+		cache.close();
+	}
+
+	@Test
+	void urlIsParsedOnceAndItsHostShared() {
+		DestinationCache.Destination first = cache.destinationFor("https://receiver.test/a");
+
+		assertSame(first, cache.destinationFor("https://receiver.test/a"));
+		assertSame(first.host(), cache.destinationFor("https://receiver.test/b").host());
+		assertEquals("receiver.test", first.host().name());
+		assertEquals(-1, first.host().port());
+		assertNotSame(first.host(), cache.destinationFor("https://receiver.test:8443/a").host());
+	}
+
+	@Test
+	void invalidUrlKeepsItsError() {
+		DestinationCache.Destination destination = cache.destinationFor("not a url");
+
+		assertNull(destination.uri());
+		assertNull(destination.host());
+		assertNotNull(destination.error());
+		assertSame(destination, cache.destinationFor("not a url"));
+	}
+
+	@Test
+	void hostInUseIsNotDroppedWhileItsUrlIsCached() {
+		DestinationCache.Host host = cache.destinationFor("https://receiver.test/a").host();
+		host.record(TimeUnit.MILLISECONDS.toNanos(20), true);
+
+		// used every few minutes, never idle for the 10 minute timeout
+		for (int i = 0; i < 6; i++) {
+			now.addAndGet(TimeUnit.MINUTES.toNanos(4));
+			assertSame(host, cache.destinationFor("https://receiver.test/a").host());
+		}
+		assertEquals(List.of(host), cache.busiestHosts(10));
+
+		now.addAndGet(TimeUnit.MINUTES.toNanos(11));
+		assertTrue(cache.busiestHosts(10).isEmpty());
+	}
+
+	@Test
+	void busiestHostsComeFirstWithTheirLastUrl() {
+		DestinationCache.Host quiet = cache.destinationFor("https://quiet.test/hook").host();
+		DestinationCache.Host busy = cache.destinationFor("https://busy.test/one").host();
+		cache.destinationFor("https://idle.test/hook");
+		quiet.record(1_000, true);
+		for (int i = 0; i < 3; i++) {
+			busy.record(1_000, i != 0);
+		}
+		cache.destinationFor("https://busy.test/two");
+
+		assertEquals(List.of(busy, quiet), cache.busiestHosts(10));
+		assertEquals(List.of(busy), cache.busiestHosts(1));
+		assertEquals(1, busy.failures());
+		assertEquals(URI.create("https://busy.test/two"), busy.lastUrl());
+	}
+
+	@Test
+	void prewarmIsOptIn() throws Exception {
+		HttpDeliveryEngine engine = mock(HttpDeliveryEngine.class);
+		when(engine.openConnections(any(), anyInt())).thenReturn(CompletableFuture.completedFuture(null));
+		cache.destinationFor("https://receiver.test/hook").host().record(1_000, true);
+
+		new DestinationPrewarmer(properties, new HttpDeliveryProperties(), cache, engine).prewarm();
+		verify(engine, never()).openConnections(any(), anyInt());
+
+		properties.getPrewarm().setEnabled(true);
+		new DestinationPrewarmer(properties, new HttpDeliveryProperties(), cache, engine).prewarm();
+		verify(engine).openConnections(eq(URI.create("https://receiver.test/hook")), anyInt());
+	}
+}
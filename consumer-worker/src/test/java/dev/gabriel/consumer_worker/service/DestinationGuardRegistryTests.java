@@ -0,0 +1,120 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DestinationProperties;
+import dev.gabriel.consumer_worker.config.IsolationProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DestinationGuardRegistryTests {
+
+	private final IsolationProperties properties = new IsolationProperties();
+	private final DestinationGuardRegistry registry;
+
+	DestinationGuardRegistryTests() {
+		properties.getBulkhead().setMaxConcurrentCalls(1);
+		properties.getBulkhead().setMaxWait(Duration.ofMillis(200));
+		registry = new DestinationGuardRegistry(properties, new DestinationCache(new DestinationProperties()));
+	}
+
+	@Test
+	void sameHostSharesItsGuard() {
+		assertSame(registry.guardFor(event("https://receiver.test/a")), registry.guardFor(event("https://receiver.test/b")));
+	}
+
+	@Test
+	void fullBulkheadMakesTheCallWaitInsteadOfRejecting() throws Exception {
+		DestinationGuardRegistry.DestinationGuard guard = registry.guardFor(event("https://receiver.test/hook"));
+		CompletableFuture<Void> firstResponse = new CompletableFuture<>();
+		CompletableFuture<Void> first = guard.withPermit(() -> firstResponse);
+
+		CompletableFuture<Void> secondResponse = new CompletableFuture<>();
+		boolean[] secondStarted = new boolean[1];
+		CompletableFuture<Void> second = guard.withPermit(() -> {
+			secondStarted[0] = true;
+			return secondResponse;
+		});
+		assertFalse(secondStarted[0]);
+
+		// the permit of the first call goes to the waiting one
+		firstResponse.complete(null);
+		first.get(1, TimeUnit.SECONDS);
+		assertTrue(secondStarted[0]);
+		assertEquals(0, guard.getBulkhead().getMetrics().getAvailableConcurrentCalls());
+
+		secondResponse.complete(null);
+		second.get(1, TimeUnit.SECONDS);
+		assertEquals(1, guard.getBulkhead().getMetrics().getAvailableConcurrentCalls());
+	}
+
+	@Test
+	void callWaitingPastMaxWaitGoesToTheFallback() throws Exception {
+		DestinationGuardRegistry.DestinationGuard guard = registry.guardFor(event("https://receiver.test/hook"));
+		CompletableFuture<Void> firstResponse = new CompletableFuture<>();
+		guard.withPermit(() -> firstResponse);
+
+		CompletableFuture<Void> second = guard.withPermit(() -> CompletableFuture.completedFuture(null));
+		ExecutionException e = assertThrows(ExecutionException.class, () -> second.get(2, TimeUnit.SECONDS));
+		assertInstanceOf(BulkheadFullException.class, e.getCause());
+
+		// the timed out waiter doesn't keep a permit once the first call completes
+		firstResponse.complete(null);
+		assertEquals(1, guard.getBulkhead().getMetrics().getAvailableConcurrentCalls());
+	}
+
+	@Test
+	void sweepKeepsIdleGuardsStillInUse() {
+		DestinationGuardRegistry.DestinationGuard calling = registry.guardFor(event("https://calling.test/hook"));
+		calling.withPermit(CompletableFuture::new);
+		DestinationGuardRegistry.DestinationGuard open = registry.guardFor(event("https://open.test/hook"));
+		open.getCircuitBreaker().transitionToOpenState();
+		DestinationGuardRegistry.DestinationGuard idle = registry.guardFor(event("https://idle.test/hook"));
+
+		properties.setIdleTimeout(Duration.ZERO);
+		registry.evictIdle();
+
+		assertSame(calling, registry.guardFor(event("https://calling.test/hook")));
+		assertSame(open, registry.guardFor(event("https://open.test/hook")));
+		assertNotSame(idle, registry.guardFor(event("https://idle.test/hook")));
+	}
+
+	@Test
+	void sweepTrimsTheLeastRecentlyUsedGuardsNotInUse() {
+		properties.setMaxDestinations(2);
+		DestinationGuardRegistry.DestinationGuard oldest = registry.guardFor(event("https://a.test/hook"));
+		oldest.withPermit(CompletableFuture::new);
+		DestinationGuardRegistry.DestinationGuard reused = registry.guardFor(event("https://b.test/hook"));
+		DestinationGuardRegistry.DestinationGuard unused = registry.guardFor(event("https://c.test/hook"));
+		registry.guardFor(event("https://d.test/hook"));
+
+		// new destinations don't trim on the delivery path
+		assertSame(reused, registry.guardFor(event("https://b.test/hook")));
+
+		registry.evictIdle();
+
+		assertSame(oldest, registry.guardFor(event("https://a.test/hook")));
+		assertSame(reused, registry.guardFor(event("https://b.test/hook")));
+		assertNotSame(unused, registry.guardFor(event("https://c.test/hook")));
+	}
+
+	private static WebhookEvent event(String targetUrl) {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("event");
+		event.setClientId("client");
+		event.setTargetUrl(targetUrl);
+		return event;
+	}
+}
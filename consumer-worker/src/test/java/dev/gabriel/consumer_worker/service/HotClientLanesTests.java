@@ -0,0 +1,171 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.consumer_worker.config.LaneProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.util.JsonUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * rates are counted over the default 10s window, so a client enters the hot lane at its 2000th
+ * record (200 events/s) and leaves it below 1000 (100 events/s).
+ */
+class HotClientLanesTests {
+
+	private static final String TOPIC = "webhook.deliveries";
+	private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+	private static final int ENTER_COUNT = 2000;
+
+	private final LaneProperties properties = new LaneProperties();
+	@SuppressWarnings("unchecked")
+	private final KafkaTemplate<String, WebhookEvent> kafkaTemplate = mock(KafkaTemplate.class);
+	private final WebhookDeliveryService deliveryService = mock(WebhookDeliveryService.class);
+	private final HotClientLanes lanes = lanes();
+	private long nextOffset;
+
+	HotClientLanesTests() {
+		when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(invocation -> sent(invocation.getArgument(0), 41));
+		when(deliveryService.deliverWebhook(any())).thenReturn(CompletableFuture.completedFuture(null));
+	}
+
+	@Test
+	void clientEntersAboveEnterRateAndStaysUntilBelowExitRate() {
+		for (int i = 1; i < ENTER_COUNT; i++) {
+			assertFalse(lanes.isRouted(record("heavy")));
+		}
+		assertTrue(lanes.isRouted(record("heavy")));
+
+		// both clients send at 150 events/s, between the exit and the enter rates
+		lanes.rotate();
+		for (int i = 0; i < 1500; i++) {
+			lanes.isRouted(record("heavy"));
+			assertFalse(lanes.isRouted(record("medium")));
+		}
+		lanes.rotate();
+		assertTrue(lanes.isRouted(record("heavy")));
+		assertFalse(lanes.isRouted(record("medium")));
+
+		// the heavy client was never forwarded anything, it is back on the main topic right away
+		lanes.rotate();
+		assertTrue(lanes.isRouted(record("heavy")));
+		lanes.forwardOrDeliver(record("heavy"));
+		verify(deliveryService).deliverWebhook(any());
+		assertFalse(lanes.isRouted(record("heavy")));
+	}
+
+	@Test
+	void cooledDownClientIsForwardedUntilTheLaneCaughtUp() throws Exception {
+		enterHotLane("heavy");
+		lanes.forwardOrDeliver(record("heavy")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+		lanes.rotate();
+		lanes.rotate();
+		assertTrue(lanes.isRouted(record("heavy")));
+		lanes.forwardOrDeliver(record("heavy")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+		verify(kafkaTemplate, times(2)).send(any(ProducerRecord.class));
+		verify(deliveryService, never()).deliverWebhook(any());
+	}
+
+	@Test
+	void failedForwardFailsInsteadOfDelivering() {
+		enterHotLane("heavy");
+		when(kafkaTemplate.send(any(ProducerRecord.class)))
+				.thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+		CompletableFuture<?> forward = lanes.forwardOrDeliver(record("heavy")).toCompletableFuture();
+
+		assertThrows(ExecutionException.class, () -> forward.get(1, TimeUnit.SECONDS));
+		verify(deliveryService, never()).deliverWebhook(any());
+	}
+
+	@Test
+	void forwardedClientsAreHandedOverInCommitMetadata() throws Exception {
+		enterHotLane("heavy");
+		lanes.forwardOrDeliver(record("heavy")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+		String metadata = lanes.commitMetadata(PARTITION);
+		assertNotNull(metadata);
+		assertNull(lanes.commitMetadata(new TopicPartition(TOPIC, 1)));
+
+		HotClientLanes nextOwner = lanes();
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		when(consumer.committed(anySet())).thenReturn(Map.of(PARTITION, new OffsetAndMetadata(10, metadata)));
+		nextOwner.rebalanceListener(new ConsumerAwareRebalanceListener() {
+		}).onPartitionsAssigned(consumer, List.of(PARTITION));
+
+		// cooling down on the next owner, still forwarded as the lane did not commit offset 41
+		assertTrue(nextOwner.isRouted(record("heavy")));
+		nextOwner.forwardOrDeliver(record("heavy")).toCompletableFuture().get(1, TimeUnit.SECONDS);
+		verify(kafkaTemplate, times(2)).send(any(ProducerRecord.class));
+		verify(deliveryService, never()).deliverWebhook(any());
+		assertEquals(metadata, nextOwner.commitMetadata(PARTITION));
+	}
+
+	@Test
+	void unreadableCommitMetadataIsIgnored() {
+		Consumer<?, ?> consumer = mock(Consumer.class);
+		when(consumer.committed(anySet())).thenReturn(Map.of(PARTITION, new OffsetAndMetadata(10, "{not json")));
+		lanes.rebalanceListener(new ConsumerAwareRebalanceListener() {
+		}).onPartitionsAssigned(consumer, List.of(PARTITION));
+
+		assertFalse(lanes.isRouted(record("heavy")));
+		assertNull(lanes.commitMetadata(PARTITION));
+	}
+
+	private HotClientLanes lanes() {
+		return new HotClientLanes(properties, kafkaTemplate, deliveryService, new KafkaAdmin(Map.of()),
+				new JsonUtil(new ObjectMapper()), new SimpleMeterRegistry());
+	}
+
+	private void enterHotLane(String clientId) {
+		for (int i = 1; i < ENTER_COUNT; i++) {
+			lanes.isRouted(record(clientId));
+		}
+		assertTrue(lanes.isRouted(record(clientId)));
+	}
+
+	private ConsumerRecord<String, WebhookEvent> record(String clientId) {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("event-" + nextOffset);
+		event.setClientId(clientId);
+		event.setTargetUrl("https://receiver.test/hook");
+		return new ConsumerRecord<>(TOPIC, PARTITION.partition(), nextOffset++, clientId, event);
+	}
+
+	private static CompletableFuture<SendResult<String, WebhookEvent>> sent(ProducerRecord<String, WebhookEvent> record,
+																		 long offset) {
+		RecordMetadata metadata = new RecordMetadata(new TopicPartition(record.topic(), 0), offset, 0, 0L, 0, 0);
+		return CompletableFuture.completedFuture(new SendResult<>(record, metadata));
+	}
+}
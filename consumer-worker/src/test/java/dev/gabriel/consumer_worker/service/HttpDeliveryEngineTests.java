@@ -0,0 +1,102 @@
+package dev.gabriel.consumer_worker.service;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.gabriel.consumer_worker.config.FairnessProperties;
+import dev.gabriel.consumer_worker.config.HttpDeliveryProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpDeliveryEngineTests {
+
+	private static final Duration IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+	private final AtomicLong now = new AtomicLong();
+	private final AtomicInteger received = new AtomicInteger();
+	private final CountDownLatch answer = new CountDownLatch(1);
+	private final HttpServer server;
+	private final URI target;
+	private final HttpDeliveryEngine engine;
+
+	HttpDeliveryEngineTests() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/hook", exchange -> {
+			received.incrementAndGet();
+			try {
+				answer.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			exchange.sendResponseHeaders(204, -1);
+			exchange.close();
+		});
+		server.start();
+		target = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/hook");
+
+		HttpDeliveryProperties properties = new HttpDeliveryProperties();
+		properties.setHostIdleTimeout(IDLE_TIMEOUT);
+		properties.setMaxConnectionsPerHost(1);
+		properties.getAdaptiveConcurrency().setEnabled(false);
+		engine = new HttpDeliveryEngine(properties, new TenantTiers(new FairnessProperties()), now::get);
+	}
+
+	@AfterEach
+	void tearDown() {
+		answer.countDown();
+		server.stop(0);
+	}
+
+	@Test
+	void idleHostIsDroppedAfterItsIdleTimeout() {
+		answer.countDown();
+		assertEquals(204, engine.post(target, null, "client").join());
+
+		now.addAndGet(IDLE_TIMEOUT.toNanos() / 2);
+		assertEquals(1, engine.trackedHosts());
+
+		now.addAndGet(IDLE_TIMEOUT.toNanos());
+		assertEquals(0, engine.trackedHosts());
+	}
+
+	@Test
+	void hostWithRequestsRunningOrWaitingIsKeptPastItsIdleTimeout() throws InterruptedException {
+		CompletableFuture<Integer> running = engine.post(target, null, "client");
+		CompletableFuture<Integer> waiting = engine.post(target, null, "client");
+		waitUntil(() -> received.get() == 1);
+
+		now.addAndGet(IDLE_TIMEOUT.toNanos() * 2);
+		assertEquals(1, engine.trackedHosts());
+
+		answer.countDown();
+		assertEquals(204, running.join());
+		assertEquals(204, waiting.join());
+		assertEquals(1, engine.trackedHosts());
+
+		now.addAndGet(IDLE_TIMEOUT.toNanos());
+		assertEquals(0, engine.trackedHosts());
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DispatchProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.internals.AutoOffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyOrderedDispatcherTests {
+
+	private static final String TOPIC = "webhook.deliveries";
+	private static final TopicPartition PARTITION = new TopicPartition(TOPIC, 0);
+
+	private final KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test", new DispatchProperties(), new SimpleMeterRegistry());
+	private final List<Long> seeks = new CopyOnWriteArrayList<>();
+	private final MockConsumer<String, String> consumer = new MockConsumer<>(AutoOffsetResetStrategy.EARLIEST.name()) {
+		@Override
+		public synchronized void seek(TopicPartition partition, long offset) {
+			seeks.add(offset);
+			super.seek(partition, offset);
+		}
+	};
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		dispatcher.shutdown();
+	}
+
+	@Test
+	void keepsOrderPerKeyWhileOtherKeysProceed() throws Exception {
+		CountDownLatch fastDone = new CountDownLatch(1);
+		List<Long> slowClientOrder = new CopyOnWriteArrayList<>();
+
+		CompletableFuture<Void> slowResponse = new CompletableFuture<>();
+		dispatcher.dispatch(record("slow", 0), () -> slowResponse.thenRun(() -> slowClientOrder.add(0L)));
+		dispatcher.dispatch(record("slow", 1), sync(() -> slowClientOrder.add(1L)));
+		dispatcher.dispatch(record("fast", 2), sync(fastDone::countDown));
+
+		// the fast client is not stuck behind the slow one
+		assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+		assertTrue(slowClientOrder.isEmpty());
+
+		slowResponse.complete(null);
+		waitUntil(() -> slowClientOrder.size() == 2);
+		assertEquals(List.of(0L, 1L), slowClientOrder);
+	}
+
+	@Test
+	void commitsOnlyUpToLowestPendingOffset() throws Exception {
+		consumer.assign(List.of(PARTITION));
+		CompletableFuture<Void> pendingResponse = new CompletableFuture<>();
+		CountDownLatch othersDone = new CountDownLatch(2);
+
+		dispatcher.dispatch(record("a", 0), sync(() -> {}));
+		dispatcher.dispatch(record("b", 1), () -> pendingResponse);
+		dispatcher.dispatch(record("c", 2), sync(othersDone::countDown));
+		dispatcher.dispatch(record("d", 3), sync(othersDone::countDown));
+		assertTrue(othersDone.await(5, TimeUnit.SECONDS));
+
+		// offset 1 is still running, so nothing past it may be committed
+		waitUntil(() -> {
+			dispatcher.commit(consumer);
+			return committedOffset() == 1L;
+		});
+
+		pendingResponse.complete(null);
+		waitUntil(() -> {
+			dispatcher.commit(consumer);
+			return committedOffset() == 4L;
+		});
+	}
+
+	@Test
+	void coalescesQueuedItemsWithoutReordering() throws Exception {
+		consumer.assign(List.of(PARTITION));
+		List<List<Long>> groups = new CopyOnWriteArrayList<>();
+		KeyOrderedDispatcher.Coalescing<Long> coalescing = new KeyOrderedDispatcher.Coalescing<>(
+				"https://receiver/hooks", 2, Long.MAX_VALUE, Duration.ofMillis(20), items -> {
+			groups.add(List.copyOf(items));
+			return CompletableFuture.completedFuture(null);
+		});
+
+		// while the first task runs, the items queue up behind it
+		CompletableFuture<Void> blocker = new CompletableFuture<>();
+		dispatcher.dispatch(record("a", 0), () -> blocker);
+		dispatcher.dispatch(record("a", 1), coalescing, 1L, 10);
+		dispatcher.dispatch(record("a", 2), coalescing, 2L, 10);
+		dispatcher.dispatch(record("a", 3), coalescing, 3L, 10);
+		dispatcher.dispatch(record("a", 4), sync(() -> groups.add(List.of(-4L))));
+		dispatcher.dispatch(record("a", 5), coalescing, 5L, 10);
+		blocker.complete(null);
+
+		// groups are capped to 2 items, and never cross the plain task; the last one lingers alone
+		waitUntil(() -> groups.size() == 4);
+		assertEquals(List.of(List.of(1L, 2L), List.of(3L), List.of(-4L), List.of(5L)), groups);
+		waitUntil(() -> {
+			dispatcher.commit(consumer);
+			return committedOffset() == 6L;
+		});
+	}
+
+	@Test
+	void failedRecordIsNotCommittedAndPartitionIsRewound() throws Exception {
+		consumer.assign(List.of(PARTITION));
+		List<Long> afterFailure = new CopyOnWriteArrayList<>();
+		dispatcher.dispatch(record("a", 0), sync(() -> {}));
+		waitUntil(() -> {
+			dispatcher.commit(consumer);
+			return committedOffset() != null && committedOffset() == 1L;
+		});
+
+		// publishing to the retry tier failed, the stage of record 1 fails
+		dispatcher.dispatch(record("b", 1), () -> CompletableFuture.failedFuture(new IllegalStateException("retry publish failed")));
+		dispatcher.dispatch(record("b", 2), sync(() -> afterFailure.add(2L)));
+		dispatcher.dispatch(record("c", 3), sync(() -> {}));
+		waitUntil(() -> {
+			dispatcher.commit(consumer);
+			return seeks.contains(1L);
+		});
+		dispatcher.commit(consumer);
+		assertEquals(1L, committedOffset());
+		// the record of the same client behind the failed one never ran out of order
+		assertTrue(afterFailure.isEmpty());
+
+		// fetched again after the rewind, the records complete and the commit moves on
+		dispatcher.dispatch(record("b", 1), sync(() -> afterFailure.add(1L)));
+		dispatcher.dispatch(record("b", 2), sync(() -> afterFailure.add(2L)));
+		dispatcher.dispatch(record("c", 3), sync(() -> {}));
+		waitUntil(() -> {
+			dispatcher.commit(consumer);
+			return committedOffset() == 4L;
+		});
+		assertEquals(List.of(1L, 2L), afterFailure);
+	}
+
+	@Test
+	void fullKeyHasNoRoomUntilItsLaneDrains() throws Exception {
+		DispatchProperties properties = new DispatchProperties();
+		properties.setMaxPendingPerKey(2);
+		KeyOrderedDispatcher capped = new KeyOrderedDispatcher("capped", properties, new SimpleMeterRegistry());
+		try {
+			CompletableFuture<Void> response = new CompletableFuture<>();
+			capped.dispatch(record("flood", 0), () -> response);
+			capped.dispatch(record("flood", 1), sync(() -> {}));
+			capped.dispatch(record("flood", 2), sync(() -> {}));
+
+			// two records queued behind the running one
+			CountDownLatch room = new CountDownLatch(1);
+			waitUntil(() -> !capped.hasRoom(record("flood", 3), room::countDown) || response.isDone());
+			assertFalse(response.isDone());
+			assertTrue(capped.hasRoom(record("other", 4), () -> {}));
+			assertEquals(1, room.getCount());
+
+			response.complete(null);
+			assertTrue(room.await(5, TimeUnit.SECONDS));
+			assertTrue(capped.hasRoom(record("flood", 3), () -> {}));
+		} finally {
+			capped.shutdown();
+		}
+	}
+
+	private Long committedOffset() {
+		var committed = consumer.committed(Set.of(PARTITION)).get(PARTITION);
+		return committed == null ? null : committed.offset();
+	}
+
+	private static ConsumerRecord<String, String> record(String key, long offset) {
+		return new ConsumerRecord<>(TOPIC, PARTITION.partition(), offset, key, "value");
+	}
+
+	private static Supplier<CompletionStage<?>> sync(Runnable work) {
+		return () -> {
+			work.run();
+			return CompletableFuture.completedFuture(null);
+		};
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.LogRetentionProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LogPartitionMaintenanceTests {
+
+	private static final LocalDate TODAY = LocalDate.now();
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final LogRetentionProperties properties = new LogRetentionProperties();
+	private final List<String[]> partitions = new ArrayList<>();
+
+	@SuppressWarnings("unchecked")
+	LogPartitionMaintenanceTests() {
+		when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq("webhook_delivery_log"))).thenReturn(partitions);
+	}
+
+	@Test
+	void todayAndThePremadeDaysAreCreatedOnStartup() {
+		new LogPartitionMaintenance(jdbcTemplate, properties).createUpcomingPartitions();
+
+		for (int i = 0; i <= properties.getPremakeDays(); i++) {
+			LocalDate day = TODAY.plusDays(i);
+			verify(jdbcTemplate).execute("CREATE TABLE IF NOT EXISTS webhook_delivery_log_p"
+					+ day.toString().replace("-", "") + " PARTITION OF webhook_delivery_log FOR VALUES FROM ('"
+					+ day + "') TO ('" + day.plusDays(1) + "')");
+		}
+		// nothing expired before the listeners start
+		verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), eq("webhook_delivery_log"));
+	}
+
+	@Test
+	void dailyPartitionsExpireOnceTheirWholeDayIsPastTheRetention() {
+		daily(TODAY.minusDays(31));
+		daily(TODAY.minusDays(30));
+
+		new LogPartitionMaintenance(jdbcTemplate, properties).maintain();
+
+		String expired = "webhook_delivery_log_p" + TODAY.minusDays(31).toString().replace("-", "");
+		String kept = "webhook_delivery_log_p" + TODAY.minusDays(30).toString().replace("-", "");
+		verify(jdbcTemplate).execute("ALTER TABLE webhook_delivery_log DETACH PARTITION " + expired);
+		verify(jdbcTemplate).execute("DROP TABLE " + expired);
+		verify(jdbcTemplate, never()).execute("ALTER TABLE webhook_delivery_log DETACH PARTITION " + kept);
+	}
+
+	@Test
+	void legacyPartitionExpiresByItsUpperBound() {
+		partitions.add(new String[]{"webhook_delivery_log_legacy",
+				"FOR VALUES FROM (MINVALUE) TO ('" + TODAY.minusDays(30) + " 00:00:00')"});
+
+		new LogPartitionMaintenance(jdbcTemplate, properties).maintain();
+
+		verify(jdbcTemplate).execute("ALTER TABLE webhook_delivery_log DETACH PARTITION webhook_delivery_log_legacy");
+		verify(jdbcTemplate).execute("DROP TABLE webhook_delivery_log_legacy");
+	}
+
+	@Test
+	void recentLegacyPartitionIsKeptAndArchivedWhenItExpires() {
+		partitions.add(new String[]{"webhook_delivery_log_legacy",
+				"FOR VALUES FROM (MINVALUE) TO ('" + TODAY.minusDays(29) + " 00:00:00')"});
+		partitions.add(new String[]{"webhook_delivery_log_default", "DEFAULT"});
+		properties.setExpiredAction(LogRetentionProperties.ExpiredAction.ARCHIVE);
+
+		new LogPartitionMaintenance(jdbcTemplate, properties).maintain();
+		verify(jdbcTemplate, never()).execute("ALTER TABLE webhook_delivery_log DETACH PARTITION webhook_delivery_log_legacy");
+		verify(jdbcTemplate, never()).execute("ALTER TABLE webhook_delivery_log DETACH PARTITION webhook_delivery_log_default");
+
+		properties.setRetention(properties.getRetention().minusDays(1));
+		new LogPartitionMaintenance(jdbcTemplate, properties).maintain();
+		verify(jdbcTemplate).execute("ALTER TABLE webhook_delivery_log_legacy SET SCHEMA webhook_archive");
+	}
+
+	private void daily(LocalDate day) {
+		partitions.add(new String[]{"webhook_delivery_log_p" + day.toString().replace("-", ""),
+				"FOR VALUES FROM ('" + day + " 00:00:00') TO ('" + day.plusDays(1) + " 00:00:00')"});
+	}
+}
@@ -0,0 +1,121 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DestinationProperties;
+import dev.gabriel.consumer_worker.config.DispatchProperties;
+import dev.gabriel.consumer_worker.config.IsolationProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OpenBreakerPausesTests {
+
+	private static final String LISTENER_ID = "webhook-listener";
+	private static final TopicPartition PARTITION = new TopicPartition("webhook.deliveries", 0);
+
+	private final IsolationProperties properties = new IsolationProperties();
+	private final DestinationGuardRegistry guardRegistry = new DestinationGuardRegistry(properties,
+			new DestinationCache(new DestinationProperties()));
+	private final MessageListenerContainer container = mock(MessageListenerContainer.class);
+	private final Consumer<?, ?> consumer = mock(Consumer.class);
+	private final OpenBreakerPauses pauses;
+
+	OpenBreakerPausesTests() {
+		properties.getPauseOnOpen().setMaxPause(Duration.ofMillis(300));
+		KafkaListenerEndpointRegistry listenerRegistry = mock(KafkaListenerEndpointRegistry.class);
+		when(listenerRegistry.getListenerContainer(LISTENER_ID)).thenReturn(container);
+		pauses = new OpenBreakerPauses(properties, guardRegistry, listenerRegistry, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void closedBreakerDoesNotHoldBack() {
+		assertFalse(pauses.holdBack(LISTENER_ID, consumer, record(7)));
+		verify(container, never()).pausePartition(any());
+	}
+
+	@Test
+	void openBreakerPausesAtTheRecordUntilHalfOpen() {
+		ConsumerRecord<String, WebhookEvent> record = record(7);
+		DestinationGuardRegistry.DestinationGuard guard = guardRegistry.guardFor(record.value());
+		guard.getCircuitBreaker().transitionToOpenState();
+
+		assertTrue(pauses.holdBack(LISTENER_ID, consumer, record));
+		verify(consumer).seek(PARTITION, 7);
+		verify(container).pausePartition(PARTITION);
+		verify(container, never()).resumePartition(any());
+
+		guard.getCircuitBreaker().transitionToHalfOpenState();
+		verify(container).resumePartition(PARTITION);
+	}
+
+	@Test
+	void destinationFailingPastMaxPauseNoLongerHoldsBack() throws InterruptedException {
+		ConsumerRecord<String, WebhookEvent> record = record(7);
+		guardRegistry.guardFor(record.value()).getCircuitBreaker().transitionToOpenState();
+		Thread.sleep(400);
+
+		assertFalse(pauses.holdBack(LISTENER_ID, consumer, record));
+		verify(container, never()).pausePartition(any());
+	}
+
+	@Test
+	void flappingDestinationUsesUpItsBudgetAcrossCloses() throws InterruptedException {
+		ConsumerRecord<String, WebhookEvent> record = record(7);
+		DestinationGuardRegistry.DestinationGuard guard = guardRegistry.guardFor(record.value());
+		for (int i = 0; i < 2; i++) {
+			guard.getCircuitBreaker().transitionToOpenState();
+			Thread.sleep(200);
+			guard.getCircuitBreaker().transitionToClosedState();
+		}
+
+		guard.getCircuitBreaker().transitionToOpenState();
+		assertFalse(pauses.holdBack(LISTENER_ID, consumer, record));
+		verify(container, never()).pausePartition(any());
+	}
+
+	@Test
+	void fullKeyPausesItsPartitionUntilTheLaneHasRoom() throws InterruptedException {
+		DispatchProperties dispatchProperties = new DispatchProperties();
+		dispatchProperties.setMaxPendingPerKey(1);
+		KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher("test", dispatchProperties, new SimpleMeterRegistry());
+		try {
+			CompletableFuture<Void> response = new CompletableFuture<>();
+			dispatcher.dispatch(record(5), () -> response);
+			dispatcher.dispatch(record(6), () -> CompletableFuture.completedFuture(null));
+
+			assertTrue(pauses.holdBackFullKey(LISTENER_ID, consumer, record(7), dispatcher));
+			verify(consumer).seek(PARTITION, 7);
+			verify(container).pausePartition(PARTITION);
+			verify(container, never()).resumePartition(any());
+
+			response.complete(null);
+			verify(container, timeout(5_000)).resumePartition(PARTITION);
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	private static ConsumerRecord<String, WebhookEvent> record(long offset) {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("event-" + offset);
+		event.setClientId("client");
+		event.setTargetUrl("https://receiver.test/hook");
+		return new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, "client", event);
+	}
+}
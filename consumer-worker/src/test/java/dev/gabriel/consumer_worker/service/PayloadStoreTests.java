@@ -0,0 +1,86 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.LogWriterProperties;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import dev.gabriel.consumer_worker.util.PayloadCodec;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class PayloadStoreTests {
+
+	private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+	private final PayloadStore store = new PayloadStore(jdbcTemplate, new LogWriterProperties());
+
+	@Test
+	void payloadIsHashedAndStoredAsTheBytesSent() throws SQLException {
+		// not valid utf-8: a round trip through a string would replace it
+		byte[] payload = {'{', '"', 'a', '"', ':', '"', (byte) 0xC3, (byte) 0x28, '"', '}'};
+		WebhookDeliveryLog first = row(payload);
+		WebhookDeliveryLog retry = row(payload.clone());
+
+		store.storePayloads(List.of(first, retry));
+
+		assertArrayEquals(PayloadCodec.hash(payload), first.getPayloadHash());
+		assertArrayEquals(first.getPayloadHash(), retry.getPayloadHash());
+
+		List<Map.Entry<?, byte[]>> rows = upserted();
+		assertEquals(1, rows.size());
+		PreparedStatement ps = mock(PreparedStatement.class);
+		upsertSetter().setValues(ps, rows.get(0));
+		verify(ps).setShort(2, PayloadCodec.NONE);
+		verify(ps).setBytes(4, payload);
+	}
+
+	@Test
+	void rowsWithoutPayloadAreLeftAlone() {
+		WebhookDeliveryLog row = row(null);
+
+		store.storePayloads(List.of(row));
+
+		assertNull(row.getPayloadHash());
+		verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Collection.class), anyInt(), any());
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Map.Entry<?, byte[]>> upserted() {
+		ArgumentCaptor<Collection<Map.Entry<?, byte[]>>> rows = ArgumentCaptor.forClass(Collection.class);
+		verify(jdbcTemplate).batchUpdate(anyString(), rows.capture(), anyInt(), any());
+		return List.copyOf(rows.getValue());
+	}
+
+	@SuppressWarnings("unchecked")
+	private ParameterizedPreparedStatementSetter<Map.Entry<?, byte[]>> upsertSetter() {
+		ArgumentCaptor<ParameterizedPreparedStatementSetter<Map.Entry<?, byte[]>>> setter =
+				ArgumentCaptor.forClass(ParameterizedPreparedStatementSetter.class);
+		verify(jdbcTemplate).batchUpdate(anyString(), any(Collection.class), eq(1), setter.capture());
+		return setter.getValue();
+	}
+
+	private static WebhookDeliveryLog row(byte[] payload) {
+		return WebhookDeliveryLog.builder()
+				.eventId("event")
+				.clientId("client")
+				.targetUrl("https://receiver.test/hook")
+				.payload(payload)
+				.build();
+	}
+}
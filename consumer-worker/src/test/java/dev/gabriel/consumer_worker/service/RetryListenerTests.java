@@ -0,0 +1,114 @@
+package dev.gabriel.consumer_worker.service;
+
+import dev.gabriel.consumer_worker.config.DestinationProperties;
+import dev.gabriel.consumer_worker.config.IsolationProperties;
+import dev.gabriel.consumer_worker.model.WebhookEvent;
+import dev.gabriel.consumer_worker.util.HierarchicalTimingWheel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RetryListenerTests {
+
+	private static final TopicPartition PARTITION = new TopicPartition("webhook.deliveries.retry.10s", 0);
+
+	private final IsolationProperties isolationProperties = new IsolationProperties();
+	private final DestinationGuardRegistry guardRegistry = new DestinationGuardRegistry(isolationProperties,
+			new DestinationCache(new DestinationProperties()));
+	private final KeyOrderedDispatcher dispatcher = mock(KeyOrderedDispatcher.class);
+	private final HierarchicalTimingWheel timer = mock(HierarchicalTimingWheel.class);
+	private final MessageListenerContainer container = mock(MessageListenerContainer.class);
+	private final Consumer<?, ?> consumer = mock(Consumer.class);
+	private final RetryListener listener;
+
+	RetryListenerTests() {
+		KafkaListenerEndpointRegistry listenerRegistry = mock(KafkaListenerEndpointRegistry.class);
+		when(listenerRegistry.getListenerContainer(RetryListener.LISTENER_ID)).thenReturn(container);
+		OpenBreakerPauses pauses = new OpenBreakerPauses(isolationProperties, guardRegistry, listenerRegistry,
+				new SimpleMeterRegistry());
+		listener = new RetryListener(mock(WebhookDeliveryService.class), dispatcher, timer, listenerRegistry, pauses);
+	}
+
+	@Test
+	void dueRecordIsDispatched() throws InterruptedException {
+		ConsumerRecord<String, WebhookEvent> record = record(7, System.currentTimeMillis() - 1);
+
+		listener.consume(List.of(record), consumer);
+
+		verify(dispatcher).dispatch(eq(record), any());
+		verify(container, never()).pausePartition(any());
+		verify(dispatcher).commit(consumer);
+	}
+
+	@Test
+	void partitionIsParkedAtTheFirstRecordNotDueAndResumedWhenDue() throws InterruptedException {
+		long dueAt = System.currentTimeMillis() + 60_000;
+		ConsumerRecord<String, WebhookEvent> due = record(6, System.currentTimeMillis() - 1);
+		ConsumerRecord<String, WebhookEvent> notDue = record(7, dueAt);
+		ConsumerRecord<String, WebhookEvent> after = record(8, System.currentTimeMillis() - 1);
+		TopicPartition other = new TopicPartition(PARTITION.topic(), 1);
+		ConsumerRecord<String, WebhookEvent> otherPartition = new ConsumerRecord<>(other.topic(), other.partition(),
+				3, "client", due.value());
+		otherPartition.headers().add(RetryTopics.DUE_AT_HEADER, due.headers().lastHeader(RetryTopics.DUE_AT_HEADER).value());
+
+		listener.consume(List.of(due, notDue, after, otherPartition), consumer);
+
+		verify(dispatcher).dispatch(eq(due), any());
+		verify(consumer).seek(PARTITION, 7);
+		verify(container).pausePartition(PARTITION);
+		verify(dispatcher, never()).dispatch(eq(notDue), any());
+		verify(dispatcher, never()).dispatch(eq(after), any());
+		verify(dispatcher).dispatch(eq(otherPartition), any());
+
+		ArgumentCaptor<Runnable> resume = ArgumentCaptor.forClass(Runnable.class);
+		verify(timer).schedule(eq(dueAt), resume.capture());
+		verify(container, never()).resumePartition(any());
+		resume.getValue().run();
+		verify(container).resumePartition(PARTITION);
+	}
+
+	@Test
+	void dueRecordOfAnOpenBreakerIsHeldBackUntilHalfOpen() throws InterruptedException {
+		ConsumerRecord<String, WebhookEvent> first = record(7, System.currentTimeMillis() - 1);
+		ConsumerRecord<String, WebhookEvent> next = record(8, System.currentTimeMillis() - 1);
+		DestinationGuardRegistry.DestinationGuard guard = guardRegistry.guardFor(first.value());
+		guard.getCircuitBreaker().transitionToOpenState();
+
+		listener.consume(List.of(first, next), consumer);
+
+		verify(consumer).seek(PARTITION, 7);
+		verify(container).pausePartition(PARTITION);
+		verify(dispatcher, never()).dispatch(any(), any());
+		verify(container, never()).resumePartition(any());
+
+		guard.getCircuitBreaker().transitionToHalfOpenState();
+		verify(container).resumePartition(PARTITION);
+	}
+
+	private static ConsumerRecord<String, WebhookEvent> record(long offset, long dueAt) {
+		WebhookEvent event = new WebhookEvent();
+		event.setEventId("event-" + offset);
+		event.setClientId("client");
+		event.setTargetUrl("https://receiver.test/hook");
+		ConsumerRecord<String, WebhookEvent> record = new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(),
+				offset, "client", event);
+		record.headers().add(RetryTopics.DUE_AT_HEADER, String.valueOf(dueAt).getBytes(StandardCharsets.UTF_8));
+		record.headers().add(RetryTopics.RETRY_COUNT_HEADER, "1".getBytes(StandardCharsets.UTF_8));
+		return record;
+	}
+}
@@ -0,0 +1,111 @@
+package dev.gabriel.consumer_worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimitTests {
+
+	private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	void growsByOnePerRoundOfResponses() {
+		AdaptiveLimit limit = new AdaptiveLimit(10, 1, 50, 0.9, 0, 0);
+
+		for (int i = 0; i < 10; i++) {
+			limit.onResponse(limit.startSample(), 20 * MS);
+		}
+		assertEquals(10, limit.current());
+		limit.onResponse(limit.startSample(), 20 * MS);
+		assertEquals(11, limit.current());
+	}
+
+	@Test
+	void neverGrowsPastMax() {
+		AdaptiveLimit limit = new AdaptiveLimit(5, 1, 6, 0.9, 0, 0);
+
+		for (int i = 0; i < 1_000; i++) {
+			limit.onResponse(limit.startSample(), 20 * MS);
+		}
+		assertEquals(6, limit.current());
+	}
+
+	@Test
+	void shrinksOncePerRoundOfOverloads() {
+		AdaptiveLimit limit = new AdaptiveLimit(20, 1, 50, 0.5, 0, 0);
+
+		// every request in flight when the host saturated fails together
+		int sample = limit.startSample();
+		limit.onOverload(sample);
+		limit.onOverload(sample);
+		limit.onOverload(sample);
+		assertEquals(10, limit.current());
+
+		limit.onOverload(limit.startSample());
+		assertEquals(5, limit.current());
+	}
+
+	@Test
+	void neverShrinksBelowMin() {
+		AdaptiveLimit limit = new AdaptiveLimit(4, 2, 50, 0.5, 0, 0);
+
+		for (int i = 0; i < 10; i++) {
+			limit.onOverload(limit.startSample());
+		}
+		assertEquals(2, limit.current());
+	}
+
+	@Test
+	void ignoresLatencyWhenToleranceIsZero() {
+		AdaptiveLimit limit = new AdaptiveLimit(10, 1, 50, 0.5, 0, 0);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onResponse(limit.startSample(), 10 * MS);
+		}
+		limit.onResponse(limit.startSample(), 10_000 * MS);
+		assertTrue(limit.current() >= 10);
+	}
+
+	@Test
+	void jitterAroundTheMedianIsNotOverload() {
+		AdaptiveLimit limit = new AdaptiveLimit(10, 1, 50, 0.5, 2, 20 * MS);
+
+		// a receiver answering in 20 to 60 ms, with an occasional 5 ms response
+		for (int i = 0; i < 2_000; i++) {
+			long rtt = i % 10 == 0 ? 5 * MS : (20 + i % 5 * 10) * MS;
+			limit.onResponse(limit.startSample(), rtt);
+		}
+		assertEquals(50, limit.current());
+		long baselineMillis = limit.baselineNanos() / MS;
+		assertTrue(baselineMillis >= 20 && baselineMillis <= 50, "median estimate " + baselineMillis + " ms");
+	}
+
+	@Test
+	void latencySpikeIsOverload() {
+		AdaptiveLimit limit = new AdaptiveLimit(10, 1, 50, 0.5, 2, 10 * MS);
+
+		for (int i = 0; i < 50; i++) {
+			limit.onResponse(limit.startSample(), 20 * MS);
+		}
+		int grown = limit.current();
+
+		// under the median x tolerance + floor: still a success
+		limit.onResponse(limit.startSample(), 45 * MS);
+		assertTrue(limit.current() >= grown);
+
+		limit.onResponse(limit.startSample(), 200 * MS);
+		assertEquals(grown / 2, limit.current());
+	}
+
+	@Test
+	void fixedLimitNeverChanges() {
+		AdaptiveLimit limit = AdaptiveLimit.fixed(8);
+
+		limit.onOverload(limit.startSample());
+		limit.onResponse(limit.startSample(), 10_000 * MS);
+		assertEquals(8, limit.current());
+	}
+}
@@ -0,0 +1,60 @@
+package dev.gabriel.consumer_worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeavyHittersTests {
+
+	@Test
+	void estimateIsNeverBelowTheRealCount() {
+		HeavyHitters hitters = new HeavyHitters(64, 4, 8);
+		for (int key = 0; key < 500; key++) {
+			for (int i = 0; i <= key % 7; i++) {
+				hitters.add("client-" + key);
+			}
+		}
+
+		for (int key = 0; key < 500; key++) {
+			assertTrue(hitters.estimate("client-" + key) >= key % 7 + 1);
+		}
+	}
+
+	@Test
+	void heaviestKeysAreListedHeaviestFirst() {
+		HeavyHitters hitters = new HeavyHitters(2048, 4, 3);
+		for (int key = 0; key < 200; key++) {
+			hitters.add("light-" + key);
+		}
+		for (int i = 0; i < 300; i++) {
+			hitters.add("heavy");
+			if (i % 2 == 0) hitters.add("medium");
+			if (i % 3 == 0) hitters.add("small");
+		}
+
+		List<HeavyHitters.Entry> top = hitters.top();
+		assertEquals(List.of("heavy", "medium", "small"), top.stream().map(HeavyHitters.Entry::key).toList());
+		assertEquals(300, top.get(0).count());
+	}
+
+	@Test
+	void countsFadeAfterTwoRotations() {
+		HeavyHitters hitters = new HeavyHitters(2048, 4, 3);
+		for (int i = 0; i < 100; i++) {
+			hitters.add("client");
+		}
+
+		hitters.rotate();
+		assertEquals(100, hitters.estimate("client"));
+		assertEquals(101, hitters.add("client"));
+
+		hitters.rotate();
+		assertEquals(1, hitters.estimate("client"));
+		hitters.rotate();
+		assertEquals(0, hitters.estimate("client"));
+		assertTrue(hitters.top().isEmpty());
+	}
+}
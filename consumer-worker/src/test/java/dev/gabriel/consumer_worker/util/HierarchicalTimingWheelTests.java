@@ -0,0 +1,90 @@
+package dev.gabriel.consumer_worker.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTests {
+
+	private static final long TICK = 10;
+
+	// 4 buckets of 10ms: tasks due past 40ms go to the overflow wheels (160ms, then 640ms)
+	private final HierarchicalTimingWheel timer = new HierarchicalTimingWheel(TICK, 4, Runnable::run);
+
+	@AfterEach
+	void tearDown() {
+		timer.close();
+	}
+
+	@Test
+	void releasesTasksInDueOrder() throws InterruptedException {
+		List<Integer> released = Collections.synchronizedList(new ArrayList<>());
+		long now = System.currentTimeMillis();
+		timer.schedule(now + 300, () -> released.add(3));
+		timer.schedule(now + 30, () -> released.add(1));
+		timer.schedule(now + 120, () -> released.add(2));
+		assertEquals(3, timer.pendingTasks());
+
+		waitUntil(() -> released.size() == 3);
+		assertEquals(List.of(1, 2, 3), released);
+		assertEquals(0, timer.pendingTasks());
+	}
+
+	@Test
+	void overflowTasksCascadeDownAndAreNotReleasedEarly() throws InterruptedException {
+		Map<Long, Long> releasedAt = new ConcurrentHashMap<>();
+		long now = System.currentTimeMillis();
+		// one task per wheel level
+		for (long delay : new long[]{25, 100, 500, 900}) {
+			long dueAt = now + delay;
+			timer.schedule(dueAt, () -> releasedAt.put(dueAt, System.currentTimeMillis()));
+		}
+
+		waitUntil(() -> releasedAt.size() == 4);
+		releasedAt.forEach((dueAt, at) -> {
+			// released within the tick of its due time, never a tick before it
+			assertTrue(at >= dueAt - TICK, "released at " + at + ", due at " + dueAt);
+			assertTrue(at < dueAt + 500, "released at " + at + ", due at " + dueAt);
+		});
+	}
+
+	@Test
+	void pastDueTaskRunsRightAway() {
+		boolean[] ran = new boolean[1];
+
+		timer.schedule(System.currentTimeMillis() - 1_000, () -> ran[0] = true);
+
+		assertTrue(ran[0]);
+		assertEquals(0, timer.pendingTasks());
+	}
+
+	@Test
+	void delayCompletesOnceDue() throws Exception {
+		long dueAt = System.currentTimeMillis() + 100;
+		CompletableFuture<Void> delay = timer.delayUntil(dueAt);
+		assertFalse(delay.isDone());
+
+		delay.get(5, TimeUnit.SECONDS);
+		assertTrue(System.currentTimeMillis() >= dueAt - TICK);
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package dev.gabriel.consumer_worker.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WeightedFairQueueTests {
+
+	@Test
+	void singleClassIsFifo() {
+		WeightedFairQueue<Integer> queue = new WeightedFairQueue<>(new int[]{1});
+		for (int i = 0; i < 5; i++) {
+			queue.add(0, i);
+		}
+
+		assertEquals(List.of(0, 1, 2, 3, 4), drain(queue));
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	void busyClassesAreServedInProportionToTheirWeights() {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(new int[]{3, 1});
+		for (int i = 0; i < 6; i++) {
+			queue.add(0, "heavy");
+			queue.add(1, "light");
+		}
+
+		assertEquals(List.of("heavy", "heavy", "heavy", "light", "heavy", "heavy", "heavy", "light",
+				"light", "light", "light", "light"), drain(queue));
+	}
+
+	@Test
+	void idleClassDoesNotSaveUpCredit() {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(new int[]{1, 4});
+		for (int i = 0; i < 3; i++) {
+			queue.add(0, "a");
+		}
+		assertEquals("a", queue.poll());
+		assertEquals("a", queue.poll());
+
+		// the turns the heavy class passed while empty are not made up for, it gets its weight
+		for (int i = 0; i < 6; i++) {
+			queue.add(1, "b");
+		}
+		assertEquals(List.of("b", "b", "b", "b", "a", "b", "b"), drain(queue));
+	}
+
+	@Test
+	void outOfRangeClassesAreClamped() {
+		WeightedFairQueue<String> queue = new WeightedFairQueue<>(new int[]{1, 1});
+		queue.add(-1, "first");
+		queue.add(7, "last");
+
+		assertEquals(2, queue.size());
+		assertEquals(List.of("first", "last"), drain(queue));
+	}
+
+	@Test
+	void weightsMustBePositive() {
+		assertThrows(IllegalArgumentException.class, () -> new WeightedFairQueue<>(new int[0]));
+		assertThrows(IllegalArgumentException.class, () -> new WeightedFairQueue<>(new int[]{2, 0}));
+	}
+
+	private static <T> List<T> drain(WeightedFairQueue<T> queue) {
+		List<T> entries = new ArrayList<>();
+		T entry;
+		while ((entry = queue.poll()) != null) {
+			entries.add(entry);
+		}
+		return entries;
+	}
+}
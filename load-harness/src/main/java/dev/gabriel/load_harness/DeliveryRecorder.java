@@ -0,0 +1,127 @@
+package dev.gabriel.load_harness;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongPredicate;
+
+/**
+ * end-to-end latency and throughput of the events received by the sink.
+ * <p>
+ * the generator and the sink run in the same jvm, so the latency is measured on a single
+ * {@link System#nanoTime()} clock: from the time an event was scheduled to be sent (not when
+ * it actually was, to avoid coordinated omission) to the time the sink accepted it. only the
+ * first receipt of an event counts; redeliveries are counted as duplicates.
+ * </p>
+ * <p>
+ * the probe event ({@link #PROBE_SEQ}) is not part of the load, it only tells when the worker
+ * delivered for the first time.
+ * </p>
+ * <p>
+ * with a hot client ({@code --hot-share}), the latency of the events of the other clients is
+ * also recorded on its own: it shouldn't depend on the traffic of the hot one.
+ * </p>
+ */
+final class DeliveryRecorder {
+
+    static final long PROBE_SEQ = -1;
+
+    private final AtomicLongArray received;
+    private final Histogram latencyMicros = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(10), 3);
+    private final Histogram otherClientsLatencyMicros = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(10), 3);
+    private final LongPredicate hotClientEvent;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder deliveredInWindow = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final AtomicLong firstDelivery = new AtomicLong();
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    /**
+     * @param totalEvents    events of the whole run.
+     * @param hotClientEvent tells the events of the hot client apart, by sequence number.
+     */
+    DeliveryRecorder(long totalEvents, LongPredicate hotClientEvent) {
+        this.received = new AtomicLongArray((int) ((totalEvents + 63) / 64));
+        this.hotClientEvent = hotClientEvent;
+    }
+
+    /**
+     * sets the measurement window: only events scheduled within it are in the latency
+     * histogram, and only receipts within it count for the throughput.
+     */
+    void window(long startNanos, long endNanos) {
+        this.windowStart = startNanos;
+        this.windowEnd = endNanos;
+    }
+
+    /**
+     * @param seq         sequence number of the event.
+     * @param sentAtNanos when the event was scheduled to be sent.
+     */
+    void delivered(long seq, long sentAtNanos) {
+        long now = System.nanoTime();
+        firstDelivery.compareAndSet(0, now);
+        if (seq == PROBE_SEQ) return;
+        if (!markReceived(seq)) {
+            duplicates.increment();
+            return;
+        }
+        delivered.increment();
+        if (sentAtNanos >= windowStart && sentAtNanos < windowEnd) {
+            long micros = Math.min(latencyMicros.getHighestTrackableValue(), (now - sentAtNanos) / 1_000);
+            latencyMicros.recordValue(micros);
+            if (!hotClientEvent.test(seq)) {
+                otherClientsLatencyMicros.recordValue(micros);
+            }
+        }
+        if (now >= windowStart && now < windowEnd) {
+            deliveredInWindow.increment();
+        }
+    }
+
+    long delivered() {
+        return delivered.sum();
+    }
+
+    long deliveredInWindow() {
+        return deliveredInWindow.sum();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} of the first receipt, 0 if nothing was received.
+     */
+    long firstDeliveryNanos() {
+        return firstDelivery.get();
+    }
+
+    long duplicates() {
+        return duplicates.sum();
+    }
+
+    Histogram latencyMicros() {
+        return latencyMicros;
+    }
+
+    /**
+     * @return the latency of the events not sent by the hot client.
+     */
+    Histogram otherClientsLatencyMicros() {
+        return otherClientsLatencyMicros;
+    }
+
+    private boolean markReceived(long seq) {
+        if (seq < 0 || seq / 64 >= received.length()) return true;
+        int index = (int) (seq / 64);
+        long bit = 1L << (seq % 64);
+        while (true) {
+            long current = received.get(index);
+            if ((current & bit) != 0) return false;
+            if (received.compareAndSet(index, current, current | bit)) return true;
+        }
+    }
+}
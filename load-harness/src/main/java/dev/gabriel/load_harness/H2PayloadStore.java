@@ -0,0 +1,68 @@
+package dev.gabriel.load_harness;
+
+import dev.gabriel.consumer_worker.config.LogWriterProperties;
+import dev.gabriel.consumer_worker.model.WebhookDeliveryLog;
+import dev.gabriel.consumer_worker.service.PayloadStore;
+import dev.gabriel.consumer_worker.util.PayloadCodec;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PayloadStore} on the h2 stand-in: h2 has no {@code ON CONFLICT ... DO UPDATE}, the
+ * payloads are written with its MERGE instead. hashing and compression are the real ones, so
+ * the flusher of the delivery log does the same work as in production.
+ */
+@Component
+@Primary
+class H2PayloadStore extends PayloadStore {
+
+    private static final String MERGE_SQL = """
+            MERGE INTO webhook_payload (hash, codec, original_size, data, last_used) KEY (hash)
+            VALUES (?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LogWriterProperties properties;
+
+    H2PayloadStore(JdbcTemplate jdbcTemplate, LogWriterProperties properties) {
+        super(jdbcTemplate, properties);
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    @Override
+    public void storePayloads(List<WebhookDeliveryLog> batch) {
+        Map<ByteBuffer, byte[]> pending = new LinkedHashMap<>();
+        for (WebhookDeliveryLog entry : batch) {
+            byte[] payload = entry.getPayload();
+            if (payload == null) continue;
+
+            if (entry.getPayloadHash() == null) {
+                entry.setPayloadHash(PayloadCodec.hash(payload));
+            }
+            pending.putIfAbsent(ByteBuffer.wrap(entry.getPayloadHash()), payload);
+        }
+        if (pending.isEmpty()) return;
+
+        Date lastUsed = Date.valueOf(LocalDate.now());
+        int minBytes = properties.getCompressionMinBytes();
+        List<Map.Entry<ByteBuffer, byte[]>> rows = new ArrayList<>(pending.entrySet());
+        jdbcTemplate.batchUpdate(MERGE_SQL, rows, rows.size(), (ps, row) -> {
+            PayloadCodec.Encoded encoded = PayloadCodec.encode(row.getValue(), minBytes);
+            ps.setBytes(1, row.getKey().array());
+            ps.setShort(2, encoded.codec());
+            ps.setInt(3, encoded.originalSize());
+            ps.setBytes(4, encoded.data());
+            ps.setDate(5, lastUsed);
+        });
+    }
+}
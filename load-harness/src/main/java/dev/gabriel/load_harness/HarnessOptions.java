@@ -0,0 +1,123 @@
+package dev.gabriel.load_harness;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * command line of the harness: {@code --name=value} pairs, every one optional.
+ * durations accept the spring boot style ({@code 500ms}, {@code 30s}, {@code 2m}).
+ */
+final class HarnessOptions {
+
+    /** events per second offered to {@code POST /webhooks}, whatever the response times. */
+    double rate = 1_000;
+    /** measured part of the run. */
+    Duration duration = Duration.ofSeconds(60);
+    /** load before the measurement starts (jit, connection pools, partition assignment). */
+    Duration warmup = Duration.ofSeconds(10);
+    /** max wait after the last event for the pending deliveries (retries included). */
+    Duration drainTimeout = Duration.ofSeconds(60);
+    /** distinct client ids, the events are spread round-robin. */
+    int clients = 100;
+    /** share of the events sent by client-0, a tenant much heavier than the others; 0 spreads them evenly. */
+    double hotShare = 0;
+    /** approximate json size of each payload. */
+    int payloadBytes = 512;
+    /** ingestion requests in flight; past it the generator skips events (and reports them). */
+    int maxOutstanding = 5_000;
+
+    /** median response time of the sink. */
+    Duration sinkLatencyMedian = Duration.ofMillis(20);
+    /** 99th percentile response time of the sink (log-normal between the two). */
+    Duration sinkLatencyP99 = Duration.ofMillis(200);
+    /** share of requests the sink answers with 500. */
+    double sinkErrorRate = 0;
+    /** share of requests the sink answers with 429. */
+    double sinkThrottleRate = 0;
+
+    /** events per request when the sink is a batched destination, 0 posts one event per request. */
+    int batchMaxEvents = 0;
+
+    /** jdbc url of the postgres stand-in. */
+    String dbUrl = "jdbc:h2:mem:harness;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    /** release gate: min delivered events per second during the measurement, 0 disables it. */
+    double minThroughput = 0;
+    /** release gate: max p99 end-to-end latency, unset disables it. */
+    Duration maxP99;
+
+    /** any property of the producer-api, from {@code --api.<property>=<value>}. */
+    final Map<String, String> apiProperties = new LinkedHashMap<>();
+    /** any property of the consumer-worker, from {@code --worker.<property>=<value>}. */
+    final Map<String, String> workerProperties = new LinkedHashMap<>();
+
+    static HarnessOptions parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got: " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        HarnessOptions options = new HarnessOptions();
+        values.forEach((name, value) -> {
+            if (name.startsWith("api.")) {
+                options.apiProperties.put(name.substring(4), value);
+                return;
+            }
+            if (name.startsWith("worker.")) {
+                options.workerProperties.put(name.substring(7), value);
+                return;
+            }
+            switch (name) {
+                case "rate" -> options.rate = Double.parseDouble(value);
+                case "duration" -> options.duration = duration(value);
+                case "warmup" -> options.warmup = duration(value);
+                case "drain-timeout" -> options.drainTimeout = duration(value);
+                case "clients" -> options.clients = Integer.parseInt(value);
+                case "hot-share" -> options.hotShare = Double.parseDouble(value);
+                case "payload-bytes" -> options.payloadBytes = Integer.parseInt(value);
+                case "max-outstanding" -> options.maxOutstanding = Integer.parseInt(value);
+                case "sink-latency-median" -> options.sinkLatencyMedian = duration(value);
+                case "sink-latency-p99" -> options.sinkLatencyP99 = duration(value);
+                case "sink-error-rate" -> options.sinkErrorRate = Double.parseDouble(value);
+                case "sink-throttle-rate" -> options.sinkThrottleRate = Double.parseDouble(value);
+                case "batch-max-events" -> options.batchMaxEvents = Integer.parseInt(value);
+                case "db-url" -> options.dbUrl = value;
+                case "min-throughput" -> options.minThroughput = Double.parseDouble(value);
+                case "max-p99" -> options.maxP99 = duration(value);
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        });
+        if (options.rate <= 0) {
+            throw new IllegalArgumentException("--rate must be positive");
+        }
+        return options;
+    }
+
+    /**
+     * @return the client sending the event: client-0 for {@link #hotShare} of the events (evenly
+     * interleaved), round-robin over the others for the rest.
+     */
+    int clientOf(long seq) {
+        if (hotShare <= 0 || clients < 2) return (int) (seq % clients);
+        if (Math.floor((seq + 1) * hotShare) > Math.floor(seq * hotShare)) return 0;
+        return 1 + (int) (seq % (clients - 1));
+    }
+
+    /**
+     * @return the number of events of the whole run, warmup included.
+     */
+    long totalEvents() {
+        return (long) Math.ceil(rate * (warmup.toNanos() + duration.toNanos()) / 1e9);
+    }
+
+    private static Duration duration(String value) {
+        return DurationStyle.detectAndParse(value);
+    }
+}
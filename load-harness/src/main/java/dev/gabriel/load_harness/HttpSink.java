@@ -0,0 +1,161 @@
+package dev.gabriel.load_harness;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * the receiver of the webhooks: an http server answering with a configurable latency
+ * distribution and error mix.
+ * <p>
+ * response times are log-normal, fitted on the median and p99 of the options, which is
+ * close to what real receivers show (most answers fast, a long tail). the response is
+ * scheduled instead of slept, so thousands of slow requests don't need thousands of
+ * threads. every 200 reports the events of the body (one object, or an array for batched
+ * destinations) to the {@link DeliveryRecorder}.
+ * </p>
+ */
+final class HttpSink implements AutoCloseable {
+
+    private static final double Z_99 = 2.3263;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final HarnessOptions options;
+    private final DeliveryRecorder recorder;
+    private final HttpServer server;
+    private final ExecutorService readers = Executors.newFixedThreadPool(8, daemon("sink-reader"));
+    private final ScheduledExecutorService responders = Executors.newScheduledThreadPool(2, daemon("sink-responder"));
+    private final double mu;
+    private final double sigma;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    HttpSink(HarnessOptions options, DeliveryRecorder recorder) throws IOException {
+        this.options = options;
+        this.recorder = recorder;
+
+        double median = Math.max(1, options.sinkLatencyMedian.toNanos());
+        double p99 = Math.max(median, options.sinkLatencyP99.toNanos());
+        this.mu = Math.log(median);
+        this.sigma = Math.log(p99 / median) / Z_99;
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.server.createContext("/hooks", this::handle);
+        this.server.setExecutor(readers);
+        this.server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/hooks";
+    }
+
+    long requests() {
+        return requests.sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+
+    long throttled() {
+        return throttled.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readAllBytes();
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double outcome = random.nextDouble();
+        int status;
+        if (outcome < options.sinkErrorRate) {
+            status = 500;
+        } else if (outcome < options.sinkErrorRate + options.sinkThrottleRate) {
+            status = 429;
+        } else {
+            status = 200;
+        }
+        long delay = (long) Math.exp(mu + sigma * random.nextGaussian());
+
+        responders.schedule(() -> respond(exchange, status, body), delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) {
+        try {
+            if (status == 200) {
+                record(body);
+            } else if (status == 500) {
+                errors.increment();
+            } else {
+                throttled.increment();
+            }
+            exchange.sendResponseHeaders(status, -1);
+        } catch (IOException e) {
+            // the worker gave up on the request (timeout), it will be retried
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * reads {@code seq} and {@code sentAt} of every event of the body. the payloads of the
+     * generator are flat objects, so each END_OBJECT closes one event.
+     */
+    private void record(byte[] body) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            Long seq = null;
+            long sentAt = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    parser.nextToken();
+                    if ("seq".equals(name)) {
+                        seq = parser.getLongValue();
+                    } else if ("sentAt".equals(name)) {
+                        sentAt = parser.getLongValue();
+                    }
+                } else if (token == JsonToken.END_OBJECT && seq != null) {
+                    recorder.delivered(seq, sentAt);
+                    seq = null;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responders.shutdownNow();
+        readers.shutdownNow();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
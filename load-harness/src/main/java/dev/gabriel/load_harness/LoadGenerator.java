@@ -0,0 +1,151 @@
+package dev.gabriel.load_harness;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * open-model load: events are posted to {@code POST /webhooks} at a fixed rate, on a
+ * schedule that doesn't wait for the responses.
+ * <p>
+ * a closed loop (send, wait, send) slows down with the system under test and hides its
+ * stalls. here event {@code n} is due at {@code start + n / rate}, and the due time (not the
+ * actual send time) travels in the payload as {@code sentAt}, so a stall of the generator or
+ * of the api shows up in the end-to-end latency instead of silently lowering the rate.
+ * </p>
+ */
+final class LoadGenerator {
+
+    private final HarnessOptions options;
+    private final URI ingestUri;
+    private final String targetUrl;
+    private final String padding;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .version(HttpClient.Version.HTTP_1_1)
+            .build();
+    private final Semaphore outstanding;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private volatile String lastFailure;
+
+    LoadGenerator(HarnessOptions options, URI ingestUri, String targetUrl) {
+        this.options = options;
+        this.ingestUri = ingestUri;
+        this.targetUrl = targetUrl;
+        // seq, sentAt and the json around them take ~60 bytes
+        this.padding = "x".repeat(Math.max(0, options.payloadBytes - 60));
+        this.outstanding = new Semaphore(options.maxOutstanding);
+    }
+
+    /**
+     * posts every event of the run, blocking until the last one is sent (not answered).
+     *
+     * @param startNanos due time of the first event.
+     */
+    void run(long startNanos) {
+        long total = options.totalEvents();
+        double intervalNanos = 1e9 / options.rate;
+
+        for (long seq = 0; seq < total; seq++) {
+            long due = startNanos + (long) (seq * intervalNanos);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            if (!outstanding.tryAcquire()) {
+                // the api doesn't keep up at all; the event is reported, not queued in the harness
+                skipped.increment();
+                continue;
+            }
+            sent.increment();
+            client.sendAsync(request(seq, due), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        outstanding.release();
+                        if (error != null) {
+                            failed.increment();
+                            lastFailure = error.toString();
+                        } else if (response.statusCode() == 202) {
+                            accepted.increment();
+                        } else if (response.statusCode() == 429 || response.statusCode() == 503) {
+                            rejected.increment();
+                        } else {
+                            failed.increment();
+                            lastFailure = "HTTP " + response.statusCode();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * posts the {@link DeliveryRecorder#PROBE_SEQ probe} event and waits until it is accepted.
+     *
+     * @throws IllegalStateException if the api doesn't accept it.
+     */
+    void probe() throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(request(DeliveryRecorder.PROBE_SEQ, System.nanoTime()),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 202) {
+            throw new IllegalStateException("Probe event not accepted: HTTP " + response.statusCode());
+        }
+    }
+
+    /**
+     * waits for the responses of the ingestion requests still in flight.
+     */
+    void awaitResponses(Duration timeout) throws InterruptedException {
+        if (outstanding.tryAcquire(options.maxOutstanding, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            outstanding.release(options.maxOutstanding);
+        }
+    }
+
+    private HttpRequest request(long seq, long due) {
+        String body = "{\"clientId\":\"client-" + options.clientOf(seq) + "\""
+                + ",\"targetUrl\":\"" + targetUrl + "\""
+                + ",\"payload\":{\"seq\":" + seq + ",\"sentAt\":" + due + ",\"data\":\"" + padding + "\"}}";
+        return HttpRequest.newBuilder(ingestUri)
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    long sent() {
+        return sent.sum();
+    }
+
+    long accepted() {
+        return accepted.sum();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+
+    long failed() {
+        return failed.sum();
+    }
+
+    long skipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return the error or status of the last failed request, null if none failed.
+     */
+    String lastFailure() {
+        return lastFailure;
+    }
+}
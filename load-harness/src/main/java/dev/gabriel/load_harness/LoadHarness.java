@@ -0,0 +1,223 @@
+package dev.gabriel.load_harness;
+
+import dev.gabriel.consumer_worker.ConsumerWorkerApplication;
+import dev.gabriel.producer_api.ProducerApiApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.boot.web.server.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * end-to-end load test of the dispatcher in a single jvm.
+ * <p>
+ * starts an embedded kafka broker, the producer-api and the consumer-worker (each with its
+ * own application.yml plus the overrides of {@code harness/}), and an {@link HttpSink} as the
+ * webhook receiver. the {@link LoadGenerator} posts events at a fixed rate for the warmup
+ * and the measured duration, then the harness waits for the deliveries to drain and prints
+ * the throughput and the end-to-end latency percentiles (ingestion request to sink receipt).
+ * </p>
+ * <p>
+ * the worker is started with one event already waiting, and the report gives its time to
+ * first delivery: launch, context, warmup, group join and the delivery itself, which is what
+ * an instance started on a lag spike takes before it helps.
+ * </p>
+ * <p>
+ * exits with 1 when a release gate ({@code --min-throughput}, {@code --max-p99}) is missed,
+ * so the run can fail a pipeline. see {@link HarnessOptions} for the options.
+ * </p>
+ */
+public final class LoadHarness {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadHarness.class);
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        HarnessOptions options = HarnessOptions.parse(args);
+        DeliveryRecorder recorder = new DeliveryRecorder(options.totalEvents(),
+                seq -> options.hotShare > 0 && options.clientOf(seq) == 0);
+
+        EmbeddedKafkaKraftBroker broker = new EmbeddedKafkaKraftBroker(1, 3);
+        broker.afterPropertiesSet();
+        int exitCode;
+        try (HttpSink sink = new HttpSink(options, recorder);
+             ConfigurableApplicationContext api = startApi(options, broker.getBrokersAsString())) {
+
+            URI ingestUri = URI.create("http://127.0.0.1:" + port(api) + "/webhooks");
+            LoadGenerator generator = new LoadGenerator(options, ingestUri, sink.url());
+
+            // an event is already waiting in the topic when the worker starts, like the lag a new instance is scaled for
+            generator.probe();
+            long workerLaunch = System.nanoTime();
+            try (ConfigurableApplicationContext worker = startWorker(options, broker.getBrokersAsString(), sink.url())) {
+                Startup startup = new Startup(workerLaunch, System.nanoTime());
+                log.info("Offering {} events/s to {} for {} + {} warmup, sink at {}",
+                        options.rate, ingestUri, options.duration, options.warmup, sink.url());
+
+                long start = System.nanoTime() + Duration.ofMillis(100).toNanos();
+                long windowStart = start + options.warmup.toNanos();
+                long windowEnd = windowStart + options.duration.toNanos();
+                recorder.window(windowStart, windowEnd);
+
+                generator.run(start);
+                generator.awaitResponses(Duration.ofSeconds(15));
+                drain(generator, recorder, options.drainTimeout);
+
+                exitCode = report(options, startup, generator, sink, recorder);
+            }
+        } finally {
+            broker.destroy();
+        }
+        System.exit(exitCode);
+    }
+
+    private static ConfigurableApplicationContext startApi(HarnessOptions options, String brokers) {
+        List<String> args = new ArrayList<>();
+        args.add("--spring.config.location=classpath:/harness/api.yml");
+        args.add("--spring.kafka.bootstrap-servers=" + brokers);
+        options.apiProperties.forEach((name, value) -> args.add("--" + name + "=" + value));
+        return run(args, ProducerApiApplication.class);
+    }
+
+    private static ConfigurableApplicationContext startWorker(HarnessOptions options, String brokers, String sinkUrl) {
+        List<String> args = new ArrayList<>();
+        args.add("--spring.config.location=classpath:/harness/worker.yml");
+        args.add("--spring.kafka.bootstrap-servers=" + brokers);
+        args.add("--spring.datasource.url=" + options.dbUrl);
+        if (options.batchMaxEvents > 0) {
+            String destination = "webhook.delivery.batching.destinations.[" + sinkUrl + "]";
+            args.add("--" + destination + ".max-events=" + options.batchMaxEvents);
+        }
+        options.workerProperties.forEach((name, value) -> args.add("--" + name + "=" + value));
+
+        return run(args, ConsumerWorkerApplication.class, H2PayloadStore.class);
+    }
+
+    /**
+     * @param sources the application class first, then the harness beans replacing some of its own.
+     */
+    private static ConfigurableApplicationContext run(List<String> args, Class<?>... sources) {
+        SpringApplication application = new SpringApplication(sources);
+        application.setMainApplicationClass(sources[0]);
+        // lowest precedence: the harness overrides and the command line win over it
+        application.addInitializers(context -> context.getEnvironment().getPropertySources()
+                .addLast(ownConfig(sources[0])));
+        return application.run(args.toArray(String[]::new));
+    }
+
+    /**
+     * both applications ship a classpath:application.yml, so the one of each is read from
+     * the jar (or classes directory) of its application class.
+     */
+    private static PropertySource<?> ownConfig(Class<?> applicationClass) {
+        String classFile = applicationClass.getName().replace('.', '/') + ".class";
+        String classUrl = applicationClass.getResource("/" + classFile).toString();
+        String root = classUrl.substring(0, classUrl.length() - classFile.length());
+        try {
+            List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+                    .load(applicationClass.getSimpleName() + " application.yml", new UrlResource(root + "application.yml"));
+            return sources.get(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    /**
+     * waits until every accepted event reached the sink, at most for the timeout.
+     */
+    private static void drain(LoadGenerator generator, DeliveryRecorder recorder, Duration timeout)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long last = -1;
+        while (recorder.delivered() < generator.accepted() && System.nanoTime() < deadline) {
+            long delivered = recorder.delivered();
+            if (delivered != last) {
+                log.info("Draining: {} of {} accepted events delivered", delivered, generator.accepted());
+                last = delivered;
+            }
+            Thread.sleep(1_000);
+        }
+    }
+
+    private static int report(HarnessOptions options, Startup startup, LoadGenerator generator, HttpSink sink,
+                              DeliveryRecorder recorder) {
+        Histogram latency = recorder.latencyMicros();
+        double seconds = options.duration.toNanos() / 1e9;
+        double throughput = recorder.deliveredInWindow() / seconds;
+        long undelivered = Math.max(0, generator.accepted() - recorder.delivered());
+
+        StringBuilder out = new StringBuilder("\n=== load harness ===\n");
+        long firstDelivery = recorder.firstDeliveryNanos();
+        line(out, "worker start", "context ready in %.2f s, first delivery %s after launch",
+                (startup.readyNanos() - startup.launchNanos()) / 1e9,
+                firstDelivery > 0 ? String.format(Locale.ROOT, "%.2f s", (firstDelivery - startup.launchNanos()) / 1e9) : "never");
+        line(out, "offered", "%.0f events/s for %s after %s of warmup", options.rate, options.duration, options.warmup);
+        line(out, "ingestion", "%d sent, %d accepted, %d rejected (429/503), %d failed, %d skipped",
+                generator.sent(), generator.accepted(), generator.rejected(), generator.failed(), generator.skipped());
+        if (generator.lastFailure() != null) {
+            line(out, "", "last failure: %s", generator.lastFailure());
+        }
+        line(out, "delivery", "%d delivered, %d duplicates, %d undelivered",
+                recorder.delivered(), recorder.duplicates(), undelivered);
+        line(out, "sink", "%d requests, %d answered 500, %d answered 429",
+                sink.requests(), sink.errors(), sink.throttled());
+        line(out, "throughput", "%.1f events/s delivered during the measurement", throughput);
+        line(out, "latency (ms)", "p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f  (%d events)",
+                millis(latency, 50), millis(latency, 90), millis(latency, 99), millis(latency, 99.9),
+                latency.getMaxValue() / 1e3, latency.getTotalCount());
+        if (options.hotShare > 0) {
+            Histogram others = recorder.otherClientsLatencyMicros();
+            line(out, "others (ms)", "p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f  (%d events, client-0 excluded)",
+                    millis(others, 50), millis(others, 90), millis(others, 99), millis(others, 99.9),
+                    others.getMaxValue() / 1e3, others.getTotalCount());
+        }
+
+        List<String> violations = new ArrayList<>();
+        if (options.minThroughput > 0 && throughput < options.minThroughput) {
+            violations.add(String.format(Locale.ROOT, "throughput %.1f < %.1f events/s", throughput, options.minThroughput));
+        }
+        if (options.maxP99 != null && latency.getValueAtPercentile(99) > options.maxP99.toNanos() / 1_000) {
+            violations.add(String.format(Locale.ROOT, "p99 %.1f ms > %d ms", millis(latency, 99), options.maxP99.toMillis()));
+        }
+        if (latency.getTotalCount() == 0) {
+            violations.add("no event of the measurement was delivered");
+        }
+        violations.forEach(violation -> line(out, "GATE FAILED", "%s", violation));
+        System.out.println(out);
+        return violations.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * @param launchNanos when the worker was launched.
+     * @param readyNanos  when its context was started (listeners included, not yet assigned).
+     */
+    private record Startup(long launchNanos, long readyNanos) {
+    }
+
+    private static void line(StringBuilder out, String label, String format, Object... args) {
+        out.append(String.format(Locale.ROOT, "%-14s", label)).append(String.format(Locale.ROOT, format, args)).append('\n');
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e3;
+    }
+}
@@ -0,0 +1,25 @@
+-- h2 version of the delivery log schema (db/migration of consumer-worker), without the daily partitions
+CREATE TABLE IF NOT EXISTS webhook_delivery_log (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_id        VARCHAR(255),
+    client_id       VARCHAR(255),
+    target_url      VARCHAR(2048),
+    request_payload VARCHAR(1000000),
+    payload_hash    VARBINARY(32),
+    response_status INTEGER   NOT NULL,
+    success         BOOLEAN   NOT NULL,
+    error_message   VARCHAR(1000000),
+    attempt_time    TIMESTAMP(6) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS ix_delivery_log_event_id ON webhook_delivery_log (event_id);
+CREATE INDEX IF NOT EXISTS ix_delivery_log_time_id ON webhook_delivery_log (attempt_time, id);
+CREATE INDEX IF NOT EXISTS ix_delivery_log_client_time_id ON webhook_delivery_log (client_id, attempt_time, id);
+
+CREATE TABLE IF NOT EXISTS webhook_payload (
+    hash          VARBINARY(32) PRIMARY KEY,
+    codec         SMALLINT NOT NULL,
+    original_size INTEGER  NOT NULL,
+    data          VARBINARY(100000000) NOT NULL,
+    last_used     DATE     NOT NULL
+);
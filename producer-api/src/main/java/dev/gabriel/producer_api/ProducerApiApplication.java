@@ -2,8 +2,10 @@ package dev.gabriel.producer_api;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class ProducerApiApplication {
 
 	public static void main(String[] args) {
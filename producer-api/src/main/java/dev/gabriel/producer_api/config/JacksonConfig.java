@@ -0,0 +1,24 @@
+package dev.gabriel.producer_api.config;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Jackson configuration shared by the components that read raw JSON themselves
+ * (e.g. the streaming batch ingestion).
+ */
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    @Primary // this config will override the default ObjectMapper
+    public ObjectMapper objectMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        // same leniency as the single-event endpoint: unknown fields are ignored
+        mapper.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return mapper;
+    }
+}
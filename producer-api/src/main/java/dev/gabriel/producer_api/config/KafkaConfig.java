@@ -1,16 +1,25 @@
 package dev.gabriel.producer_api.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import dev.gabriel.producer_api.serialization.WebhookEventSerializer;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.springframework.boot.kafka.autoconfigure.DefaultKafkaProducerFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Configuration class for Kafka infrastructure.
  * <p>
  * This class handles the automatic creation and configuration of Kafka topics
- * when the application starts. It ensures the infrastructure requirements
- * (like partition count) are met without manual intervention.
+ * when the application starts, and the tuning of the producer. It ensures the
+ * infrastructure requirements (like partition count) are met without manual intervention.
  * </p>
  */
 @Configuration
@@ -28,4 +37,46 @@ public class KafkaConfig {
                 .replicas(1)    // local -> single node
                 .build();
     }
+
+    /**
+     * Applies the configured delivery mode and tuning profile to the producer factory.
+     * <p>
+     * Await-ack uses an idempotent producer with {@code acks=all}, so retries never duplicate
+     * or reorder records. Fire-and-forget trades that for {@code acks=1}.
+     * </p>
+     * <p>
+     * The value serializer is set here (not in application.yml) because it depends on the
+     * configured payload format and shares the application {@link ObjectMapper}.
+     * </p>
+     *
+     * @param properties   The producer settings from application.yml.
+     * @param objectMapper The mapper used to serialize events.
+     * @return A customizer applied by Spring Boot to the default producer factory.
+     */
+    @Bean
+    @SuppressWarnings("unchecked")
+    public DefaultKafkaProducerFactoryCustomizer producerTuning(ProducerProperties properties, ObjectMapper objectMapper) {
+        return factory -> {
+            Map<String, Object> configs = new HashMap<>();
+            ProducerProperties.TuningProfile profile = properties.getProfile();
+            configs.put(ProducerConfig.BATCH_SIZE_CONFIG, profile.getBatchSize());
+            configs.put(ProducerConfig.LINGER_MS_CONFIG, profile.getLingerMs());
+            configs.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, profile.getCompressionType());
+            configs.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, properties.getMaxBlock().toMillis());
+
+            boolean awaitAck = properties.getDeliveryMode() == ProducerProperties.DeliveryMode.AWAIT_ACK;
+            configs.put(ProducerConfig.ACKS_CONFIG, awaitAck ? "all" : "1");
+            configs.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, awaitAck);
+            if (!awaitAck && properties.getSpool().isEnabled()) {
+                // The spool drainer pipelines the events of a client and relies on the producer to keep
+                // them in order across retries, which takes a single request per connection without idempotence
+                configs.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 1);
+            }
+
+            factory.updateConfigs(configs);
+            // Only WebhookEvent values are produced by this application
+            ((DefaultKafkaProducerFactory<Object, WebhookEvent>) factory).setValueSerializer(
+                    new WebhookEventSerializer(objectMapper, properties.getPayloadFormat()));
+        };
+    }
 }
@@ -0,0 +1,119 @@
+package dev.gabriel.producer_api.config;
+
+import lombok.Data;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Delivery guarantee and throughput settings of the Kafka producer.
+ * <p>
+ * Bound to the {@code webhook.producer} prefix in application.yml.
+ * </p>
+ */
+@Data
+@ConfigurationProperties(prefix = "webhook.producer")
+public class ProducerProperties {
+
+    /** Whether the API answers before or after the broker acknowledged the event. */
+    private DeliveryMode deliveryMode = DeliveryMode.AWAIT_ACK;
+
+    /** Batching, linger and compression preset applied to the producer. */
+    private TuningProfile profile = TuningProfile.BALANCED;
+
+    /** How the event is laid out in the Kafka record. */
+    private PayloadFormat payloadFormat = PayloadFormat.EMBEDDED;
+
+    /** How long a client-provided eventId is remembered: resubmissions within it are not published again. */
+    private Duration dedupWindow = Duration.ofMinutes(10);
+
+    /** Max eventIds remembered for deduplication. */
+    private long dedupMaxIds = 1_000_000;
+
+    /** Max events sent but not acknowledged yet. Beyond it, requests are rejected with 429. */
+    private int maxInFlight = 10_000;
+
+    /** Max items of a batch request sent and not acknowledged yet. Beyond it, reading the body waits for the oldest. */
+    private int batchWindow = 1_000;
+
+    /** How long a request may wait for an in-flight slot before being rejected. */
+    private Duration acquireTimeout = Duration.ofMillis(50);
+
+    /** How long a request waits for the broker acknowledgment in await-ack mode. */
+    private Duration ackTimeout = Duration.ofSeconds(5);
+
+    /** Max time {@code send} may block when metadata is missing or the buffer is full (max.block.ms). */
+    private Duration maxBlock = Duration.ofSeconds(1);
+
+    /** Local write-ahead spool accepted events go through before Kafka. */
+    private Spool spool = new Spool();
+
+    public enum DeliveryMode {
+        /** acks=1, the API answers as soon as the event is in the producer buffer. */
+        FIRE_AND_FORGET,
+        /** Idempotent producer with acks=all, the API answers once every in-sync replica has the event. */
+        AWAIT_ACK
+    }
+
+    public enum PayloadFormat {
+        /** The whole event is the JSON record value. */
+        EMBEDDED,
+        /** The record value is the raw payload, the other fields travel in headers. */
+        OPAQUE,
+        /** The record value is a versioned binary envelope: the other fields, then the raw payload. No headers. */
+        BINARY
+    }
+
+    public enum FsyncPolicy {
+        /** Every append is flushed to disk before the API answers. */
+        ALWAYS,
+        /** Appends are flushed in the background every {@code fsync-interval}. */
+        INTERVAL,
+        /** The OS writes the pages back when it wants to. */
+        NEVER
+    }
+
+    @Data
+    public static class Spool {
+        /** Append accepted events to local segment files and publish them in the background. */
+        private boolean enabled = false;
+
+        /** Directory holding the segment files, kept across restarts. */
+        private String directory = "spool";
+
+        /** Size of a segment file, an event larger than a segment is rejected. */
+        private int segmentSize = 64 * 1024 * 1024;
+
+        /** Max segment files waiting to be published. Beyond it, requests are rejected with 429. */
+        private int maxSegments = 16;
+
+        /** When appended events are flushed to disk. Any policy survives a process crash, only an OS crash can lose unflushed events. */
+        private FsyncPolicy fsync = FsyncPolicy.INTERVAL;
+
+        /** Flush period of the {@code interval} fsync policy. */
+        private Duration fsyncInterval = Duration.ofMillis(100);
+
+        /** Max spooled events sent to Kafka and not acknowledged yet. */
+        private int maxInFlight = 1_000;
+
+        /** Upper bound of the pause before publishing again after a failed send. */
+        private Duration maxRetryBackoff = Duration.ofSeconds(5);
+    }
+
+    /**
+     * Producer presets, from the lowest latency to the highest throughput.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public enum TuningProfile {
+        LOW_LATENCY(16 * 1024, 0, "none"),
+        BALANCED(64 * 1024, 5, "lz4"),
+        THROUGHPUT(256 * 1024, 20, "zstd");
+
+        private final int batchSize;
+        private final int lingerMs;
+        private final String compressionType;
+    }
+}
@@ -1,6 +1,8 @@
 package dev.gabriel.producer_api.controller;
 
+import dev.gabriel.producer_api.model.BatchIngestionResult;
 import dev.gabriel.producer_api.model.WebhookEvent;
+import dev.gabriel.producer_api.service.WebhookBatchService;
 import dev.gabriel.producer_api.service.WebhookProducerService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -8,12 +10,17 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * REST Controller for ingesting Webhook events.
  * <p>
@@ -28,12 +35,14 @@ import org.springframework.web.bind.annotation.RestController;
 public class WebhookController {
 
     private final WebhookProducerService producerService;
+    private final WebhookBatchService batchService;
 
     /**
      * Receives a webhook event and publishes it to the Kafka topic.
      * <p>
      * Returns HTTP 202 (Accepted) to indicate that the request has been received
      * for processing but has not been completed yet (Asynchronous pattern).
+     * In await-ack mode, the event is already stored by the broker at that point.
      * </p>
      *
      * @param event The webhook payload (validated via @Valid).
@@ -46,11 +55,41 @@ public class WebhookController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "202", description = "Event accepted and queued successfully"),
             @ApiResponse(responseCode = "400", description = "Invalid payload provided (e.g., missing target URL or client ID)"),
-            @ApiResponse(responseCode = "500", description = "Internal server error (e.g., Kafka broker unavailable)")
+            @ApiResponse(responseCode = "429", description = "Too many events waiting for the broker, retry later"),
+            @ApiResponse(responseCode = "503", description = "Kafka broker unavailable or did not acknowledge in time")
     })
     @PostMapping
     public ResponseEntity<String> createWebhook(@RequestBody @Valid WebhookEvent event) {
         producerService.sendWebhook(event);
         return ResponseEntity.accepted().body("Webhook event sent successfully with ID: " + event.getEventId());
     }
-}
\ No newline at end of file
+
+    /**
+     * Receives many webhook events in a single request and publishes them to the Kafka topic.
+     * <p>
+     * The body is either a JSON array or newline-delimited JSON (one event per line) and is
+     * parsed incrementally. Each item is validated on its own: invalid items are rejected
+     * without affecting the others. Returns HTTP 202 when every item was queued, or
+     * HTTP 207 (Multi-Status) when some of them were rejected or failed.
+     * </p>
+     *
+     * @param body The raw request body, read as a stream.
+     * @return One result per item, in request order.
+     * @throws IOException If the body can't be read or is not well-formed JSON.
+     */
+    @Operation(
+            summary = "Dispatch a batch of webhook events",
+            description = "Receives a JSON array or NDJSON stream of webhook payloads, validates each item, and queues the valid ones in Kafka."
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "All events accepted and queued successfully"),
+            @ApiResponse(responseCode = "207", description = "Some events were rejected or could not be queued, see the per-item results"),
+            @ApiResponse(responseCode = "400", description = "Malformed JSON body")
+    })
+    @PostMapping(value = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<BatchIngestionResult> createWebhookBatch(InputStream body) throws IOException {
+        BatchIngestionResult result = batchService.ingest(body);
+        HttpStatus status = result.getRejected() + result.getFailed() == 0 ? HttpStatus.ACCEPTED : HttpStatus.MULTI_STATUS;
+        return ResponseEntity.status(status).body(result);
+    }
+}
@@ -0,0 +1,14 @@
+package dev.gabriel.producer_api.exception;
+
+/**
+ * Thrown when an event is larger than what the producer can accept.
+ * <p>
+ * Mapped to HTTP 413: resubmitting the same event won't help.
+ * </p>
+ */
+public class EventTooLargeException extends RuntimeException {
+
+    public EventTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -1,5 +1,7 @@
 package dev.gabriel.producer_api.exception;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.KafkaException;
@@ -54,4 +56,44 @@ public class GlobalExceptionHandler {
                         "timestamp", LocalDateTime.now()
                 ));
     }
-}
\ No newline at end of file
+
+    /**
+     * Handles backpressure from the producer: too many events waiting for the broker.
+     */
+    @ExceptionHandler(ProducerOverloadedException.class)
+    public ResponseEntity<Object> handleProducerOverloaded(ProducerOverloadedException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of(
+                        "error", "Too many pending events",
+                        "details", ex.getMessage(),
+                        "timestamp", LocalDateTime.now()
+                ));
+    }
+
+    /**
+     * Handles events too large to be accepted.
+     */
+    @ExceptionHandler(EventTooLargeException.class)
+    public ResponseEntity<Object> handleEventTooLarge(EventTooLargeException ex) {
+        return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE)
+                .body(Map.of(
+                        "error", "Event too large",
+                        "details", ex.getMessage(),
+                        "timestamp", LocalDateTime.now()
+                ));
+    }
+
+    /**
+     * Handles malformed JSON in streamed request bodies (e.g. batch ingestion).
+     */
+    @ExceptionHandler(JsonProcessingException.class)
+    public ResponseEntity<Object> handleMalformedJson(JsonProcessingException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(Map.of(
+                        "error", "Malformed JSON body",
+                        "details", ex.getOriginalMessage(),
+                        "timestamp", LocalDateTime.now()
+                ));
+    }
+}
@@ -0,0 +1,18 @@
+package dev.gabriel.producer_api.exception;
+
+/**
+ * Thrown when too many events are waiting for a broker acknowledgment.
+ * <p>
+ * Mapped to HTTP 429 so callers back off instead of growing the producer buffer.
+ * </p>
+ */
+public class ProducerOverloadedException extends RuntimeException {
+
+    public ProducerOverloadedException(int maxInFlight) {
+        super("More than " + maxInFlight + " events are waiting for the broker, retry later");
+    }
+
+    public ProducerOverloadedException(String message) {
+        super(message);
+    }
+}
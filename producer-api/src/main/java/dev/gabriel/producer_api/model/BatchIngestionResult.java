@@ -0,0 +1,21 @@
+package dev.gabriel.producer_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Response of the batch ingestion endpoint, with one result per item in request order.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchIngestionResult {
+
+    private int accepted;
+    private int rejected;
+    private int failed;
+    private List<BatchItemResult> items;
+}
@@ -0,0 +1,36 @@
+package dev.gabriel.producer_api.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * Outcome of a single item of a batch ingestion request.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemResult {
+
+    /** Position of the item in the request body, starting at 0. */
+    private int index;
+
+    /** Event ID assigned to the item, null if it was rejected before publishing. */
+    private String eventId;
+
+    private Status status;
+
+    /** Field errors for rejected items, or the publishing error for failed ones. */
+    private Map<String, String> errors;
+
+    public enum Status {
+        /** Published to Kafka. */
+        ACCEPTED,
+        /** Invalid item, not published. */
+        REJECTED,
+        /** Valid item that could not be published. */
+        FAILED
+    }
+}
@@ -0,0 +1,143 @@
+package dev.gabriel.producer_api.serialization;
+
+import dev.gabriel.producer_api.config.ProducerProperties;
+import org.apache.kafka.common.errors.SerializationException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Versioned binary layout of an event in the record value, written in
+ * {@link ProducerProperties.PayloadFormat#BINARY} format.
+ * <p>
+ * The value starts with a marker byte that can't start a JSON document ({@code 0xFE} never
+ * appears in UTF-8) and a version byte, so the worker tells the formats apart without any
+ * header and keeps reading the records written in JSON. Version 1 then holds the eventId,
+ * clientId, targetUrl and trace id as UTF-8 strings prefixed by their length plus one as an
+ * unsigned varint (0 for null), the ingest time as an unsigned varint, and the payload bytes
+ * up to the end of the value.
+ * </p>
+ * <p>
+ * Adding or changing a field means a new version: the worker rejects the versions it doesn't
+ * know, so it has to be upgraded before the producer writes them. consumer-worker holds a copy
+ * of this class, the two apps share no module: both test suites check their copy against the
+ * same encoded bytes (BinaryEnvelopeTests), so a change made to one copy only fails the build.
+ * The reading side is kept here for that reason, the producer itself never decodes.
+ * </p>
+ */
+final class BinaryEnvelope {
+
+    static final byte MAGIC = (byte) 0xFE;
+    static final byte VERSION_1 = 1;
+
+    private BinaryEnvelope() {
+    }
+
+    static byte[] encode(String eventId, String clientId, String targetUrl, String traceId,
+                         long ingestedAt, byte[] payload) {
+        byte[] eventIdBytes = utf8(eventId);
+        byte[] clientIdBytes = utf8(clientId);
+        byte[] targetUrlBytes = utf8(targetUrl);
+        byte[] traceIdBytes = utf8(traceId);
+
+        int size = 2 + stringSize(eventIdBytes) + stringSize(clientIdBytes) + stringSize(targetUrlBytes)
+                + stringSize(traceIdBytes) + varLongSize(ingestedAt) + payload.length;
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .put(MAGIC)
+                .put(VERSION_1);
+        putString(buffer, eventIdBytes);
+        putString(buffer, clientIdBytes);
+        putString(buffer, targetUrlBytes);
+        putString(buffer, traceIdBytes);
+        putVarLong(buffer, ingestedAt);
+        return buffer.put(payload).array();
+    }
+
+    /**
+     * @throws SerializationException If the value is not an envelope, its version is unknown or it is truncated.
+     */
+    static Fields decode(byte[] data) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            if (buffer.get() != MAGIC) {
+                throw new SerializationException("Not a binary envelope, first byte is not " + MAGIC);
+            }
+            byte version = buffer.get();
+            if (version != VERSION_1) {
+                throw new SerializationException("Unsupported binary envelope version " + version);
+            }
+
+            String eventId = getString(buffer);
+            String clientId = getString(buffer);
+            String targetUrl = getString(buffer);
+            String traceId = getString(buffer);
+            long ingestedAt = getVarLong(buffer);
+            byte[] payload = new byte[buffer.remaining()];
+            buffer.get(payload);
+            return new Fields(eventId, clientId, targetUrl, traceId, ingestedAt, payload);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new SerializationException("Truncated binary envelope of " + data.length + " bytes", e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        long length = getVarLong(buffer) - 1;
+        if (length < 0) return null;
+        if (length > buffer.remaining()) throw new BufferUnderflowException();
+        String value = new String(buffer.array(), buffer.position(), (int) length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + (int) length);
+        return value;
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new SerializationException("Malformed varint in binary envelope");
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private static int stringSize(byte[] value) {
+        return value != null ? varLongSize(value.length + 1L) + value.length : 1;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.put((byte) 0);
+        } else {
+            putVarLong(buffer, value.length + 1L);
+            buffer.put(value);
+        }
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * The fields of a decoded envelope.
+     */
+    record Fields(String eventId, String clientId, String targetUrl, String traceId, long ingestedAt,
+                  byte[] payload) {
+    }
+}
@@ -0,0 +1,104 @@
+package dev.gabriel.producer_api.serialization;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Kafka serializer of {@link WebhookEvent} records.
+ * <p>
+ * In {@link ProducerProperties.PayloadFormat#EMBEDDED} format the whole event is written as JSON,
+ * exactly like the plain {@link JacksonJsonSerializer}. In {@link ProducerProperties.PayloadFormat#OPAQUE}
+ * format the record value is only the serialized payload, and the event metadata travels in
+ * headers, so the worker can post the value as-is without ever parsing it.
+ * {@link ProducerProperties.PayloadFormat#BINARY} is the same without headers: the metadata,
+ * trace id and ingest time included, is packed in front of the payload by {@link BinaryEnvelope}.
+ * </p>
+ */
+public class WebhookEventSerializer implements Serializer<WebhookEvent> {
+
+    public static final String EVENT_ID_HEADER = "webhook-event-id";
+    public static final String CLIENT_ID_HEADER = "webhook-client-id";
+    public static final String TARGET_URL_HEADER = "webhook-target-url";
+    public static final String PAYLOAD_FORMAT_HEADER = "webhook-payload-format";
+    /** Epoch millis when the API accepted the event. */
+    public static final String INGEST_TIMESTAMP_HEADER = "webhook-ingest-ts";
+    /** W3C-style trace id (32 hex chars), identifies the event across services and retries. */
+    public static final String TRACE_ID_HEADER = "webhook-trace-id";
+
+    private static final byte[] OPAQUE = "opaque".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ObjectMapper objectMapper;
+    private final ProducerProperties.PayloadFormat format;
+    private final JacksonJsonSerializer<WebhookEvent> embedded = new JacksonJsonSerializer<>();
+
+    public WebhookEventSerializer(ObjectMapper objectMapper, ProducerProperties.PayloadFormat format) {
+        this.objectMapper = objectMapper;
+        this.format = format;
+    }
+
+    @Override
+    public byte[] serialize(String topic, WebhookEvent data) {
+        // Without headers the metadata can't be carried outside the value
+        return embedded.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, WebhookEvent data) {
+        if (data == null || format == ProducerProperties.PayloadFormat.EMBEDDED) {
+            return embedded.serialize(topic, headers, data);
+        }
+
+        if (format == ProducerProperties.PayloadFormat.BINARY) {
+            String traceId = takeHeader(headers, TRACE_ID_HEADER);
+            String ingestedAt = takeHeader(headers, INGEST_TIMESTAMP_HEADER);
+            return BinaryEnvelope.encode(data.getEventId(), data.getClientId(), data.getTargetUrl(), traceId,
+                    ingestedAt != null ? Long.parseLong(ingestedAt) : 0, payload(data));
+        }
+
+        headers.add(PAYLOAD_FORMAT_HEADER, OPAQUE);
+        addHeader(headers, EVENT_ID_HEADER, data.getEventId());
+        addHeader(headers, CLIENT_ID_HEADER, data.getClientId());
+        addHeader(headers, TARGET_URL_HEADER, data.getTargetUrl());
+        return payload(data);
+    }
+
+    private byte[] payload(WebhookEvent data) {
+        if (data.getPayload() == null) return EMPTY;
+        try {
+            return objectMapper.writeValueAsBytes(data.getPayload());
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Can't serialize payload of event " + data.getEventId(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        embedded.close();
+    }
+
+    /**
+     * Removes the header, its value is moved into the binary envelope.
+     */
+    private static String takeHeader(Headers headers, String name) {
+        Header header = headers.lastHeader(name);
+        if (header == null) return null;
+        headers.remove(name);
+        return new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    private static void addHeader(Headers headers, String name, String value) {
+        if (value != null) {
+            headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package dev.gabriel.producer_api.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.model.BatchIngestionResult;
+import dev.gabriel.producer_api.model.BatchItemResult;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service responsible for ingesting many events from a single request body.
+ * <p>
+ * The body is read incrementally, one item at a time, whether it is a JSON array or
+ * newline-delimited JSON (NDJSON), so large bursts never need to fit in memory.
+ * Every valid item is handed to the {@link WebhookProducerService} right away; the sends
+ * are pipelined by the Kafka producer. At most {@code batch-window} of them are pending at
+ * once: beyond it, reading waits for the oldest one. Completed sends are turned into their
+ * small result right away, so only the pending ones keep their event.
+ * </p>
+ * <p>
+ * A body that stops being well-formed JSON after some items (malformed or truncated) does not
+ * fail the whole request, those items may already be published: they are reported, followed
+ * by a rejected result for the item where reading stopped. A body malformed from its first
+ * item is answered with 400.
+ * </p>
+ */
+@Service
+@Slf4j
+public class WebhookBatchService {
+
+    private final WebhookProducerService producerService;
+    private final Validator validator;
+    private final ObjectReader eventReader;
+    private final int window;
+
+    public WebhookBatchService(WebhookProducerService producerService, Validator validator, ObjectMapper objectMapper,
+                               ProducerProperties properties) {
+        this.producerService = producerService;
+        this.validator = validator;
+        this.eventReader = objectMapper.readerFor(WebhookEvent.class);
+        this.window = properties.getBatchWindow();
+    }
+
+    /**
+     * Reads, validates and publishes every event of the body.
+     *
+     * @param body A JSON array of events, or one JSON event per line.
+     * @return One result per item, in request order.
+     * @throws JsonProcessingException If the body is not well-formed JSON from its first item.
+     * @throws IOException             If the body can't be read.
+     */
+    public BatchIngestionResult ingest(InputStream body) throws IOException {
+        List<BatchItemResult> items = new ArrayList<>();
+        Deque<CompletableFuture<BatchItemResult>> pending = new ArrayDeque<>();
+
+        // readValues() iterates the elements of a root-level array as well as a sequence
+        // of root-level values (NDJSON), without materializing the whole body
+        int index = 0;
+        try (MappingIterator<WebhookEvent> events = eventReader.readValues(body)) {
+            while (events.hasNextValue()) {
+                pending.addLast(ingestNext(events, index));
+                index++;
+                collect(pending, items, window);
+            }
+        } catch (JsonProcessingException e) {
+            if (index == 0) throw e;
+            collect(pending, items, 0);
+            items.add(new BatchItemResult(index, null, BatchItemResult.Status.REJECTED, Map.of("body",
+                    "Malformed JSON, this item and the rest of the body were not read: " + e.getOriginalMessage())));
+        }
+
+        // every record is in the producer's buffers, wait for the last acknowledgments
+        collect(pending, items, 0);
+
+        int accepted = count(items, BatchItemResult.Status.ACCEPTED);
+        int rejected = count(items, BatchItemResult.Status.REJECTED);
+        int failed = count(items, BatchItemResult.Status.FAILED);
+
+        log.info("Batch ingested: {} accepted, {} rejected, {} failed", accepted, rejected, failed);
+        return new BatchIngestionResult(accepted, rejected, failed, items);
+    }
+
+    private CompletableFuture<BatchItemResult> ingestNext(MappingIterator<WebhookEvent> events, int index)
+            throws IOException {
+        WebhookEvent event;
+        try {
+            event = events.nextValue();
+        } catch (DatabindException e) {
+            // wrong field types etc.: the iterator skips the broken item and goes on with the next one
+            return rejected(index, Map.of("item", e.getOriginalMessage()));
+        }
+
+        if (event == null) {
+            return rejected(index, Map.of("item", "Item must be a JSON object"));
+        }
+
+        Set<ConstraintViolation<WebhookEvent>> violations = validator.validate(event);
+        if (!violations.isEmpty()) {
+            Map<String, String> errors = new LinkedHashMap<>();
+            violations.forEach(v -> errors.put(v.getPropertyPath().toString(), v.getMessage()));
+            return rejected(index, errors);
+        }
+
+        try {
+            return producerService.sendWebhookAsync(event)
+                    .handle((ignored, error) -> error == null
+                            ? new BatchItemResult(index, event.getEventId(), BatchItemResult.Status.ACCEPTED, null)
+                            : failed(index, event, error));
+        } catch (Exception e) {
+            // the producer can throw synchronously (e.g. metadata not available within max.block.ms)
+            return CompletableFuture.completedFuture(failed(index, event, e));
+        }
+    }
+
+    /**
+     * Moves the results of the oldest sends to the items, in order: every completed one, and
+     * the pending ones beyond the window once they complete.
+     */
+    private static void collect(Deque<CompletableFuture<BatchItemResult>> pending, List<BatchItemResult> items,
+                                int window) {
+        CompletableFuture<BatchItemResult> oldest;
+        while ((oldest = pending.peekFirst()) != null && (oldest.isDone() || pending.size() > window)) {
+            items.add(pending.removeFirst().join());
+        }
+    }
+
+    private static CompletableFuture<BatchItemResult> rejected(int index, Map<String, String> errors) {
+        return CompletableFuture.completedFuture(
+                new BatchItemResult(index, null, BatchItemResult.Status.REJECTED, errors));
+    }
+
+    private static BatchItemResult failed(int index, WebhookEvent event, Throwable error) {
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        return new BatchItemResult(index, event.getEventId(), BatchItemResult.Status.FAILED,
+                Map.of("publish", String.valueOf(cause.getMessage())));
+    }
+
+    private static int count(List<BatchItemResult> items, BatchItemResult.Status status) {
+        return (int) items.stream().filter(item -> item.getStatus() == status).count();
+    }
+}
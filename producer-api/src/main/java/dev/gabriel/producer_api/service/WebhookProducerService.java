@@ -1,43 +1,277 @@
 package dev.gabriel.producer_api.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.exception.ProducerOverloadedException;
 import dev.gabriel.producer_api.model.WebhookEvent;
-import lombok.RequiredArgsConstructor;
+import dev.gabriel.producer_api.serialization.WebhookEventSerializer;
+import dev.gabriel.producer_api.spool.EventSpool;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service responsible for publishing events to the Kafka Broker.
+ * <p>
+ * The number of events waiting for a broker acknowledgment is bounded: once the limit is
+ * reached, new events are rejected with {@link ProducerOverloadedException} instead of piling
+ * up in the producer buffer. Send latency and in-flight count are exposed as metrics.
+ * </p>
+ * <p>
+ * Every record carries the time the API accepted the event and a trace id in headers (moved
+ * into the value by the binary format), so the worker can measure the end-to-end latency of
+ * each stage.
+ * </p>
+ * <p>
+ * Client-provided eventIds are remembered for the dedup window, with the clientId since each
+ * client picks its own ids, so an event resubmitted by a client (e.g. after a timeout on its
+ * side) is accepted again but published only once. A resubmission gets the answer of the
+ * original submission, waiting for the broker with it if needed. The worker deduplicates
+ * deliveries on the same clientId and eventId.
+ * </p>
+ * <p>
+ * With the spool enabled, accepted events are appended to the local {@link EventSpool} and
+ * published from there in the background, so requests don't wait for the broker at all.
+ * </p>
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class WebhookProducerService {
 
     private final KafkaTemplate<String, WebhookEvent> kafkaTemplate;
+    private final ProducerProperties properties;
+    private final Semaphore inFlight;
+    private final Timer ackedSends;
+    private final Timer failedSends;
+    /** Accepted client-provided events, by clientId and eventId, with the answer they got. */
+    private final Cache<String, CompletableFuture<Void>> recentEventIds;
+    private final EventSpool spool;
     private static final String TOPIC = "webhook.deliveries";
+    private static final CompletableFuture<Void> ACCEPTED = CompletableFuture.completedFuture(null);
+
+    public WebhookProducerService(KafkaTemplate<String, WebhookEvent> kafkaTemplate,
+                                  ProducerProperties properties,
+                                  EventSpool spool,
+                                  MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.properties = properties;
+        this.spool = spool;
+        this.inFlight = new Semaphore(properties.getMaxInFlight());
+        this.recentEventIds = Caffeine.newBuilder()
+                .maximumSize(properties.getDedupMaxIds())
+                .expireAfterWrite(properties.getDedupWindow())
+                .build();
+
+        String mode = properties.getDeliveryMode().name().toLowerCase();
+        this.ackedSends = sendTimer(meterRegistry, mode, "success");
+        this.failedSends = sendTimer(meterRegistry, mode, "failure");
+        meterRegistry.gauge("webhook.producer.in.flight", inFlight,
+                permits -> properties.getMaxInFlight() - permits.availablePermits());
+    }
+
+    @PostConstruct
+    void startSpool() {
+        spool.drainTo(spooled -> publish(spooled.event(), spooled.ingestedAt(), spooled.traceId()));
+    }
+
+    /**
+     * Stops publishing spooled events while the Kafka producer is still open.
+     */
+    @PreDestroy
+    void stopSpool() throws InterruptedException {
+        spool.stopDraining();
+    }
 
     /**
      * Sends the webhook event to the configured Kafka topic.
      * <p>
+     * In await-ack mode, this method returns only once the broker acknowledged the event,
+     * so the caller's 202 really means "stored". In fire-and-forget mode it returns as soon
+     * as the event is in the producer buffer. With the spool enabled, it returns once the
+     * event is in the spool.
+     * </p>
+     *
+     * @param event The event data to be published.
+     * @throws ProducerOverloadedException If too many events are waiting for the broker.
+     * @throws KafkaException              If the broker did not acknowledge the event in time.
+     */
+    public void sendWebhook(WebhookEvent event) {
+        CompletableFuture<Void> ack = sendWebhookAsync(event);
+        try {
+            ack.get(properties.getAckTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof KafkaException kafkaException
+                    ? kafkaException
+                    : new KafkaException("Failed to publish event " + event.getEventId(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new KafkaException("Timed out waiting for the broker to acknowledge event " + event.getEventId(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while publishing event " + event.getEventId(), e);
+        }
+    }
+
+    /**
+     * Sends the webhook event without waiting, so many sends can be pipelined.
+     * <p>
      * This method uses the {@code clientId} as the Kafka Message Key to ensure
      * that all events from the same client land on the same partition,
      * guaranteeing processing order.
      * </p>
      *
      * @param event The event data to be published.
+     * @return A future completed according to the delivery mode: on broker acknowledgment
+     * (await-ack), or right away (fire-and-forget or spooled).
+     * @throws ProducerOverloadedException If too many events are waiting for the broker.
      */
-    public void sendWebhook(WebhookEvent event) {
-        // Idempotency/Tracing: ensure eventId is set
+    public CompletableFuture<Void> sendWebhookAsync(WebhookEvent event) {
+        // Idempotency/Tracing: ensure eventId is set, generated ids are unique and need no dedup
         if (event.getEventId() == null) {
             event.setEventId(UUID.randomUUID().toString());
+            return accept(event, () -> {});
+        }
+
+        // Client-provided ids are only unique per client
+        String key = dedupKey(event);
+        CompletableFuture<Void> accepted = new CompletableFuture<>();
+        CompletableFuture<Void> original = recentEventIds.asMap().putIfAbsent(key, accepted);
+        if (original != null) {
+            log.info("Event {} of client {} already accepted, not publishing it again", event.getEventId(), event.getClientId());
+            // Answered like the original submission, which may still be waiting for the broker
+            return original.copy();
         }
 
-        log.info("Sending event {} for client {} to topic {}", event.getEventId(), event.getClientId(), TOPIC);
+        // Not accepted, the client may resubmit it
+        Runnable forget = () -> recentEventIds.asMap().remove(key, accepted);
+        CompletableFuture<Void> result;
+        try {
+            result = accept(event, forget);
+        } catch (RuntimeException e) {
+            forget.run();
+            accepted.completeExceptionally(e);
+            throw e;
+        }
+        result.whenComplete((ignored, error) -> {
+            if (error != null) {
+                accepted.completeExceptionally(error);
+            } else {
+                accepted.complete(null);
+                // Completed futures are all alike, keep a shared one for the rest of the window
+                recentEventIds.asMap().replace(key, accepted, ACCEPTED);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Spools or sends an event, its eventId already set.
+     *
+     * @param onSendFailure Invoked when the broker did not take the event, after the caller may
+     *                      have been answered (fire-and-forget).
+     * @return A future completed according to the delivery mode.
+     */
+    private CompletableFuture<Void> accept(WebhookEvent event, Runnable onSendFailure) {
+        long ingestedAt = System.currentTimeMillis();
+        String traceId = UUID.randomUUID().toString().replace("-", "");
+
+        if (spool.isEnabled()) {
+            spool.append(event, ingestedAt, traceId);
+            log.info("Spooled event {} (trace {}) for client {}", event.getEventId(), traceId, event.getClientId());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        acquireSlot();
+        CompletableFuture<Void> ack;
+        try {
+            ack = publish(event, ingestedAt, traceId)
+                    .whenComplete((result, error) -> {
+                        inFlight.release();
+                        if (error != null) {
+                            onSendFailure.run();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+
+        return properties.getDeliveryMode() == ProducerProperties.DeliveryMode.AWAIT_ACK
+                ? ack
+                : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return The key of a client-provided eventId in the dedup cache. The clientId is prefixed
+     * with its length, so distinct pairs never share a key whatever characters they contain.
+     */
+    static String dedupKey(WebhookEvent event) {
+        String clientId = event.getClientId();
+        // Keys of a client start with a digit, a missing one can't take theirs
+        return clientId == null ? ":" + event.getEventId() : clientId.length() + ":" + clientId + event.getEventId();
+    }
+
+    /**
+     * Sends the event to Kafka, directly or out of the spool.
+     *
+     * @return A future completed on broker acknowledgment.
+     */
+    private CompletableFuture<Void> publish(WebhookEvent event, long ingestedAt, String traceId) {
+        log.info("Sending event {} (trace {}) for client {} to topic {}", event.getEventId(), traceId, event.getClientId(), TOPIC);
 
         // Key = clientId (Guarantees Order), Value = Event
-        kafkaTemplate.send(TOPIC, event.getClientId(), event);
+        ProducerRecord<String, WebhookEvent> record = new ProducerRecord<>(TOPIC, event.getClientId(), event);
+        record.headers()
+                .add(WebhookEventSerializer.INGEST_TIMESTAMP_HEADER, String.valueOf(ingestedAt).getBytes(StandardCharsets.UTF_8))
+                .add(WebhookEventSerializer.TRACE_ID_HEADER, traceId.getBytes(StandardCharsets.UTF_8));
+
+        long start = System.nanoTime();
+        try {
+            return kafkaTemplate.send(record)
+                    .whenComplete((result, error) -> {
+                        (error == null ? ackedSends : failedSends).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        if (error != null) {
+                            log.error("Failed to publish event {}: {}", event.getEventId(), error.getMessage());
+                        }
+                    })
+                    .thenApply(result -> null);
+        } catch (RuntimeException e) {
+            failedSends.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    private void acquireSlot() {
+        try {
+            if (!inFlight.tryAcquire(properties.getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ProducerOverloadedException(properties.getMaxInFlight());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProducerOverloadedException(properties.getMaxInFlight());
+        }
+    }
+
+    private static Timer sendTimer(MeterRegistry meterRegistry, String mode, String outcome) {
+        return Timer.builder("webhook.producer.send")
+                .description("Time from send to broker acknowledgment")
+                .tag("mode", mode)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
-}
\ No newline at end of file
+}
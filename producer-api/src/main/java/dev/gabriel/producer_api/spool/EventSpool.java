@@ -0,0 +1,304 @@
+package dev.gabriel.producer_api.spool;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.exception.EventTooLargeException;
+import dev.gabriel.producer_api.exception.ProducerOverloadedException;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.errors.SerializationException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Local write-ahead spool of accepted events, in front of Kafka.
+ * <p>
+ * When enabled, an accepted event is appended to a memory-mapped segment file and the API
+ * answers right away, without waiting for the broker: a broker restart or a metadata refresh no
+ * longer blocks requests for up to {@code max.block.ms}. A {@link SpoolDrainer} publishes the
+ * spooled events in append order (so in order for each client) and the segments are deleted
+ * once every event in them was acknowledged by the broker.
+ * </p>
+ * <p>
+ * Appended events survive a crash of the process, the mapped pages belong to the OS. Surviving
+ * an OS crash depends on the fsync policy: {@code always} flushes every append before the API
+ * answers, {@code interval} flushes in the background, {@code never} leaves it to the OS. The
+ * segments left by a previous run are published first on startup.
+ * </p>
+ * <p>
+ * Delivery out of the spool is at-least-once: after a failed send or a crash, events already
+ * published may be published again. They keep their eventId, and the worker delivers an eventId
+ * only once. Disk usage is bounded by {@code max-segments}: when the broker stays away until the
+ * spool is full, new events are rejected with 429. An event larger than a segment is rejected
+ * with 413, sending it around the spool would let it overtake the earlier events of its client.
+ * </p>
+ */
+@Component
+@Slf4j
+public class EventSpool {
+
+    private final ProducerProperties.Spool properties;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Timer appends;
+    private final Deque<SpoolSegment> segments = new ArrayDeque<>();
+    private volatile SpoolSegment active;
+    private long nextSegmentId;
+    private ScheduledExecutorService syncer;
+    private volatile SpoolDrainer drainer;
+
+    public EventSpool(ProducerProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties.getSpool();
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.appends = Timer.builder("webhook.producer.spool.append")
+                .description("Time to append an accepted event to the spool, flush included")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Maps the segments left by the previous run and opens a new one for appends.
+     */
+    @PostConstruct
+    void open() throws IOException {
+        if (!properties.isEnabled()) return;
+
+        Path directory = Path.of(properties.getDirectory());
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(SpoolSegment::isSegmentFile).sorted().toList();
+        }
+
+        long pendingBytes = 0;
+        for (Path file : files) {
+            SpoolSegment segment = SpoolSegment.recover(file);
+            segments.addLast(segment);
+            pendingBytes += segment.unacknowledgedBytes();
+            nextSegmentId = segment.id() + 1;
+        }
+        if (!segments.isEmpty()) {
+            log.info("Recovered {} spool segments from {}, {} bytes of events not published yet",
+                    segments.size(), directory.toAbsolutePath(), pendingBytes);
+        }
+        active = SpoolSegment.create(directory, nextSegmentId++, properties.getSegmentSize());
+        segments.addLast(active);
+        trim();
+
+        if (properties.getFsync() == ProducerProperties.FsyncPolicy.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "event-spool-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = properties.getFsyncInterval().toMillis();
+            syncer.scheduleWithFixedDelay(() -> active.force(), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        Gauge.builder("webhook.producer.spool.segments", this, EventSpool::segmentCount)
+                .description("Segment files held by the spool, the one being appended to included")
+                .register(meterRegistry);
+        Gauge.builder("webhook.producer.spool.pending.bytes", this, EventSpool::pendingBytes)
+                .description("Bytes of spooled events not acknowledged by the broker yet")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * Appends an accepted event to the spool, to be published by the drainer.
+     *
+     * @param event      The event to publish, its eventId already set.
+     * @param ingestedAt Epoch millis when the API accepted the event.
+     * @param traceId    Trace id assigned to the event.
+     * @throws EventTooLargeException     If the event does not fit in a segment.
+     * @throws ProducerOverloadedException If the spool is full of events the broker did not take yet.
+     * @throws KafkaException              If the segment file can't be created.
+     */
+    public void append(WebhookEvent event, long ingestedAt, String traceId) {
+        byte[] body = encode(event, ingestedAt, traceId);
+        if (SpoolSegment.HEADER_SIZE + SpoolSegment.RECORD_OVERHEAD + body.length > properties.getSegmentSize()) {
+            // Sending it directly would let it overtake the spooled events of its client
+            throw new EventTooLargeException("Event " + event.getEventId() + " takes " + body.length
+                    + " bytes, more than a spool segment holds (" + properties.getSegmentSize() + " bytes)");
+        }
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            int position = active.tryAppend(body);
+            if (position < 0) {
+                roll();
+                position = active.tryAppend(body);
+            }
+            if (properties.getFsync() == ProducerProperties.FsyncPolicy.ALWAYS) {
+                active.force(position, position + SpoolSegment.RECORD_OVERHEAD + body.length);
+            }
+        }
+        appends.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        SpoolDrainer current = drainer;
+        if (current != null) {
+            current.wakeUp();
+        }
+    }
+
+    /**
+     * Starts publishing the spooled events in the background, those of the previous run first.
+     *
+     * @param publisher Sends an event to Kafka, the future completes on broker acknowledgment.
+     */
+    public synchronized void drainTo(Function<SpooledEvent, CompletableFuture<?>> publisher) {
+        if (!properties.isEnabled() || drainer != null) return;
+        drainer = new SpoolDrainer(this, publisher, properties.getMaxInFlight(), properties.getMaxRetryBackoff());
+        drainer.start();
+    }
+
+    /**
+     * Stops publishing. The events not acknowledged yet stay in the spool for the next run.
+     */
+    public void stopDraining() throws InterruptedException {
+        SpoolDrainer current;
+        synchronized (this) {
+            current = drainer;
+        }
+        if (current != null) {
+            current.stop(properties.getMaxRetryBackoff().multipliedBy(2));
+        }
+    }
+
+    @PreDestroy
+    void close() throws InterruptedException {
+        if (!properties.isEnabled()) return;
+
+        stopDraining();
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        if (properties.getFsync() != ProducerProperties.FsyncPolicy.NEVER) {
+            synchronized (this) {
+                segments.forEach(SpoolSegment::force);
+            }
+        }
+    }
+
+    synchronized SpoolSegment first() {
+        return segments.peekFirst();
+    }
+
+    /**
+     * @return the segment appended to after the given one, null if it is the last one.
+     */
+    synchronized SpoolSegment after(SpoolSegment segment) {
+        // by id: the given segment may already be trimmed
+        for (SpoolSegment candidate : segments) {
+            if (candidate.id() > segment.id()) return candidate;
+        }
+        return null;
+    }
+
+    /**
+     * Deletes the sealed segments at the head of the spool whose events were all published.
+     */
+    synchronized void trim() {
+        while (segments.size() > 1 && segments.peekFirst().isDrained()) {
+            SpoolSegment drained = segments.removeFirst();
+            try {
+                drained.delete();
+            } catch (IOException e) {
+                log.warn("Failed to delete spool segment {}: {}", drained, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Decodes a record read from a segment.
+     *
+     * @return the event, null if the record can't be read back (it is skipped).
+     */
+    SpooledEvent decode(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        try {
+            long ingestedAt = buffer.getLong();
+            byte[] traceId = new byte[buffer.getShort()];
+            buffer.get(traceId);
+            WebhookEvent event = objectMapper.readValue(body, buffer.position(), buffer.remaining(), WebhookEvent.class);
+            return new SpooledEvent(event, ingestedAt, new String(traceId, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            log.error("Skipping unreadable spooled event: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Seals the active segment and opens the next one, unless the spool is full.
+     */
+    private void roll() {
+        if (segments.size() >= properties.getMaxSegments()) {
+            throw new ProducerOverloadedException("The spool is full (" + properties.getMaxSegments()
+                    + " segments) of events the broker did not take yet, retry later");
+        }
+        SpoolSegment sealed = active;
+        sealed.seal();
+        if (properties.getFsync() != ProducerProperties.FsyncPolicy.NEVER) {
+            sealed.force();
+        }
+        try {
+            active = SpoolSegment.create(Path.of(properties.getDirectory()), nextSegmentId++, properties.getSegmentSize());
+        } catch (IOException e) {
+            throw new KafkaException("Failed to create a spool segment", e);
+        }
+        segments.addLast(active);
+    }
+
+    private byte[] encode(WebhookEvent event, long ingestedAt, String traceId) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Can't serialize event " + event.getEventId(), e);
+        }
+        byte[] traceIdBytes = traceId.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(Long.BYTES + Short.BYTES + traceIdBytes.length + json.length)
+                .putLong(ingestedAt)
+                .putShort((short) traceIdBytes.length)
+                .put(traceIdBytes)
+                .put(json)
+                .array();
+    }
+
+    private synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    private synchronized long pendingBytes() {
+        long pending = 0;
+        for (SpoolSegment segment : segments) {
+            pending += segment.unacknowledgedBytes();
+        }
+        return pending;
+    }
+}
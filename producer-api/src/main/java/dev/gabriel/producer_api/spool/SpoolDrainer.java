@@ -0,0 +1,234 @@
+package dev.gabriel.producer_api.spool;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Background thread publishing the spooled events to Kafka, in append order.
+ * <p>
+ * Up to {@code max-in-flight} events are sent without waiting for their acknowledgment, those
+ * of a same client (the record key) included: the order of a client's events is kept by the
+ * producer, which retries a partition's records in order (idempotent in await-ack mode, a single
+ * request in flight per connection otherwise, see {@code KafkaConfig}). A busy client is drained
+ * at the rate of the producer's batches, not of one event per acknowledgment, and never holds
+ * back the other clients. The spool is acknowledged in order: a segment position only moves past
+ * an event once it and every event before it were acknowledged.
+ * </p>
+ * <p>
+ * A send only fails once the producer gave up on it ({@code delivery.timeout.ms}). The drainer
+ * then waits for the other sends to complete, rewinds to the failed event and publishes again
+ * from there after a backoff, skipping the events acknowledged in the meantime: events are not
+ * published twice unless the drainer itself stops (a crash or a restart publishes again from the
+ * last acknowledged position). A later event of the failed one's client acknowledged meanwhile
+ * stays ahead of it, the one case where the order of a client's events is not kept.
+ * </p>
+ */
+@Slf4j
+final class SpoolDrainer {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MIN_BACKOFF_MILLIS = 100;
+
+    private final EventSpool spool;
+    private final Function<SpooledEvent, CompletableFuture<?>> publisher;
+    private final int maxInFlight;
+    private final Semaphore window;
+    private final long maxBackoffMillis;
+    private final Thread thread;
+    /** Events sent and not acknowledged in order yet, oldest first. Drainer thread only. */
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    /** Events acknowledged after an earlier one failed, not sent again after the rewind. Drainer thread only. */
+    private final Set<Position> acknowledgedAhead = new HashSet<>();
+    private volatile boolean running = true;
+    private SpoolSegment segment;
+    private int position;
+    private long backoffMillis = MIN_BACKOFF_MILLIS;
+
+    SpoolDrainer(EventSpool spool, Function<SpooledEvent, CompletableFuture<?>> publisher, int maxInFlight,
+                 Duration maxBackoff) {
+        this.spool = spool;
+        this.publisher = publisher;
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        this.maxBackoffMillis = maxBackoff.toMillis();
+        this.thread = new Thread(this::run, "event-spool-drainer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        segment = spool.first();
+        position = segment.acknowledged();
+        thread.start();
+    }
+
+    /**
+     * Signals that an event was appended.
+     */
+    void wakeUp() {
+        LockSupport.unpark(thread);
+    }
+
+    void stop(Duration timeout) throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        thread.join(timeout.toMillis());
+    }
+
+    private void run() {
+        while (running) {
+            if (acknowledgeCompleted()) {
+                backoffMillis = MIN_BACKOFF_MILLIS;
+            }
+
+            Pending head = pending.peekFirst();
+            if (head != null && head.state == Pending.FAILED) {
+                // the sends after the failed one must complete before rewinding to it
+                if (window.availablePermits() < maxInFlight) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                } else {
+                    rewind(head);
+                }
+                continue;
+            }
+
+            if (!window.tryAcquire()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            if (!publishNext()) {
+                window.release();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Sends the next event.
+     *
+     * @return false when there is no event to send yet.
+     */
+    private boolean publishNext() {
+        Pending next = readNext();
+        if (next == null) return false;
+
+        pending.addLast(next);
+        if (next.event == null || acknowledgedAhead.remove(new Position(next.segment.id(), next.start))) {
+            // Unreadable, or already published before the rewind
+            next.complete(Pending.ACKNOWLEDGED);
+            return true;
+        }
+
+        try {
+            publisher.apply(next.event).whenComplete((result, error) ->
+                    next.complete(error == null ? Pending.ACKNOWLEDGED : Pending.FAILED));
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish spooled event {}: {}", next.event.event().getEventId(), e.getMessage());
+            next.complete(Pending.FAILED);
+        }
+        return true;
+    }
+
+    /**
+     * Reads and decodes the event at the current position, and moves past it.
+     *
+     * @return null when there is no event to read yet.
+     */
+    private Pending readNext() {
+        // sealed first: a sealed segment has its last record written
+        boolean sealed = segment.isSealed();
+        byte[] body = segment.read(position);
+        if (body == null) {
+            if (!sealed) return null;
+            SpoolSegment next = spool.after(segment);
+            if (next == null) return null;
+            segment = next;
+            position = SpoolSegment.HEADER_SIZE;
+            body = segment.read(position);
+            if (body == null) return null;
+        }
+
+        Pending read = new Pending(segment, position, segment.next(position), spool.decode(body));
+        position = read.end;
+        return read;
+    }
+
+    /**
+     * Moves the acknowledged position of the segments past the events acknowledged in order.
+     *
+     * @return true if any event was acknowledged.
+     */
+    private boolean acknowledgeCompleted() {
+        boolean acknowledged = false;
+        Pending head;
+        while ((head = pending.peekFirst()) != null && head.state == Pending.ACKNOWLEDGED) {
+            pending.removeFirst();
+            head.segment.acknowledge(head.end);
+            acknowledged = true;
+        }
+        if (acknowledged) {
+            spool.trim();
+        }
+        return acknowledged;
+    }
+
+    private void rewind(Pending failed) {
+        for (Pending later : pending) {
+            if (later.state == Pending.ACKNOWLEDGED) {
+                acknowledgedAhead.add(new Position(later.segment.id(), later.start));
+            }
+        }
+        pending.clear();
+        segment = failed.segment;
+        position = failed.start;
+        log.warn("Publishing of spooled events failed, publishing again from {}:{} in {} ms",
+                segment, position, backoffMillis);
+        try {
+            Thread.sleep(backoffMillis);
+        } catch (InterruptedException e) {
+            // only stop() interrupts the drainer, the loop condition handles it
+        }
+        backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+    }
+
+    private final class Pending {
+        static final int SENT = 0;
+        static final int ACKNOWLEDGED = 1;
+        static final int FAILED = 2;
+
+        final SpoolSegment segment;
+        final int start;
+        final int end;
+        /** Null if the record can't be read back. */
+        final SpooledEvent event;
+        volatile int state = SENT;
+
+        Pending(SpoolSegment segment, int start, int end, SpooledEvent event) {
+            this.segment = segment;
+            this.start = start;
+            this.end = end;
+            this.event = event;
+        }
+
+        void complete(int outcome) {
+            state = outcome;
+            window.release();
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Where an event is in the spool.
+     */
+    private record Position(long segmentId, int start) {
+    }
+}
@@ -0,0 +1,213 @@
+package dev.gabriel.producer_api.spool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped file holding a sequence of spooled records.
+ * <p>
+ * The file is mapped whole when created, so appending is a copy into the page cache: the
+ * records outlive a crash of the process as soon as they are written, and only need a
+ * {@link #force} to outlive a crash of the OS. Layout: a 16-byte header (magic, version and
+ * the position up to which the records were published), then records made of their length,
+ * the CRC32C of their body and the body. A zero length marks the end of the records, the
+ * unused part of a new file reads as zeros.
+ * </p>
+ * <p>
+ * A single thread appends (under the {@link EventSpool} lock) and a single thread reads and
+ * acknowledges (the {@link SpoolDrainer}), each through its own view of the mapping.
+ * </p>
+ */
+final class SpoolSegment {
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_OVERHEAD = 8;
+    private static final int MAGIC = 0x57485350;
+    private static final int VERSION_1 = 1;
+    private static final int ACKNOWLEDGED_OFFSET = 8;
+    private static final String SUFFIX = ".spool";
+
+    private final long id;
+    private final Path path;
+    private final MappedByteBuffer writeView;
+    private final ByteBuffer readView;
+    private volatile int writePosition;
+    private volatile boolean sealed;
+    private volatile int acknowledged;
+
+    private SpoolSegment(long id, Path path, MappedByteBuffer map, int writePosition, int acknowledged) {
+        this.id = id;
+        this.path = path;
+        this.writeView = map;
+        this.readView = map.duplicate();
+        this.writePosition = writePosition;
+        this.acknowledged = acknowledged;
+    }
+
+    /**
+     * Creates and maps a new, empty segment file.
+     */
+    static SpoolSegment create(Path directory, long id, int size) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", id, SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(0, MAGIC).putInt(4, VERSION_1).putLong(ACKNOWLEDGED_OFFSET, HEADER_SIZE);
+            return new SpoolSegment(id, path, map, HEADER_SIZE, HEADER_SIZE);
+        }
+    }
+
+    /**
+     * Maps an existing segment file, left by a previous run, as a sealed segment.
+     * <p>
+     * The records are scanned up to the first empty or corrupted one: a record torn by an OS
+     * crash ends the segment, and what follows it is lost with it.
+     * </p>
+     */
+    static SpoolSegment recover(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a spool segment: " + path);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION_1) {
+                throw new IOException("Not a spool segment, or an unknown version: " + path);
+            }
+
+            int position = HEADER_SIZE;
+            while (position + RECORD_OVERHEAD <= size) {
+                int length = map.getInt(position);
+                if (length <= 0 || position + RECORD_OVERHEAD + length > size) break;
+                if (map.getInt(position + 4) != checksum(map, position + RECORD_OVERHEAD, length)) break;
+                position += RECORD_OVERHEAD + length;
+            }
+            long acknowledged = Math.min(Math.max(map.getLong(ACKNOWLEDGED_OFFSET), HEADER_SIZE), position);
+
+            SpoolSegment segment = new SpoolSegment(id, path, map, position, (int) acknowledged);
+            segment.sealed = true;
+            return segment;
+        }
+    }
+
+    static boolean isSegmentFile(Path path) {
+        return path.getFileName().toString().endsWith(SUFFIX);
+    }
+
+    /**
+     * Appends a record, if it fits.
+     *
+     * @return the position of the record, -1 when the segment is full.
+     */
+    int tryAppend(byte[] body) {
+        int position = writePosition;
+        if ((long) position + RECORD_OVERHEAD + body.length > writeView.capacity()) return -1;
+
+        // the length goes last: a reader never sees a record whose body is not written yet
+        writeView.put(position + RECORD_OVERHEAD, body);
+        writeView.putInt(position + 4, checksum(writeView, position + RECORD_OVERHEAD, body.length));
+        writeView.putInt(position, body.length);
+        writePosition = position + RECORD_OVERHEAD + body.length;
+        return position;
+    }
+
+    /**
+     * Reads the body of the record at the given position.
+     *
+     * @return the body, null when no record was appended there yet.
+     */
+    byte[] read(int position) {
+        if (position >= writePosition) return null;
+        byte[] body = new byte[readView.getInt(position)];
+        readView.get(position + RECORD_OVERHEAD, body);
+        return body;
+    }
+
+    /**
+     * @return the position of the record following the one at the given position.
+     */
+    int next(int position) {
+        return position + RECORD_OVERHEAD + readView.getInt(position);
+    }
+
+    /**
+     * Records that the records before the given position were published. Written in the header,
+     * so the next run does not publish them again (unless the header was not flushed).
+     */
+    void acknowledge(int position) {
+        acknowledged = position;
+        readView.putLong(ACKNOWLEDGED_OFFSET, position);
+    }
+
+    /**
+     * Flushes the given range of the file to disk.
+     */
+    void force(int from, int to) {
+        writeView.force(from, to - from);
+    }
+
+    /**
+     * Flushes every modified page of the file to disk, the header included.
+     */
+    void force() {
+        writeView.force();
+    }
+
+    /**
+     * Marks the segment as complete, no record is appended to it anymore.
+     */
+    void seal() {
+        sealed = true;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * @return true when the segment is sealed and all its records were published.
+     */
+    boolean isDrained() {
+        return sealed && acknowledged >= writePosition;
+    }
+
+    int acknowledged() {
+        return acknowledged;
+    }
+
+    long unacknowledgedBytes() {
+        return writePosition - acknowledged;
+    }
+
+    int capacity() {
+        return writeView.capacity();
+    }
+
+    long id() {
+        return id;
+    }
+
+    void delete() throws IOException {
+        // the mapping itself is released when the buffer is garbage collected
+        Files.deleteIfExists(path);
+    }
+
+    private static int checksum(ByteBuffer buffer, int position, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(position, length));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,14 @@
+package dev.gabriel.producer_api.spool;
+
+import dev.gabriel.producer_api.model.WebhookEvent;
+
+/**
+ * An accepted event read back from the spool, with the ingest time and trace id it was
+ * accepted with, so its record is the same as if it had been sent right away.
+ *
+ * @param event      The event, as accepted by the API.
+ * @param ingestedAt Epoch millis when the API accepted the event.
+ * @param traceId    Trace id assigned to the event on acceptance.
+ */
+public record SpooledEvent(WebhookEvent event, long ingestedAt, String traceId) {
+}
@@ -0,0 +1,80 @@
+package dev.gabriel.producer_api.serialization;
+
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryEnvelopeTests {
+
+	/** version 1 of e-1 / client-a / http://receiver/hook, no trace id, ingested at 1700000000000, {"n":1}. */
+	static final byte[] VERSION_1_VECTOR = HexFormat.of().parseHex(
+			"fe0104652d3109636c69656e742d6115687474703a2f2f72656365697665722f686f6f6b0080d095ffbc317b226e223a317d");
+
+	private static final byte[] PAYLOAD = "{\"n\":1}".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	void writesTheLayoutTheWorkerReads() {
+		// consumer-worker checks its copy against the same bytes
+		assertArrayEquals(VERSION_1_VECTOR, BinaryEnvelope.encode("e-1", "client-a", "http://receiver/hook", null,
+				1_700_000_000_000L, PAYLOAD));
+	}
+
+	@Test
+	void roundTrips() {
+		BinaryEnvelope.Fields fields = BinaryEnvelope.decode(BinaryEnvelope.encode("é-1", "client-a",
+				"http://receiver/hook", "4bf92f3577b34da6a3ce929d0e0e4736", Long.MAX_VALUE, PAYLOAD));
+
+		assertEquals("é-1", fields.eventId());
+		assertEquals("client-a", fields.clientId());
+		assertEquals("http://receiver/hook", fields.targetUrl());
+		assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", fields.traceId());
+		assertEquals(Long.MAX_VALUE, fields.ingestedAt());
+		assertArrayEquals(PAYLOAD, fields.payload());
+	}
+
+	@Test
+	void roundTripsNullsAndAnEmptyPayload() {
+		BinaryEnvelope.Fields fields = BinaryEnvelope.decode(BinaryEnvelope.encode(null, "client-a", "", null, 0,
+				new byte[0]));
+
+		assertNull(fields.eventId());
+		assertEquals("", fields.targetUrl());
+		assertNull(fields.traceId());
+		assertEquals(0, fields.payload().length);
+	}
+
+	@Test
+	void rejectsTruncatedValues() {
+		// every cut before the payload leaves a field incomplete
+		int headerEnd = VERSION_1_VECTOR.length - PAYLOAD.length;
+		for (int length = 0; length < headerEnd; length++) {
+			byte[] truncated = Arrays.copyOf(VERSION_1_VECTOR, length);
+			assertThrows(SerializationException.class, () -> BinaryEnvelope.decode(truncated), "length " + length);
+		}
+	}
+
+	@Test
+	void rejectsUnknownVersions() {
+		byte[] version2 = VERSION_1_VECTOR.clone();
+		version2[1] = 2;
+
+		SerializationException e = assertThrows(SerializationException.class, () -> BinaryEnvelope.decode(version2));
+		assertEquals("Unsupported binary envelope version 2", e.getMessage());
+	}
+
+	@Test
+	void rejectsBadMagic() {
+		byte[] json = VERSION_1_VECTOR.clone();
+		json[0] = '{';
+
+		assertThrows(SerializationException.class, () -> BinaryEnvelope.decode(json));
+	}
+}
@@ -0,0 +1,49 @@
+package dev.gabriel.producer_api.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class WebhookEventSerializerTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void embeddedWritesTheWholeEventWithItsType() throws Exception {
+		Headers headers = new RecordHeaders();
+		byte[] value = new WebhookEventSerializer(objectMapper, ProducerProperties.PayloadFormat.EMBEDDED)
+				.serialize("webhook.deliveries", headers, event());
+
+		assertEquals(event(), objectMapper.readValue(value, WebhookEvent.class));
+		// the worker maps this type to its own event class
+		assertEquals(WebhookEvent.class.getName(),
+				new String(headers.lastHeader("__TypeId__").value(), StandardCharsets.UTF_8));
+		assertNull(headers.lastHeader(WebhookEventSerializer.PAYLOAD_FORMAT_HEADER));
+	}
+
+	@Test
+	void opaqueWritesOnlyThePayload() throws Exception {
+		Headers headers = new RecordHeaders();
+		byte[] value = new WebhookEventSerializer(objectMapper, ProducerProperties.PayloadFormat.OPAQUE)
+				.serialize("webhook.deliveries", headers, event());
+
+		assertEquals(Map.of("n", 1), objectMapper.readValue(value, Map.class));
+		assertNotNull(headers.lastHeader(WebhookEventSerializer.PAYLOAD_FORMAT_HEADER));
+		assertEquals("e-1", new String(headers.lastHeader(WebhookEventSerializer.EVENT_ID_HEADER).value(),
+				StandardCharsets.UTF_8));
+	}
+
+	private static WebhookEvent event() {
+		return new WebhookEvent("e-1", "client-a", "http://receiver/hook", Map.of("n", 1));
+	}
+}
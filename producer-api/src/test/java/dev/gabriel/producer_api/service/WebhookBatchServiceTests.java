@@ -0,0 +1,164 @@
+package dev.gabriel.producer_api.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.model.BatchIngestionResult;
+import dev.gabriel.producer_api.model.BatchItemResult;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class WebhookBatchServiceTests {
+
+	private final WebhookProducerService producerService = mock(WebhookProducerService.class);
+	private final ProducerProperties properties = new ProducerProperties();
+
+	@Test
+	void readsArraysAndNdjson() throws IOException {
+		when(producerService.sendWebhookAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+		BatchIngestionResult array = service().ingest(body("[" + event("e-1") + "," + event("e-2") + "]"));
+		BatchIngestionResult ndjson = service().ingest(body(event("e-1") + "\n" + event("e-2") + "\n"));
+
+		for (BatchIngestionResult result : List.of(array, ndjson)) {
+			assertEquals(2, result.getAccepted());
+			assertEquals(List.of("e-1", "e-2"), result.getItems().stream().map(BatchItemResult::getEventId).toList());
+		}
+	}
+
+	@Test
+	void invalidItemIsRejectedAlone() throws IOException {
+		when(producerService.sendWebhookAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+		BatchIngestionResult result = service().ingest(body(
+				"[" + event("e-1") + ",{\"eventId\":\"e-2\",\"clientId\":\"\"}," + event("e-3") + "]"));
+
+		assertEquals(2, result.getAccepted());
+		assertEquals(1, result.getRejected());
+		assertEquals(BatchItemResult.Status.REJECTED, result.getItems().get(1).getStatus());
+		assertEquals("e-3", result.getItems().get(2).getEventId());
+	}
+
+	@Test
+	void truncatedBodyKeepsTheItemsReadBeforeIt() throws IOException {
+		when(producerService.sendWebhookAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+		BatchIngestionResult result = service().ingest(body(
+				"[" + event("e-1") + "," + event("e-2") + ",{\"eventId\":\"e-3\",\"clie"));
+
+		assertEquals(2, result.getAccepted());
+		assertEquals(1, result.getRejected());
+		BatchItemResult last = result.getItems().get(2);
+		assertEquals(2, last.getIndex());
+		assertEquals(BatchItemResult.Status.REJECTED, last.getStatus());
+		assertTrue(last.getErrors().containsKey("body"));
+	}
+
+	@Test
+	void malformedItemStopsTheReading() throws IOException {
+		when(producerService.sendWebhookAsync(any())).thenReturn(CompletableFuture.completedFuture(null));
+
+		BatchIngestionResult result = service().ingest(body(event("e-1") + "\n{\"eventId\": e-2}\n" + event("e-3")));
+
+		assertEquals(1, result.getAccepted());
+		assertEquals(List.of(BatchItemResult.Status.ACCEPTED, BatchItemResult.Status.REJECTED),
+				result.getItems().stream().map(BatchItemResult::getStatus).toList());
+	}
+
+	@Test
+	void bodyMalformedFromTheStartIsNotIngested() {
+		assertThrows(JsonProcessingException.class, () -> service().ingest(body("{\"eventId\": oops")));
+		assertThrows(JsonProcessingException.class, () -> service().ingest(body("[{")));
+	}
+
+	@Test
+	void readingWaitsForTheOldestSendBeyondTheWindow() throws Exception {
+		properties.setBatchWindow(2);
+		List<CompletableFuture<Void>> sends = new CopyOnWriteArrayList<>();
+		when(producerService.sendWebhookAsync(any())).thenAnswer(invocation -> {
+			CompletableFuture<Void> send = new CompletableFuture<>();
+			sends.add(send);
+			return send;
+		});
+		WebhookBatchService service = service();
+
+		CompletableFuture<BatchIngestionResult> result = CompletableFuture.supplyAsync(() -> {
+			try {
+				return service.ingest(body(event("e-1") + "\n" + event("e-2") + "\n" + event("e-3") + "\n"
+						+ event("e-4") + "\n" + event("e-5")));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		// 3 sent, the third one waits for the first before the next item is read
+		waitUntil(() -> sends.size() == 3);
+		Thread.sleep(100);
+		assertEquals(3, sends.size());
+
+		sends.get(0).complete(null);
+		waitUntil(() -> sends.size() == 4);
+		sends.forEach(send -> send.complete(null));
+		waitUntil(() -> sends.size() == 5);
+		sends.forEach(send -> send.complete(null));
+
+		BatchIngestionResult ingested = result.get(5, TimeUnit.SECONDS);
+		assertEquals(5, ingested.getAccepted());
+		assertEquals(List.of(0, 1, 2, 3, 4), ingested.getItems().stream().map(BatchItemResult::getIndex).toList());
+	}
+
+	@Test
+	void failedSendIsReportedInOrder() throws IOException {
+		when(producerService.sendWebhookAsync(any()))
+				.thenReturn(CompletableFuture.completedFuture(null))
+				.thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+		BatchIngestionResult result = service().ingest(body(event("e-1") + "\n" + event("e-2")));
+
+		assertEquals(1, result.getAccepted());
+		assertEquals(1, result.getFailed());
+		assertEquals(BatchItemResult.Status.FAILED, result.getItems().get(1).getStatus());
+		assertFalse(result.getItems().get(1).getErrors().isEmpty());
+	}
+
+	private WebhookBatchService service() {
+		return new WebhookBatchService(producerService, Validation.buildDefaultValidatorFactory().getValidator(),
+				new ObjectMapper(), properties);
+	}
+
+	private static String event(String eventId) {
+		return "{\"eventId\":\"" + eventId + "\",\"clientId\":\"client-a\",\"targetUrl\":\"http://receiver/hook\","
+				+ "\"payload\":{\"n\":1}}";
+	}
+
+	private static InputStream body(String json) {
+		return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+}
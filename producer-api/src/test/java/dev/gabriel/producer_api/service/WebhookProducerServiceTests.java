@@ -0,0 +1,105 @@
+package dev.gabriel.producer_api.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import dev.gabriel.producer_api.spool.EventSpool;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WebhookProducerServiceTests {
+
+	@SuppressWarnings("unchecked")
+	private final KafkaTemplate<String, WebhookEvent> kafkaTemplate = mock(KafkaTemplate.class);
+	private final WebhookProducerService service;
+
+	WebhookProducerServiceTests() {
+		ProducerProperties properties = new ProducerProperties();
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		service = new WebhookProducerService(kafkaTemplate, properties,
+				new EventSpool(properties, new ObjectMapper(), meterRegistry), meterRegistry);
+	}
+
+	@Test
+	void resubmissionWaitsForTheOriginalSend() {
+		CompletableFuture<SendResult<String, WebhookEvent>> ack = new CompletableFuture<>();
+		when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(ack);
+
+		CompletableFuture<Void> original = service.sendWebhookAsync(event("client-a", "event-1"));
+		CompletableFuture<Void> resubmitted = service.sendWebhookAsync(event("client-a", "event-1"));
+
+		// not answered before the broker took the original
+		assertFalse(resubmitted.isDone());
+		ack.complete(null);
+		assertTrue(original.isDone() && !original.isCompletedExceptionally());
+		assertTrue(resubmitted.isDone() && !resubmitted.isCompletedExceptionally());
+		verify(kafkaTemplate, times(1)).send(any(ProducerRecord.class));
+
+		// and answered right away once it did
+		assertTrue(service.sendWebhookAsync(event("client-a", "event-1")).isDone());
+		verify(kafkaTemplate, times(1)).send(any(ProducerRecord.class));
+	}
+
+	@Test
+	void sameEventIdOfAnotherClientIsPublished() {
+		when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+		service.sendWebhookAsync(event("client-a", "event-1"));
+		service.sendWebhookAsync(event("client-b", "event-1"));
+
+		verify(kafkaTemplate, times(2)).send(any(ProducerRecord.class));
+	}
+
+	@Test
+	void pairsSharingTheirCharactersAreNotDuplicates() {
+		when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+		service.sendWebhookAsync(event("a\u0000b", "c"));
+		service.sendWebhookAsync(event("a", "b\u0000c"));
+		service.sendWebhookAsync(event("1", "2:3"));
+		service.sendWebhookAsync(event("12", "3"));
+
+		verify(kafkaTemplate, times(4)).send(any(ProducerRecord.class));
+	}
+
+	@Test
+	void failedSendIsNotRemembered() {
+		CompletableFuture<SendResult<String, WebhookEvent>> ack = new CompletableFuture<>();
+		when(kafkaTemplate.send(any(ProducerRecord.class)))
+				.thenReturn(ack)
+				.thenReturn(CompletableFuture.completedFuture(null));
+
+		service.sendWebhookAsync(event("client-a", "event-1"));
+		CompletableFuture<Void> resubmitted = service.sendWebhookAsync(event("client-a", "event-1"));
+		ack.completeExceptionally(new IllegalStateException("broker unavailable"));
+
+		// the pending resubmission gets the failure too, the next one is published again
+		assertTrue(resubmitted.isCompletedExceptionally());
+		CompletableFuture<Void> retried = service.sendWebhookAsync(event("client-a", "event-1"));
+		assertTrue(retried.isDone() && !retried.isCompletedExceptionally());
+		verify(kafkaTemplate, times(2)).send(any(ProducerRecord.class));
+	}
+
+	private static WebhookEvent event(String clientId, String eventId) {
+		WebhookEvent event = new WebhookEvent();
+		event.setClientId(clientId);
+		event.setEventId(eventId);
+		event.setTargetUrl("https://receiver.test/hook");
+		event.setPayload(Map.of("amount", 10));
+		return event;
+	}
+}
@@ -0,0 +1,190 @@
+package dev.gabriel.producer_api.spool;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.gabriel.producer_api.config.ProducerProperties;
+import dev.gabriel.producer_api.exception.EventTooLargeException;
+import dev.gabriel.producer_api.exception.ProducerOverloadedException;
+import dev.gabriel.producer_api.model.WebhookEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventSpoolTests {
+
+	@TempDir
+	Path directory;
+
+	private final List<EventSpool> opened = new CopyOnWriteArrayList<>();
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		for (EventSpool spool : opened) {
+			spool.close();
+		}
+	}
+
+	@Test
+	void publishesEventsOfThePreviousRunFirst() throws Exception {
+		EventSpool previous = open(1024, 16);
+		previous.append(event("client-a", "e1"), 1L, "trace-1");
+		previous.append(event("client-b", "e2"), 2L, "trace-2");
+		previous.close();
+		opened.remove(previous);
+
+		EventSpool spool = open(1024, 16);
+		spool.append(event("client-a", "e3"), 3L, "trace-3");
+		List<String> published = new CopyOnWriteArrayList<>();
+		spool.drainTo(spooled -> {
+			published.add(spooled.event().getEventId());
+			return CompletableFuture.completedFuture(null);
+		});
+
+		waitUntil(() -> published.size() == 3);
+		assertEquals(List.of("e1", "e2", "e3"), published);
+	}
+
+	@Test
+	void rollsToNewSegmentsAndDeletesThemOncePublished() throws Exception {
+		EventSpool spool = open(512, 16);
+		for (int i = 0; i < 10; i++) {
+			spool.append(event("client-a", "e" + i), i, "trace");
+		}
+		assertTrue(segmentFiles() > 1);
+
+		List<String> published = new CopyOnWriteArrayList<>();
+		spool.drainTo(spooled -> {
+			published.add(spooled.event().getEventId());
+			return CompletableFuture.completedFuture(null);
+		});
+
+		waitUntil(() -> published.size() == 10);
+		// only the segment being appended to is left
+		waitUntil(() -> segmentFiles() == 1);
+	}
+
+	@Test
+	void rejectsEventsOnceFull() throws Exception {
+		EventSpool spool = open(512, 2);
+
+		assertThrows(ProducerOverloadedException.class, () -> {
+			for (int i = 0; i < 100; i++) {
+				spool.append(event("client-a", "e" + i), i, "trace");
+			}
+		});
+	}
+
+	@Test
+	void rejectsEventsLargerThanASegment() throws Exception {
+		EventSpool spool = open(512, 16);
+		WebhookEvent large = event("client-a", "large");
+		large.setPayload(Map.of("data", "x".repeat(1024)));
+
+		assertThrows(EventTooLargeException.class, () -> spool.append(large, 1L, "trace"));
+	}
+
+	@Test
+	void publishesAgainFromFailedEventWithoutDuplicating() throws Exception {
+		EventSpool spool = open(4096, 16);
+		spool.append(event("client-a", "a1"), 1L, "trace");
+		spool.append(event("client-b", "b1"), 2L, "trace");
+		spool.append(event("client-a", "a2"), 3L, "trace");
+		spool.append(event("client-b", "b2"), 4L, "trace");
+
+		List<String> sent = new CopyOnWriteArrayList<>();
+		CompletableFuture<Void> a1 = new CompletableFuture<>();
+		spool.drainTo(spooled -> {
+			String eventId = spooled.event().getEventId();
+			sent.add(eventId);
+			return eventId.equals("a1") && sent.size() == 1 ? a1 : CompletableFuture.completedFuture(null);
+		});
+
+		waitUntil(() -> sent.size() == 4);
+		a1.completeExceptionally(new IllegalStateException("delivery timeout"));
+
+		// only a1 is published again, the others were acknowledged before the rewind
+		waitUntil(() -> sent.size() == 5);
+		Thread.sleep(200);
+		assertEquals(List.of("a1", "b1", "a2", "b2", "a1"), sent);
+	}
+
+	@Test
+	void pipelinesTheEventsOfAClient() throws Exception {
+		EventSpool spool = open(4096, 16);
+		for (int i = 0; i < 5; i++) {
+			spool.append(event("client-a", "a" + i), i, "trace");
+		}
+		spool.append(event("client-b", "b0"), 5L, "trace");
+
+		// no acknowledgment yet: the producer keeps the order of the client's events
+		List<CompletableFuture<Void>> acks = new CopyOnWriteArrayList<>();
+		List<String> sent = new CopyOnWriteArrayList<>();
+		spool.drainTo(spooled -> {
+			sent.add(spooled.event().getEventId());
+			CompletableFuture<Void> ack = new CompletableFuture<>();
+			acks.add(ack);
+			return ack;
+		});
+
+		waitUntil(() -> sent.size() == 6);
+		assertEquals(List.of("a0", "a1", "a2", "a3", "a4", "b0"), sent);
+		acks.forEach(ack -> ack.complete(null));
+	}
+
+	private EventSpool open(int segmentSize, int maxSegments) throws IOException {
+		ProducerProperties properties = new ProducerProperties();
+		ProducerProperties.Spool spoolProperties = properties.getSpool();
+		spoolProperties.setEnabled(true);
+		spoolProperties.setDirectory(directory.toString());
+		spoolProperties.setSegmentSize(segmentSize);
+		spoolProperties.setMaxSegments(maxSegments);
+		spoolProperties.setFsync(ProducerProperties.FsyncPolicy.NEVER);
+		spoolProperties.setMaxRetryBackoff(Duration.ofMillis(200));
+		EventSpool spool = new EventSpool(properties, new ObjectMapper(), new SimpleMeterRegistry());
+		spool.open();
+		opened.add(spool);
+		return spool;
+	}
+
+	private long segmentFiles() {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(SpoolSegment::isSegmentFile).count();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static WebhookEvent event(String clientId, String eventId) {
+		WebhookEvent event = new WebhookEvent();
+		event.setClientId(clientId);
+		event.setEventId(eventId);
+		event.setTargetUrl("https://receiver.test/hook");
+		event.setPayload(Map.of("amount", 10));
+		return event;
+	}
+
+	private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "condition not met in time");
+			Thread.sleep(10);
+		}
+	}
+}
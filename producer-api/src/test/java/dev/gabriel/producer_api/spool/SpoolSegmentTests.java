@@ -0,0 +1,117 @@
+package dev.gabriel.producer_api.spool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpoolSegmentTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void readsBackAppendedRecordsInOrder() throws IOException {
+		SpoolSegment segment = SpoolSegment.create(directory, 1, 1024);
+		int first = segment.tryAppend(bytes("first"));
+		int second = segment.tryAppend(bytes("second"));
+
+		assertEquals(SpoolSegment.HEADER_SIZE, first);
+		assertArrayEquals(bytes("first"), segment.read(first));
+		assertEquals(second, segment.next(first));
+		assertArrayEquals(bytes("second"), segment.read(second));
+		assertNull(segment.read(segment.next(second)));
+	}
+
+	@Test
+	void refusesRecordsPastItsCapacity() throws IOException {
+		SpoolSegment segment = SpoolSegment.create(directory, 1, SpoolSegment.HEADER_SIZE + SpoolSegment.RECORD_OVERHEAD + 10);
+
+		assertTrue(segment.tryAppend(new byte[10]) >= 0);
+		assertEquals(-1, segment.tryAppend(new byte[1]));
+	}
+
+	@Test
+	void recoversRecordsAndAcknowledgedPosition() throws IOException {
+		SpoolSegment segment = SpoolSegment.create(directory, 7, 1024);
+		int first = segment.tryAppend(bytes("first"));
+		int second = segment.tryAppend(bytes("second"));
+		segment.acknowledge(second);
+		segment.force();
+
+		SpoolSegment recovered = SpoolSegment.recover(directory.resolve(fileName(7)));
+		assertEquals(7, recovered.id());
+		assertTrue(recovered.isSealed());
+		assertEquals(second, recovered.acknowledged());
+		assertArrayEquals(bytes("second"), recovered.read(second));
+		assertNull(recovered.read(recovered.next(second)));
+		assertFalse(recovered.isDrained());
+
+		recovered.acknowledge(recovered.next(second));
+		assertTrue(recovered.isDrained());
+		assertEquals(SpoolSegment.HEADER_SIZE, first);
+	}
+
+	@Test
+	void recoveryStopsAtTornRecord() throws IOException {
+		SpoolSegment segment = SpoolSegment.create(directory, 1, 1024);
+		segment.tryAppend(bytes("complete"));
+		int torn = segment.tryAppend(bytes("torn by a crash"));
+		segment.force();
+		// the length made it to disk, the body did not
+		overwrite(fileName(1), torn + SpoolSegment.RECORD_OVERHEAD, new byte[4]);
+
+		SpoolSegment recovered = SpoolSegment.recover(directory.resolve(fileName(1)));
+		assertArrayEquals(bytes("complete"), recovered.read(SpoolSegment.HEADER_SIZE));
+		assertNull(recovered.read(torn));
+	}
+
+	@Test
+	void recoveryStopsAtRecordWithBadChecksum() throws IOException {
+		SpoolSegment segment = SpoolSegment.create(directory, 1, 1024);
+		int first = segment.tryAppend(bytes("first"));
+		int second = segment.tryAppend(bytes("second"));
+		segment.tryAppend(bytes("third"));
+		segment.force();
+		overwrite(fileName(1), second + 4, new byte[]{1, 2, 3, 4});
+
+		SpoolSegment recovered = SpoolSegment.recover(directory.resolve(fileName(1)));
+		assertArrayEquals(bytes("first"), recovered.read(first));
+		// what follows a corrupted record is lost with it
+		assertNull(recovered.read(second));
+	}
+
+	@Test
+	void rejectsFilesThatAreNotSegments() throws IOException {
+		SpoolSegment.create(directory, 1, 1024);
+		overwrite(fileName(1), 0, new byte[]{0, 0, 0, 0});
+
+		assertThrows(IOException.class, () -> SpoolSegment.recover(directory.resolve(fileName(1))));
+	}
+
+	private void overwrite(String file, int position, byte[] data) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory.resolve(file), StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(data), position);
+		}
+	}
+
+	private static String fileName(long id) {
+		return String.format("%020d.spool", id);
+	}
+
+	private static byte[] bytes(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+}